@@ -0,0 +1,463 @@
+/**
+ * This class implements the split kernels of the SplitKernels class with the
+ * JDK Vector API. The comparison against the threshold produces a lane mask,
+ * and the sums of y and then of the squared deviations from the mean of each
+ * branch are accumulated with masked adds, so the loops have no branches.
+ * Squares are a multiply followed by an add, as in the scalar kernels. Class
+ * counts of a few classes are the true lanes of the mask of each class, and
+ * the counts below several thresholds are the true lanes of one comparison
+ * per threshold. Sums are added up in a different order than the scalar
+ * kernels, so they may differ in the last bits, while counts are exact
+ *
+ * The class is optional. It needs the jdk.incubator.vector module:
+ *   javac --add-modules jdk.incubator.vector -cp bin -d bin \
+ *       src-vector/VectorSplitKernels.java
+ *   java --add-modules jdk.incubator.vector -cp bin Main
+ * The vectors are of the preferred size of the platform, or of
+ * -DsplitKernels.bits=<128|256|512> bits. Running the class itself checks it
+ * against the scalar kernels with 128, 256, and 512-bit vectors
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+import jdk.incubator.vector.*;
+
+public class VectorSplitKernels extends SplitKernels
+{
+    static final VectorSpecies<Double> SPECIES = species();
+    static final VectorSpecies<Integer> INT_SPECIES = intSpecies();
+    static final int MAX_CLASSES = 8; // Most classes counted with masks
+    static final int[] CHECKED_BITS = {128, 256, 512}; // Sizes run by main()
+
+    /**
+     * This method finds the species of double vectors, of the size set with
+     * -DsplitKernels.bits or else of the preferred size of the platform. The
+     * species is a constant, so that the JIT compiler can map the vectors to
+     * registers
+     *
+     * @return the species
+     */
+    static VectorSpecies<Double> species()
+    {
+        Integer bits = Integer.getInteger("splitKernels.bits");
+        if (bits == null)
+        {
+            return DoubleVector.SPECIES_PREFERRED;
+        }
+
+        return DoubleVector.SPECIES_PREFERRED.withShape(
+                VectorShape.forBitSize(bits));
+    }
+
+    /**
+     * This method finds the species of int vectors with as many lanes as the
+     * double vectors, so that the class indices of the data points line up
+     * with their feature values
+     *
+     * @return the species, or null if there is none
+     */
+    static VectorSpecies<Integer> intSpecies()
+    {
+        try
+        {
+            return IntVector.SPECIES_PREFERRED.withShape(
+                    VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+        }
+        catch (IllegalArgumentException e)
+        {// Double vectors of a single lane
+            return null;
+        }
+    }
+
+    /**
+     * This method returns the name of the kernels in use
+     *
+     * @return "vector"
+     */
+    public String name()
+    {
+        return "vector";
+    }
+
+    /**
+     * This method calculates the count, mean, and M2 of the first n target
+     * values
+     *
+     * @param y is the target values
+     * @param n is the number of target values to use
+     * @param out receives the count, mean, and M2
+     */
+    public void moments(double[] y, int n, double[] out)
+    {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length())
+        {
+            sum = sum.add(DoubleVector.fromArray(SPECIES, y, i));
+        }
+        double s = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++)
+        {// Remaining elements
+            s += y[i];
+        }
+        double mean = n == 0 ? 0 : s / n;
+
+        DoubleVector m = DoubleVector.broadcast(SPECIES, mean);
+        DoubleVector m2 = DoubleVector.zero(SPECIES);
+        for (i = 0; i < bound; i += SPECIES.length())
+        {
+            DoubleVector d = DoubleVector.fromArray(SPECIES, y, i).sub(m);
+            m2 = m2.add(d.mul(d));
+        }
+        double s2 = m2.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++)
+        {// Remaining elements
+            double d = y[i] - mean;
+            s2 += d * d;
+        }
+        out[0] = n;
+        out[1] = mean;
+        out[2] = s2;
+    }
+
+    /**
+     * This method splits the first n data points on a numeric feature and
+     * calculates the count, mean, and M2 of the targets of both branches. The
+     * left branch holds the values less than the threshold
+     *
+     * @param x is the feature values
+     * @param y is the target values
+     * @param n is the number of data points to use
+     * @param threshold is the value to split on
+     * @param out receives the statistics of the left branch followed by those
+     *        of the right branch
+     */
+    public void partitionStats(double[] x, double[] y, int n,
+            double threshold, double[] out)
+    {
+        DoubleVector t = DoubleVector.broadcast(SPECIES, threshold);
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        DoubleVector leftSum = zero;
+        DoubleVector rightSum = zero;
+        long leftCount = 0;
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length())
+        {
+            DoubleVector xv = DoubleVector.fromArray(SPECIES, x, i);
+            DoubleVector yv = DoubleVector.fromArray(SPECIES, y, i);
+            VectorMask<Double> left = xv.lt(t);
+            leftSum = leftSum.add(yv, left);
+            rightSum = rightSum.add(yv, left.not());
+            leftCount += left.trueCount();
+        }
+        double ls = leftSum.reduceLanes(VectorOperators.ADD);
+        double rs = rightSum.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++)
+        {// Remaining elements
+            if (x[i] < threshold)
+            {
+                leftCount++;
+                ls += y[i];
+            }
+            else
+            {
+                rs += y[i];
+            }
+        }
+        long rightCount = n - leftCount;
+        double leftMean = leftCount == 0 ? 0 : ls / leftCount;
+        double rightMean = rightCount == 0 ? 0 : rs / rightCount;
+
+        // Squared deviations from the mean of the branch of each element
+        DoubleVector lm = DoubleVector.broadcast(SPECIES, leftMean);
+        DoubleVector rm = DoubleVector.broadcast(SPECIES, rightMean);
+        DoubleVector leftM2 = zero;
+        DoubleVector rightM2 = zero;
+        for (i = 0; i < bound; i += SPECIES.length())
+        {
+            DoubleVector xv = DoubleVector.fromArray(SPECIES, x, i);
+            DoubleVector yv = DoubleVector.fromArray(SPECIES, y, i);
+            VectorMask<Double> left = xv.lt(t);
+            DoubleVector d = yv.sub(rm.blend(lm, left));
+            DoubleVector dd = d.mul(d);
+            leftM2 = leftM2.add(dd, left);
+            rightM2 = rightM2.add(dd, left.not());
+        }
+        double ls2 = leftM2.reduceLanes(VectorOperators.ADD);
+        double rs2 = rightM2.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++)
+        {// Remaining elements
+            if (x[i] < threshold)
+            {
+                double d = y[i] - leftMean;
+                ls2 += d * d;
+            }
+            else
+            {
+                double d = y[i] - rightMean;
+                rs2 += d * d;
+            }
+        }
+        out[0] = leftCount;
+        out[1] = leftMean;
+        out[2] = ls2;
+        out[3] = rightCount;
+        out[4] = rightMean;
+        out[5] = rs2;
+    }
+
+    /**
+     * This method splits the first n data points on a numeric feature and
+     * counts the data points of each class in both branches. The left branch
+     * holds the values less than the threshold. With more classes than
+     * MAX_CLASSES the scalar loop is used
+     *
+     * @param x is the feature values
+     * @param yIndex is the class index of each data point
+     * @param n is the number of data points to use
+     * @param threshold is the value to split on
+     * @param left receives the class counts of the left branch
+     * @param right receives the class counts of the right branch
+     */
+    public void partitionCounts(double[] x, int[] yIndex, int n,
+            double threshold, int[] left, int[] right)
+    {
+        int numClasses = left.length;
+        if (INT_SPECIES == null || numClasses > MAX_CLASSES)
+        {
+            super.partitionCounts(x, yIndex, n, threshold, left, right);
+            return;
+        }
+
+        Arrays.fill(left, 0);
+        Arrays.fill(right, 0);
+        DoubleVector t = DoubleVector.broadcast(SPECIES, threshold);
+        int i = 0;
+        for (; i < SPECIES.loopBound(n); i += SPECIES.length())
+        {
+            VectorMask<Integer> below = DoubleVector.fromArray(SPECIES, x, i)
+                    .lt(t).cast(INT_SPECIES);
+            IntVector yv = IntVector.fromArray(INT_SPECIES, yIndex, i);
+            for (int c = 0; c < numClasses; c++)
+            {
+                VectorMask<Integer> isClass = yv.eq(c);
+                int count = isClass.trueCount();
+                int leftCount = isClass.and(below).trueCount();
+                left[c] += leftCount;
+                right[c] += count - leftCount;
+            }
+        }
+        for (; i < n; i++)
+        {// Remaining elements
+            if (x[i] < threshold)
+            {
+                left[yIndex[i]]++;
+            }
+            else
+            {
+                right[yIndex[i]]++;
+            }
+        }
+    }
+
+    /**
+     * This method counts the data points less than each of several
+     * thresholds in one pass, e.g. the size of the left branch of every
+     * candidate split of a numeric feature. Each block of values is compared
+     * with every threshold, which is cheaper than a binary search per value
+     * for the few thresholds of a split
+     *
+     * @param x is the feature values
+     * @param n is the number of data points to use
+     * @param thresholds is the thresholds, sorted in ascending order, without
+     *        NaN
+     * @param below receives the number of values less than each threshold
+     */
+    public void countBelow(double[] x, int n, double[] thresholds,
+            int[] below)
+    {
+        int m = thresholds.length;
+        DoubleVector[] t = new DoubleVector[m];
+        for (int j = 0; j < m; j++)
+        {
+            t[j] = DoubleVector.broadcast(SPECIES, thresholds[j]);
+        }
+        Arrays.fill(below, 0, m, 0);
+        int i = 0;
+        for (; i < SPECIES.loopBound(n); i += SPECIES.length())
+        {
+            DoubleVector xv = DoubleVector.fromArray(SPECIES, x, i);
+            for (int j = 0; j < m; j++)
+            {
+                below[j] += xv.lt(t[j]).trueCount();
+            }
+        }
+        for (; i < n; i++)
+        {// Remaining elements
+            for (int j = 0; j < m; j++)
+            {
+                if (x[i] < thresholds[j])
+                {
+                    below[j]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method checks the vectorized kernels against the scalar kernels
+     * with each size of CHECKED_BITS. The size of the vectors is fixed when
+     * the class is loaded, so each size is checked by the check() method in
+     * a JVM of its own, or only the size set with -DsplitKernels.bits
+     *
+     * @param args is the number of trials, 1000 by default
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws IOException,
+            InterruptedException
+    {
+        if (System.getProperty("splitKernels.bits") != null)
+        {
+            check(args);
+            return;
+        }
+
+        int failures = 0;
+        for (int bits : CHECKED_BITS)
+        {
+            ArrayList<String> command = new ArrayList<String>(Arrays.asList(
+                    System.getProperty("java.home") + File.separator + "bin"
+                    + File.separator + "java", "--add-modules",
+                    "jdk.incubator.vector", "-DsplitKernels.bits=" + bits,
+                    "-cp", System.getProperty("java.class.path"),
+                    "VectorSplitKernels"));
+            command.addAll(Arrays.asList(args));
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            if (process.waitFor() != 0)
+            {
+                failures++;
+            }
+        }
+        if (failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method checks the vectorized kernels against the scalar kernels on
+     * random columns of different lengths, including NaN feature values and
+     * lengths that are not a multiple of the vector length, and class counts
+     * of few and many classes. Counts must match exactly, means and M2
+     * within 1e-12 of the sums of |y| and y^2. The program exits with status
+     * 1 if a trial does not match
+     *
+     * @param args is the number of trials, 1000 by default
+     */
+    static void check(String[] args)
+    {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        SplitKernels scalar = new SplitKernels();
+        SplitKernels vector = new VectorSplitKernels();
+        Random random = new Random(42);
+        int failures = 0;
+        for (int trial = 0; trial < trials; trial++)
+        {
+            int n = random.nextInt(1000);
+            int numClasses = 1 + random.nextInt(12);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            int[] yIndex = new int[n];
+            for (int i = 0; i < n; i++)
+            {
+                x[i] = random.nextInt(50);
+                y[i] = random.nextGaussian() * 100;
+                yIndex[i] = random.nextInt(numClasses);
+                if (random.nextInt(100) == 0)
+                {
+                    x[i] = Double.NaN;
+                }
+            }
+            double threshold = random.nextInt(52) - 1;
+
+            double[] expected = new double[6];
+            double[] actual = new double[6];
+            scalar.partitionStats(x, y, n, threshold, expected);
+            vector.partitionStats(x, y, n, threshold, actual);
+            int[] expectedLeft = new int[numClasses];
+            int[] expectedRight = new int[numClasses];
+            int[] actualLeft = new int[numClasses];
+            int[] actualRight = new int[numClasses];
+            scalar.partitionCounts(x, yIndex, n, threshold, expectedLeft,
+                    expectedRight);
+            vector.partitionCounts(x, yIndex, n, threshold, actualLeft,
+                    actualRight);
+            double[] thresholds = new double[1 + random.nextInt(20)];
+            for (int j = 0; j < thresholds.length; j++)
+            {
+                thresholds[j] = random.nextInt(52) - 1.5;
+            }
+            Arrays.sort(thresholds);
+            int[] expectedBelow = new int[thresholds.length];
+            int[] actualBelow = new int[thresholds.length];
+            scalar.countBelow(x, n, thresholds, expectedBelow);
+            vector.countBelow(x, n, thresholds, actualBelow);
+            double[] expectedMoments = new double[3];
+            double[] actualMoments = new double[3];
+            scalar.moments(y, n, expectedMoments);
+            vector.moments(y, n, actualMoments);
+
+            // Errors are relative to the sums of |y| and y^2
+            double scale = 0;
+            double sumSq = 0;
+            for (int i = 0; i < n; i++)
+            {
+                scale += Math.abs(y[i]);
+                sumSq += y[i] * y[i];
+            }
+            boolean same = expected[0] == actual[0]
+                    && expected[3] == actual[3]
+                    && expectedMoments[0] == actualMoments[0]
+                    && Arrays.equals(expectedLeft, actualLeft)
+                    && Arrays.equals(expectedRight, actualRight)
+                    && Arrays.equals(expectedBelow, actualBelow)
+                    && close(expected[1], actual[1], scale)
+                    && close(expected[4], actual[4], scale)
+                    && close(expectedMoments[1], actualMoments[1], scale)
+                    && close(expected[2], actual[2], sumSq)
+                    && close(expected[5], actual[5], sumSq)
+                    && close(expectedMoments[2], actualMoments[2], sumSq);
+            if (!same)
+            {
+                failures++;
+                System.out.println("Mismatch for n = " + n + ": "
+                        + Arrays.toString(expected) + " vs "
+                        + Arrays.toString(actual));
+            }
+        }
+
+        System.out.println(SPECIES + ": " + (trials - failures) + "/"
+                + trials + " trials match the scalar kernels");
+        if (failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method tells whether two sums are equal up to rounding
+     *
+     * @param expected is the scalar sum
+     * @param actual is the vectorized sum
+     * @param scale is the magnitude of the values added up
+     * @return true if the error is at most 1e-12 of the scale
+     */
+    static boolean close(double expected, double actual, double scale)
+    {
+        return Math.abs(expected - actual) <= 1e-12 * Math.max(1, scale);
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * This class checks that the hot paths of training and prediction stay within
+ * their allocation budgets. The bytes allocated by the current thread are
+ * read from com.sun.management.ThreadMXBean before and after each path, after
+ * a warmup so that the JIT compiler has removed what it can. Each check
+ * prints its allocation per unit of work and its budget, and the program
+ * exits with status 1 if any budget is exceeded, so a change that brings
+ * allocation back into a hot path fails fast
+ *
+ * Budgets:
+ *   prediction on a sparse matrix: no allocation per row
+ *   prediction on strings (CART): about none per row, since numbers are
+ *   parsed without allocating (see the NumberParser class)
+ *   split search of a node: bounded bytes per row and feature (dense) or per
+ *   nonzero value (sparse), i.e. the parsed column and its partitions, and
+ *   no lists per candidate threshold
+ *
+ * Usage: java AllocationBudget [rows]
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class AllocationBudget
+{
+    int failures; // Number of checks over budget
+    long overhead; // Bytes allocated by a measurement of an empty path
+
+    public static void main(String[] args)
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        if (TreeEvents.allocatedBytes() == 0 && TreeEvents.allocatedBytes()
+                == 0)
+        {
+            System.out.println("Allocation counting is not supported by "
+                    + "this JVM");
+            return;
+        }
+
+        AllocationBudget budget = new AllocationBudget();
+        budget.overhead = budget.measure(new Runnable()
+        {
+            public void run()
+            {
+            }
+        });
+        budget.run(rows);
+        if (budget.failures > 0)
+        {
+            System.out.println(budget.failures + " check(s) over budget");
+            System.exit(1);
+        }
+        System.out.println("All checks within budget");
+    }
+
+    /**
+     * This method runs all checks on a generated dataset of numeric features
+     * with 10 values each, so that both trees make many splits
+     *
+     * @param rows is the number of rows of the dataset
+     */
+    public void run(int rows)
+    {
+        Random random = new Random(42);
+        int numFeatures = 8;
+        ArrayList<String[]> X = new ArrayList<String[]>();
+        ArrayList<String> labels = new ArrayList<String>();
+        ArrayList<String> targets = new ArrayList<String>();
+        for (int i = 0; i < rows; i++)
+        {
+            String[] x = new String[numFeatures];
+            int score = 0;
+            for (int j = 0; j < numFeatures; j++)
+            {
+                int value = random.nextInt(10);
+                x[j] = Integer.toString(value);
+                score += j < 3 ? value : 0;
+            }
+            X.add(x);
+            labels.add(Integer.toString(score / 7));
+            targets.add(Double.toString(score + random.nextGaussian()));
+        }
+        SparseMatrix sparse = SparseMatrix.fromDense(X);
+
+        final DecisionTreeClassifier dtc = new DecisionTreeClassifier();
+        dtc.fit(sparse, labels);
+        final SparseMatrix sparseX = sparse;
+        check("predict.sparse.ID3", "row", rows, 0, new Runnable()
+        {
+            public void run()
+            {
+                int sink = 0;
+                for (int i = 0; i < sparseX.numRows; i++)
+                {
+                    sink += dtc.root.predictOne(sparseX, i).length();
+                }
+                blackhole(sink);
+            }
+        });
+
+        final DecisionTreeRegressor dtr = new DecisionTreeRegressor(0);
+        dtr.fit(X, targets, "synthetic");
+        final ArrayList<String[]> denseX = X;
+        check("predict.values.CART", "row", rows, 1, new Runnable()
+        {
+            public void run()
+            {
+                double sink = 0;
+                for (String[] x : denseX)
+                {
+                    sink += dtr.root.predictValue(x);
+                }
+                blackhole((int) sink);
+            }
+        });
+
+        final ArrayList<String> y = labels;
+        final ArrayList<String> yValues = targets;
+        check("split.dense.ID3", "row x feature", rows * numFeatures, 40,
+                new Runnable()
+        {
+            public void run()
+            {
+                blackhole(dtc.chooseSplitIndex(denseX, y).size());
+            }
+        });
+        check("split.dense.CART", "row x feature", rows * numFeatures, 80,
+                new Runnable()
+        {
+            public void run()
+            {
+                blackhole(dtr.chooseSplitIndex(denseX, yValues).size());
+            }
+        });
+
+        // Sparse split search at the root, per nonzero value
+        final int[] allRows = new int[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            allRows[i] = i;
+        }
+        final int[] yIndex = new int[rows];
+        final int[] parentCount = new int[dtc.classIndex.size()];
+        final double[] yValue = new double[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            yIndex[i] = dtc.classIndex.get(labels.get(i));
+            parentCount[yIndex[i]]++;
+            yValue[i] = Double.parseDouble(targets.get(i));
+        }
+        final double[] stats = Moments.of(yValue, allRows);
+        final int[] position = new int[numFeatures];
+        Arrays.fill(position, -1);
+        check("split.sparse.ID3", "nonzero", sparse.nnz(), 24, new Runnable()
+        {
+            public void run()
+            {
+                blackhole(dtc.chooseSplitIndex(sparseX, yIndex, allRows,
+                        parentCount, position).size());
+            }
+        });
+        check("split.sparse.CART", "nonzero", sparse.nnz(), 24,
+                new Runnable()
+        {
+            public void run()
+            {
+                blackhole(dtr.chooseSplitIndex(sparseX, yValue, allRows,
+                        stats, position).size());
+            }
+        });
+    }
+
+    /**
+     * This method measures the allocation of a path and compares it with
+     * its budget. The path is run a few times first, and the smallest of
+     * several measurements is used, so that JIT compilation and other
+     * one-off allocation are not counted. The allocation of the measurement
+     * itself is subtracted
+     *
+     * @param name is the name of the check
+     * @param unit is the unit of work
+     * @param units is the number of units of work in one run of the path
+     * @param budget is the budget in bytes per unit of work
+     * @param path is the path to be measured
+     */
+    void check(String name, String unit, int units, double budget,
+            Runnable path)
+    {
+        long bytes = Math.max(measure(path) - overhead, 0);
+        double perUnit = (double) bytes / units;
+        boolean pass = perUnit <= budget;
+        if (!pass)
+        {
+            failures++;
+        }
+        System.out.printf("%-20s %10.2f bytes/%s (budget %.0f) %s%n", name,
+                perUnit, unit, budget, pass ? "OK" : "OVER BUDGET");
+    }
+
+    /**
+     * This method measures the bytes allocated by one run of a path
+     *
+     * @param path is the path to be measured
+     * @return the smallest allocation of 5 runs, after 20 runs of warmup
+     */
+    long measure(Runnable path)
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            path.run();
+        }
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++)
+        {
+            long before = TreeEvents.allocatedBytes();
+            path.run();
+            least = Math.min(least, TreeEvents.allocatedBytes() - before);
+        }
+
+        return least;
+    }
+
+    /**
+     * This method keeps a result alive so that the JIT compiler cannot remove
+     * the work that produced it
+     *
+     * @param value is the result
+     */
+    static void blackhole(int value)
+    {
+        if (value == Integer.MIN_VALUE + 1)
+        {
+            System.out.println(value);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * This class parses a whole data file on several threads. The file is split
+ * into byte ranges of nearly equal size, each moved forward to the start of
+ * a line, and each range is memory mapped and parsed by its own task into a
+ * chunk of records with its own schema (see the SchemaInferencer class). The
+ * chunks are then joined in file order and their schemas merged, so the
+ * result is the same as parsing the file line by line: the header lines are
+ * removed and each line goes through ETL.processRecord(), which applies the
+ * transforms of the dataset.
+ *
+ * Lines end with "\n" or "\r\n". Files smaller than MIN_PARALLEL bytes are
+ * parsed in a single chunk. The number of threads is the number of cores,
+ * and can be changed with -DparseThreads=<n>
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ChunkedCSVParser
+{
+    static final long MIN_PARALLEL = 1 << 22; // Smallest file split in chunks
+    static final long MAX_CHUNK = 1 << 30;    // Largest range mapped at once
+    static final int THREADS = Integer.getInteger("parseThreads",
+            Runtime.getRuntime().availableProcessors());
+
+    ETL etl;         // Processes the records of the dataset
+    Schema schema;   // Schema of the records, set by parse()
+
+    /**
+     * This class holds the records and schema of one byte range
+     */
+    static class Chunk
+    {
+        ArrayList<String[]> records = new ArrayList<String[]>();
+        SchemaInferencer inferencer = new SchemaInferencer(false);
+    }
+
+    /**
+     * This constructor creates a parser for the dataset of an ETL object
+     *
+     * @param etl is the ETL object, whose file name has been set
+     */
+    public ChunkedCSVParser(ETL etl)
+    {
+        this.etl = etl;
+    }
+
+    /**
+     * This method returns whether a file is large enough to be parsed on
+     * several threads
+     *
+     * @param filePath is the path of the data file
+     * @return true if the file should be parsed in chunks
+     */
+    public static boolean worthwhile(String filePath)
+    {
+        return THREADS > 1 && new File(filePath).length() >= MIN_PARALLEL;
+    }
+
+    /**
+     * This method parses the whole file
+     *
+     * @param filePath is the path of the data file
+     * @return the 2D String array that stores the records, in file order
+     * @throws IOException
+     */
+    public ArrayList<String[]> parse(String filePath) throws IOException
+    {
+        FileChannel channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.READ);
+        final ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+        try
+        {
+            long size = channel.size();
+            int numChunks = (int) Math.max(size < MIN_PARALLEL ? 1 : THREADS,
+                    (size + MAX_CHUNK - 1) / MAX_CHUNK);
+            long[] bounds = new long[numChunks + 1];
+            for (int i = 1; i < numChunks; i++)
+            {
+                bounds[i] = lineStart(channel,
+                        Math.max(size * i / numChunks, bounds[i - 1]));
+            }
+            bounds[numChunks] = size;
+
+            ExecutorService pool = Executors.newFixedThreadPool(
+                    Math.min(THREADS, numChunks));
+            try
+            {
+                ArrayList<Future<Chunk>> futures =
+                        new ArrayList<Future<Chunk>>();
+                for (int i = 0; i < numChunks; i++)
+                {
+                    final MappedByteBuffer range = channel.map(
+                            FileChannel.MapMode.READ_ONLY, bounds[i],
+                            bounds[i + 1] - bounds[i]);
+                    final int skip = i == 0 ? etl.headers() : 0;
+                    futures.add(pool.submit(new Callable<Chunk>()
+                    {
+                        public Chunk call()
+                        {
+                            return parseRange(range, skip);
+                        }
+                    }));
+                }
+                for (Future<Chunk> future : futures)
+                {
+                    chunks.add(future.get());
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Parsing was interrupted");
+            }
+            catch (ExecutionException e)
+            {
+                throw new IOException("Cannot parse " + filePath,
+                        e.getCause());
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+        finally
+        {// The mappings stay valid after the channel is closed
+            channel.close();
+        }
+
+        // Join the chunks in file order
+        int total = 0;
+        for (Chunk chunk : chunks)
+        {
+            total += chunk.records.size();
+        }
+        ArrayList<String[]> records = new ArrayList<String[]>(total);
+        SchemaInferencer inferencer = new SchemaInferencer(false);
+        for (Chunk chunk : chunks)
+        {
+            records.addAll(chunk.records);
+            inferencer.merge(chunk.inferencer);
+        }
+        schema = inferencer.schema();
+
+        return records;
+    }
+
+    /**
+     * This method finds the start of the first line at or after a position,
+     * i.e. the byte after the first newline at or after position - 1
+     *
+     * @param channel is the data file
+     * @param position is the position
+     * @return the start of the line, or the size of the file
+     * @throws IOException
+     */
+    static long lineStart(FileChannel channel, long position)
+            throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long offset = Math.max(position - 1, 0);
+        while (true)
+        {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0)
+            {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++)
+            {
+                if (buffer.get(i) == '\n')
+                {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * This method parses the lines of a byte range. The range starts at the
+     * start of a line and ends after a newline or at the end of the file
+     *
+     * @param range is the mapped byte range
+     * @param skip is the number of header lines at the start of the range
+     * @return the records and schema of the range
+     */
+    Chunk parseRange(ByteBuffer range, int skip)
+    {
+        Chunk chunk = new Chunk();
+        Charset charset = Charset.defaultCharset();
+        byte[] line = new byte[256];
+        int length = 0;
+        int end = range.limit();
+        for (int i = 0; i <= end; i++)
+        {
+            byte b = i < end ? range.get(i) : (byte) '\n';
+            if (b != '\n')
+            {
+                if (length == line.length)
+                {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+                continue;
+            }
+            if (i == end && length == 0)
+            {// No line after the last newline
+                break;
+            }
+
+            if (length > 0 && line[length - 1] == '\r')
+            {
+                length--;
+            }
+            if (skip > 0)
+            {// Headers are removed
+                skip--;
+            }
+            else
+            {
+                String[] record = etl.processRecord(
+                        new String(line, 0, length, charset));
+                chunk.inferencer.observe(record);
+                chunk.records.add(record);
+            }
+            length = 0;
+        }
+
+        return chunk;
+    }
+}
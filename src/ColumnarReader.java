@@ -0,0 +1,442 @@
+/**
+ * This class reads a columnar binary file written by the ColumnarWriter
+ * class, one block at a time. Blocks are memory mapped and decoded on their
+ * own, so only the blocks that are needed are read, and the min/max of each
+ * column of each block are known from the index without reading the block
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class ColumnarReader implements Closeable
+{
+    FileChannel channel;
+    String[] names;          // Name of each column
+    boolean[] categorical;   // Boolean array of whether column is categorical
+    boolean[] integer;       // Boolean array of whether column is whole numbers
+    String[][] dictionaries; // Categories of each categorical column
+
+    long[] offsets;          // Offset of each block in the file
+    int[] sizes;             // Number of rows of each block
+    double[][] min;          // Smallest value of each column of each block
+    double[][] max;          // Largest value of each column of each block
+    long indexOffset;        // Offset of the index, after the last block
+    int block = -1;          // Index of the current block
+
+    int rows;                // Number of rows in the current block
+    double[][] numeric;      // Values of numeric columns in the current block
+    int[][] codes;           // Codes of categorical columns in current block
+    int[] encodings;         // Encoding of each column in the current block
+
+    /**
+     * This constructor opens the file and reads its header and index
+     *
+     * @param filePath is the path of the file
+     * @throws IOException
+     */
+    public ColumnarReader(String filePath) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(filePath), 1 << 16));
+        try
+        {
+            readHeader(in, filePath);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.READ);
+        try
+        {
+            readIndex();
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * This method reads the names, types, and dictionaries of the columns
+     *
+     * @param in is the stream at the start of the file
+     * @param filePath is the path of the file
+     * @throws IOException
+     */
+    void readHeader(DataInputStream in, String filePath) throws IOException
+    {
+        if (in.readInt() != ColumnarWriter.MAGIC)
+        {
+            throw new IOException("Not a columnar file: " + filePath);
+        }
+        int version = in.readInt();
+        if (version != ColumnarWriter.VERSION)
+        {
+            throw new IOException("Unsupported columnar version " + version);
+        }
+
+        int numCols = in.readInt();
+        in.readInt(); // Block size
+        names = new String[numCols];
+        categorical = new boolean[numCols];
+        integer = new boolean[numCols];
+        dictionaries = new String[numCols][];
+        numeric = new double[numCols][0];
+        codes = new int[numCols][0];
+        encodings = new int[numCols];
+        for (int i = 0; i < numCols; i++)
+        {
+            names[i] = in.readUTF();
+            categorical[i] = in.readBoolean();
+            integer[i] = in.readBoolean();
+            if (categorical[i])
+            {
+                dictionaries[i] = new String[in.readInt()];
+                for (int k = 0; k < dictionaries[i].length; k++)
+                {
+                    dictionaries[i][k] = in.readUTF();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method reads the offset, size, and min/max of every block from
+     * the index at the end of the file
+     *
+     * @throws IOException
+     */
+    void readIndex() throws IOException
+    {
+        ByteBuffer trailer = ByteBuffer.allocate(12);
+        channel.read(trailer, channel.size() - 12);
+        trailer.flip();
+        indexOffset = trailer.getLong();
+        if (trailer.getInt() != ColumnarWriter.MAGIC)
+        {
+            throw new IOException("Columnar file has no index");
+        }
+
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY,
+                indexOffset, channel.size() - 12 - indexOffset);
+        int numBlocks = index.getInt();
+        offsets = new long[numBlocks];
+        sizes = new int[numBlocks];
+        min = new double[numBlocks][names.length];
+        max = new double[numBlocks][names.length];
+        for (int b = 0; b < numBlocks; b++)
+        {
+            offsets[b] = index.getLong();
+            sizes[b] = index.getInt();
+            for (int i = 0; i < names.length; i++)
+            {
+                min[b][i] = index.getDouble();
+                max[b][i] = index.getDouble();
+            }
+        }
+    }
+
+    /**
+     * This method returns the number of blocks
+     *
+     * @return the number of blocks
+     */
+    public int numBlocks()
+    {
+        return offsets.length;
+    }
+
+    /**
+     * This method returns the number of rows in the file
+     *
+     * @return the number of rows
+     */
+    public long numRows()
+    {
+        long total = 0;
+        for (int size : sizes)
+        {
+            total += size;
+        }
+
+        return total;
+    }
+
+    /**
+     * This method reads the next block into numeric and codes
+     *
+     * @return false if there are no more blocks
+     * @throws IOException
+     */
+    public boolean next() throws IOException
+    {
+        if (block + 1 >= offsets.length)
+        {
+            rows = 0;
+            return false;
+        }
+        seek(block + 1);
+
+        return true;
+    }
+
+    /**
+     * This method maps a block and decodes it into numeric and codes
+     *
+     * @param b is the index of the block
+     * @throws IOException
+     */
+    public void seek(int b) throws IOException
+    {
+        long end = b + 1 < offsets.length ? offsets[b + 1] : indexOffset;
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                offsets[b], end - offsets[b]);
+        block = b;
+        rows = buffer.getInt();
+        buffer.getInt();
+        for (int i = 0; i < names.length; i++)
+        {
+            int encoding = buffer.get();
+            int width = buffer.get();
+            encodings[i] = encoding;
+            buffer.position(buffer.position() + 6);
+            if (categorical[i])
+            {
+                if (codes[i].length < rows)
+                {
+                    codes[i] = new int[rows];
+                }
+                long base = (long) min[b][i];
+                for (int j = 0; j < rows; j++)
+                {
+                    codes[i][j] = (int) (base + unpack(buffer, j, width));
+                }
+            }
+            else
+            {
+                if (numeric[i].length < rows)
+                {
+                    numeric[i] = new double[rows];
+                }
+                readNumeric(buffer, encoding, width, numeric[i], min[b][i]);
+            }
+            skip(buffer, encoding, width);
+        }
+    }
+
+    /**
+     * This method decodes the values of a numeric column of the block
+     *
+     * @param buffer is the block, at the start of the values
+     * @param encoding is the encoding of the column
+     * @param width is the number of bits per value
+     * @param values is where the values are decoded to
+     * @param base is the minimum of the column in the block
+     */
+    void readNumeric(ByteBuffer buffer, int encoding, int width,
+            double[] values, double base)
+    {
+        int start = buffer.position();
+        for (int j = 0; j < rows; j++)
+        {
+            if (encoding == ColumnarWriter.PACKED)
+            {
+                values[j] = base + unpack(buffer, j, width);
+            }
+            else if (encoding == ColumnarWriter.FLOATS)
+            {
+                values[j] = buffer.getFloat(start + 4 * j);
+            }
+            else
+            {
+                values[j] = buffer.getDouble(start + 8 * j);
+            }
+        }
+    }
+
+    /**
+     * This method reads value j of the bit-packed values that start at the
+     * position of the buffer
+     *
+     * @param buffer is the block, at the start of the values
+     * @param j is the index of the value
+     * @param width is the number of bits per value
+     * @return the value
+     */
+    static long unpack(ByteBuffer buffer, int j, int width)
+    {
+        if (width == 0)
+        {
+            return 0;
+        }
+        long bit = (long) j * width;
+        int word = buffer.position() + 8 * (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long value = buffer.getLong(word) >>> shift;
+        if (shift + width > 64)
+        {
+            value |= buffer.getLong(word + 8) << (64 - shift);
+        }
+
+        return width == 64 ? value : value & ((1L << width) - 1);
+    }
+
+    /**
+     * This method moves the buffer past the values of a column
+     *
+     * @param buffer is the block, at the start of the values
+     * @param encoding is the encoding of the column
+     * @param width is the number of bits per value
+     */
+    void skip(ByteBuffer buffer, int encoding, int width)
+    {
+        long bytes = encoding == ColumnarWriter.PACKED ?
+                8 * (((long) rows * width + 63) / 64) :
+                encoding == ColumnarWriter.FLOATS ?
+                        8 * (((long) rows + 1) / 2) : 8L * rows;
+        buffer.position(buffer.position() + (int) bytes);
+    }
+
+    /**
+     * This method returns a value of the current block as a string, the same
+     * way it is written in a CSV file
+     *
+     * @param column is the column of interest
+     * @param row is the row within the block
+     * @return the value as a string
+     */
+    public String getString(int column, int row)
+    {
+        if (categorical[column])
+        {
+            return dictionaries[column][codes[column][row]];
+        }
+        double value = numeric[column][row];
+        if (integer[column] && value == value)
+        {
+            return Long.toString((long) value);
+        }
+        else if (encodings[column] == ColumnarWriter.FLOATS)
+        {// The shortest string that gives back the float
+            return Float.toString((float) value);
+        }
+
+        return Double.toString(value);
+    }
+
+    /**
+     * This method reads all remaining rows as records of strings, the same
+     * form the ETL class returns
+     *
+     * @return the records
+     * @throws IOException
+     */
+    public ArrayList<String[]> readRecords() throws IOException
+    {
+        ArrayList<String[]> records = new ArrayList<String[]>();
+        while (next())
+        {
+            addRecords(records, 0, rows);
+        }
+
+        return records;
+    }
+
+    /**
+     * This method reads a range of rows as records of strings. Only the
+     * blocks that hold rows of the range are mapped and decoded
+     *
+     * @param start is the index of the first row
+     * @param end is the index after the last row
+     * @return the records
+     * @throws IOException
+     */
+    public ArrayList<String[]> readRecords(long start, long end)
+            throws IOException
+    {
+        ArrayList<String[]> records = new ArrayList<String[]>();
+        long first = 0; // Index of the first row of the block
+        for (int b = 0; b < offsets.length && first < end; b++)
+        {
+            if (first + sizes[b] > start)
+            {
+                seek(b);
+                addRecords(records, (int) Math.max(start - first, 0),
+                        (int) Math.min(end - first, rows));
+            }
+            first += sizes[b];
+        }
+
+        return records;
+    }
+
+    /**
+     * This method adds rows of the current block as records of strings. The
+     * categories are shared with the dictionaries
+     *
+     * @param records is the list the records are added to
+     * @param from is the first row within the block
+     * @param to is the row after the last one
+     */
+    void addRecords(ArrayList<String[]> records, int from, int to)
+    {
+        for (int j = from; j < to; j++)
+        {
+            String[] record = new String[names.length];
+            for (int i = 0; i < names.length; i++)
+            {
+                record[i] = getString(i, j);
+            }
+            records.add(record);
+        }
+    }
+
+    /**
+     * This method returns the schema of the file, from its header and the
+     * min/max of the blocks. The number of distinct values is only known for
+     * categorical columns
+     *
+     * @return the schema
+     */
+    public Schema schema()
+    {
+        Schema schema = new Schema();
+        schema.rows = (int) numRows();
+        schema.types = new int[names.length];
+        schema.cardinality = new int[names.length];
+        schema.min = new double[names.length];
+        schema.max = new double[names.length];
+        for (int i = 0; i < names.length; i++)
+        {
+            schema.types[i] = categorical[i] ? Schema.CATEGORICAL
+                    : integer[i] ? Schema.INTEGER : Schema.NUMERIC;
+            schema.cardinality[i] = categorical[i] ? dictionaries[i].length
+                    : -1;
+            schema.min[i] = Double.POSITIVE_INFINITY;
+            schema.max[i] = Double.NEGATIVE_INFINITY;
+            for (int b = 0; b < offsets.length && !categorical[i]; b++)
+            {
+                if (min[b][i] == min[b][i])
+                {
+                    schema.min[i] = Math.min(schema.min[i], min[b][i]);
+                    schema.max[i] = Math.max(schema.max[i], max[b][i]);
+                }
+            }
+        }
+
+        return schema;
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,405 @@
+/**
+ * This class writes a table to a compressed columnar binary file. Rows are
+ * added one at a time and buffered in blocks; each full block is encoded
+ * column by column and written, so a file of any size can be written with a
+ * fixed amount of memory. The file is read back with the ColumnarReader class
+ *
+ * Each column of a block is stored in the smallest of these encodings:
+ *   - categorical columns: dictionary codes, bit-packed to the width of the
+ *     largest code of the block minus the smallest
+ *   - numeric columns whose values in the block are all whole numbers with a
+ *     range below 2^32: the values minus the block minimum, bit-packed to the
+ *     width of the range
+ *   - other numeric columns: raw doubles, or floats if the writer is asked to
+ *     store floats (this loses precision)
+ * Blocks start at multiples of ALIGNMENT bytes, so a block can be memory
+ * mapped on its own, and the index at the end of the file holds the offset,
+ * number of rows, and per column min/max of every block, so a reader can
+ * find or skip blocks without reading them
+ *
+ * File layout (DataOutputStream encoding, big-endian):
+ *   int magic "DTCF", int version, int number of columns, int block size
+ *   per column: UTF name, boolean categorical, boolean integer (every value
+ *   is a whole number, written without a fraction), and for a categorical
+ *   column its dictionary as int size followed by UTF categories
+ *   zero padding to a multiple of ALIGNMENT
+ *   per block: int number of rows, 4 bytes of padding, then per column byte
+ *   encoding, byte width, 6 bytes of padding, and the values of the block as
+ *   packed longs, doubles, or floats padded to 8 bytes; then zero padding to
+ *   a multiple of ALIGNMENT
+ *   index: int number of blocks, then per block long offset, int number of
+ *   rows, and per column double min, double max (codes for categorical
+ *   columns, NaN if the block has no number)
+ *   long offset of the index, int magic
+ *
+ * Usage: java ColumnarWriter data.csv data.dtcf [floats]
+ *   converts a data file read by the ETL class
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+
+public class ColumnarWriter implements Closeable
+{
+    static final int MAGIC = 0x44544346; // "DTCF"
+    static final int VERSION = 2;
+    static final int ALIGNMENT = 4096; // Blocks start at page boundaries
+    static final String EXTENSION = ".dtcf";
+
+    // Encodings of a column in a block
+    static final int PACKED = 0;  // Values minus the block minimum, bit-packed
+    static final int DOUBLES = 1; // Raw doubles
+    static final int FLOATS = 2;  // Raw floats
+
+    DataOutputStream out;
+    long position;         // Number of bytes written
+    boolean[] categorical; // Boolean array of whether column is categorical
+    boolean floats;        // Whether to store fractional numbers as floats
+    int blockSize;         // Number of rows per block
+    double[][] numeric;    // Buffered values of numeric columns
+    int[][] codes;         // Buffered codes of categorical columns
+    int rows;              // Number of rows buffered
+    long totalRows;        // Number of rows written
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(); // Block buffer
+    DataOutputStream block = new DataOutputStream(bytes);
+    long[] packed = new long[0]; // Bit-packed values of one column
+    ArrayList<Long> offsets = new ArrayList<Long>();  // Offset of each block
+    ArrayList<Integer> sizes = new ArrayList<Integer>(); // Rows of each block
+    ArrayList<double[]> ranges = new ArrayList<double[]>(); /* Min and max
+                                                               of each column
+                                                               of each block */
+
+    /**
+     * This constructor creates the file and writes its header. Numeric
+     * columns are stored as doubles and none is marked as integer
+     *
+     * @param filePath is the path of the file
+     * @param names is the name of each column
+     * @param dictionaries is the categories of each categorical column, null
+     *        for numeric columns
+     * @param blockSize is the number of rows per block
+     * @throws IOException
+     */
+    public ColumnarWriter(String filePath, String[] names,
+            String[][] dictionaries, int blockSize) throws IOException
+    {
+        this(filePath, names, dictionaries, new boolean[names.length],
+                blockSize, false);
+    }
+
+    /**
+     * This constructor creates the file and writes its header
+     *
+     * @param filePath is the path of the file
+     * @param names is the name of each column
+     * @param dictionaries is the categories of each categorical column, null
+     *        for numeric columns
+     * @param integer is whether each column only has whole numbers, which
+     *        are then read back without a fraction
+     * @param blockSize is the number of rows per block
+     * @param floats is true to store fractional numbers as floats
+     * @throws IOException
+     */
+    public ColumnarWriter(String filePath, String[] names,
+            String[][] dictionaries, boolean[] integer, int blockSize,
+            boolean floats) throws IOException
+    {
+        this.blockSize = blockSize;
+        this.floats = floats;
+        out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(filePath), 1 << 16));
+        block.writeInt(MAGIC);
+        block.writeInt(VERSION);
+        block.writeInt(names.length);
+        block.writeInt(blockSize);
+
+        categorical = new boolean[names.length];
+        numeric = new double[names.length][];
+        codes = new int[names.length][];
+        for (int i = 0; i < names.length; i++)
+        {
+            categorical[i] = dictionaries[i] != null;
+            block.writeUTF(names[i]);
+            block.writeBoolean(categorical[i]);
+            block.writeBoolean(integer[i]);
+            if (categorical[i])
+            {
+                block.writeInt(dictionaries[i].length);
+                for (String category : dictionaries[i])
+                {
+                    block.writeUTF(category);
+                }
+                codes[i] = new int[blockSize];
+            }
+            else
+            {
+                numeric[i] = new double[blockSize];
+            }
+        }
+        writeBuffer(ALIGNMENT);
+    }
+
+    /**
+     * This method adds a row. Categorical columns hold the index of the
+     * category in the dictionary of the column
+     *
+     * @param row is the value of each column
+     * @throws IOException
+     */
+    public void add(double[] row) throws IOException
+    {
+        for (int i = 0; i < row.length; i++)
+        {
+            if (categorical[i])
+            {
+                codes[i][rows] = (int) row[i];
+            }
+            else
+            {
+                numeric[i][rows] = row[i];
+            }
+        }
+        rows++;
+        if (rows == blockSize)
+        {
+            flushBlock();
+        }
+    }
+
+    /**
+     * This method encodes the buffered rows as one block and writes it
+     *
+     * @throws IOException
+     */
+    void flushBlock() throws IOException
+    {
+        if (rows == 0)
+        {
+            return;
+        }
+        double[] range = new double[2 * categorical.length];
+        block.writeInt(rows);
+        block.writeInt(0);
+        for (int i = 0; i < categorical.length; i++)
+        {
+            if (categorical[i])
+            {
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int j = 0; j < rows; j++)
+                {
+                    min = Math.min(min, codes[i][j]);
+                    max = Math.max(max, codes[i][j]);
+                }
+                range[2 * i] = min;
+                range[2 * i + 1] = max;
+                int width = width((long) max - min);
+                for (int j = 0; j < rows; j++)
+                {
+                    pack(j, width, codes[i][j] - min);
+                }
+                writeColumn(PACKED, width);
+            }
+            else
+            {
+                writeNumeric(numeric[i], range, i);
+            }
+        }
+        writeBuffer(ALIGNMENT);
+
+        ranges.add(range);
+        sizes.add(rows);
+        totalRows += rows;
+        rows = 0;
+    }
+
+    /**
+     * This method encodes the values of a numeric column of the block, bit
+     * packed if they are whole numbers with a small range
+     *
+     * @param values is the buffered values of the column
+     * @param range is the min and max of each column of the block
+     * @param i is the index of the column
+     * @throws IOException
+     */
+    void writeNumeric(double[] values, double[] range, int i)
+            throws IOException
+    {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        boolean whole = true;
+        for (int j = 0; j < rows; j++)
+        {
+            double value = values[j];
+            whole &= value == Math.rint(value) && Math.abs(value) < 1L << 52;
+            if (value == value)
+            {// NaN is left out of the range
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        range[2 * i] = min <= max ? min : Double.NaN;
+        range[2 * i + 1] = min <= max ? max : Double.NaN;
+
+        if (whole && max - min < 1L << 32)
+        {
+            int width = width((long) (max - min));
+            for (int j = 0; j < rows; j++)
+            {
+                pack(j, width, (long) (values[j] - min));
+            }
+            writeColumn(PACKED, width);
+        }
+        else if (floats)
+        {
+            block.writeByte(FLOATS);
+            block.writeByte(32);
+            block.write(new byte[6]);
+            for (int j = 0; j < rows; j++)
+            {
+                block.writeFloat((float) values[j]);
+            }
+            if (rows % 2 == 1)
+            {
+                block.writeInt(0);
+            }
+        }
+        else
+        {
+            block.writeByte(DOUBLES);
+            block.writeByte(64);
+            block.write(new byte[6]);
+            for (int j = 0; j < rows; j++)
+            {
+                block.writeDouble(values[j]);
+            }
+        }
+    }
+
+    /**
+     * This method returns the number of bits needed for a value
+     *
+     * @param value is the largest value to be packed
+     * @return the width in bits, 0 if the value is 0
+     */
+    static int width(long value)
+    {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * This method adds a value to the bit-packed values of a column. Value j
+     * takes bits j * width to (j + 1) * width - 1, counted from the lowest
+     * bit of the first long
+     *
+     * @param j is the index of the value
+     * @param width is the number of bits per value
+     * @param value is the value, below 2^width
+     */
+    void pack(int j, int width, long value)
+    {
+        if (width == 0)
+        {
+            return;
+        }
+        if (j == 0)
+        {
+            int words = (int) (((long) rows * width + 63) / 64);
+            if (packed.length < words)
+            {
+                packed = new long[words];
+            }
+            Arrays.fill(packed, 0, words, 0);
+        }
+        long bit = (long) j * width;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        packed[word] |= value << shift;
+        if (shift + width > 64)
+        {
+            packed[word + 1] |= value >>> (64 - shift);
+        }
+    }
+
+    /**
+     * This method writes the bit-packed values of a column of the block
+     *
+     * @param encoding is the encoding of the column
+     * @param width is the number of bits per value
+     * @throws IOException
+     */
+    void writeColumn(int encoding, int width) throws IOException
+    {
+        block.writeByte(encoding);
+        block.writeByte(width);
+        block.write(new byte[6]);
+        int words = (int) (((long) rows * width + 63) / 64);
+        for (int w = 0; w < words; w++)
+        {
+            block.writeLong(packed[w]);
+        }
+    }
+
+    /**
+     * This method writes the buffered bytes, padded to a multiple of the
+     * given alignment, and records the offset of the block
+     *
+     * @param alignment is the alignment in bytes
+     * @throws IOException
+     */
+    void writeBuffer(int alignment) throws IOException
+    {
+        if (position > 0)
+        {
+            offsets.add(position);
+        }
+        int padding = (alignment - bytes.size() % alignment) % alignment;
+        block.write(new byte[padding]);
+        bytes.writeTo(out);
+        position += bytes.size();
+        bytes.reset();
+    }
+
+    /**
+     * This method writes the remaining rows and the index, then closes the
+     * file
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        flushBlock();
+        out.writeInt(offsets.size());
+        for (int b = 0; b < offsets.size(); b++)
+        {
+            out.writeLong(offsets.get(b));
+            out.writeInt(sizes.get(b));
+            for (double bound : ranges.get(b))
+            {
+                out.writeDouble(bound);
+            }
+        }
+        out.writeLong(position);
+        out.writeInt(MAGIC);
+        out.close();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Usage: java ColumnarWriter data.csv "
+                    + "data.dtcf [floats]");
+            return;
+        }
+
+        ETL etl = new ETL();
+        etl.writeColumnar(args[0], args[1],
+                args.length > 2 && args[2].equals("floats"));
+        System.out.println("Wrote " + etl.inferred.rows + " rows to "
+                + args[1] + " (" + new File(args[1]).length() + " bytes, "
+                + new File(args[0]).length() + " bytes as text)");
+    }
+}
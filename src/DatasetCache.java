@@ -0,0 +1,388 @@
+/**
+ * This class caches parsed datasets, so that repeated runs on the same input
+ * skip parsing the CSV file. An entry is keyed by the SHA-256 hash of the
+ * source file and of the schema used to process it (see ETL.schema()), so it
+ * is invalidated automatically when either changes, and older entries of the
+ * same file are deleted when a new one is written. Entries are stored in a
+ * compact binary columnar format, with a dictionary of the distinct strings
+ * of each column and one code per row, and are loaded by memory mapping.
+ *
+ * The cache directory is "dataset-cache" in the working directory, and can be
+ * changed with -DdatasetCache=<directory> or turned off with
+ * -DdatasetCache=off. The cache is only an optimization: if an entry cannot be
+ * read or written, the file is parsed as usual
+ *
+ * File layout (big-endian):
+ *   int magic, int version, 32-byte key, int rows, int columns (the largest
+ *   number of fields in a row), boolean ragged, if ragged one int per row
+ *   with its number of fields, then for each column: int dictionary size,
+ *   each string as int length and UTF-8 bytes, byte code width (1, 2, or 4),
+ *   and the code of each row that has the column
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+public class DatasetCache
+{
+    static final int MAGIC = 0x44544443; // "DTDC"
+    static final int VERSION = 1;
+    static final String DIRECTORY = System.getProperty("datasetCache",
+            "dataset-cache");
+
+    /**
+     * This method returns whether the cache is turned on
+     *
+     * @return false if -DdatasetCache=off is set
+     */
+    public static boolean enabled()
+    {
+        return !DIRECTORY.equals("off");
+    }
+
+    /**
+     * This method reads a dataset from the cache, or parses it with ETL and
+     * adds it to the cache
+     *
+     * @param etl is the ETL object that parses the file on a cache miss
+     * @param filePath is the path of the data file
+     * @param schema describes how the file is processed
+     * @return the 2D String array that stores the dataset
+     * @throws FileNotFoundException
+     */
+    public static ArrayList<String[]> read(ETL etl, String filePath,
+            String schema) throws FileNotFoundException
+    {
+        byte[] key;
+        try
+        {
+            key = key(filePath, schema);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {// Leave the error to the parser
+            return etl.parseCSV(filePath, 0, Long.MAX_VALUE);
+        }
+
+        Path entry = entry(filePath, key);
+        if (Files.isRegularFile(entry))
+        {
+            try
+            {
+                ArrayList<String[]> records = load(entry, key);
+                if (records != null)
+                {
+                    return records;
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {// A damaged entry is replaced below
+            }
+        }
+
+        ArrayList<String[]> records = etl.parseCSV(filePath, 0,
+                Long.MAX_VALUE);
+        try
+        {
+            store(entry, key, records);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not cache " + filePath + ": " + e);
+        }
+
+        return records;
+    }
+
+    /**
+     * This method hashes a data file and its schema
+     *
+     * @param filePath is the path of the data file
+     * @param schema describes how the file is processed
+     * @return the SHA-256 hash
+     * @throws IOException
+     */
+    static byte[] key(String filePath, String schema) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        InputStream in = new FileInputStream(filePath);
+        try
+        {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) > 0)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        digest.update((byte) 0);
+        digest.update(schema.getBytes(StandardCharsets.UTF_8));
+
+        return digest.digest();
+    }
+
+    /**
+     * This method returns the path of the cache entry of a data file. The
+     * name holds the name of the file and the start of its key
+     *
+     * @param filePath is the path of the data file
+     * @param key is the key of the entry
+     * @return the path of the entry
+     */
+    static Path entry(String filePath, byte[] key)
+    {
+        StringBuilder name = new StringBuilder(prefix(filePath));
+        for (int i = 0; i < 8; i++)
+        {
+            name.append(String.format("%02x", key[i]));
+        }
+
+        return Paths.get(DIRECTORY, name.append(".dtc").toString());
+    }
+
+    /**
+     * This method returns the start of the names of the entries of a file
+     *
+     * @param filePath is the path of the data file
+     * @return the name of the file followed by '-'
+     */
+    static String prefix(String filePath)
+    {
+        return new File(filePath).getName() + "-";
+    }
+
+    /**
+     * This method loads a cache entry by memory mapping it
+     *
+     * @param entry is the path of the entry
+     * @param key is the expected key
+     * @return the records, or null if the entry has another key or version
+     * @throws IOException
+     */
+    static ArrayList<String[]> load(Path entry, byte[] key) throws IOException
+    {
+        ByteBuffer buffer;
+        FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ);
+        try
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+        finally
+        {// The mapping stays valid after the channel is closed
+            channel.close();
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+        {
+            return null;
+        }
+        byte[] stored = new byte[key.length];
+        buffer.get(stored);
+        if (!Arrays.equals(stored, key))
+        {
+            return null;
+        }
+
+        int rows = buffer.getInt();
+        int columns = buffer.getInt();
+        boolean ragged = buffer.get() != 0;
+        String[][] fields = new String[rows][];
+        for (int i = 0; i < rows; i++)
+        {
+            fields[i] = new String[ragged ? buffer.getInt() : columns];
+        }
+
+        for (int c = 0; c < columns; c++)
+        {
+            String[] dictionary = new String[buffer.getInt()];
+            for (int k = 0; k < dictionary.length; k++)
+            {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                dictionary[k] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int width = buffer.get();
+            for (int i = 0; i < rows; i++)
+            {
+                if (c < fields[i].length)
+                {
+                    int code = width == 1 ? buffer.get() & 0xff
+                            : width == 2 ? buffer.getShort() & 0xffff
+                            : buffer.getInt();
+                    fields[i][c] = dictionary[code];
+                }
+            }
+        }
+
+        return new ArrayList<String[]>(Arrays.asList(fields));
+    }
+
+    /**
+     * This method writes a cache entry and deletes the older entries of the
+     * same file. The entry is written to a temporary file first and then
+     * moved in place, so a reader never sees a partial entry
+     *
+     * @param entry is the path of the entry
+     * @param key is the key of the entry
+     * @param records is the parsed dataset
+     * @throws IOException
+     */
+    static void store(Path entry, byte[] key, ArrayList<String[]> records)
+            throws IOException
+    {
+        int rows = records.size();
+        int columns = 0;
+        boolean ragged = false;
+        for (String[] record : records)
+        {
+            ragged |= rows > 0 && record.length != records.get(0).length;
+            columns = Math.max(columns, record.length);
+        }
+
+        Path directory = entry.getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "entry", ".tmp");
+        try
+        {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(temp), 1 << 16));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(key);
+                out.writeInt(rows);
+                out.writeInt(columns);
+                out.writeBoolean(ragged);
+                if (ragged)
+                {
+                    for (String[] record : records)
+                    {
+                        out.writeInt(record.length);
+                    }
+                }
+                for (int c = 0; c < columns; c++)
+                {
+                    writeColumn(out, records, c);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+
+        // Delete the entries of older versions of the file or schema
+        String prefix = entry.getFileName().toString();
+        prefix = prefix.substring(0, prefix.length() - 20);
+        DirectoryStream<Path> stale = Files.newDirectoryStream(directory,
+                prefix + "*.dtc");
+        try
+        {
+            for (Path path : stale)
+            {
+                String name = path.getFileName().toString();
+                if (!path.equals(entry)
+                        && name.length() == prefix.length() + 20)
+                {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        finally
+        {
+            stale.close();
+        }
+    }
+
+    /**
+     * This method writes one column: its dictionary followed by the code of
+     * each row that has the column
+     *
+     * @param out is the output stream
+     * @param records is the parsed dataset
+     * @param c is the index of the column
+     * @throws IOException
+     */
+    static void writeColumn(DataOutputStream out, ArrayList<String[]> records,
+            int c) throws IOException
+    {
+        HashMap<String, Integer> codes = new HashMap<String, Integer>();
+        ArrayList<String> dictionary = new ArrayList<String>();
+        int[] column = new int[records.size()];
+        for (int i = 0; i < records.size(); i++)
+        {
+            String[] record = records.get(i);
+            if (c < record.length)
+            {
+                Integer code = codes.get(record[c]);
+                if (code == null)
+                {
+                    code = dictionary.size();
+                    codes.put(record[c], code);
+                    dictionary.add(record[c]);
+                }
+                column[i] = code;
+            }
+        }
+
+        out.writeInt(dictionary.size());
+        for (String value : dictionary)
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        int width = dictionary.size() <= 0x100 ? 1
+                : dictionary.size() <= 0x10000 ? 2 : 4;
+        out.writeByte(width);
+        for (int i = 0; i < records.size(); i++)
+        {
+            if (c < records.get(i).length)
+            {
+                if (width == 1)
+                {
+                    out.writeByte(column[i]);
+                }
+                else if (width == 2)
+                {
+                    out.writeShort(column[i]);
+                }
+                else
+                {
+                    out.writeInt(column[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * This class is a view of a subset of the rows of a dataset, e.g. the training
+ * set of a fold, without copying the rows. A view holds the indices of its
+ * rows in the original records and a projection of the columns: the first
+ * numFeatures columns are the features and the column after them is the
+ * target. The trees only read the feature columns of a row, so the original
+ * records are passed to fit(), predict(), and prune() as they are, instead
+ * of copies without the target. A view can carry the schema of the whole
+ * dataset, which tells the trees which features are categorical
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class DatasetView
+{
+    ArrayList<String[]> records; // Original records, including the target
+    int[] rows;                  // Indices of the rows in the view
+    int numFeatures;             // Number of features; target is next column
+    Schema schema;               // Schema of the records, null if unknown
+
+    ArrayList<String[]> X;       // Rows of the view, made on first use
+    ArrayList<String> y;         // Targets of the view, made on first use
+
+    /**
+     * This constructor makes a view of the given rows. The target is the last
+     * column of the records
+     *
+     * @param records is the original records
+     * @param rows is the indices of the rows in the view
+     */
+    public DatasetView(ArrayList<String[]> records, int[] rows)
+    {
+        this(records, rows, records.isEmpty() ? 0
+                : records.get(0).length - 1);
+    }
+
+    /**
+     * This constructor makes a view of the given rows and features
+     *
+     * @param records is the original records
+     * @param rows is the indices of the rows in the view
+     * @param numFeatures is the number of features, the first columns
+     */
+    public DatasetView(ArrayList<String[]> records, int[] rows,
+            int numFeatures)
+    {
+        this(records, rows, numFeatures, null);
+    }
+    
+    /**
+     * This constructor makes a view of the given rows and features, with the
+     * schema inferred when the records were read
+     *
+     * @param records is the original records
+     * @param rows is the indices of the rows in the view
+     * @param numFeatures is the number of features, the first columns
+     * @param schema is the schema of the records, or null if unknown
+     */
+    public DatasetView(ArrayList<String[]> records, int[] rows,
+            int numFeatures, Schema schema)
+    {
+        this.records = records;
+        this.rows = rows;
+        this.numFeatures = numFeatures;
+        this.schema = schema;
+    }
+
+    /**
+     * This method returns the number of rows in the view
+     *
+     * @return the number of rows
+     */
+    public int size()
+    {
+        return rows.length;
+    }
+
+    /**
+     * This method returns the rows of the view. The rows are the original
+     * records, so they also hold the target after the features
+     *
+     * @return the rows, in the order of the indices
+     */
+    public ArrayList<String[]> X()
+    {
+        if (X == null)
+        {
+            X = Folds.rows(records, rows);
+        }
+
+        return X;
+    }
+
+    /**
+     * This method returns which features are categorical. Without a schema,
+     * the schema is inferred from the rows of the view
+     *
+     * @return a boolean array of whether each feature is categorical
+     */
+    public boolean[] categorical()
+    {
+        if (schema == null)
+        {
+            schema = SchemaInferencer.infer(X());
+        }
+
+        return schema.categorical(numFeatures);
+    }
+
+    /**
+     * This method returns the targets of the rows of the view
+     *
+     * @return the targets, in the order of the indices
+     */
+    public ArrayList<String> y()
+    {
+        if (y == null)
+        {
+            y = new ArrayList<String>(rows.length);
+            for (int row : rows)
+            {
+                y.add(records.get(row)[numFeatures]);
+            }
+        }
+
+        return y;
+    }
+}
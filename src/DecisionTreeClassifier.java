@@ -13,11 +13,22 @@ public class DecisionTreeClassifier
 {
     Node root; // Root node
     boolean[] categorical; // Boolean array of whether feature is categorical
+    HashMap<String, Integer> classIndex; // Index of each class label
+    GrowthLimits limits = new GrowthLimits(); // Limits on the tree size
+    int featuresScanned;     // Features scanned by the last split search
+    int candidatesEvaluated; // Candidates evaluated by the last split search
+    FeatureOrder featureOrder; // Order the features are scanned in
+    TreeMetrics metrics = new TreeMetrics(); // Metrics exposed over JMX
+    double[] nLog2nTable = new double[0]; // c * log2(c) of each count c
+    static final int MAX_TABLE_SIZE = 1 << 20; // Largest table, in entries
+    static final double LN2 = Math.log(2);
+    static final int MAX_CANDIDATES = 15; // Candidates of a numeric feature
     
     /**
-     * This method fits the classifier on the training set. It determines
-     * categorical features in the datasets used in this project and calls
-     * the buildTree() method to start building the tree
+     * This method fits the classifier on the training set. Categorical features
+     * are those with a value that is not a number (see the SchemaInferencer
+     * class). The name of the dataset is no longer used to find them and is
+     * kept for existing callers
      * 
      * @param X is the attributes of the training set
      * @param y is the targets of the training set
@@ -26,116 +37,252 @@ public class DecisionTreeClassifier
     public void fit(ArrayList<String[]> X, ArrayList<String> y, 
             String fileName)
     {
-        categorical = new boolean[X.get(0).length];
-        if (fileName.equals("abalone"))
-        {// The first feature in the abalone dataset are categorical
-            categorical[0] = true;
-        }
-        else if (fileName.equals("car"))
-        {// All features in the car dataset are categorical
-            for (int i = 0; i < categorical.length; i++)
+        fit(X, y, SchemaInferencer.infer(X).categorical(X.get(0).length));
+    }
+    
+    /**
+     * This method fits the classifier on a view of the training set, without
+     * copying its rows. Categorical features are taken from the schema of
+     * the view
+     * 
+     * @param train is the view of the training set
+     */
+    public void fit(DatasetView train)
+    {
+        fit(train.X(), train.y(), train.categorical());
+    }
+    
+    /**
+     * This method fits the classifier on the first features of each row and
+     * calls the buildTree() method to start building the tree. Any columns
+     * after them, e.g. the target, are ignored
+     * 
+     * @param X is the attributes of the training set
+     * @param y is the targets of the training set
+     * @param categorical is whether each feature is categorical, one entry
+     *        per feature
+     */
+    public void fit(ArrayList<String[]> X, ArrayList<String> y, 
+            boolean[] categorical)
+    {
+        this.categorical = categorical;
+        classIndex = indexClasses(diffValues(y));
+        featureOrder = new FeatureOrder(categorical.length);
+        tabulate(y.size());
+        
+        long start = System.nanoTime();
+        root = buildTree(X, y);
+        metrics.recordFit(System.nanoTime() - start, root);
+    }
+    
+    /**
+     * This method assigns an index to each class label. Labels are sorted so
+     * that the index does not depend on the order in which the data points
+     * are seen, which keeps the entropy summation order fixed
+     * 
+     * @param labels is the list of unique class labels
+     * @return a map from each class label to its index
+     */
+    public HashMap<String, Integer> indexClasses(ArrayList<String> labels)
+    {
+        ArrayList<String> sorted = new ArrayList<String>(labels);
+        Collections.sort(sorted);
+        HashMap<String, Integer> index = new HashMap<String, Integer>();
+        for (String label : sorted)
+        {
+            if (!index.containsKey(label))
             {
-                categorical[i] = true;
+                index.put(label, index.size());
             }
         }
         
-        root = buildTree(X, y);
+        return index;
     }
     
     /**
-     * This method calls the chooseSplitIndex() method to choose the feature
-     * and value at each split. It then uses those information to build the
-     * tree recursively until we run out of features or impurity = 0
+     * This method builds the tree best-first. Leaves that can be split are
+     * kept in a frontier ordered by impurity reduction, and the best one is
+     * split first until the frontier is empty or the limits on the tree size
+     * are reached. Without limits, the tree is grown until we run out of
+     * features or impurity = 0
      * 
-     * @param X is the attributes of the data points at each node
-     * @param y is the targets of the data points at each node
-     * @return a child node to build the tree recursively
+     * @param X is the attributes of the training set
+     * @param y is the targets of the training set
+     * @return the root node of the tree
      */
     public Node buildTree(ArrayList<String[]> X, ArrayList<String> y)
     {
-        Node node = new Node();
-        ArrayList<Object> params = chooseSplitIndex(X, y);
-        int index;
-        double value = 0;
-        ArrayList<String> categories = new ArrayList<String>();
-        if (params.isEmpty())
-        {
-            index = -1;
-        }
-        else
-        {
-            index = (int) params.get(0);
-            value = (double) params.get(1);
-            categories = (ArrayList<String>) params.get(2);
-        }
+        TreeEvents.BuildTree event = new TreeEvents.BuildTree();
+        event.start();
+        PriorityQueue<SplitCandidate> frontier = 
+                new PriorityQueue<SplitCandidate>();
+        Node root = newLeaf(X, y, 0, limits.maxLeaves > 1 ? frontier : null);
+        int leaves = 1;
         
-        if (index == -1 || diffValues(y).size() == 1)
-        {// Two conditions for leaf: 1. Run out of features 2. Impurity = 0
-            node.isLeaf = true;
-            for (int i = 0; i < y.size(); i++)
-            {
-                if (node.classCount.containsKey(y.get(i)))
-                {
-                    int count = node.classCount.get(y.get(i));
-                    count++;
-                    node.classCount.put(y.get(i), count);
-                }
-                else
-                {
-                    node.classCount.put(y.get(i), 1);
-                }
+        while (!frontier.isEmpty())
+        {
+            SplitCandidate candidate = frontier.poll();
+            ArrayList<Object> params = candidate.params;
+            int index = (int) params.get(0);
+            ArrayList<String> categories = (ArrayList<String>) params.get(2);
+            int branches = categorical[index] ? categories.size() : 2;
+            if (leaves - 1 + branches > limits.maxLeaves)
+            {// The split would make too many leaves, keep the leaf
+                continue;
             }
             
-            // Set the most common class as the predicted class of a leaf node
-            String mostCommon = "";
-            int max = -1;
-            Iterator<Map.Entry<String, Integer>> it = 
-                    node.classCount.entrySet().iterator();
-            while(it.hasNext())
+            Node node = candidate.node;
+            node.isLeaf = false;
+            node.name = null;
+            node.classCount = null;
+            node.column = index;
+            node.value = (double) params.get(1);
+            if (categorical[index])
             {
-                Map.Entry<String, Integer> pair = it.next();
-                if (pair.getValue() > max)
-                {
-                    mostCommon = pair.getKey();
-                    max = pair.getValue();
-                }
+                node.categories = categories;
             }
-            node.name = mostCommon;
-        }
-        else
-        { 
-            node.column = index;
-            node.value = value;
-            node.categories = categories;
             node.categorical = categorical[index];
-            if (node.categorical)
+            node.children = new ArrayList<Node>(branches);
+            leaves += branches - 1;
+        // Every split adds a leaf, so once the tree has as many leaves as
+        // allowed the children are never split, and their split is not searched
+        PriorityQueue<SplitCandidate> childFrontier = 
+                leaves < limits.maxLeaves ? frontier : null;
+            for (int i = 0; i < branches; i++)
             {
-                for (int i = 0; i < node.categories.size(); i++)
-                {
-                    ArrayList<String[]> Xi = 
-                            (ArrayList<String[]>) params.get(i*2 + 3);
-                    ArrayList<String> yi = 
-                            (ArrayList<String>) params.get(i*2 + 4);
-                    node.children.add(buildTree(Xi, yi));
-                }
+                ArrayList<String[]> Xi = 
+                        (ArrayList<String[]>) params.get(i*2 + 3);
+                ArrayList<String> yi = 
+                        (ArrayList<String>) params.get(i*2 + 4);
+                node.addChild(newLeaf(Xi, yi, candidate.depth + 1, 
+                        childFrontier));
+            }
+        }
+        event.end("ID3", y.size(), categorical.length, root);
+
+        return root;
+    }
+    
+    /**
+     * This method creates a leaf for the data points of a node. The leaf is
+     * added to the frontier when it can still be split: impurity > 0, the
+     * limits allow it, and the chooseSplitIndex() method finds a split. The
+     * split is not searched for a leaf that cannot be split, given as a null
+     * frontier
+     * 
+     * @param X is the attributes of the data points at the node
+     * @param y is the targets of the data points at the node
+     * @param depth is the depth of the node
+     * @param frontier is the leaves that can be split, null if the tree has
+     *        as many leaves as allowed
+     * @return the new leaf
+     */
+    public Node newLeaf(ArrayList<String[]> X, ArrayList<String> y, int depth,
+            PriorityQueue<SplitCandidate> frontier)
+    {
+        Node node = new Node();
+        HashMap<String, Integer> classCount = new HashMap<String, Integer>();
+        for (int i = 0; i < y.size(); i++)
+        {
+            if (classCount.containsKey(y.get(i)))
+            {
+                int count = classCount.get(y.get(i));
+                count++;
+                classCount.put(y.get(i), count);
             }
             else
             {
-                ArrayList<String[]> X1 = (ArrayList<String[]>) params.get(3);
-                ArrayList<String> y1 = (ArrayList<String>) params.get(4);
-                ArrayList<String[]> X2 = (ArrayList<String[]>) params.get(5);
-                ArrayList<String> y2 = (ArrayList<String>) params.get(6);
-                node.children.add(buildTree(X1, y1));
-                node.children.add(buildTree(X2, y2));
+                classCount.put(y.get(i), 1);
             }
         }
-
+        makeLeaf(node, classCount);
+        
+        if (frontier != null && classCount.size() > 1 
+                && limits.canSplit(y.size(), depth))
+        {
+            TreeEvents.SplitSearch event = new TreeEvents.SplitSearch();
+            event.start();
+            ArrayList<Object> params = chooseSplitIndex(X, y);
+            event.end("ID3", depth, y.size(), featuresScanned, 
+                    candidatesEvaluated, 
+                    params.isEmpty() ? -1 : (int) params.get(0));
+            if (!params.isEmpty())
+            {
+                frontier.add(new SplitCandidate(node, depth, y, params, 
+                        impurityDecrease(y, params)));
+            }
+        }
+        
         return node;
     }
     
+    /**
+     * This method calculates the decrease of impurity of a split, weighted by
+     * the number of data points in the node
+     * 
+     * @param y is the targets of the data points at the node
+     * @param params is the feature, value, and partitions of the split
+     * @return the weighted information gain of the split
+     */
+    public double impurityDecrease(ArrayList<String> y, 
+            ArrayList<Object> params)
+    {
+        double childInfo = 0;
+        for (int i = 4; i < params.size(); i += 2)
+        {
+            ArrayList<String> yi = (ArrayList<String>) params.get(i);
+            childInfo += entropy(yi) * yi.size();
+        }
+        
+        return entropy(y) * y.size() - childInfo;
+    }
+    
+    /**
+     * This method turns a node into a leaf. The most common class of the data
+     * points in the node is set as the predicted class
+     * 
+     * @param node is the node to be turned into a leaf
+     * @param classCount is the number of data points of each class in the node
+     */
+    public void makeLeaf(Node node, HashMap<String, Integer> classCount)
+    {
+        node.isLeaf = true;
+        node.classCount = classCount;
+        
+        // Set the most common class as the predicted class of a leaf node
+        String mostCommon = "";
+        int max = -1;
+        Iterator<Map.Entry<String, Integer>> it = 
+                classCount.entrySet().iterator();
+        while(it.hasNext())
+        {
+            Map.Entry<String, Integer> pair = it.next();
+            if (pair.getValue() > max)
+            {
+                mostCommon = pair.getKey();
+                max = pair.getValue();
+            }
+        }
+        node.name = mostCommon;
+    }
+    
     /**
      * This method selects the feature and value to split on. Gain ratio is
-     * used as the splitting criterion
+     * used as the splitting criterion.
+     * 
+     * The values of a categorical feature are coded as ints in one pass, and
+     * the class counts of all its branches are counted from the codes in a
+     * second pass. Only the chosen split is partitioned.
+     * 
+     * The information gain of a split is at most the entropy of the parent,
+     * so the gain ratio is at most the entropy of the parent over the
+     * intrinsic information, which only depends on the size of each branch.
+     * For numeric features the sizes are counted first, and a candidate
+     * whose bound cannot beat the best gain ratio so far is skipped before
+     * its classes are counted. A threshold equal to an earlier one of the
+     * same feature is skipped too. Features are scanned in the order of the
+     * FeatureOrder class, and ties go to the feature with the smaller index,
+     * so the chosen split is the same as without the bound
      * 
      * @param @param X is the attributes of the data points at current node
      * @param y is the targets of the data points at current node
@@ -150,122 +297,375 @@ public class DecisionTreeClassifier
         ArrayList<String> categories = new ArrayList<String>();
         
         double gainRatio = 0;
+        featuresScanned = 0;
+        candidatesEvaluated = 0;
         
-        for (int i = 0; i < X.get(0).length; i++)
+        // Parse the targets once; numeric columns are parsed into xValue
+        int[] parentCount = countClasses(y);
+        int[] yIndex = classIndexes(y);
+        double parentInfo = entropy(parentCount);
+        double[] xValue = new double[X.size()];
+        int[][] childCounts = new int[2][parentCount.length];
+        int[] branchSizes = new int[2];
+        int[] codes = new int[X.size()];     // Category code of each row
+        int[] bestCodes = new int[X.size()]; // Codes of the best feature
+        int[] bestSizes = null;              // Branch sizes of the best feature
+        if (featureOrder == null || !featureOrder.fits(categorical.length))
         {
-            ArrayList<String> feature = new ArrayList<String>();
-            for (int j = 0; j < X.size(); j++)
+            featureOrder = new FeatureOrder(categorical.length);
+        }
+        
+        for (int i : featureOrder.order())
+        {
+            ArrayList<String> feature = null;
+            ArrayList<String> uniqueValues;
+            if (categorical[i])
+            {// Each category gets an int code, in the order it is first seen
+                uniqueValues = encode(X, i, codes);
+            }
+            else
             {
-                feature.add(X.get(j)[i]);
-            } 
-            ArrayList<String> uniqueValues = diffValues(feature);
+                feature = new ArrayList<String>();
+                for (int j = 0; j < X.size(); j++)
+                {
+                    feature.add(X.get(j)[i]);
+                } 
+                uniqueValues = diffValues(feature);
+            }
             if (uniqueValues.size() == 1)
             {
                 continue;
             }
             
-            if (!categorical[i] && uniqueValues.size() > 15)
-            {// Use the k-tile method to select split threshold for continuous
-                ArrayList<String> temp = new ArrayList<String>();
-                Collections.sort(uniqueValues);
-                for (int j = 1; j < 16; j++)
-                {// Select 15 points evenly from the attribute to be candidates
-                    temp.add(uniqueValues.get(j / 16));
-                }
-                uniqueValues = temp;
-            }
+            uniqueValues = candidateValues(uniqueValues, categorical[i]);
+            featuresScanned++;
             
             if (categorical[i])
-            {
-                ArrayList<ArrayList<String[]>> Xi_s = 
-                        new ArrayList<ArrayList<String[]>>();
-                ArrayList<ArrayList<String>> yi_s = 
-                        new ArrayList<ArrayList<String>>();
-                for (String uniqueValue : uniqueValues)
-                {// For categorical features, each category has its own branch
-                    ArrayList<String[]> Xi = new ArrayList<String[]>();
-                    ArrayList<String> yi = new ArrayList<String>();
-                    for (int j = 0; j < feature.size(); j++)
-                    {
-                        if (feature.get(j).equals(uniqueValue))
-                        {
-                            Xi.add(X.get(j));
-                            yi.add(y.get(j));
-                        }
-                    }
-                    Xi_s.add(Xi);
-                    yi_s.add(yi);
+            {// For categorical features, each category has its own branch
+                int[][] categoryCounts = 
+                        new int[uniqueValues.size()][parentCount.length];
+                for (int j = 0; j < X.size(); j++)
+                {// Class counts of every branch in one pass
+                    categoryCounts[codes[j]][yIndex[j]]++;
+                }
+                int[] categorySizes = new int[uniqueValues.size()];
+                boolean largeEnough = true;
+                for (int k = 0; k < categorySizes.length; k++)
+                {
+                    categorySizes[k] = size(categoryCounts[k]);
+                    largeEnough &= limits.isLargeEnough(categorySizes[k]);
+                }
+                if (!largeEnough)
+                {// A branch would have too few data points
+                    continue;
                 }
+                if (!isBetter(parentInfo / intrinsicInfo(categorySizes), 
+                        gainRatio, i, index))
+                {// Even pure branches would not beat the best split
+                    continue;
+                }
+                candidatesEvaluated++;
                 
                 // Update the parameters when we have higher gain ratio
-                double newGainRatio = gainRatio(y, yi_s);                
-                if (newGainRatio > gainRatio)
+                double newGainRatio = gainRatio(parentCount, categoryCounts);
+                if (isBetter(newGainRatio, gainRatio, i, index))
                 {
-                    params.clear();
                     index = i;
+                    value = 0;
                     categories = uniqueValues;
-                    params.add(index);
-                    params.add(value);
-                    params.add(categories);
-                    for (int j = 0; j < Xi_s.size(); j++)
-                    {
-                        params.add(Xi_s.get(j));
-                        params.add(yi_s.get(j));
-                    }
+                    bestSizes = categorySizes;
+                    int[] swap = bestCodes;
+                    bestCodes = codes;
+                    codes = swap;
                     gainRatio = newGainRatio;
                 }
             }
             else
-            {
-                for (String uniqueValue : uniqueValues)
+            {// Evaluate thresholds on the parsed column, see SplitKernels
+                for (int j = 0; j < X.size(); j++)
                 {
-                    ArrayList<String[]> X1 = new ArrayList<String[]>();
-                    ArrayList<String> y1 = new ArrayList<String>();
-                    ArrayList<String[]> X2 = new ArrayList<String[]>();
-                    ArrayList<String> y2 = new ArrayList<String>();
-                    
-                    for (int j = 0; j < feature.size(); j++)
+                    xValue[j] = NumberParser.parseDouble(feature.get(j));
+                }
+                double[] thresholds = new double[uniqueValues.size()];
+                for (int t = 0; t < thresholds.length; t++)
+                {
+                    thresholds[t] = NumberParser.parseDouble(
+                            uniqueValues.get(t));
+                }
+                
+                // With at most 2 branches the intrinsic information is at
+                // most 1, so the bound can only skip candidates when the
+                // entropy of the parent is below the best gain ratio
+                int[] leftSizes = parentInfo < gainRatio 
+                        ? leftSizes(xValue, X.size(), thresholds) : null;
+                for (int t = 0; t < thresholds.length; t++)
+                {
+                    double threshold = thresholds[t];
+                    if (isRepeated(thresholds, t))
+                    {// Same split as an earlier candidate
+                        continue;
+                    }
+                    if (leftSizes != null)
                     {
-                        if (Double.parseDouble(feature.get(j)) < 
-                                Double.parseDouble(uniqueValue))
-                        {
-                            X1.add(X.get(j));
-                            y1.add(y.get(j));
+                        branchSizes[0] = leftSizes[t];
+                        branchSizes[1] = X.size() - leftSizes[t];
+                        if (!limits.isLargeEnough(branchSizes[0]) || 
+                                !limits.isLargeEnough(branchSizes[1]))
+                        {// A branch would have too few data points
+                            continue;
                         }
-                        else
-                        {
-                            X2.add(X.get(j));
-                            y2.add(y.get(j));
+                        if (!isBetter(parentInfo / intrinsicInfo(branchSizes),
+                                gainRatio, i, index))
+                        {// Even pure branches would not beat the best split
+                            continue;
                         }
                     }
-                    ArrayList<ArrayList<String>> yi_s = 
-                            new ArrayList<ArrayList<String>>();
-                    yi_s.add(y1);
-                    yi_s.add(y2);
+                    candidatesEvaluated++;
+                    SplitKernels.INSTANCE.partitionCounts(xValue, yIndex, 
+                            X.size(), threshold, childCounts[0], 
+                            childCounts[1]);
+                    if (!limits.isLargeEnough(size(childCounts[0])) || 
+                            !limits.isLargeEnough(size(childCounts[1])))
+                    {// A branch would have too few data points
+                        continue;
+                    }
                     
                     // Update the parameters when we have higher gain ratio
-                    double newGainRatio = gainRatio(y, yi_s);
-                    if (newGainRatio > gainRatio)
+                    double newGainRatio = gainRatio(parentCount, childCounts);
+                    if (isBetter(newGainRatio, gainRatio, i, index))
                     {
-                        params.clear();
                         index = i;
-                        value = Double.parseDouble(uniqueValue);
-                        params.add(index);
-                        params.add(value);
-                        params.add(categories);
-                        params.add(X1);
-                        params.add(y1);
-                        params.add(X2);
-                        params.add(y2);
+                        value = threshold;
                         gainRatio = newGainRatio;
                     }
                 }
             }
         }
         
+        if (index >= 0)
+        {// Only the chosen split is partitioned
+            params.add(index);
+            params.add(value);
+            params.add(categories);
+            if (categorical[index])
+            {
+                addPartitions(params, X, y, bestCodes, bestSizes);
+            }
+            else
+            {
+                addPartitions(params, X, y, index, value);
+            }
+            featureOrder.record(index);
+        }
+        
         return params;
     }
     
+    /**
+     * This method compares a gain ratio with the best gain ratio so far. A
+     * tie goes to the feature with the smaller index, so the result does not
+     * depend on the order the features are scanned in
+     * 
+     * @param newGainRatio is the gain ratio of a candidate split
+     * @param gainRatio is the best gain ratio so far
+     * @param feature is the feature of the candidate split
+     * @param index is the feature of the best split so far, or -1
+     * @return true if the candidate split should replace the best one
+     */
+    public boolean isBetter(double newGainRatio, double gainRatio, 
+            int feature, int index)
+    {
+        return newGainRatio > gainRatio 
+                || newGainRatio == gainRatio && feature < index;
+    }
+    
+    /**
+     * This method gives each category of a feature an int code, in the order
+     * the categories are first seen, in one pass over the data points
+     * 
+     * @param X is the attributes of the data points at current node
+     * @param feature is the index of the feature
+     * @param codes receives the code of each data point
+     * @return the categories, in the same order as diffValues()
+     */
+    public ArrayList<String> encode(ArrayList<String[]> X, int feature, 
+            int[] codes)
+    {
+        ArrayList<String> categories = new ArrayList<String>();
+        HashMap<String, Integer> code = new HashMap<String, Integer>();
+        for (int j = 0; j < X.size(); j++)
+        {
+            String category = X.get(j)[feature];
+            Integer c = code.get(category);
+            if (c == null)
+            {
+                c = categories.size();
+                code.put(category, c);
+                categories.add(category);
+            }
+            codes[j] = c;
+        }
+        
+        return categories;
+    }
+    
+    /**
+     * This method partitions the data points of a node on a categorical
+     * feature in one pass, each data point going to the branch of its
+     * category code, and adds the partitions to the split parameters
+     * 
+     * @param params is the split parameters
+     * @param X is the attributes of the data points at current node
+     * @param y is the targets of the data points at current node
+     * @param codes is the category code of each data point
+     * @param sizes is the number of data points in each branch
+     */
+    public void addPartitions(ArrayList<Object> params, 
+            ArrayList<String[]> X, ArrayList<String> y, int[] codes, 
+            int[] sizes)
+    {
+        ArrayList<ArrayList<String[]>> Xi_s = 
+                new ArrayList<ArrayList<String[]>>(sizes.length);
+        ArrayList<ArrayList<String>> yi_s = 
+                new ArrayList<ArrayList<String>>(sizes.length);
+        for (int size : sizes)
+        {
+            Xi_s.add(new ArrayList<String[]>(size));
+            yi_s.add(new ArrayList<String>(size));
+        }
+        for (int j = 0; j < X.size(); j++)
+        {
+            Xi_s.get(codes[j]).add(X.get(j));
+            yi_s.get(codes[j]).add(y.get(j));
+        }
+        for (int k = 0; k < sizes.length; k++)
+        {
+            params.add(Xi_s.get(k));
+            params.add(yi_s.get(k));
+        }
+    }
+    
+    /**
+     * This method counts the data points in the left branch of each
+     * candidate threshold of a numeric feature in one pass
+     * 
+     * @param xValue is the values of the feature at current node
+     * @param n is the number of data points at current node
+     * @param thresholds is the candidate thresholds
+     * @return the number of values less than each threshold
+     */
+    public int[] leftSizes(double[] xValue, int n, double[] thresholds)
+    {
+        double[] sorted = thresholds.clone();
+        Arrays.sort(sorted);
+        int m = 0;
+        for (double threshold : sorted)
+        {// Distinct thresholds; nothing is less than NaN
+            if (!Double.isNaN(threshold) && (m == 0 
+                    || Double.compare(sorted[m - 1], threshold) != 0))
+            {
+                sorted[m++] = threshold;
+            }
+        }
+        sorted = Arrays.copyOf(sorted, m);
+        int[] below = new int[m];
+        SplitKernels.INSTANCE.countBelow(xValue, n, sorted, below);
+        
+        int[] sizes = new int[thresholds.length];
+        for (int t = 0; t < thresholds.length; t++)
+        {
+            int k = Arrays.binarySearch(sorted, thresholds[t]);
+            sizes[t] = k < 0 ? 0 : below[k];
+        }
+        
+        return sizes;
+    }
+    
+    /**
+     * This method checks whether a candidate threshold equals an earlier
+     * one. The split is then the same, and cannot beat the earlier one
+     * 
+     * @param thresholds is the candidate thresholds
+     * @param t is the candidate of interest
+     * @return true if an earlier candidate has the same threshold
+     */
+    public boolean isRepeated(double[] thresholds, int t)
+    {
+        for (int k = 0; k < t; k++)
+        {
+            if (thresholds[k] == thresholds[t])
+            {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * This method partitions the data points of a node on a numeric feature
+     * and adds both partitions to the split parameters
+     * 
+     * @param params is the split parameters
+     * @param X is the attributes of the data points at current node
+     * @param y is the targets of the data points at current node
+     * @param index is the feature to split on
+     * @param value is the value to split on
+     */
+    public void addPartitions(ArrayList<Object> params, 
+            ArrayList<String[]> X, ArrayList<String> y, int index, 
+            double value)
+    {
+        ArrayList<String[]> X1 = new ArrayList<String[]>();
+        ArrayList<String> y1 = new ArrayList<String>();
+        ArrayList<String[]> X2 = new ArrayList<String[]>();
+        ArrayList<String> y2 = new ArrayList<String>();
+        for (int j = 0; j < X.size(); j++)
+        {
+            if (NumberParser.parseDouble(X.get(j)[index]) < value)
+            {
+                X1.add(X.get(j));
+                y1.add(y.get(j));
+            }
+            else
+            {
+                X2.add(X.get(j));
+                y2.add(y.get(j));
+            }
+        }
+        params.add(X1);
+        params.add(y1);
+        params.add(X2);
+        params.add(y2);
+    }
+    
+    /**
+     * This method selects the candidate values of a feature to split on. For
+     * categorical features every category is a candidate. For continuous
+     * features with more than MAX_CANDIDATES unique values, the k-tile
+     * method is used, so there are never more than MAX_CANDIDATES candidates
+     * 
+     * @param uniqueValues is the unique values of the feature at current node
+     * @param categorical is whether the feature is categorical
+     * @return the candidate values to split on
+     */
+    public ArrayList<String> candidateValues(ArrayList<String> uniqueValues,
+            boolean categorical)
+    {
+        if (!categorical && uniqueValues.size() > MAX_CANDIDATES)
+        {// Use the k-tile method to select split threshold for continuous
+            ArrayList<String> temp = new ArrayList<String>();
+            Collections.sort(uniqueValues);
+            for (int j = 1; j <= MAX_CANDIDATES; j++)
+            {// Select points evenly from the attribute to be candidates
+                temp.add(uniqueValues.get(j / (MAX_CANDIDATES + 1)));
+            }
+            uniqueValues = temp;
+        }
+        
+        return uniqueValues;
+    }
+    
     /**
      * This method finds all unique values of an array
      * 
@@ -297,31 +697,64 @@ public class DecisionTreeClassifier
      */
     public double gainRatio(ArrayList<String> y, 
             ArrayList<ArrayList<String>> yi_s)
+    {
+        int[][] childCounts = new int[yi_s.size()][];
+        for (int i = 0; i < yi_s.size(); i++)
+        {
+            childCounts[i] = countClasses(yi_s.get(i));
+        }
+        
+        return gainRatio(countClasses(y), childCounts);
+    }
+    
+    /**
+     * This method calculates the gain ratio of a split from the class counts
+     * of the parent node and the child nodes. Only the counts are needed, so
+     * the split can be evaluated without the data points themselves
+     * 
+     * @param parentCount is the number of data points of each class in parent
+     * @param childCounts is the class counts of each child node
+     * @return the gain ratio of the split
+     */
+    public double gainRatio(int[] parentCount, int[][] childCounts)
     {
         double informationGain = 0;
         double intrinsicInfo = 0;
         
-        // Calculate information gain
-        int n = y.size();
+        // Calculate information gain. The weighted entropy of each child is
+        // ni * log2(ni) - sum of c * log2(c), which is not negative, so the
+        // gain is at most the entropy of the parent
+        int n = size(parentCount);
         double childInfo = 0;
-        for (ArrayList<String> yi : yi_s)
-        {
-            childInfo += entropy(yi) * yi.size() / n;
-        }
-        informationGain = entropy(y) - childInfo;        
-        
-        // Calculate intrinsic information
+        int branchTotal = 0;
         double branchInfo = 0;
-        for (ArrayList<String> yi : yi_s)
+        for (int[] childCount : childCounts)
         {
-            branchInfo += 
-                    yi.size()*1.0/n * Math.log(yi.size()*1.0/n) / Math.log(2);
+            int ni = size(childCount);
+            childInfo += nLog2n(ni) - sumNLog2n(childCount);
+            branchTotal += ni;
+            branchInfo += nLog2n(ni);
         }
-        intrinsicInfo = -branchInfo;
+        informationGain = entropy(parentCount) - childInfo / n;
+        
+        // Calculate intrinsic information, the entropy of the branch sizes
+        intrinsicInfo = (nLog2n(branchTotal) - branchInfo) / branchTotal;
         
         return informationGain / intrinsicInfo;
     }
     
+    /**
+     * This method calculates the intrinsic information of a split from the
+     * size of each branch, the same way as gainRatio() and entropy()
+     * 
+     * @param branchSizes is the number of data points in each branch
+     * @return the intrinsic information of the split
+     */
+    public double intrinsicInfo(int[] branchSizes)
+    {
+        return entropy(branchSizes);
+    }
+    
     /**
      * This method calculates the entropy of a node
      * 
@@ -330,23 +763,154 @@ public class DecisionTreeClassifier
      */
     public double entropy(ArrayList<String> y)
     {
-        int n = y.size();
+        return entropy(countClasses(y));
+    }
+    
+    /**
+     * This method calculates the entropy of a node from its class counts, as
+     * (n * log2(n) - sum of c * log2(c)) / n for the n data points and the
+     * count c of each class, so it only takes table lookups and adds
+     * 
+     * @param classCount is the number of data points of each class
+     * @return the entropy of the node
+     */
+    public double entropy(int[] classCount)
+    {
+        int n = size(classCount);
+        if (n == 0)
+        {
+            return 0;
+        }
+        
+        return (nLog2n(n) - sumNLog2n(classCount)) / n;
+    }
+    
+    /**
+     * This method adds up c * log2(c) over a list of counts
+     * 
+     * @param counts is the counts, e.g. the class counts of a node
+     * @return the sum of c * log2(c)
+     */
+    public double sumNLog2n(int[] counts)
+    {
         double summation = 0;
-        for (String class_ : diffValues(y))
+        for (int count : counts)
         {
-            double prob = 0;
-            for (String value : y)
-            {
-                if (value.equals(class_))
-                {
-                    prob++;
-                }
+            summation += nLog2n(count);
+        }
+        
+        return summation;
+    }
+    
+    /**
+     * This method returns c * log2(c) of a count, with 0 for a count of 0. It
+     * is looked up in the table filled by tabulate(), or calculated the same
+     * way for counts beyond the table
+     * 
+     * @param c is the count
+     * @return c * log2(c)
+     */
+    public double nLog2n(int c)
+    {
+        if (c < nLog2nTable.length)
+        {
+            return nLog2nTable[c];
+        }
+        
+        return c == 0 ? 0 : c * (Math.log(c) / LN2);
+    }
+    
+    /**
+     * This method fills the table of c * log2(c) for every count up to the
+     * size of the training set, which is the size of the largest node, or up
+     * to MAX_TABLE_SIZE. A table that is large enough is kept
+     * 
+     * @param n is the number of data points in the training set
+     */
+    public void tabulate(int n)
+    {
+        int size = Math.min(n, MAX_TABLE_SIZE - 1) + 1;
+        if (nLog2nTable.length >= size)
+        {
+            return;
+        }
+        double[] table = new double[size];
+        for (int c = 1; c < size; c++)
+        {
+            table[c] = c * (Math.log(c) / LN2);
+        }
+        nLog2nTable = table;
+    }
+    
+    /**
+     * This method counts the data points of each class using the class index
+     * built in fit(). Labels outside the index get their own local index
+     * 
+     * @param y is the target values in the node of interest
+     * @return the number of data points of each class
+     */
+    public int[] countClasses(ArrayList<String> y)
+    {
+        HashMap<String, Integer> index = classIndex;
+        if (index == null)
+        {
+            index = indexClasses(diffValues(y));
+        }
+        int[] classCount = new int[index.size()];
+        for (String label : y)
+        {
+            Integer i = index.get(label);
+            if (i == null)
+            {// Label not seen in fit(), fall back to a local index
+                classIndex = null;
+                classCount = countClasses(y);
+                classIndex = index;
+                return classCount;
             }
-            prob /= n;
-            summation += prob * Math.log(prob) / Math.log(2);
+            classCount[i]++;
+        }
+        
+        return classCount;
+    }
+    
+    /**
+     * This method converts each target value to its class index, the same
+     * index countClasses() uses for the same data points
+     * 
+     * @param y is the target values in the node of interest
+     * @return the class index of each data point
+     */
+    public int[] classIndexes(ArrayList<String> y)
+    {
+        HashMap<String, Integer> index = classIndex;
+        if (index == null || !index.keySet().containsAll(y))
+        {// Same fallback to a local index as countClasses()
+            index = indexClasses(diffValues(y));
+        }
+        int[] yIndex = new int[y.size()];
+        for (int j = 0; j < yIndex.length; j++)
+        {
+            yIndex[j] = index.get(y.get(j));
         }
         
-        return -summation;
+        return yIndex;
+    }
+    
+    /**
+     * This method sums up the class counts of a node
+     * 
+     * @param classCount is the number of data points of each class
+     * @return the number of data points in the node
+     */
+    public int size(int[] classCount)
+    {
+        int n = 0;
+        for (int count : classCount)
+        {
+            n += count;
+        }
+        
+        return n;
     }
     
     /**
@@ -357,6 +921,57 @@ public class DecisionTreeClassifier
      * @return an array of predictions for all test data points
      */
     public ArrayList<String> predict(ArrayList<String[]> X)
+    {
+        TreeEvents.Predict event = new TreeEvents.Predict();
+        event.begin();
+        ArrayList<String> yPredict = new ArrayList<String>();
+        for (int i = 0; i < X.size(); i++)
+        {
+            if (i % TreeMetrics.SAMPLE_INTERVAL != 0)
+            {
+                yPredict.add(root.predictOne(X.get(i), metrics));
+                continue;
+            }
+            long start = System.nanoTime(); // Time a sample of predictions
+            yPredict.add(root.predictOne(X.get(i), metrics));
+            metrics.recordPrediction(System.nanoTime() - start);
+        }
+        metrics.recordBatch(X.size());
+        event.end("ID3", X.size());
+        
+        return yPredict;
+    }
+    
+    /**
+     * This method makes predictions for a view of the test set
+     * 
+     * @param X is the view of the test set
+     * @return an array of predictions for all test data points
+     */
+    public ArrayList<String> predict(DatasetView X)
+    {
+        return predict(X.X());
+    }
+    
+    /**
+     * This method reports the size of the trained tree
+     * 
+     * @return the number of nodes, the nodes at each depth, and an estimate
+     *         of the heap retained by the tree
+     */
+    public TreeFootprint footprint()
+    {
+        return TreeFootprint.measure(root);
+    }
+    
+    /**
+     * This method makes predictions without recording them in the metrics,
+     * for the predictions made while pruning
+     * 
+     * @param X is the validation set
+     * @return the predicted values
+     */
+    ArrayList<String> predictUnrecorded(ArrayList<String[]> X)
     {
         ArrayList<String> yPredict = new ArrayList<String>();
         for (String[] x : X)
@@ -378,12 +993,40 @@ public class DecisionTreeClassifier
      * @param node is the root node of the trained tree
      */
     public void prune(ArrayList<String[]> X, ArrayList<String> y, Node node)
+    {
+        TreeEvents.Prune event = new TreeEvents.Prune();
+        event.start(node, y.size());
+        pruneNode(X, y, node);
+        event.end(node);
+    }
+    
+    /**
+     * This method performs a reduced error pruning with a view of the
+     * validation set, see prune()
+     * 
+     * @param valid is the view of the validation set
+     * @param node is the root node of the trained tree
+     */
+    public void prune(DatasetView valid, Node node)
+    {
+        prune(valid.X(), valid.y(), node);
+    }
+    
+    /**
+     * This method prunes the subtree of a node bottom-up, see prune()
+     * 
+     * @param X is the attributes of the validation set used only for pruning
+     * @param y is the targets of the validation set used only for pruning
+     * @param node is the root node of the subtree
+     */
+    public void pruneNode(ArrayList<String[]> X, ArrayList<String> y, 
+            Node node)
     {
         for (Node child : node.children)
         {
             if (!child.isLeaf)
             {
-                prune(X, y, child);
+                pruneNode(X, y, child);
             }
         }
         
@@ -400,7 +1043,7 @@ public class DecisionTreeClassifier
         if (allLeaf)
         {
             // Make predictions with the current tree
-            ArrayList<String> leafY = predict(X);
+            ArrayList<String> leafY = predictUnrecorded(X);
             
             // Merge the leaves and make predictions with the new, merged leaf
             HashMap<String, Integer> mergedClassCount = 
@@ -442,7 +1085,7 @@ public class DecisionTreeClassifier
             node.isTempLeaf = true;
             node.classCount = mergedClassCount;
             node.name = mostCommon;
-            ArrayList<String> mergedY = predict(X);
+            ArrayList<String> mergedY = predictUnrecorded(X);
             
             // Calculate classification accuracies for both cases
             double leafScore = 0;
@@ -468,14 +1111,376 @@ public class DecisionTreeClassifier
                 System.out.println("Merging...");
                 
                 node.isLeaf = true;
-                node.children.clear();
+                node.clearChildren();
             }
             else
             {
-                node.classCount.clear();
+                node.classCount = null;
             }
             
             node.isTempLeaf = false;
         }
     }
+    
+    /**
+     * This method fits the classifier on a sparse training set. All features
+     * of a sparse matrix are numeric
+     * 
+     * @param X is the attributes of the training set
+     * @param y is the targets of the training set
+     */
+    public void fit(SparseMatrix X, ArrayList<String> y)
+    {
+        categorical = new boolean[X.numCols];
+        classIndex = indexClasses(diffValues(y));
+        tabulate(y.size());
+        int[] yIndex = new int[y.size()];
+        for (int i = 0; i < yIndex.length; i++)
+        {
+            yIndex[i] = classIndex.get(y.get(i));
+        }
+        
+        long start = System.nanoTime();
+        root = buildTree(X, yIndex);
+        metrics.recordFit(System.nanoTime() - start, root);
+    }
+    
+    /**
+     * This method builds the tree best-first on a sparse training set, in the
+     * same way as for a dense training set
+     * 
+     * @param X is the attributes of the training set
+     * @param yIndex is the class index of each data point
+     * @return the root node of the tree
+     */
+    public Node buildTree(SparseMatrix X, int[] yIndex)
+    {
+        TreeEvents.BuildTree event = new TreeEvents.BuildTree();
+        event.start();
+        String[] classes = new String[classIndex.size()];
+        for (Map.Entry<String, Integer> pair : classIndex.entrySet())
+        {
+            classes[pair.getValue()] = pair.getKey();
+        }
+        int[] position = new int[X.numCols];
+        Arrays.fill(position, -1);
+        int[] rows = new int[X.numRows];
+        for (int i = 0; i < rows.length; i++)
+        {
+            rows[i] = i;
+        }
+        
+        PriorityQueue<SplitCandidate> frontier = 
+                new PriorityQueue<SplitCandidate>();
+        Node root = newLeaf(X, yIndex, classes, rows, 0, 
+                limits.maxLeaves > 1 ? frontier : null, position);
+        int leaves = 1;
+        
+        while (!frontier.isEmpty())
+        {
+            SplitCandidate candidate = frontier.poll();
+            if (leaves + 1 > limits.maxLeaves)
+            {// The split would make too many leaves, keep the leaf
+                continue;
+            }
+            
+            Node node = candidate.node;
+            ArrayList<Object> params = candidate.params;
+            node.isLeaf = false;
+            node.name = null;
+            node.classCount = null;
+            node.column = (int) params.get(0);
+            node.value = (double) params.get(1);
+            leaves++;
+        // Every split adds a leaf, so once the tree has as many leaves as
+        // allowed the children are never split, and their split is not searched
+        PriorityQueue<SplitCandidate> childFrontier = 
+                leaves < limits.maxLeaves ? frontier : null;
+            for (int i = 3; i < 5; i++)
+            {
+                node.addChild(newLeaf(X, yIndex, classes, 
+                        (int[]) params.get(i), candidate.depth + 1, 
+                        childFrontier, position));
+            }
+        }
+        event.end("ID3", X.numRows, X.numCols, root);
+        
+        return root;
+    }
+    
+    /**
+     * This method creates a leaf for a subset of rows of a sparse training 
+     * set and adds it to the frontier when it can still be split, as for a
+     * dense training set
+     * 
+     * @param X is the attributes of the training set
+     * @param yIndex is the class index of each data point
+     * @param classes is the class labels in order of their index
+     * @param rows is the rows in the node
+     * @param depth is the depth of the node
+     * @param frontier is the leaves that can be split, null if the tree has
+     *        as many leaves as allowed
+     * @param position is scratch space for SparseMatrix.slice()
+     * @return the new leaf
+     */
+    public Node newLeaf(SparseMatrix X, int[] yIndex, String[] classes, 
+            int[] rows, int depth, PriorityQueue<SplitCandidate> frontier,
+            int[] position)
+    {
+        Node node = new Node();
+        int[] parentCount = new int[classes.length];
+        for (int row : rows)
+        {
+            parentCount[yIndex[row]]++;
+        }
+        HashMap<String, Integer> classCount = new HashMap<String, Integer>();
+        for (int row : rows)
+        {// Classes in the order they are first seen, as for dense rows
+            String label = classes[yIndex[row]];
+            if (!classCount.containsKey(label))
+            {
+                classCount.put(label, parentCount[yIndex[row]]);
+            }
+        }
+        makeLeaf(node, classCount);
+        
+        if (frontier != null && classCount.size() > 1 
+                && limits.canSplit(rows.length, depth))
+        {
+            TreeEvents.SplitSearch event = new TreeEvents.SplitSearch();
+            event.start();
+            ArrayList<Object> params = chooseSplitIndex(X, yIndex, rows, 
+                    parentCount, position);
+            event.end("ID3", depth, rows.length, featuresScanned, 
+                    candidatesEvaluated, 
+                    params.isEmpty() ? -1 : (int) params.get(0));
+            if (!params.isEmpty())
+            {
+                frontier.add(new SplitCandidate(node, depth, null, params, 
+                        (double) params.get(5)));
+            }
+        }
+        
+        return node;
+    }
+    
+    /**
+     * This method selects the feature and value to split on for a subset of
+     * rows of a sparse training set. Only the nonzero values of each column
+     * are visited. The class counts of the zeros are the class counts of the
+     * node minus those of the nonzero values. The candidate values come from
+     * candidateValues() on the unique values in the order they are first
+     * seen, and are compared in that order with the same criterion as for a
+     * dense training set, so both give the same tree when the values of the
+     * dense rows are written as by Double.toString(). The class counts of
+     * the left branch of every candidate are counted in one sweep over the
+     * sorted values, into buffers shared by all columns
+     * 
+     * @param X is the attributes of the training set
+     * @param yIndex is the class index of each data point
+     * @param rows is the rows in the node, in ascending order
+     * @param parentCount is the class counts of the node
+     * @param position is scratch space for SparseMatrix.slice()
+     * @return an array of the feature, value, categories, the rows of both
+     *         branches, and the weighted information gain of the split
+     */
+    public ArrayList<Object> chooseSplitIndex(SparseMatrix X, int[] yIndex,
+            int[] rows, int[] parentCount, int[] position)
+    {
+        ArrayList<Object> params = new ArrayList<Object>();
+        int n = rows.length;
+        int index = -1;
+        double value = 0;
+        double gainRatio = 0;
+        featuresScanned = 0;
+        candidatesEvaluated = 0;
+        
+        SparseMatrix.ColumnSlice slice = X.slice(rows, position);
+        int maxValues = 0;
+        for (int c = 0; c < slice.columns.length; c++)
+        {
+            maxValues = Math.max(maxValues, 
+                    slice.start[c + 1] - slice.start[c]);
+        }
+        long[] order = new long[maxValues + 1];
+        int numClasses = parentCount.length;
+        int[] zeroCount = new int[numClasses];
+        int[] left = new int[numClasses];
+        int[][] leftCounts = new int[MAX_CANDIDATES][numClasses];
+        int[] leftSizes = new int[MAX_CANDIDATES];
+        int[] ascending = new int[MAX_CANDIDATES];
+        int[][] childCounts = {null, new int[numClasses]};
+        int[] bestLeft = new int[numClasses];
+        
+        for (int c = 0; c < slice.columns.length; c++)
+        {
+            int from = slice.start[c];
+            int to = slice.start[c + 1];
+            int zeros = n - (to - from);
+            ArrayList<String> uniqueValues = SparseMatrix.uniqueValues(slice,
+                    c, rows, order);
+            if (uniqueValues.size() == 1)
+            {
+                continue;
+            }
+            uniqueValues = candidateValues(uniqueValues, false);
+            featuresScanned++;
+            
+            // Class counts of the zeros
+            System.arraycopy(parentCount, 0, zeroCount, 0, numClasses);
+            for (int k = from; k < to; k++)
+            {
+                zeroCount[yIndex[slice.rows[k]]]--;
+            }
+            
+            // Candidates in ascending order, by insertion sort
+            int m = uniqueValues.size();
+            double[] thresholds = new double[m];
+            for (int t = 0; t < m; t++)
+            {
+                thresholds[t] = NumberParser.parseDouble(uniqueValues.get(t));
+                int s = t;
+                for (; s > 0 && Double.compare(thresholds[ascending[s - 1]], 
+                        thresholds[t]) > 0; s--)
+                {
+                    ascending[s] = ascending[s - 1];
+                }
+                ascending[s] = t;
+            }
+            
+            // Sweep the sorted values once. The left branch of a candidate
+            // has the values less than it, the zeros when it is positive
+            Arrays.fill(left, 0);
+            int nLeft = 0;
+            int k = from;
+            boolean zeroDone = zeros == 0;
+            for (int s = 0; s < m; s++)
+            {
+                int t = ascending[s];
+                double threshold = thresholds[t];
+                if (Double.isNaN(threshold))
+                {// Nothing is less than NaN
+                    Arrays.fill(leftCounts[t], 0);
+                    leftSizes[t] = 0;
+                    continue;
+                }
+                for (; k < to && slice.values[k] < threshold; k++)
+                {
+                    left[yIndex[slice.rows[k]]]++;
+                    nLeft++;
+                }
+                if (!zeroDone && 0 < threshold)
+                {
+                    for (int i = 0; i < numClasses; i++)
+                    {
+                        left[i] += zeroCount[i];
+                    }
+                    nLeft += zeros;
+                    zeroDone = true;
+                }
+                System.arraycopy(left, 0, leftCounts[t], 0, numClasses);
+                leftSizes[t] = nLeft;
+            }
+            
+            // Compare the candidates in the order of candidateValues()
+            for (int t = 0; t < m; t++)
+            {
+                if (isRepeated(thresholds, t))
+                {// Same split as an earlier candidate
+                    continue;
+                }
+                if (!limits.isLargeEnough(leftSizes[t]) || 
+                        !limits.isLargeEnough(n - leftSizes[t]))
+                {// A branch would have too few data points
+                    continue;
+                }
+                candidatesEvaluated++;
+                childCounts[0] = leftCounts[t];
+                for (int i = 0; i < numClasses; i++)
+                {
+                    childCounts[1][i] = parentCount[i] - leftCounts[t][i];
+                }
+                
+                // Update the parameters when we have higher gain ratio
+                double newGainRatio = gainRatio(parentCount, childCounts);
+                if (isBetter(newGainRatio, gainRatio, slice.columns[c], 
+                        index))
+                {
+                    index = slice.columns[c];
+                    value = thresholds[t];
+                    System.arraycopy(leftCounts[t], 0, bestLeft, 0, 
+                            numClasses);
+                    gainRatio = newGainRatio;
+                }
+            }
+        }
+        
+        if (index == -1)
+        {
+            return params;
+        }
+        
+        // Partition the rows of the winning split only
+        int[] bestRight = new int[numClasses];
+        for (int i = 0; i < numClasses; i++)
+        {
+            bestRight[i] = parentCount[i] - bestLeft[i];
+        }
+        int[] rows1 = new int[size(bestLeft)];
+        int[] rows2 = new int[n - rows1.length];
+        int n1 = 0;
+        int n2 = 0;
+        for (int row : rows)
+        {
+            if (X.get(row, index) < value)
+            {
+                rows1[n1++] = row;
+            }
+            else
+            {
+                rows2[n2++] = row;
+            }
+        }
+        
+        // Weighted information gain, added up as in impurityDecrease()
+        double childInfo = entropy(bestLeft) * rows1.length 
+                + entropy(bestRight) * rows2.length;
+        params.add(index);
+        params.add(value);
+        params.add(new ArrayList<String>());
+        params.add(rows1);
+        params.add(rows2);
+        params.add(entropy(parentCount) * n - childInfo);
+        
+        return params;
+    }
+    
+    /**
+     * This method calls the predictOne() method at the root node of the 
+     * trained tree for each row of a sparse test set
+     * 
+     * @param X is the test set
+     * @return an array of predictions for all test data points
+     */
+    public ArrayList<String> predict(SparseMatrix X)
+    {
+        TreeEvents.Predict event = new TreeEvents.Predict();
+        event.begin();
+        ArrayList<String> yPredict = new ArrayList<String>();
+        for (int i = 0; i < X.numRows; i++)
+        {
+            if (i % TreeMetrics.SAMPLE_INTERVAL != 0)
+            {
+                yPredict.add(root.predictOne(X, i));
+                continue;
+            }
+            long start = System.nanoTime(); // Time a sample of predictions
+            yPredict.add(root.predictOne(X, i));
+            metrics.recordPrediction(System.nanoTime() - start);
+        }
+        metrics.recordBatch(X.numRows);
+        event.end("ID3", X.numRows);
+        
+        return yPredict;
+    }
 }
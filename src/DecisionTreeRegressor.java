@@ -7,6 +7,7 @@
  * @author Winston Lin
  */
 import java.io.*;
+import java.math.*;
 import java.util.*;
 
 public class DecisionTreeRegressor 
@@ -14,6 +15,13 @@ public class DecisionTreeRegressor
     Node root; // Root node
     boolean[] categorical; // Boolean array of whether feature is categorical
     double errorThreshold = 0; // Cut-off threshold for early stopping
+    GrowthLimits limits = new GrowthLimits(); // Limits on the tree size
+    int featuresScanned;     // Features scanned by the last split search
+    int candidatesEvaluated; // Candidates evaluated by the last split search
+    FeatureOrder featureOrder; // Order the features are scanned in
+    TreeMetrics metrics = new TreeMetrics(); // Metrics exposed over JMX
+    static final double TIE_TOLERANCE = 1e-10; // Relative MSE of a tie
+    static final int MAX_CANDIDATES = 15; // Candidates of a numeric feature
     
     public DecisionTreeRegressor(double errorThreshold)
     {
@@ -21,9 +29,10 @@ public class DecisionTreeRegressor
     }
     
     /**
-     * This method fits the regressor on the training set. It determines
-     * categorical features in the datasets used in this project and calls
-     * the buildTree() method to start building the tree
+     * This method fits the regressor on the training set. Categorical features
+     * are those with a value that is not a number (see the SchemaInferencer
+     * class). The name of the dataset is no longer used to find them and is
+     * kept for existing callers
      * 
      * @param X is the attributes of the training set
      * @param y is the targets of the training set
@@ -32,224 +41,609 @@ public class DecisionTreeRegressor
     public void fit(ArrayList<String[]> X, ArrayList<String> y, 
             String fileName)
     {
-        // All 3 datasets for regression have only numeric features
-        categorical = new boolean[X.get(0).length];
+        fit(X, y, SchemaInferencer.infer(X).categorical(X.get(0).length));
+    }
+    
+    /**
+     * This method fits the regressor on a view of the training set, without
+     * copying its rows. Categorical features are taken from the schema of
+     * the view
+     * 
+     * @param train is the view of the training set
+     */
+    public void fit(DatasetView train)
+    {
+        fit(train.X(), train.y(), train.categorical());
+    }
+    
+    /**
+     * This method fits the regressor on the first features of each row and
+     * calls the buildTree() method to start building the tree. Any columns
+     * after them, e.g. the target, are ignored
+     * 
+     * @param X is the attributes of the training set
+     * @param y is the targets of the training set
+     * @param categorical is whether each feature is categorical, one entry
+     *        per feature
+     */
+    public void fit(ArrayList<String[]> X, ArrayList<String> y, 
+            boolean[] categorical)
+    {
+        this.categorical = categorical;
+        featureOrder = new FeatureOrder(categorical.length);
         
+        long start = System.nanoTime();
         root = buildTree(X, y);
+        metrics.recordFit(System.nanoTime() - start, root);
     }
     
     /**
-     * This method calls the chooseSplitIndex() method to choose the feature
-     * and value at each split. It then uses those information to build the
-     * tree recursively until we run out of features, impurity = 0, or the
-     * cut-off threshold is reached
+     * This method builds the tree best-first. Leaves that can be split are
+     * kept in a frontier ordered by impurity reduction, and the best one is
+     * split first until the frontier is empty or the limits on the tree size
+     * are reached. Without limits, the tree is grown until we run out of
+     * features, impurity = 0, or the cut-off threshold is reached
      * 
-     * @param X is the attributes of the data points at each node
-     * @param y is the targets of the data points at each node
-     * @return a child node to build the tree recursively
+     * @param X is the attributes of the training set
+     * @param y is the targets of the training set
+     * @return the root node of the tree
      */
     public Node buildTree(ArrayList<String[]> X, ArrayList<String> y)
     {
-        Node node = new Node();
-        ArrayList<Object> params = chooseSplitIndex(X, y);
-        int index;
-        double value = 0;
-        ArrayList<String> categories = new ArrayList<String>();
-        boolean stop = false; // Indicate early stopping
-        if (params.isEmpty())
-        {
-            index = -1;
-        }
-        else
-        {
-            index = (int) params.get(0);
-            value = (double) params.get(1);
-            categories = (ArrayList<String>) params.get(2);
-        }
+        TreeEvents.BuildTree event = new TreeEvents.BuildTree();
+        event.start();
+        PriorityQueue<SplitCandidate> frontier = 
+                new PriorityQueue<SplitCandidate>();
+        Node root = newLeaf(X, y, 0, limits.maxLeaves > 1 ? frontier : null);
+        int leaves = 1;
         
-        stop = earlyStopping(y);
-        if (index == -1 || diffValues(y).size() == 1 || stop)
-        {/* Three conditions for leaf: 1. Run out of features 2. Impurity = 0
-                                       3. Early stopping threshold is met */
-            node.isLeaf = true;
-            
-            // Set the mean value as the predicted value of a leaf node
-            Double mean = 0.0;
-            for (String yvalue : y)
-            {
-                mean += Double.valueOf(yvalue);
+        while (!frontier.isEmpty())
+        {
+            SplitCandidate candidate = frontier.poll();
+            Node node = candidate.node;
+            if (leaves + 1 > limits.maxLeaves)
+            {// The split would make too many leaves, keep the leaf
+                makeLeaf(node, candidate.y.size(), exactSum(candidate.y));
+                continue;
             }
-            mean /= y.size();
-            node.name = mean.toString();
-        }
-        else
-        { 
-            node.column = index;
-            node.value = value;
-            node.categories = categories;
-            node.categorical = categorical[index];
+            
+            ArrayList<Object> params = candidate.params;
+            node.column = (int) params.get(0);
+            node.value = (double) params.get(1);
+            node.categorical = categorical[node.column];
             if (node.categorical)
             {
-                for (int i = 0; i < node.categories.size(); i++)
-                {
-                    ArrayList<String[]> Xi = 
-                            (ArrayList<String[]>) params.get(i*2 + 3);
-                    ArrayList<String> yi = 
-                            (ArrayList<String>) params.get(i*2 + 4);
-                    node.children.add(buildTree(Xi, yi));
-                }
+                node.categories = (ArrayList<String>) params.get(2);
+                node.categoryBranch = (int[]) params.get(7);
             }
-            else
+            ArrayList<String[]> X1 = (ArrayList<String[]>) params.get(3);
+            ArrayList<String> y1 = (ArrayList<String>) params.get(4);
+            ArrayList<String[]> X2 = (ArrayList<String[]>) params.get(5);
+            ArrayList<String> y2 = (ArrayList<String>) params.get(6);
+            leaves++;
+        // Every split adds a leaf, so once the tree has as many leaves as
+        // allowed the children are never split, and their split is not searched
+        PriorityQueue<SplitCandidate> childFrontier = 
+                leaves < limits.maxLeaves ? frontier : null;
+            node.addChild(newLeaf(X1, y1, candidate.depth + 1, 
+                    childFrontier));
+            node.addChild(newLeaf(X2, y2, candidate.depth + 1, 
+                    childFrontier));
+        }
+        event.end("CART", y.size(), categorical.length, root);
+
+        return root;
+    }
+    
+    /**
+     * This method creates a node for the data points of a node. The node is
+     * added to the frontier when it can still be split: impurity > 0, the
+     * early stopping threshold is not met, the limits allow it, and the
+     * chooseSplitIndex() method finds a split. Otherwise it becomes a leaf.
+     * Nodes in the frontier become leaves only if they are never split. The
+     * split is not searched for a node that cannot be split, given as a null
+     * frontier
+     * 
+     * @param X is the attributes of the data points at the node
+     * @param y is the targets of the data points at the node
+     * @param depth is the depth of the node
+     * @param frontier is the leaves that can be split, null if the tree has
+     *        as many leaves as allowed
+     * @return the new node
+     */
+    public Node newLeaf(ArrayList<String[]> X, ArrayList<String> y, int depth,
+            PriorityQueue<SplitCandidate> frontier)
+    {
+        Node node = new Node();
+        double mse = MSE(y);
+        if (frontier != null && diffValues(y).size() > 1 
+                && !earlyStopping(mse) && limits.canSplit(y.size(), depth))
+        {
+            TreeEvents.SplitSearch event = new TreeEvents.SplitSearch();
+            event.start();
+            ArrayList<Object> params = chooseSplitIndex(X, y);
+            event.end("CART", depth, y.size(), featuresScanned, 
+                    candidatesEvaluated, 
+                    params.isEmpty() ? -1 : (int) params.get(0));
+            if (!params.isEmpty())
             {
-                ArrayList<String[]> X1 = (ArrayList<String[]>) params.get(3);
-                ArrayList<String> y1 = (ArrayList<String>) params.get(4);
-                ArrayList<String[]> X2 = (ArrayList<String[]>) params.get(5);
-                ArrayList<String> y2 = (ArrayList<String>) params.get(6);
-                node.children.add(buildTree(X1, y1));
-                node.children.add(buildTree(X2, y2));
+                double[][] childStats = 
+                        {stats((ArrayList<String>) params.get(4)), 
+                         stats((ArrayList<String>) params.get(6))};
+                double priority = (mse - totalMSE(childStats)) * y.size();
+                frontier.add(new SplitCandidate(node, depth, y, params, 
+                        priority));
+                return node;
             }
         }
-
+        
+        /* Three conditions for leaf: 1. Run out of features 2. Impurity = 0
+                                      3. Early stopping threshold is met */
+        makeLeaf(node, y.size(), exactSum(y));
+        
         return node;
     }
     
+    /**
+     * This method turns a node into a leaf. The mean value of the data points
+     * in the node is set as the predicted value. The sum is exact, so the 
+     * mean does not depend on the order in which the values are added up
+     * 
+     * @param node is the node to be turned into a leaf
+     * @param n is the number of data points in the node
+     * @param sum is the exact sum of the target values in the node
+     */
+    public void makeLeaf(Node node, double n, BigDecimal sum)
+    {
+        node.isLeaf = true;
+        
+        // Set the mean value as the predicted value of a leaf node
+        node.value = sum.doubleValue() / n;
+        node.name = null;
+    }
+    
+    /**
+     * This method adds up the target values of a node without rounding
+     * 
+     * @param y is the target values in the node of interest
+     * @return the exact sum of the target values
+     */
+    public BigDecimal exactSum(ArrayList<String> y)
+    {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (String value : y)
+        {
+            sum = sum.add(new BigDecimal(NumberParser.parseDouble(value)));
+        }
+        
+        return sum;
+    }
+    
     /**
      * This method selects the feature and value to split on. MSE is used as 
-     * the splitting criterion
+     * the splitting criterion.
+     * 
+     * A categorical feature is split in two: its categories are sorted by
+     * the mean target of their data points, and the best split is one of the
+     * k - 1 splits of the sorted categories into a lower and an upper part
+     * (Breiman et al., 1984). The count, mean, and M2 of each category are
+     * calculated in two passes over int codes of the categories, and merged
+     * into the statistics of the branches, so the cost is O(n + k log k).
+     * Only the chosen split is partitioned.
+     * 
+     * A threshold equal to an earlier one of the same feature gives the same
+     * split and is skipped. The weighted error of the left branch of a
+     * threshold is a lower bound of the weighted MSE of the split, so the
+     * right branch is not added when the left one alone cannot be chosen
+     * any more. The split is chosen among all candidates by the SplitChoice
+     * class, so it does not depend on the order of the FeatureOrder class
+     * the features are scanned in, and is the same as without the bound
      * 
      * @param @param X is the attributes of the data points at current node
      * @param y is the targets of the data points at current node
-     * @return an array of the feature, value, and partitions after the split
+     * @return an array of the feature, value, categories, partitions after
+     *         the split, and the branch of each category
      */
     public ArrayList<Object> chooseSplitIndex(ArrayList<String[]> X, 
             ArrayList<String> y)
     {
         ArrayList<Object> params = new ArrayList<Object>();
-        int index = -1;
-        double value = 0;
-        ArrayList<String> categories = new ArrayList<String>();
+        featuresScanned = 0;
+        candidatesEvaluated = 0;
         
-        double mse = Double.MAX_VALUE;
+        // Parse the targets once; numeric columns are parsed into xValue
+        double[] yValue = parse(y);
+        SplitChoice choice = new SplitChoice(MSE(stats(yValue)));
+        double[] xValue = new double[X.size()];
+        double[] branchStats = new double[6];
+        int[] codes = new int[X.size()]; // Category code of each row
+        if (featureOrder == null || !featureOrder.fits(categorical.length))
+        {
+            featureOrder = new FeatureOrder(categorical.length);
+        }
         
-        for (int i = 0; i < X.get(0).length; i++)
+        for (int i : featureOrder.order())
         {
-            ArrayList<String> feature = new ArrayList<String>();
-            for (int j = 0; j < X.size(); j++)
+            ArrayList<String> feature = null;
+            ArrayList<String> uniqueValues;
+            if (categorical[i])
+            {// Each category gets an int code, in the order it is first seen
+                uniqueValues = encode(X, i, codes);
+            }
+            else
             {
-                feature.add(X.get(j)[i]);
-            } 
-            ArrayList<String> uniqueValues = diffValues(feature);
+                feature = new ArrayList<String>();
+                for (int j = 0; j < X.size(); j++)
+                {
+                    feature.add(X.get(j)[i]);
+                } 
+                uniqueValues = diffValues(feature);
+            }
             if (uniqueValues.size() == 1)
             {
                 continue;
             }
             
-            if (!categorical[i] && uniqueValues.size() > 15)
-            {// Use the k-tile method to select split threshold for continuous
-                ArrayList<String> temp = new ArrayList<String>();
-                Collections.sort(uniqueValues);
-                for (int j = 1; j < 16; j++)
-                {// Select 15 points evenly from the attribute to be candidates
-                    temp.add(uniqueValues.get(j / 16));
-                }
-                uniqueValues = temp;
-            }
+            uniqueValues = candidateValues(uniqueValues, categorical[i]);
+            featuresScanned++;
             
             if (categorical[i])
-            {
-                for (String uniqueValue : uniqueValues)
+            {// Statistics of every category at once
+                double[][] categoryStats = Moments.of(yValue, null, codes, 
+                        uniqueValues.size());
+                int[] order = sortByMean(categoryStats, uniqueValues);
+                double[][] upper = upperStats(categoryStats, order);
+                
+                // Sweep the splits into lower and upper categories
+                double[] lower = new double[3];
+                for (int p = 1; p < order.length; p++)
                 {
-                    ArrayList<String[]> X1 = new ArrayList<String[]>();
-                    ArrayList<String> y1 = new ArrayList<String>();
-                    ArrayList<String[]> X2 = new ArrayList<String[]>();
-                    ArrayList<String> y2 = new ArrayList<String>();
-                    
-                    for (int j = 0; j < feature.size(); j++)
-                    {
-                        if (!feature.get(j).equals(uniqueValue))
-                        {
-                            X1.add(X.get(j));
-                            y1.add(y.get(j));
-                        }
-                        else
-                        {
-                            X2.add(X.get(j));
-                            y2.add(y.get(j));
-                        }
-                    }
-                    ArrayList<ArrayList<String>> yi_s = 
-                            new ArrayList<ArrayList<String>>();
-                    yi_s.add(y1);
-                    yi_s.add(y2);
-                    
-                    // Update the parameters when MSE is improving
-                    double newMse = totalMSE(yi_s);
-                    if (newMse < mse && newMse < MSE(y))
-                    {
-                        params.clear();
-                        index = i;
-                        params.add(index);
-                        params.add(value);
-                        params.add(categories);
-                        params.add(X1);
-                        params.add(y1);
-                        params.add(X2);
-                        params.add(y2);
-                        mse = newMse;
+                    candidatesEvaluated++;
+                    Moments.merge(lower, categoryStats[order[p - 1]]);
+                    if (!limits.isLargeEnough((int) lower[0]) || 
+                            !limits.isLargeEnough((int) upper[p][0]))
+                    {// A branch would have too few data points
+                        continue;
                     }
+                    choice.add(i, p, 0, 
+                            totalMSE(new double[][] {lower, upper[p]}));
                 }
             }
             else
-            {
-                for (String uniqueValue : uniqueValues)
+            {// Evaluate thresholds on the parsed column, see SplitKernels
+                for (int j = 0; j < X.size(); j++)
+                {
+                    xValue[j] = NumberParser.parseDouble(feature.get(j));
+                }
+                double[] thresholds = new double[uniqueValues.size()];
+                for (int t = 0; t < thresholds.length; t++)
                 {
-                    ArrayList<String[]> X1 = new ArrayList<String[]>();
-                    ArrayList<String> y1 = new ArrayList<String>();
-                    ArrayList<String[]> X2 = new ArrayList<String[]>();
-                    ArrayList<String> y2 = new ArrayList<String>();
-                    
-                    for (int j = 0; j < feature.size(); j++)
-                    {
-                        if (Double.parseDouble(feature.get(j)) < 
-                                Double.parseDouble(uniqueValue))
-                        {
-                            X1.add(X.get(j));
-                            y1.add(y.get(j));
-                        }
-                        else
-                        {
-                            X2.add(X.get(j));
-                            y2.add(y.get(j));
-                        }
+                    thresholds[t] = NumberParser.parseDouble(
+                            uniqueValues.get(t));
+                }
+                for (int t = 0; t < thresholds.length; t++)
+                {
+                    double threshold = thresholds[t];
+                    if (isRepeated(thresholds, t))
+                    {// Same split as an earlier candidate
+                        continue;
+                    }
+                    candidatesEvaluated++;
+                    SplitKernels.INSTANCE.partitionStats(xValue, yValue, 
+                            X.size(), threshold, branchStats);
+                    if (!limits.isLargeEnough((int) branchStats[0]) || 
+                            !limits.isLargeEnough((int) branchStats[3]))
+                    {// A branch would have too few data points
+                        continue;
                     }
-                    ArrayList<ArrayList<String>> yi_s = 
-                            new ArrayList<ArrayList<String>>();
-                    yi_s.add(y1);
-                    yi_s.add(y2);
-                    
-                    // Update the parameters when MSE is improving
-                    double newMse = totalMSE(yi_s);
-                    if (newMse < mse && newMse < MSE(y))
-                    {
-                        params.clear();
-                        index = i;
-                        value = Double.parseDouble(uniqueValue);
-                        params.add(index);
-                        params.add(value);
-                        params.add(categories);
-                        params.add(X1);
-                        params.add(y1);
-                        params.add(X2);
-                        params.add(y2);
-                        mse = newMse;
+                    double leftMse = leftMSE(branchStats);
+                    if (!choice.canWin(leftMse))
+                    {// The left branch alone cannot be chosen
+                        continue;
                     }
+                    double[][] childStats = 
+                            {Arrays.copyOfRange(branchStats, 0, 3), 
+                             Arrays.copyOfRange(branchStats, 3, 6)};
+                    choice.add(i, t, threshold, totalMSE(childStats));
                 }
             }
         }
         
+        int best = choice.choose();
+        if (best >= 0)
+        {// Only the chosen split is partitioned
+            int index = choice.features[best];
+            params.add(index);
+            if (categorical[index])
+            {// Sort the categories of the chosen feature again
+                ArrayList<String> uniqueValues = encode(X, index, codes);
+                int[] order = sortByMean(Moments.of(yValue, null, codes, 
+                        uniqueValues.size()), uniqueValues);
+                int split = choice.positions[best];
+                ArrayList<String> categories = 
+                        new ArrayList<String>(order.length);
+                int[] categoryBranch = new int[order.length];
+                int[] codeBranch = new int[order.length];
+                for (int q = 0; q < order.length; q++)
+                {
+                    categories.add(uniqueValues.get(order[q]));
+                    categoryBranch[q] = q < split ? 0 : 1;
+                    codeBranch[order[q]] = categoryBranch[q];
+                }
+                params.add(0.0);
+                params.add(categories);
+                addPartitions(params, X, y, codes, codeBranch);
+                params.add(categoryBranch);
+            }
+            else
+            {
+                params.add(choice.values[best]);
+                params.add(new ArrayList<String>());
+                addPartitions(params, X, y, index, choice.values[best]);
+                params.add(null);
+            }
+            featureOrder.record(index);
+        }
+        
         return params;
     }
     
+    /**
+     * This method gives each category of a feature an int code, in the order
+     * the categories are first seen, in one pass over the data points
+     * 
+     * @param X is the attributes of the data points at current node
+     * @param feature is the index of the feature
+     * @param codes receives the code of each data point
+     * @return the categories, in the same order as diffValues()
+     */
+    public ArrayList<String> encode(ArrayList<String[]> X, int feature, 
+            int[] codes)
+    {
+        ArrayList<String> categories = new ArrayList<String>();
+        HashMap<String, Integer> code = new HashMap<String, Integer>();
+        for (int j = 0; j < X.size(); j++)
+        {
+            String category = X.get(j)[feature];
+            Integer c = code.get(category);
+            if (c == null)
+            {
+                c = categories.size();
+                code.put(category, c);
+                categories.add(category);
+            }
+            codes[j] = c;
+        }
+        
+        return categories;
+    }
+    
+    /**
+     * This method sorts the categories of a feature by the mean target of
+     * their data points. Means within TIE_TOLERANCE of the largest mean of
+     * the feature are a tie, because the mean of a category merged from
+     * several workers may differ in the last bits from the one of a single
+     * process. Each run of tied means is ordered by category name, so the
+     * order does not depend on where the data points are
+     * 
+     * @param categoryStats is the count, mean, and M2 of each category
+     * @param categories is the name of each category
+     * @return the categories in ascending order of their mean
+     */
+    public int[] sortByMean(final double[][] categoryStats, 
+            final List<String> categories)
+    {
+        Integer[] order = new Integer[categoryStats.length];
+        double scale = 0;
+        for (int k = 0; k < order.length; k++)
+        {
+            order[k] = k;
+            scale = Math.max(scale, Math.abs(categoryStats[k][1]));
+        }
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return Double.compare(categoryStats[a][1], 
+                        categoryStats[b][1]);
+            }
+        });
+        
+        double tie = TIE_TOLERANCE * scale;
+        Comparator<Integer> byName = new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return categories.get(a).compareTo(categories.get(b));
+            }
+        };
+        int start = 0;
+        for (int k = 1; k <= order.length; k++)
+        {
+            if (k == order.length || 
+                    categoryStats[order[k]][1] - 
+                    categoryStats[order[k - 1]][1] > tie)
+            {// End of a run of tied means
+                Arrays.sort(order, start, k, byName);
+                start = k;
+            }
+        }
+        
+        int[] sorted = new int[order.length];
+        for (int k = 0; k < order.length; k++)
+        {
+            sorted[k] = order[k];
+        }
+        
+        return sorted;
+    }
+    
+    /**
+     * This method merges the statistics of the upper categories of every
+     * split of the sorted categories, from the last category down
+     * 
+     * @param categoryStats is the count, mean, and M2 of each category
+     * @param order is the categories in ascending order of their mean
+     * @return the statistics of the categories from each position on, with
+     *         an extra row of zeros at the end
+     */
+    public double[][] upperStats(double[][] categoryStats, int[] order)
+    {
+        double[][] upper = new double[order.length + 1][3];
+        for (int p = order.length - 1; p >= 0; p--)
+        {
+            upper[p] = upper[p + 1].clone();
+            Moments.merge(upper[p], categoryStats[order[p]]);
+        }
+        
+        return upper;
+    }
+    
+    /**
+     * This method partitions the data points of a node on a categorical
+     * feature in one pass, each data point going to the branch of its
+     * category code, and adds both partitions to the split parameters
+     * 
+     * @param params is the split parameters
+     * @param X is the attributes of the data points at current node
+     * @param y is the targets of the data points at current node
+     * @param codes is the category code of each data point
+     * @param codeBranch is the branch of each category code
+     */
+    public void addPartitions(ArrayList<Object> params, 
+            ArrayList<String[]> X, ArrayList<String> y, int[] codes, 
+            int[] codeBranch)
+    {
+        ArrayList<String[]> X1 = new ArrayList<String[]>();
+        ArrayList<String> y1 = new ArrayList<String>();
+        ArrayList<String[]> X2 = new ArrayList<String[]>();
+        ArrayList<String> y2 = new ArrayList<String>();
+        for (int j = 0; j < X.size(); j++)
+        {
+            if (codeBranch[codes[j]] == 0)
+            {
+                X1.add(X.get(j));
+                y1.add(y.get(j));
+            }
+            else
+            {
+                X2.add(X.get(j));
+                y2.add(y.get(j));
+            }
+        }
+        params.add(X1);
+        params.add(y1);
+        params.add(X2);
+        params.add(y2);
+    }
+    
+    /**
+     * This method calculates the part of the weighted MSE of a split that
+     * comes from its left branch. It is added up the same way as totalMSE(),
+     * and the right branch can only add to it, so it is a lower bound of the
+     * weighted MSE of the split
+     * 
+     * @param branchStats is the statistics of the left branch followed by
+     *        those of the right branch
+     * @return the weighted error of the left branch
+     */
+    public double leftMSE(double[] branchStats)
+    {
+        double n = branchStats[0] + branchStats[3];
+        if (n == 0)
+        {
+            return 0;
+        }
+        
+        // MSE() only reads the statistics of the left branch
+        return MSE(branchStats) * branchStats[0] / n;
+    }
+    
+    /**
+     * This method checks whether a candidate threshold equals an earlier
+     * one. The split is then the same, and cannot beat the earlier one
+     * 
+     * @param thresholds is the candidate thresholds
+     * @param t is the candidate of interest
+     * @return true if an earlier candidate has the same threshold
+     */
+    public boolean isRepeated(double[] thresholds, int t)
+    {
+        for (int k = 0; k < t; k++)
+        {
+            if (thresholds[k] == thresholds[t])
+            {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * This method partitions the data points of a node on a numeric feature
+     * and adds both partitions to the split parameters
+     * 
+     * @param params is the split parameters
+     * @param X is the attributes of the data points at current node
+     * @param y is the targets of the data points at current node
+     * @param index is the feature to split on
+     * @param value is the value to split on
+     */
+    public void addPartitions(ArrayList<Object> params, 
+            ArrayList<String[]> X, ArrayList<String> y, int index, 
+            double value)
+    {
+        ArrayList<String[]> X1 = new ArrayList<String[]>();
+        ArrayList<String> y1 = new ArrayList<String>();
+        ArrayList<String[]> X2 = new ArrayList<String[]>();
+        ArrayList<String> y2 = new ArrayList<String>();
+        for (int j = 0; j < X.size(); j++)
+        {
+            if (NumberParser.parseDouble(X.get(j)[index]) < value)
+            {
+                X1.add(X.get(j));
+                y1.add(y.get(j));
+            }
+            else
+            {
+                X2.add(X.get(j));
+                y2.add(y.get(j));
+            }
+        }
+        params.add(X1);
+        params.add(y1);
+        params.add(X2);
+        params.add(y2);
+    }
+    
+    /**
+     * This method selects the candidate values of a feature to split on. For
+     * categorical features every category is a candidate. For continuous
+     * features with more than MAX_CANDIDATES unique values, the k-tile
+     * method is used, so there are never more than MAX_CANDIDATES candidates
+     * 
+     * @param uniqueValues is the unique values of the feature at current node
+     * @param categorical is whether the feature is categorical
+     * @return the candidate values to split on
+     */
+    public ArrayList<String> candidateValues(ArrayList<String> uniqueValues,
+            boolean categorical)
+    {
+        if (!categorical && uniqueValues.size() > MAX_CANDIDATES)
+        {// Use the k-tile method to select split threshold for continuous
+            ArrayList<String> temp = new ArrayList<String>();
+            Collections.sort(uniqueValues);
+            for (int j = 1; j <= MAX_CANDIDATES; j++)
+            {// Select points evenly from the attribute to be candidates
+                temp.add(uniqueValues.get(j / (MAX_CANDIDATES + 1)));
+            }
+            uniqueValues = temp;
+        }
+        
+        return uniqueValues;
+    }
+    
     /**
      * This method finds all unique values of an array
      * 
@@ -279,28 +673,69 @@ public class DecisionTreeRegressor
      */
     public double MSE(ArrayList<String> y)
     {
-        // Calculate mean
-        double mean = 0;
-        int n = y.size();
+        return MSE(stats(y));
+    }
+    
+    /**
+     * This method calculates the mean squared error of a node from its count,
+     * mean, and M2 (see the Moments class). Only these statistics are needed,
+     * so the MSE can be calculated without the data points themselves
+     * 
+     * @param stats is the count, mean, and M2 of the node
+     * @return the MSE of the node
+     */
+    public double MSE(double[] stats)
+    {
+        double n = stats[0];
         if (n == 0)
         {
             return 0;
         }
-        for (String value : y)
-        {
-            mean += Double.parseDouble(value);
-        }
-        mean /= n;
         
-        // Calcuate mean squared error
-        double mse = 0;
-        for (String value : y)
+        return stats[2] / n;
+    }
+    
+    /**
+     * This method calculates the count, mean, and M2 of the target values in
+     * a node
+     * 
+     * @param y is the node of interest
+     * @return an array of the count, mean, and M2
+     */
+    public double[] stats(ArrayList<String> y)
+    {
+        return stats(parse(y));
+    }
+    
+    /**
+     * This method calculates the count, mean, and M2 of parsed target values
+     * 
+     * @param yValue is the target values in the node of interest
+     * @return an array of the count, mean, and M2
+     */
+    public double[] stats(double[] yValue)
+    {
+        double[] stats = new double[3];
+        SplitKernels.INSTANCE.moments(yValue, yValue.length, stats);
+        
+        return stats;
+    }
+    
+    /**
+     * This method parses target values into an array of doubles
+     * 
+     * @param y is the target values
+     * @return the parsed target values
+     */
+    public double[] parse(ArrayList<String> y)
+    {
+        double[] yValue = new double[y.size()];
+        for (int i = 0; i < yValue.length; i++)
         {
-            mse += Math.pow((Double.parseDouble(value) - mean), 2);
+            yValue[i] = NumberParser.parseDouble(y.get(i));
         }
-        mse /= n;
         
-        return mse;
+        return yValue;
     }
     
     /**
@@ -310,13 +745,31 @@ public class DecisionTreeRegressor
      * @return the weighted, total MSE of the child nodes
      */
     public double totalMSE(ArrayList<ArrayList<String>> yi_s)
+    {
+        double[][] childStats = new double[yi_s.size()][];
+        for (int i = 0; i < yi_s.size(); i++)
+        {
+            childStats[i] = stats(yi_s.get(i));
+        }
+        
+        return totalMSE(childStats);
+    }
+    
+    /**
+     * This method calculates the weighted MSE of two or more child nodes from
+     * the count, mean, and M2 of each child node
+     * 
+     * @param childStats is the statistics of each child node
+     * @return the weighted, total MSE of the child nodes
+     */
+    public double totalMSE(double[][] childStats)
     {
         double totalMse = 0;
-        int n = 0;
-        for (ArrayList<String> yi : yi_s)
+        double n = 0;
+        for (double[] stats : childStats)
         {
-            totalMse += MSE(yi) * yi.size();
-            n += yi.size();
+            totalMse += MSE(stats) * stats[0];
+            n += stats[0];
         }
         if (n == 0)
         {
@@ -336,15 +789,77 @@ public class DecisionTreeRegressor
      */
     public ArrayList<String> predict(ArrayList<String[]> X)
     {
+        TreeEvents.Predict event = new TreeEvents.Predict();
+        event.begin();
         ArrayList<String> yPredict = new ArrayList<String>();
-        for (String[] x : X)
+        for (int i = 0; i < X.size(); i++)
         {
-            yPredict.add(root.predictOne(x));
+            if (i % TreeMetrics.SAMPLE_INTERVAL != 0)
+            {
+                yPredict.add(root.predictOne(X.get(i), metrics));
+                continue;
+            }
+            long start = System.nanoTime(); // Time a sample of predictions
+            yPredict.add(root.predictOne(X.get(i), metrics));
+            metrics.recordPrediction(System.nanoTime() - start);
         }
+        metrics.recordBatch(X.size());
+        event.end("CART", X.size());
         
         return yPredict;
     }
     
+    /**
+     * This method makes predictions for a view of the test set
+     * 
+     * @param X is the view of the test set
+     * @return an array of predictions for all test data points
+     */
+    public ArrayList<String> predict(DatasetView X)
+    {
+        return predict(X.X());
+    }
+    
+    /**
+     * This method predicts the values of a test set as numbers, without
+     * converting them to strings as predict() does
+     * 
+     * @param X is the test set
+     * @return the predicted values
+     */
+    public double[] predictValues(ArrayList<String[]> X)
+    {
+        TreeEvents.Predict event = new TreeEvents.Predict();
+        event.begin();
+        double[] yPredict = new double[X.size()];
+        for (int i = 0; i < yPredict.length; i++)
+        {
+            if (i % TreeMetrics.SAMPLE_INTERVAL != 0)
+            {
+                yPredict[i] = root.predictValue(X.get(i));
+                continue;
+            }
+            long start = System.nanoTime(); // Time a sample of predictions
+            yPredict[i] = root.predictValue(X.get(i));
+            metrics.recordPrediction(System.nanoTime() - start);
+        }
+        metrics.recordBatch(X.size());
+        event.end("CART", X.size());
+        
+        return yPredict;
+    }
+    
+    /**
+     * This method reports the size of the trained tree
+     * 
+     * @return the number of nodes, the nodes at each depth, and an estimate
+     *         of the heap retained by the tree
+     */
+    public TreeFootprint footprint()
+    {
+        return TreeFootprint.measure(root);
+    }
+    
     /**
      * This method performs checks whether the MSE of a node has reached the
      * cut-off threshold predetermined. If so, early stopping is performed
@@ -354,7 +869,18 @@ public class DecisionTreeRegressor
      */
     public boolean earlyStopping(ArrayList<String> y)
     {
-       if (errorThreshold > MSE(y))
+        return earlyStopping(MSE(y));
+    }
+    
+    /**
+     * This method checks whether an MSE has reached the cut-off threshold
+     * 
+     * @param mse is the MSE of the node of interest
+     * @return true to indicate that early stopping should take place
+     */
+    public boolean earlyStopping(double mse)
+    {
+       if (errorThreshold > mse)
         {
             return true;
         }
@@ -363,4 +889,375 @@ public class DecisionTreeRegressor
             return false;
         }
     }
+    
+    /**
+     * This method fits the regressor on a sparse training set. All features
+     * of a sparse matrix are numeric
+     * 
+     * @param X is the attributes of the training set
+     * @param y is the targets of the training set
+     */
+    public void fit(SparseMatrix X, ArrayList<String> y)
+    {
+        categorical = new boolean[X.numCols];
+        double[] yValue = new double[y.size()];
+        for (int i = 0; i < yValue.length; i++)
+        {
+            yValue[i] = NumberParser.parseDouble(y.get(i));
+        }
+        
+        long start = System.nanoTime();
+        root = buildTree(X, yValue);
+        metrics.recordFit(System.nanoTime() - start, root);
+    }
+    
+    /**
+     * This method builds the tree best-first on a sparse training set, in the
+     * same way as for a dense training set
+     * 
+     * @param X is the attributes of the training set
+     * @param yValue is the target value of each data point
+     * @return the root node of the tree
+     */
+    public Node buildTree(SparseMatrix X, double[] yValue)
+    {
+        TreeEvents.BuildTree event = new TreeEvents.BuildTree();
+        event.start();
+        int[] position = new int[X.numCols];
+        Arrays.fill(position, -1);
+        int[] rows = new int[X.numRows];
+        for (int i = 0; i < rows.length; i++)
+        {
+            rows[i] = i;
+        }
+        
+        PriorityQueue<SplitCandidate> frontier = 
+                new PriorityQueue<SplitCandidate>();
+        Node root = newLeaf(X, yValue, rows, 0, 
+                limits.maxLeaves > 1 ? frontier : null, position);
+        int leaves = 1;
+        
+        while (!frontier.isEmpty())
+        {
+            SplitCandidate candidate = frontier.poll();
+            Node node = candidate.node;
+            ArrayList<Object> params = candidate.params;
+            if (leaves + 1 > limits.maxLeaves)
+            {// The split would make too many leaves, keep the leaf
+                int[] nodeRows = (int[]) params.get(6);
+                makeLeaf(node, nodeRows.length, exactSum(yValue, nodeRows));
+                continue;
+            }
+            
+            node.column = (int) params.get(0);
+            node.value = (double) params.get(1);
+            leaves++;
+        // Every split adds a leaf, so once the tree has as many leaves as
+        // allowed the children are never split, and their split is not searched
+        PriorityQueue<SplitCandidate> childFrontier = 
+                leaves < limits.maxLeaves ? frontier : null;
+            for (int i = 3; i < 5; i++)
+            {
+                node.addChild(newLeaf(X, yValue, (int[]) params.get(i), 
+                        candidate.depth + 1, childFrontier, position));
+            }
+        }
+        event.end("CART", X.numRows, X.numCols, root);
+        
+        return root;
+    }
+    
+    /**
+     * This method creates a node for a subset of rows of a sparse training 
+     * set. The node is added to the frontier when it can still be split, 
+     * otherwise it becomes a leaf
+     * 
+     * @param X is the attributes of the training set
+     * @param yValue is the target value of each data point
+     * @param rows is the rows in the node
+     * @param depth is the depth of the node
+     * @param frontier is the leaves that can be split, null if the tree has
+     *        as many leaves as allowed
+     * @param position is scratch space for SparseMatrix.slice()
+     * @return the new node
+     */
+    public Node newLeaf(SparseMatrix X, double[] yValue, int[] rows, 
+            int depth, PriorityQueue<SplitCandidate> frontier, 
+            int[] position)
+    {
+        Node node = new Node();
+        double[] stats = stats(yValue, rows);
+        boolean pure = true;
+        for (int row : rows)
+        {
+            pure &= yValue[row] == yValue[rows[0]];
+        }
+        
+        if (frontier != null && !pure && !earlyStopping(MSE(stats)) 
+                && limits.canSplit(rows.length, depth))
+        {
+            TreeEvents.SplitSearch event = new TreeEvents.SplitSearch();
+            event.start();
+            ArrayList<Object> params = chooseSplitIndex(X, yValue, rows, 
+                    stats, position);
+            event.end("CART", depth, rows.length, featuresScanned, 
+                    candidatesEvaluated, 
+                    params.isEmpty() ? -1 : (int) params.get(0));
+            if (!params.isEmpty())
+            {
+                params.add(rows);
+                frontier.add(new SplitCandidate(node, depth, null, params, 
+                        (double) params.get(5)));
+                return node;
+            }
+        }
+        
+        makeLeaf(node, rows.length, exactSum(yValue, rows));
+        
+        return node;
+    }
+    
+    /**
+     * This method selects the feature and value to split on for a subset of
+     * rows of a sparse training set. Only the nonzero values of each column
+     * are visited. The count, mean, and M2 of the zeros, and of the right
+     * branch of each candidate, are those of the node without those of the
+     * nonzero values, and of the left branch. The candidate values come from
+     * candidateValues() on the unique values in the order they are first
+     * seen, and the split is chosen among them by the SplitChoice class as
+     * for a dense training set, so both give the same tree when the values
+     * of the dense rows are written as by Double.toString(). The statistics
+     * of the left branch of every candidate are added up in one sweep over
+     * the sorted values, into buffers shared by all columns
+     * 
+     * @param X is the attributes of the training set
+     * @param yValue is the target value of each data point
+     * @param rows is the rows in the node, in ascending order
+     * @param stats is the count, mean, and M2 of the node
+     * @param position is scratch space for SparseMatrix.slice()
+     * @return an array of the feature, value, categories, the rows of both
+     *         branches, and the weighted decrease of MSE of the split
+     */
+    public ArrayList<Object> chooseSplitIndex(SparseMatrix X, double[] yValue,
+            int[] rows, double[] stats, int[] position)
+    {
+        ArrayList<Object> params = new ArrayList<Object>();
+        int n = rows.length;
+        double parentMse = MSE(stats);
+        SplitChoice choice = new SplitChoice(parentMse);
+        featuresScanned = 0;
+        candidatesEvaluated = 0;
+        
+        SparseMatrix.ColumnSlice slice = X.slice(rows, position);
+        int maxValues = 0;
+        for (int c = 0; c < slice.columns.length; c++)
+        {
+            maxValues = Math.max(maxValues, 
+                    slice.start[c + 1] - slice.start[c]);
+        }
+        long[] order = new long[maxValues + 1];
+        double[] nonzeroStats = new double[3];
+        double[] zeroStats = new double[3];
+        double[] left = new double[3];
+        double[][] leftStats = new double[MAX_CANDIDATES][3];
+        int[] ascending = new int[MAX_CANDIDATES];
+        double[][] childStats = {null, new double[3]};
+        
+        for (int c = 0; c < slice.columns.length; c++)
+        {
+            int from = slice.start[c];
+            int to = slice.start[c + 1];
+            ArrayList<String> uniqueValues = SparseMatrix.uniqueValues(slice,
+                    c, rows, order);
+            if (uniqueValues.size() == 1)
+            {
+                continue;
+            }
+            uniqueValues = candidateValues(uniqueValues, false);
+            featuresScanned++;
+            
+            // Statistics of the zeros
+            Arrays.fill(nonzeroStats, 0);
+            for (int k = from; k < to; k++)
+            {
+                Moments.add(nonzeroStats, yValue[slice.rows[k]]);
+            }
+            Moments.remove(stats, nonzeroStats, zeroStats);
+            
+            // Candidates in ascending order, by insertion sort
+            int m = uniqueValues.size();
+            double[] thresholds = new double[m];
+            for (int t = 0; t < m; t++)
+            {
+                thresholds[t] = NumberParser.parseDouble(uniqueValues.get(t));
+                int s = t;
+                for (; s > 0 && Double.compare(thresholds[ascending[s - 1]], 
+                        thresholds[t]) > 0; s--)
+                {
+                    ascending[s] = ascending[s - 1];
+                }
+                ascending[s] = t;
+            }
+            
+            // Sweep the sorted values once. The left branch of a candidate
+            // has the values less than it, the zeros when it is positive
+            Arrays.fill(left, 0);
+            int k = from;
+            boolean zeroDone = zeroStats[0] == 0;
+            for (int s = 0; s < m; s++)
+            {
+                int t = ascending[s];
+                double threshold = thresholds[t];
+                if (Double.isNaN(threshold))
+                {// Nothing is less than NaN
+                    Arrays.fill(leftStats[t], 0);
+                    continue;
+                }
+                for (; k < to && slice.values[k] < threshold; k++)
+                {
+                    Moments.add(left, yValue[slice.rows[k]]);
+                }
+                if (!zeroDone && 0 < threshold)
+                {
+                    Moments.merge(left, zeroStats);
+                    zeroDone = true;
+                }
+                System.arraycopy(left, 0, leftStats[t], 0, 3);
+            }
+            
+            // Compare the candidates in the order of candidateValues()
+            for (int t = 0; t < m; t++)
+            {
+                if (isRepeated(thresholds, t))
+                {// Same split as an earlier candidate
+                    continue;
+                }
+                int nLeft = (int) leftStats[t][0];
+                if (!limits.isLargeEnough(nLeft) || 
+                        !limits.isLargeEnough(n - nLeft))
+                {// A branch would have too few data points
+                    continue;
+                }
+                candidatesEvaluated++;
+                childStats[0] = leftStats[t];
+                Moments.remove(stats, leftStats[t], childStats[1]);
+                
+                choice.add(slice.columns[c], t, thresholds[t], 
+                        totalMSE(childStats));
+            }
+        }
+        
+        int best = choice.choose();
+        if (best == -1)
+        {
+            return params;
+        }
+        
+        // Partition the rows of the winning split only
+        int index = choice.features[best];
+        double value = choice.values[best];
+        int nLeft = 0;
+        for (int row : rows)
+        {
+            if (X.get(row, index) < value)
+            {
+                nLeft++;
+            }
+        }
+        int[] rows1 = new int[nLeft];
+        int[] rows2 = new int[n - nLeft];
+        int n1 = 0;
+        int n2 = 0;
+        for (int row : rows)
+        {
+            if (X.get(row, index) < value)
+            {
+                rows1[n1++] = row;
+            }
+            else
+            {
+                rows2[n2++] = row;
+            }
+        }
+        
+        // Weighted decrease of MSE from the branches, as in newLeaf()
+        childStats[0] = stats(yValue, rows1);
+        childStats[1] = stats(yValue, rows2);
+        params.add(index);
+        params.add(value);
+        params.add(new ArrayList<String>());
+        params.add(rows1);
+        params.add(rows2);
+        params.add((parentMse - totalMSE(childStats)) * n);
+        
+        return params;
+    }
+    
+    /**
+     * This method calculates the count, mean, and M2 of the target values of
+     * a subset of rows with the split kernels, the same way as for the rows
+     * of a dense training set
+     * 
+     * @param yValue is the target value of each data point
+     * @param rows is the rows of interest
+     * @return an array of the count, mean, and M2
+     */
+    public double[] stats(double[] yValue, int[] rows)
+    {
+        double[] values = new double[rows.length];
+        for (int i = 0; i < rows.length; i++)
+        {
+            values[i] = yValue[rows[i]];
+        }
+        
+        return stats(values);
+    }
+    
+    /**
+     * This method adds up the target values of a subset of rows without 
+     * rounding
+     * 
+     * @param yValue is the target value of each data point
+     * @param rows is the rows of interest
+     * @return the exact sum of the target values
+     */
+    public BigDecimal exactSum(double[] yValue, int[] rows)
+    {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int row : rows)
+        {
+            sum = sum.add(new BigDecimal(yValue[row]));
+        }
+        
+        return sum;
+    }
+    
+    /**
+     * This method calls the predictOne() method at the root node of the 
+     * trained tree for each row of a sparse test set
+     * 
+     * @param X is the test set
+     * @return an array of predictions for all test data points
+     */
+    public ArrayList<String> predict(SparseMatrix X)
+    {
+        TreeEvents.Predict event = new TreeEvents.Predict();
+        event.begin();
+        ArrayList<String> yPredict = new ArrayList<String>();
+        for (int i = 0; i < X.numRows; i++)
+        {
+            if (i % TreeMetrics.SAMPLE_INTERVAL != 0)
+            {
+                yPredict.add(root.predictOne(X, i));
+                continue;
+            }
+            long start = System.nanoTime(); // Time a sample of predictions
+            yPredict.add(root.predictOne(X, i));
+            metrics.recordPrediction(System.nanoTime() - start);
+        }
+        metrics.recordBatch(X.numRows);
+        event.end("CART", X.numRows);
+        
+        return yPredict;
+    }
 }
@@ -0,0 +1,869 @@
+/**
+ * This class implements the coordinator of data-parallel training. The rows
+ * of a dataset are divided among several worker processes implemented by the
+ * TrainingWorker class. For each node, the coordinator collects the split
+ * statistics computed by the workers over local sockets, picks the split with
+ * the splitting criterion of the DecisionTreeClassifier class (gain ratio) or
+ * the DecisionTreeRegressor class (MSE), and broadcasts it to the workers.
+ * Candidates are evaluated in the same order as in chooseSplitIndex(), so the
+ * tree is the same as the one built by a single process
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.math.*;
+import java.net.*;
+import java.util.*;
+
+public class DistributedTrainer
+{
+    // Messages sent from the coordinator to the workers
+    static final int INIT = 1;
+    static final int CLASSES = 2;
+    static final int DESCRIBE = 3;
+    static final int EVALUATE = 4;
+    static final int SPLIT = 5;
+    static final int LEAF = 6;
+    static final int SHUTDOWN = 7;
+
+    ServerSocket server; // Socket the workers connect to
+    DataInputStream[] in; // Replies from each worker, in shard order
+    DataOutputStream[] out; // Requests to each worker, in shard order
+    Socket[] sockets; // Connection to each worker
+    int numFeatures; // Number of features in the dataset
+    String fileName; // Name of the dataset
+    boolean[] inferred; // Whether each feature is categorical in any shard
+
+    DecisionTreeClassifier dtc; // Classifier being trained, if any
+    DecisionTreeRegressor dtr; // Regressor being trained, if any
+    boolean[] categorical; // Boolean array of whether feature is categorical
+    int numClasses; // Number of classes (classification)
+    int nextNodeId; // Identifier of the next node to be created
+    GrowthLimits limits = new GrowthLimits(); // Limits on the tree size
+
+    /**
+     * This class holds a node whose statistics have not been gathered yet
+     */
+    static class PendingNode
+    {
+        Node node;  // Node to be filled in
+        int nodeId; // Identifier of the node known by the workers
+        int depth;  // Depth of the node
+
+        PendingNode(Node node, int nodeId, int depth)
+        {
+            this.node = node;
+            this.nodeId = nodeId;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * This constructor opens the socket the workers connect to
+     *
+     * @param port is the port to listen on, 0 to pick a free port
+     * @throws IOException
+     */
+    public DistributedTrainer(int port) throws IOException
+    {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * This method returns the port the workers should connect to
+     *
+     * @return the port of the coordinator
+     */
+    public int getPort()
+    {
+        return server.getLocalPort();
+    }
+
+    /**
+     * This method waits until all workers have connected. Workers are ordered
+     * by the index of their shard. Each worker reports which features are
+     * categorical in the schema of its shard, and an empty shard reports no
+     * features
+     *
+     * @param workers is the number of workers
+     * @throws IOException
+     */
+    public void accept(int workers) throws IOException
+    {
+        sockets = new Socket[workers];
+        in = new DataInputStream[workers];
+        out = new DataOutputStream[workers];
+        inferred = new boolean[0];
+        for (int i = 0; i < workers; i++)
+        {
+            Socket socket = server.accept();
+            socket.setTcpNoDelay(true);
+            DataInputStream din = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            int shard = din.readInt();
+            int shardFeatures = din.readInt(); // 0 for an empty shard
+            fileName = din.readUTF();
+            if (inferred.length < shardFeatures)
+            {
+                inferred = Arrays.copyOf(inferred, shardFeatures);
+            }
+            for (int j = 0; j < shardFeatures; j++)
+            {// A feature is categorical if any shard has a non-number
+                inferred[j] |= din.readBoolean();
+            }
+            sockets[shard] = socket;
+            in[shard] = din;
+            out[shard] = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+        }
+        numFeatures = inferred.length;
+    }
+
+    /**
+     * This method trains an ID3 classifier on the rows owned by the workers
+     *
+     * @return the trained classifier
+     * @throws IOException
+     */
+    public DecisionTreeClassifier fitClassifier() throws IOException
+    {
+        dtc = new DecisionTreeClassifier();
+        dtc.limits = limits;
+        dtr = null;
+        categorical = inferred.clone();
+        dtc.categorical = categorical;
+        init(true);
+
+        // Index the class labels of all shards
+        ArrayList<String> labels = new ArrayList<String>();
+        for (DataInputStream din : in)
+        {
+            for (String label : TrainingWorker.readStrings(din))
+            {
+                if (!labels.contains(label))
+                {
+                    labels.add(label);
+                }
+            }
+        }
+        dtc.classIndex = dtc.indexClasses(labels);
+        numClasses = dtc.classIndex.size();
+        String[] classes = new String[numClasses];
+        for (Map.Entry<String, Integer> pair : dtc.classIndex.entrySet())
+        {
+            classes[pair.getValue()] = pair.getKey();
+        }
+        for (DataOutputStream dout : out)
+        {
+            dout.writeInt(CLASSES);
+            TrainingWorker.writeStrings(dout, Arrays.asList(classes));
+            dout.flush();
+        }
+
+        dtc.root = buildTree(classes);
+        return dtc;
+    }
+
+    /**
+     * This method trains a CART regressor on the rows owned by the workers
+     *
+     * @param errorThreshold is the cut-off threshold for early stopping
+     * @return the trained regressor
+     * @throws IOException
+     */
+    public DecisionTreeRegressor fitRegressor(double errorThreshold)
+            throws IOException
+    {
+        dtr = new DecisionTreeRegressor(errorThreshold);
+        dtr.limits = limits;
+        dtc = null;
+        categorical = inferred.clone();
+        dtr.categorical = categorical;
+        init(false);
+        for (DataInputStream din : in)
+        {
+            TrainingWorker.readStrings(din);
+        }
+
+        dtr.root = buildTree(null);
+        return dtr;
+    }
+
+    /**
+     * This method tells the workers to place all of their rows in the root
+     * node of a new tree
+     *
+     * @param classification is true for ID3, false for CART
+     * @throws IOException
+     */
+    public void init(boolean classification) throws IOException
+    {
+        nextNodeId = 0;
+        for (DataOutputStream dout : out)
+        {
+            dout.writeInt(INIT);
+            dout.writeBoolean(classification);
+            dout.writeInt(numFeatures);
+            for (boolean isCategorical : categorical)
+            {
+                dout.writeBoolean(isCategorical);
+            }
+            dout.flush();
+        }
+    }
+
+    /**
+     * This method builds the tree depth first with an explicit stack, so the
+     * depth of the tree is not limited by the depth of the call stack. Nodes
+     * are built in the same order as by recursion: a node, then the subtree
+     * of each of its children in turn
+     *
+     * @param classes is the class labels in order of their index
+     * @return the root node of the tree
+     * @throws IOException
+     */
+    public Node buildTree(String[] classes) throws IOException
+    {
+        Node root = new Node();
+        ArrayDeque<PendingNode> stack = new ArrayDeque<PendingNode>();
+        stack.push(new PendingNode(root, nextNodeId++, 0));
+        while (!stack.isEmpty())
+        {
+            PendingNode pending = stack.pop();
+            int firstChild = buildNode(pending.node, pending.nodeId, 
+                    pending.depth, classes);
+            for (int i = pending.node.children.size() - 1; i >= 0; i--)
+            {// The first child is built first
+                stack.push(new PendingNode(pending.node.children.get(i),
+                        firstChild + i, pending.depth + 1));
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * This method builds one node. The statistics of the node are gathered
+     * from the workers, and the split is chosen by the chooseSplit() method.
+     * Each worker sends at most two unique targets, enough to tell whether
+     * the node is pure, and a summary of the values of each feature that
+     * yields the same candidate values as all of its values (see the
+     * describe() method of the TrainingWorker class). The depth, minimum split size, and minimum leaf size limits are applied
+     * as in the classifier and the regressor. The maximum number of leaves is
+     * not, since it depends on best-first order. The children of a split
+     * node are added to it empty, to be built by the caller
+     *
+     * @param node is the node to be built
+     * @param nodeId is the identifier of the node known by the workers
+     * @param depth is the depth of the node
+     * @param classes is the class labels in order of their index
+     * @return the identifier of the first child, or -1 for a leaf
+     * @throws IOException
+     */
+    public int buildNode(Node node, int nodeId, int depth, 
+            String[] classes) throws IOException
+    {
+        broadcast(DESCRIBE, nodeId);
+
+        // Gather the statistics of the targets and the feature summaries
+        int[] classCount = new int[numClasses];
+        double[] stats = new double[3];
+        LinkedHashSet<String> targets = new LinkedHashSet<String>();
+        ArrayList<LinkedHashSet<String>> uniqueValues =
+                new ArrayList<LinkedHashSet<String>>();
+        for (int i = 0; i < numFeatures; i++)
+        {
+            uniqueValues.add(new LinkedHashSet<String>());
+        }
+        for (DataInputStream din : in)
+        {
+            int count = din.readInt();
+            if (dtc != null)
+            {
+                stats[0] += count;
+                for (int c = 0; c < numClasses; c++)
+                {
+                    classCount[c] += din.readInt();
+                }
+            }
+            else
+            {// Merge the count, mean, and M2 of the shards
+                Moments.merge(stats, new double[] {count, din.readDouble(),
+                        din.readDouble()});
+                targets.addAll(TrainingWorker.readStrings(din));
+            }
+            for (int i = 0; i < numFeatures; i++)
+            {
+                uniqueValues.get(i).addAll(TrainingWorker.readStrings(din));
+            }
+        }
+
+        // Check whether impurity = 0 or the early stopping threshold is met
+        boolean stop;
+        if (dtc != null)
+        {
+            int numLabels = 0;
+            for (int count : classCount)
+            {
+                if (count > 0)
+                {
+                    numLabels++;
+                }
+            }
+            stop = numLabels == 1;
+        }
+        else
+        {
+            stop = targets.size() == 1 || dtr.earlyStopping(dtr.MSE(stats));
+        }
+        stop = stop || !limits.canSplit((int) stats[0], depth);
+
+        ArrayList<String> branches = new ArrayList<String>();
+        if (stop || !chooseSplit(node, branches, nodeId, classCount, stats,
+                uniqueValues))
+        {// Run out of features, impurity = 0, or early stopping
+            broadcast(LEAF, nodeId);
+            if (dtc != null)
+            {
+                HashMap<String, Integer> leafCount =
+                        new HashMap<String, Integer>();
+                for (int c = 0; c < numClasses; c++)
+                {
+                    if (classCount[c] > 0)
+                    {
+                        leafCount.put(classes[c], classCount[c]);
+                    }
+                }
+                dtc.makeLeaf(node, leafCount);
+            }
+            else
+            {// The exact sums of the shards give the mean of the leaf
+                BigDecimal sum = BigDecimal.ZERO;
+                for (DataInputStream din : in)
+                {
+                    sum = sum.add(new BigDecimal(din.readUTF()));
+                }
+                dtr.makeLeaf(node, stats[0], sum);
+            }
+            return -1;
+        }
+
+        int numChildren = dtc != null && node.categorical ?
+                branches.size() : 2;
+
+        // Tell the workers how to partition their rows
+        int firstChild = nextNodeId;
+        nextNodeId += numChildren;
+        for (DataOutputStream dout : out)
+        {
+            dout.writeInt(SPLIT);
+            dout.writeInt(nodeId);
+            dout.writeInt(node.column);
+            dout.writeDouble(node.value);
+            TrainingWorker.writeStrings(dout, branches);
+            dout.writeInt(firstChild);
+            dout.writeInt(numChildren);
+            dout.flush();
+        }
+
+        for (int i = 0; i < numChildren; i++)
+        {
+            node.addChild(new Node());
+        }
+
+        return firstChild;
+    }
+
+    /**
+     * This method selects the feature and value to split on. The candidate
+     * values of each feature are chosen as in the chooseSplitIndex() method,
+     * the workers return the statistics of each branch, and the candidates
+     * are compared with gain ratio (ID3) or chosen by MSE with the
+     * SplitChoice class (CART)
+     *
+     * @param node is the node whose feature, value, and categories are set
+     * @param splitBranches is filled with the categories that define the
+     *        branches
+     * @param nodeId is the identifier of the node known by the workers
+     * @param classCount is the class counts of the node (classification)
+     * @param stats is the count, mean, and M2 (regression)
+     * @param uniqueValues is the summary of the values of each feature in
+     *        the node sent by the workers
+     * @return true if a split is found, false otherwise
+     * @throws IOException
+     */
+    public boolean chooseSplit(Node node, ArrayList<String> splitBranches,
+            int nodeId, int[] classCount, double[] stats,
+            ArrayList<LinkedHashSet<String>> uniqueValues) throws IOException
+    {
+        // Send the candidate values of each feature to the workers
+        ArrayList<ArrayList<String>> candidates =
+                new ArrayList<ArrayList<String>>();
+        for (int i = 0; i < numFeatures; i++)
+        {
+            ArrayList<String> values =
+                    new ArrayList<String>(uniqueValues.get(i));
+            if (values.size() == 1)
+            {
+                values.clear();
+            }
+            else if (dtc != null)
+            {
+                values = dtc.candidateValues(values, categorical[i]);
+            }
+            else
+            {
+                values = dtr.candidateValues(values, categorical[i]);
+            }
+            candidates.add(values);
+        }
+        for (DataOutputStream dout : out)
+        {
+            dout.writeInt(EVALUATE);
+            dout.writeInt(nodeId);
+            for (ArrayList<String> values : candidates)
+            {
+                TrainingWorker.writeStrings(dout, values);
+            }
+            dout.flush();
+        }
+
+        // Read the statistics of each branch, combining all workers
+        ArrayList<ArrayList<double[][]>> branchStats =
+                new ArrayList<ArrayList<double[][]>>();
+        for (int w = 0; w < in.length; w++)
+        {
+            for (int i = 0; i < numFeatures; i++)
+            {
+                if (w == 0)
+                {
+                    branchStats.add(new ArrayList<double[][]>());
+                }
+                int numCandidates = candidates.get(i).size();
+                for (int j = 0; j < numCandidates; j++)
+                {
+                    int numBranches = 2;
+                    int width = dtc != null ? numClasses : 3;
+                    if (categorical[i])
+                    {// Statistics of each category, read one at a time
+                        numBranches = 1;
+                    }
+                    if (w == 0)
+                    {
+                        branchStats.get(i).add(new double[numBranches][width]);
+                    }
+                    double[][] branches = branchStats.get(i).get(j);
+                    for (double[] branch : branches)
+                    {
+                        if (dtc == null)
+                        {// Merge the count, mean, and M2 of the shards
+                            Moments.merge(branch, new double[] {
+                                    in[w].readDouble(), in[w].readDouble(),
+                                    in[w].readDouble()});
+                            continue;
+                        }
+                        for (int k = 0; k < width; k++)
+                        {
+                            branch[k] += in[w].readInt();
+                        }
+                    }
+                }
+            }
+        }
+
+        int index = -1;
+        double value = 0;
+        ArrayList<String> categories = new ArrayList<String>();
+        ArrayList<String> branches = new ArrayList<String>();
+        int[] categoryBranch = null;
+        double gainRatio = 0;
+        SplitChoice choice = dtr != null ? new SplitChoice(dtr.MSE(stats))
+                : null;
+
+        for (int i = 0; i < numFeatures; i++)
+        {
+            ArrayList<String> values = candidates.get(i);
+            if (values.isEmpty())
+            {
+                continue;
+            }
+
+            if (dtc != null && categorical[i])
+            {// For categorical features, each category has its own branch
+                int[][] childCounts = new int[values.size()][];
+                boolean largeEnough = true;
+                for (int j = 0; j < values.size(); j++)
+                {
+                    childCounts[j] = toCounts(branchStats.get(i).get(j)[0]);
+                    largeEnough &= 
+                            limits.isLargeEnough(dtc.size(childCounts[j]));
+                }
+                if (!largeEnough)
+                {// A branch would have too few data points
+                    continue;
+                }
+                double newGainRatio = dtc.gainRatio(classCount, childCounts);
+                if (newGainRatio > gainRatio)
+                {
+                    index = i;
+                    value = 0;
+                    categories = values;
+                    branches = values;
+                    gainRatio = newGainRatio;
+                }
+                continue;
+            }
+            if (categorical[i])
+            {// Sweep the categories sorted by mean, as the regressor does
+                double[][] categoryStats = new double[values.size()][];
+                for (int j = 0; j < values.size(); j++)
+                {
+                    categoryStats[j] = branchStats.get(i).get(j)[0];
+                }
+                int[] order = dtr.sortByMean(categoryStats, values);
+                double[][] upper = dtr.upperStats(categoryStats, order);
+                double[] lower = new double[3];
+                for (int p = 1; p < order.length; p++)
+                {
+                    Moments.merge(lower, categoryStats[order[p - 1]]);
+                    if (!limits.isLargeEnough((int) lower[0]) || 
+                            !limits.isLargeEnough((int) upper[p][0]))
+                    {// A branch would have too few data points
+                        continue;
+                    }
+                    choice.add(i, p, 0, 
+                            dtr.totalMSE(new double[][] {lower, upper[p]}));
+                }
+                continue;
+            }
+
+            for (int j = 0; j < values.size(); j++)
+            {
+                double[][] split = branchStats.get(i).get(j);
+                if (dtc != null)
+                {
+                    int[][] childCounts = {toCounts(split[0]),
+                            toCounts(split[1])};
+                    if (!limits.isLargeEnough(dtc.size(childCounts[0])) || 
+                            !limits.isLargeEnough(dtc.size(childCounts[1])))
+                    {// A branch would have too few data points
+                        continue;
+                    }
+                    double newGainRatio = dtc.gainRatio(classCount,
+                            childCounts);
+                    if (newGainRatio > gainRatio)
+                    {
+                        index = i;
+                        value = NumberParser.parseDouble(values.get(j));
+                        branches = new ArrayList<String>();
+                        gainRatio = newGainRatio;
+                    }
+                }
+                else
+                {
+                    if (!limits.isLargeEnough((int) split[0][0]) || 
+                            !limits.isLargeEnough((int) split[1][0]))
+                    {// A branch would have too few data points
+                        continue;
+                    }
+                    choice.add(i, j, NumberParser.parseDouble(values.get(j)),
+                            dtr.totalMSE(split));
+                }
+            }
+        }
+        
+        int best = choice != null ? choice.choose() : -1;
+        if (best >= 0)
+        {// The split chosen among all candidates (CART)
+            index = choice.features[best];
+            value = choice.values[best];
+            if (categorical[index])
+            {
+                ArrayList<String> values = candidates.get(index);
+                int[] order = sortByMean(branchStats.get(index), values);
+                int split = choice.positions[best];
+                categoryBranch = new int[order.length];
+                for (int q = 0; q < order.length; q++)
+                {
+                    categories.add(values.get(order[q]));
+                    categoryBranch[q] = q < split ? 0 : 1;
+                    if (q >= split)
+                    {
+                        branches.add(values.get(order[q]));
+                    }
+                }
+            }
+        }
+
+        if (index == -1)
+        {
+            return false;
+        }
+
+        node.column = index;
+        node.value = value;
+        node.categorical = categorical[index];
+        if (node.categorical)
+        {
+            node.categories = categories;
+            node.categoryBranch = categoryBranch;
+        }
+        splitBranches.addAll(branches);
+
+        return true;
+    }
+
+    /**
+     * This method sorts the categories of a feature by the mean target of
+     * their data points, as the regressor does
+     *
+     * @param categoryStats is the count, mean, and M2 of each category, each
+     *        in an array of its own
+     * @param categories is the name of each category
+     * @return the categories in ascending order of their mean
+     */
+    public int[] sortByMean(ArrayList<double[][]> categoryStats,
+            ArrayList<String> categories)
+    {
+        double[][] stats = new double[categoryStats.size()][];
+        for (int j = 0; j < stats.length; j++)
+        {
+            stats[j] = categoryStats.get(j)[0];
+        }
+
+        return dtr.sortByMean(stats, categories);
+    }
+
+    /**
+     * This method converts class counts received as doubles to integers
+     *
+     * @param counts is the class counts as doubles
+     * @return the class counts as integers
+     */
+    public int[] toCounts(double[] counts)
+    {
+        int[] classCount = new int[counts.length];
+        for (int i = 0; i < counts.length; i++)
+        {
+            classCount[i] = (int) counts[i];
+        }
+
+        return classCount;
+    }
+
+    /**
+     * This method sends a message about a node to all workers
+     *
+     * @param message is the type of the message
+     * @param nodeId is the identifier of the node
+     * @throws IOException
+     */
+    public void broadcast(int message, int nodeId) throws IOException
+    {
+        for (DataOutputStream dout : out)
+        {
+            dout.writeInt(message);
+            dout.writeInt(nodeId);
+            dout.flush();
+        }
+    }
+
+    /**
+     * This method shuts down the workers and closes all connections
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        for (int i = 0; i < sockets.length; i++)
+        {
+            out[i].writeInt(SHUTDOWN);
+            out[i].flush();
+            sockets[i].close();
+        }
+        server.close();
+    }
+
+    /**
+     * This method starts worker processes on the local machine. Each worker
+     * runs in its own JVM with the same class path as the current one
+     *
+     * @param filePath is the path of the data file
+     * @param port is the port of the coordinator
+     * @param workers is the number of workers
+     * @return the worker processes
+     * @throws IOException
+     */
+    public static Process[] launchWorkers(String filePath, int port,
+            int workers) throws IOException
+    {
+        String java = System.getProperty("java.home") + File.separator +
+                "bin" + File.separator + "java";
+        Process[] processes = new Process[workers];
+        for (int i = 0; i < workers; i++)
+        {
+            processes[i] = new ProcessBuilder(java, "-cp",
+                    System.getProperty("java.class.path"), "TrainingWorker",
+                    "localhost", Integer.toString(port), filePath,
+                    Integer.toString(i), Integer.toString(workers))
+                    .inheritIO().start();
+        }
+
+        return processes;
+    }
+
+    /**
+     * This method checks whether two trees have the same structure, splits,
+     * and predicted values
+     *
+     * @param a is the root node of the first tree
+     * @param b is the root node of the second tree
+     * @return true if the trees are the same
+     */
+    public static boolean sameTree(Node a, Node b)
+    {
+        ArrayDeque<Node> stack = new ArrayDeque<Node>();
+        stack.push(b);
+        stack.push(a);
+        while (!stack.isEmpty())
+        {// Compare pairs of nodes without recursion, as trees can be deep
+            a = stack.pop();
+            b = stack.pop();
+            if (a.isLeaf != b.isLeaf || 
+                    a.children.size() != b.children.size())
+            {
+                return false;
+            }
+            if (a.isLeaf)
+            {
+                if (!a.leafName().equals(b.leafName()))
+                {
+                    return false;
+                }
+                continue;
+            }
+            if (a.column != b.column || a.value != b.value ||
+                    a.categorical != b.categorical ||
+                    !a.categories.equals(b.categories) ||
+                    !Arrays.equals(a.categoryBranch, b.categoryBranch))
+            {
+                return false;
+            }
+            for (int i = a.children.size() - 1; i >= 0; i--)
+            {
+                stack.push(b.children.get(i));
+                stack.push(a.children.get(i));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * This method trains a tree with several worker processes on the local
+     * machine
+     *
+     * @param filePath is the path of the data file
+     * @param workers is the number of workers
+     * @param classification is true for ID3, false for CART
+     * @param threshold is the early stopping threshold (CART)
+     * @return the root node of the tree
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static Node trainDistributed(String filePath, int workers,
+            boolean classification, double threshold)
+            throws IOException, InterruptedException
+    {
+        DistributedTrainer trainer = new DistributedTrainer(0);
+        Process[] processes = launchWorkers(filePath, trainer.getPort(),
+                workers);
+        trainer.accept(workers);
+
+        Node root;
+        if (classification)
+        {
+            root = trainer.fitClassifier().root;
+        }
+        else
+        {
+            root = trainer.fitRegressor(threshold).root;
+        }
+        trainer.close();
+        for (Process process : processes)
+        {
+            process.waitFor();
+        }
+
+        return root;
+    }
+
+    /**
+     * This method trains the same tree in a single process, for comparison
+     *
+     * @param filePath is the path of the data file
+     * @param classification is true for ID3, false for CART
+     * @param threshold is the early stopping threshold (CART)
+     * @return the root node of the tree
+     * @throws IOException
+     */
+    public static Node trainSingle(String filePath, boolean classification,
+            double threshold) throws IOException
+    {
+        ETL etl = new ETL();
+        ArrayList<String[]> records = etl.readCSV(filePath);
+        ArrayList<String[]> X = new ArrayList<String[]>();
+        ArrayList<String> y = new ArrayList<String>();
+        for (String[] record : records)
+        {
+            String[] x = new String[record.length - 1];
+            for (int j = 0; j < x.length; j++)
+            {
+                x[j] = record[j];
+            }
+            X.add(x);
+            y.add(record[record.length - 1]);
+        }
+        if (classification)
+        {
+            DecisionTreeClassifier dtc = new DecisionTreeClassifier();
+            dtc.fit(X, y, etl.fileName);
+            return dtc.root;
+        }
+        DecisionTreeRegressor dtr = new DecisionTreeRegressor(threshold);
+        dtr.fit(X, y, etl.fileName);
+        return dtr.root;
+    }
+
+    /**
+     * This method trains a tree with several worker processes on the local
+     * machine and compares it with the tree trained by a single process. The
+     * arguments are the path of the data file, the number of workers, and
+     * either "classification" or "regression" followed by an optional early
+     * stopping threshold
+     *
+     * @param args is the command line arguments
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void main(String[] args)
+            throws IOException, InterruptedException
+    {
+        String filePath = args[0];
+        int workers = Integer.parseInt(args[1]);
+        boolean classification = args[2].equals("classification");
+        double threshold = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+
+        long start = System.currentTimeMillis();
+        Node root = trainDistributed(filePath, workers, classification,
+                threshold);
+        System.out.println("Distributed training with " + workers
+                + " workers: " + (System.currentTimeMillis() - start) + " ms");
+
+        start = System.currentTimeMillis();
+        Node singleRoot = trainSingle(filePath, classification, threshold);
+        System.out.println("Single-process training: "
+                + (System.currentTimeMillis() - start) + " ms");
+        System.out.println("Trees match: " + sameTree(root, singleRoot));
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * This class checks that distributed training gives the same tree as training
+ * in a single process on datasets that are hard for it:
+ *
+ * - A degenerate dataset whose tree is about as deep as it has rows. Each
+ *   node peels off one row, so a coordinator that builds the tree by
+ *   recursion runs out of stack. The coordinator is run on a thread with a
+ *   small stack to make sure its depth does not matter
+ * - A dataset with fewer rows than workers, so that some shards are empty
+ *   and report no features to the coordinator
+ * - A regression dataset with numeric and categorical features whose
+ *   targets have few distinct values, so that category means and split
+ *   MSEs tie, and merging the statistics of the workers in another order
+ *   than a single process must not change the tree
+ *
+ * Each dataset is written to a temporary file and trained with several
+ * workers, for classification and regression. The result of each check is
+ * printed, and the program exits with status 1 if a tree differs or training
+ * fails
+ *
+ * Usage: java DistributedTrainerCheck [workers] [rows]
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+
+public class DistributedTrainerCheck
+{
+    static final long STACK_SIZE = 256 * 1024; // Stack of the coordinator
+
+    int failures; // Number of checks that failed
+    int checked;  // Number of checks run
+
+    public static void main(String[] args) throws IOException
+    {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rows = Math.min(args.length > 1 ? Integer.parseInt(args[1])
+                : 1500, 99999);
+
+        DistributedTrainerCheck check = new DistributedTrainerCheck();
+        File deep = check.writeDeepDataset(rows);
+        check.compare("deep", deep, workers, true);
+        check.compare("deep", deep, workers, false);
+        deep.delete();
+        File small = check.writeSmallDataset(Math.max(workers - 1, 1));
+        check.compare("small", small, workers, true);
+        check.compare("small", small, workers, false);
+        small.delete();
+        File mixed = check.writeCategoricalDataset(4000);
+        check.compare("categorical", mixed, workers, false);
+        mixed.delete();
+
+        System.out.println(check.checked + " trees compared, "
+                + check.failures + " failure(s)");
+        if (check.failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method writes a dataset with one numeric feature whose tree is
+     * about as deep as the dataset has rows. The values are -100001,
+     * -100002, ..., all with the same number of digits, so the smallest
+     * value as a string is the largest number. With more than 15 unique
+     * values the k-tile candidates are all that value, and each split peels
+     * off the row with the largest value. The targets alternate between 0
+     * and 1, so every node stays impure
+     *
+     * @param rows is the number of rows
+     * @return the data file
+     * @throws IOException
+     */
+    File writeDeepDataset(int rows) throws IOException
+    {
+        File file = File.createTempFile("deep", ".csv");
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        for (int i = 1; i <= rows; i++)
+        {
+            writer.println(-(100000 + i) + "," + i % 2);
+        }
+        writer.close();
+
+        return file;
+    }
+
+    /**
+     * This method writes a dataset with a numeric and a categorical feature
+     *
+     * @param rows is the number of rows
+     * @return the data file
+     * @throws IOException
+     */
+    File writeSmallDataset(int rows) throws IOException
+    {
+        File file = File.createTempFile("small", ".csv");
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        for (int i = 1; i <= rows; i++)
+        {
+            writer.println(i * 1.5 + "," + (i % 2 == 0 ? "a" : "b") + ","
+                    + i % 2);
+        }
+        writer.close();
+
+        return file;
+    }
+
+    /**
+     * This method writes a regression dataset with four numeric and two
+     * categorical features of ten categories each. The target depends on
+     * the categories and is rounded to one decimal
+     *
+     * @param rows is the number of rows
+     * @return the data file
+     * @throws IOException
+     */
+    File writeCategoricalDataset(int rows) throws IOException
+    {
+        File file = File.createTempFile("categorical", ".csv");
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        Random random = new Random(42);
+        for (int i = 0; i < rows; i++)
+        {
+            int c1 = random.nextInt(10);
+            int c2 = random.nextInt(10);
+            double target = c1 % 3 + (c2 < 3 ? 0.5 : 0) 
+                    + random.nextInt(4) / 10.0;
+            writer.printf("%.3f,%d,%.2f,%d,v%d,w%d,%.1f%n",
+                    random.nextDouble(), random.nextInt(20),
+                    random.nextGaussian(), random.nextInt(5), c1, c2, target);
+        }
+        writer.close();
+
+        return file;
+    }
+
+    /**
+     * This method trains a tree on a dataset with several workers, with the
+     * coordinator on a thread with a small stack, and compares it with the
+     * tree trained in a single process
+     *
+     * @param name is the name of the dataset to be printed
+     * @param file is the data file
+     * @param workers is the number of workers
+     * @param classification is true for ID3, false for CART
+     */
+    void compare(String name, final File file, final int workers,
+            final boolean classification)
+    {
+        checked++;
+        final Node[] root = new Node[1];
+        final Throwable[] error = new Throwable[1];
+        Thread coordinator = new Thread(null, new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    root[0] = DistributedTrainer.trainDistributed(
+                            file.getPath(), workers, classification, 0);
+                }
+                catch (Throwable e)
+                {
+                    error[0] = e;
+                }
+            }
+        }, "coordinator", STACK_SIZE);
+
+        String result;
+        try
+        {
+            coordinator.start();
+            coordinator.join();
+            Node singleRoot = DistributedTrainer.trainSingle(file.getPath(),
+                    classification, 0);
+            if (error[0] != null)
+            {
+                result = "failed with " + error[0];
+            }
+            else if (!DistributedTrainer.sameTree(root[0], singleRoot))
+            {
+                result = "trees differ";
+            }
+            else
+            {
+                result = "trees match, depth " + depth(singleRoot);
+            }
+        }
+        catch (Exception e)
+        {
+            result = "failed with " + e;
+        }
+
+        if (!result.startsWith("trees match"))
+        {
+            failures++;
+        }
+        System.out.println(name + " " + (classification ? "ID3" : "CART")
+                + " with " + workers + " workers: " + result);
+    }
+
+    /**
+     * This method finds the depth of a tree without recursion
+     *
+     * @param root is the root node of the tree
+     * @return the depth of the deepest leaf, 0 for a single leaf
+     */
+    int depth(Node root)
+    {
+        int depth = 0;
+        ArrayDeque<Node> nodes = new ArrayDeque<Node>();
+        ArrayDeque<Integer> depths = new ArrayDeque<Integer>();
+        nodes.push(root);
+        depths.push(0);
+        while (!nodes.isEmpty())
+        {
+            Node node = nodes.pop();
+            int d = depths.pop();
+            depth = Math.max(depth, d);
+            for (Node child : node.children)
+            {
+                nodes.push(child);
+                depths.push(d + 1);
+            }
+        }
+
+        return depth;
+    }
+}
@@ -2,7 +2,9 @@
  * This class reads data from file and preprocesses the data in preparation for
  * being fed to either an ID3 algorithm implemented by DecisionTreeClassifier
  * class or a CART algorithm implemented by the DecisionTreeRegressor class.
- * The method split() also enables cross validation
+ * The methods split() and folds() also enable cross validation. Datasets can
+ * also be stored in and read from the compressed columnar format of the
+ * ColumnarWriter class
  * 
  * @author Winston Lin
  */
@@ -11,14 +13,25 @@ import java.util.*;
 
 public class ETL 
 {    
+    static final int SCHEMA_VERSION = 1; /* Version of the processing done by
+                                            processRecord(). Increase it when
+                                            the processing changes, so that
+                                            cached datasets are parsed again */
+    
+    static final int SPLIT_VERSION = 2; /* Version of split(). Increase it
+                                           when the split changes, so that
+                                           results stored for a seed are
+                                           computed again */
+    
     String fileName; // Name of the file, extracted from file path
-    HashMap<String, Integer> classCount = 
-            new HashMap<String, Integer>(); /* Count each class in preparation
-                                               for stratified split */
+    Schema inferred; // Schema inferred while reading the last file
     
     /**
      * This method reads the 7 datasets used in this project, performs
-     * appropriate processing, and stores each dataset in a 2D String array
+     * appropriate processing, and stores each dataset in a 2D String array.
+     * Parsed datasets are cached (see the DatasetCache class), so a file that
+     * has not changed since the last run is not parsed again. The schema of
+     * the dataset is inferred while it is read and kept in the inferred field
      * 
      * @param filePath is the path of the data file
      * @return the 2D String array that stores the dataset
@@ -26,96 +39,370 @@ public class ETL
      */
     public ArrayList<String[]> readCSV(String filePath) 
             throws FileNotFoundException
+    {
+        return readCSV(filePath, 0, 1);
+    }
+    
+    /**
+     * This method reads one shard of a dataset. The records (without headers)
+     * are divided into contiguous shards of nearly equal size, so reading all
+     * shards in order gives the same records as reading the whole file. Only
+     * the records of the requested shard are kept in memory. A columnar file
+     * (see the ColumnarWriter class) is read with readColumnar()
+     * 
+     * @param filePath is the path of the data file
+     * @param shard is the index of the shard to be read
+     * @param shards is the total number of shards
+     * @return the 2D String array that stores the shard
+     * @throws FileNotFoundException
+     */
+    public ArrayList<String[]> readCSV(String filePath, int shard, int shards) 
+            throws FileNotFoundException
     {
         fileName = filePath.substring(filePath.lastIndexOf('/') + 1, 
                 filePath.lastIndexOf('.'));
+        inferred = null;
+        if (filePath.endsWith(ColumnarWriter.EXTENSION))
+        {
+            try
+            {
+                return readColumnar(filePath, shard, shards);
+            }
+            catch (FileNotFoundException e)
+            {
+                throw e;
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (shards == 1 && DatasetCache.enabled())
+        {
+            ArrayList<String[]> records = 
+                    DatasetCache.read(this, filePath, schema());
+            if (inferred == null)
+            {// Cache hit, so the file was not parsed
+                inferred = SchemaInferencer.infer(records);
+            }
+            return records;
+        }
         
-        ArrayList<String[]> records = new ArrayList<String[]>();
-        String[] record;
-        File file = new File(filePath);
-        Scanner sc = new Scanner(file);
-        while (sc.hasNextLine())
+        // Determine the range of records in the shard
+        long start = 0;
+        long end = Long.MAX_VALUE;
+        if (shards > 1)
         {
-            if (fileName.contains("wine"))
+            long size = -headers();
+            Scanner counter = new Scanner(new File(filePath));
+            while (counter.hasNextLine())
             {
-                record = sc.nextLine().split(";", -1);
+                counter.nextLine();
+                size++;
             }
-            else
+            counter.close();
+            start = size * shard / shards;
+            end = size * (shard + 1) / shards;
+        }
+        
+        return parseCSV(filePath, start, end);
+    } 
+    
+    /**
+     * This method parses a range of records of the data file and infers
+     * their schema in the same pass. The name of the file must have been set
+     * by readCSV(). A large file that is read as a whole is parsed on several
+     * threads (see the ChunkedCSVParser class)
+     * 
+     * @param filePath is the path of the data file
+     * @param start is the index of the first record (without headers)
+     * @param end is the index after the last record
+     * @return the 2D String array that stores the records
+     * @throws FileNotFoundException
+     */
+    ArrayList<String[]> parseCSV(String filePath, long start, long end) 
+            throws FileNotFoundException
+    {
+        if (start == 0 && end == Long.MAX_VALUE 
+                && ChunkedCSVParser.worthwhile(filePath))
+        {
+            ChunkedCSVParser parser = new ChunkedCSVParser(this);
+            try
             {
-                record = sc.nextLine().split(",", -1);
+                ArrayList<String[]> records = parser.parse(filePath);
+                inferred = parser.schema;
+                return records;
             }
-            
-            if (fileName.equals("segmentation"))
+            catch (FileNotFoundException e)
             {
-                for (int i = 0; i < record.length - 1; i++)
-                {// Move the target column to the last position
-                    String temp = record[i];
-                    record[i] = record[i + 1];
-                    record[i + 1] = temp;
-                }
-                records.add(record);
+                throw e;
             }
-            else if (fileName.equals("machine"))
+            catch (IOException e)
             {
-                String[] reducedRecord = new String[record.length - 3];
-                for (int i = 0; i < reducedRecord.length; i++)
-                {// Ignore columns "Vendor Name", "Model Name", and "ERP"
-                    reducedRecord[i] = record[i + 2];
-                }
-                records.add(reducedRecord);
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        ArrayList<String[]> records = new ArrayList<String[]>();
+        SchemaInferencer inferencer = new SchemaInferencer(false);
+        File file = new File(filePath);
+        Scanner sc = new Scanner(file);
+        long line = -headers();
+        while (sc.hasNextLine() && line < end)
+        {
+            String record = sc.nextLine();
+            if (line >= start)
+            {// Headers have negative line numbers and are removed
+                String[] fields = processRecord(record);
+                inferencer.observe(fields);
+                records.add(fields);
             }
-            else if (fileName.equals("forestfires"))
+            line++;
+        }
+        
+        sc.close();
+        inferred = inferencer.schema();
+        
+        return records;
+    }
+    
+    /**
+     * This method reads a dataset into typed columns instead of records: the
+     * values of numeric columns as doubles and the dictionary codes of
+     * categorical columns, built in the same pass that infers the schema. The
+     * file is only read a second time in the rare case that a numeric column
+     * with too many values to track turns out to be categorical
+     * 
+     * @param filePath is the path of the data file
+     * @return the inferencer that holds the schema and the typed columns
+     * @throws FileNotFoundException
+     */
+    public SchemaInferencer readColumns(String filePath) 
+            throws FileNotFoundException
+    {
+        fileName = filePath.substring(filePath.lastIndexOf('/') + 1, 
+                filePath.lastIndexOf('.'));
+        SchemaInferencer inferencer = encodeCSV(filePath, null);
+        if (inferencer.needsSecondPass())
+        {
+            Schema first = inferencer.schema();
+            inferencer = encodeCSV(filePath, first.categorical(first.numCols()));
+        }
+        inferred = inferencer.schema();
+        
+        return inferencer;
+    }
+    
+    /**
+     * This method reads one shard of a columnar file. Only the blocks that
+     * hold records of the shard are decoded, one block at a time, and the
+     * schema is taken from the header and index of the file instead of being
+     * inferred again. The records were processed when the file was written
+     * 
+     * @param filePath is the path of the columnar file
+     * @param shard is the index of the shard to be read
+     * @param shards is the total number of shards
+     * @return the 2D String array that stores the shard
+     * @throws IOException
+     */
+    public ArrayList<String[]> readColumnar(String filePath, int shard, 
+            int shards) throws IOException
+    {
+        fileName = filePath.substring(filePath.lastIndexOf('/') + 1, 
+                filePath.lastIndexOf('.'));
+        ColumnarReader reader = new ColumnarReader(filePath);
+        try
+        {
+            long size = reader.numRows();
+            inferred = reader.schema();
+            
+            return reader.readRecords(size * shard / shards, 
+                    size * (shard + 1) / shards);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+    
+    /**
+     * This method converts a data file to the columnar format. The file is
+     * read into typed columns with readColumns(), so categorical columns are
+     * written with their dictionaries, and integer columns are bit-packed and
+     * read back without a fraction
+     * 
+     * @param filePath is the path of the data file
+     * @param columnarPath is the path of the columnar file
+     * @param floats is true to store fractional numbers as floats
+     * @throws IOException
+     */
+    public void writeColumnar(String filePath, String columnarPath, 
+            boolean floats) throws IOException
+    {
+        SchemaInferencer columns = readColumns(filePath);
+        int numCols = Math.max(inferred.numCols(), 0);
+        String[] names = new String[numCols];
+        String[][] dictionaries = new String[numCols][];
+        boolean[] integer = new boolean[numCols];
+        double[][] numbers = new double[numCols][];
+        int[][] codes = new int[numCols][];
+        for (int c = 0; c < numCols; c++)
+        {
+            names[c] = c < numCols - 1 ? "x" + c : "y";
+            integer[c] = inferred.types[c] == Schema.INTEGER;
+            if (inferred.isCategorical(c))
             {
-                String[] month = {"jan", "feb", "mar", "apr", "may", "jun", 
-                        "jul", "aug", "sep", "oct", "nov", "dec"};
-                String[] day = {"mon", "tue", "wed", "thu", "fri", "sat", 
-                        "sun"};
-                // Represent columns "month" and "day" as Roman numerals
-                for (int i = 0; i < month.length; i++)
-                {
-                    if (record[2].equals(month[i]))
-                    {
-                        record[2] = Integer.toString(i + 1);
-                    }
-                }
-                for (int i = 0; i < day.length; i++)
-                {
-                    if (record[3].equals(day[i]))
-                    {
-                        record[3] = Integer.toString(i + 1);
-                    }
-                }
-                records.add(record);
+                dictionaries[c] = columns.dictionary(c);
+                codes[c] = columns.codes(c);
             }
             else
             {
-                records.add(record);
+                numbers[c] = columns.numbers(c);
             }
         }
         
-        // Remove headers
-        if (fileName.equals("segmentation"))
+        ColumnarWriter writer = new ColumnarWriter(columnarPath, names, 
+                dictionaries, integer, 65536, floats);
+        double[] row = new double[numCols];
+        for (int r = 0; r < inferred.rows; r++)
         {
-            for (int i = 0; i < 5; i++)
+            for (int c = 0; c < numCols; c++)
             {
-                records.remove(0);
-            }   
+                row[c] = codes[c] != null ? codes[c][r] : numbers[c][r];
+            }
+            writer.add(row);
+        }
+        writer.close();
+    }
+    
+    /**
+     * This method parses the data file into typed columns
+     * 
+     * @param filePath is the path of the data file
+     * @param forced is whether each column is known to be categorical, or null
+     * @return the inferencer that holds the typed columns
+     * @throws FileNotFoundException
+     */
+    SchemaInferencer encodeCSV(String filePath, boolean[] forced) 
+            throws FileNotFoundException
+    {
+        SchemaInferencer inferencer = new SchemaInferencer(true, forced);
+        Scanner sc = new Scanner(new File(filePath));
+        long line = -headers();
+        while (sc.hasNextLine())
+        {
+            String record = sc.nextLine();
+            if (line >= 0)
+            {// Headers have negative line numbers and are removed
+                inferencer.observe(processRecord(record));
+            }
+            line++;
+        }
+        
+        sc.close();
+        
+        return inferencer;
+    }
+    
+    /**
+     * This method returns the number of header lines of the data file
+     * 
+     * @return the number of lines to skip
+     */
+    int headers()
+    {
+        if (fileName.equals("segmentation"))
+        {
+            return 5;
         }
         else if (fileName.equals("forestfires") || fileName.contains("wine"))
         {     
-            records.remove(0);
+            return 1;
         }
         
-        sc.close();
+        return 0;
+    }
+    
+    /**
+     * This method describes how the data file is processed. Parsed datasets
+     * are cached under the hash of the file and this description
+     * 
+     * @return the description of the processing
+     */
+    public String schema()
+    {
+        return "ETL " + SCHEMA_VERSION + " " + fileName + " headers=" 
+                + headers();
+    }
+    
+    /**
+     * This method splits a line of a data file into fields and performs the
+     * processing required by the dataset
+     * 
+     * @param line is a line of the data file
+     * @return the processed record
+     */
+    public String[] processRecord(String line)
+    {
+        String[] record;
+        if (fileName.contains("wine"))
+        {
+            record = line.split(";", -1);
+        }
+        else
+        {
+            record = line.split(",", -1);
+        }
         
-        return records;
-    } 
+        if (fileName.equals("segmentation"))
+        {
+            for (int i = 0; i < record.length - 1; i++)
+            {// Move the target column to the last position
+                String temp = record[i];
+                record[i] = record[i + 1];
+                record[i + 1] = temp;
+            }
+        }
+        else if (fileName.equals("machine"))
+        {
+            String[] reducedRecord = new String[record.length - 3];
+            for (int i = 0; i < reducedRecord.length; i++)
+            {// Ignore columns "Vendor Name", "Model Name", and "ERP"
+                reducedRecord[i] = record[i + 2];
+            }
+            record = reducedRecord;
+        }
+        else if (fileName.equals("forestfires"))
+        {
+            String[] month = {"jan", "feb", "mar", "apr", "may", "jun", 
+                    "jul", "aug", "sep", "oct", "nov", "dec"};
+            String[] day = {"mon", "tue", "wed", "thu", "fri", "sat", 
+                    "sun"};
+            // Represent columns "month" and "day" as Roman numerals
+            for (int i = 0; i < month.length; i++)
+            {
+                if (record[2].equals(month[i]))
+                {
+                    record[2] = Integer.toString(i + 1);
+                }
+            }
+            for (int i = 0; i < day.length; i++)
+            {
+                if (record[3].equals(day[i]))
+                {
+                    record[3] = Integer.toString(i + 1);
+                }
+            }
+        }
+        
+        return record;
+    }
     
     /**
      * This method splits the data array into 6 partitions. It first pull out
      * 10% of the data which will be used as a validation set (for pruning). It
      * then splits the rest of the data into 5 partitions used in cross 
-     * validation 
+     * validation. The data array is not changed
      * 
      * @param records is the data array
      * @param stratified can be turned on to perform stratified split
@@ -124,107 +411,133 @@ public class ETL
     public ArrayList<ArrayList<String[]>> split(ArrayList<String[]> records,
             boolean stratified)
     {
+        return split(records, stratified, new Random());
+    }
+    
+    /**
+     * This method splits the data array into 6 partitions as split() does,
+     * with the given random number generator. The same seed gives the same
+     * partitions, so results can be reproduced and stored (see the 
+     * ResultStore class)
+     * 
+     * @param records is the data array
+     * @param stratified can be turned on to perform stratified split
+     * @param random is the random number generator
+     * @return the 6 partitions in an array
+     */
+    public ArrayList<ArrayList<String[]>> split(ArrayList<String[]> records,
+            boolean stratified, Random random)
+    {
+        Folds folds = folds(records, stratified, 5, 1, random).get(0);
         ArrayList<ArrayList<String[]>> partitions = 
                 new ArrayList<ArrayList<String[]>>();
-        
-        // Pull out 10% of the data to be used as a validation set
-        int validSize = records.size() / 10;
-        ArrayList<String[]> validationSet = new ArrayList<String[]>();
-        for (int i = 0; i < validSize; i++)
+        partitions.add(Folds.rows(records, folds.validation));
+        for (int i = 0; i < folds.k(); i++)
         {
-            int randomIndex = (int) (Math.random() * records.size());
-            validationSet.add(records.get(randomIndex));
-            records.remove(randomIndex);
+            partitions.add(Folds.rows(records, folds.test(i)));
         }
-        partitions.add(validationSet);
         
-        // Count the number of instances in each class
+        return partitions;
+    }
+    
+    /**
+     * This method assigns the data array to a validation set (10% of the
+     * data) and k folds for cross validation, once per repeat. Each repeat
+     * shuffles the indices of the records with one Fisher-Yates pass. For a
+     * stratified assignment the shuffled records are then grouped by class
+     * (the last field) with a counting pass and dealt to the folds in turn,
+     * so every fold gets its share of every class. Both take time linear in
+     * the number of records, and the data array is not changed
+     * 
+     * @param records is the data array
+     * @param stratified can be turned on to perform stratified assignment
+     * @param k is the number of folds
+     * @param repeats is the number of repeats of k-fold cross validation
+     * @param random is the random number generator
+     * @return the assignment of each repeat
+     */
+    public ArrayList<Folds> folds(ArrayList<String[]> records, 
+            boolean stratified, int k, int repeats, Random random)
+    {
+        int n = records.size();
+        int[] classes = null;
+        int numClasses = 1;
         if (stratified)
-        {
-            for (int i = 0; i < records.size(); i++)
+        {// Give each class an index
+            HashMap<String, Integer> classIndex = 
+                    new HashMap<String, Integer>();
+            classes = new int[n];
+            for (int i = 0; i < n; i++)
             {
-                if (classCount.containsKey(
-                        records.get(i)[records.get(0).length - 1]))
-                {
-                    int count = classCount.get(
-                            records.get(i)[records.get(0).length - 1]);
-                    count++;
-                    classCount.put(
-                            records.get(i)[records.get(0).length - 1], count);
-                }
-                else
+                String[] record = records.get(i);
+                Integer c = classIndex.get(record[record.length - 1]);
+                if (c == null)
                 {
-                    classCount.put(
-                            records.get(i)[records.get(0).length - 1], 1);
+                    c = classIndex.size();
+                    classIndex.put(record[record.length - 1], c);
                 }
+                classes[i] = c;
             }
+            numClasses = classIndex.size();
         }
         
-        // Split the data into 5 folds in preparation for cross validation
-        int foldSize = records.size() / 5;
-        for (int i = 0; i < 5; i++)
+        ArrayList<Folds> assignments = new ArrayList<Folds>();
+        int[] order = new int[n];
+        int[] grouped = new int[n];
+        for (int r = 0; r < repeats; r++)
         {
-            ArrayList<String[]> fold = new ArrayList<String[]>();
+            for (int i = 0; i < n; i++)
+            {
+                order[i] = i;
+            }
+            for (int i = n - 1; i > 0; i--)
+            {// Fisher-Yates shuffle
+                int j = random.nextInt(i + 1);
+                int temp = order[i];
+                order[i] = order[j];
+                order[j] = temp;
+            }
+            
+            Folds folds = new Folds();
+            folds.repeat = r;
+            int validSize = n / 10;
+            folds.validation = Arrays.copyOf(order, validSize);
             
+            // Group the rest by class, keeping the shuffled order in a class
+            int[] rest = order;
             if (stratified)
-            {// Perform stratified split
-                Iterator<Map.Entry<String, Integer>> it = 
-                        classCount.entrySet().iterator();
-                while(it.hasNext())
-                {// For each class, select enough points to current fold
-                    Map.Entry<String, Integer> pair = it.next();
-                    int classPoints = pair.getValue();
-                    if (i == 4)
-                    {// Add all remaining data points to the last fold
-                        while (records.size() != 0)
-                        {
-                            fold.add(records.get(0));
-                            records.remove(0);
-                        }
-                        break;
-                    }
-                    // Make sure we have enough data points in each fold
-                    int minPoints = classPoints / 5;
-                    if (minPoints < 1)
-                    {
-                        minPoints = 1;
-                    }
-                    int j = 0;
-                    while(j < records.size() && minPoints > 0)
-                    {
-                        if (pair.getKey().equals(
-                                records.get(j)[records.get(0).length - 1]))
-                        {
-                            fold.add(records.get(j));
-                            records.remove(j);
-                            minPoints--;
-                        }
-                        j++;
-                    }
+            {
+                int[] start = new int[numClasses + 1];
+                for (int i = validSize; i < n; i++)
+                {
+                    start[classes[order[i]] + 1]++;
                 }
-            }
-            else
-            {// Perform random split
-                if (i == 4)
-                {// Add all remaining data points to the last fold
-                    while (records.size() != 0)
-                    {
-                        fold.add(records.get(0));
-                        records.remove(0);
-                    }
+                for (int c = 0; c < numClasses; c++)
+                {
+                    start[c + 1] += start[c];
                 }
-                else
-                {// Randomly select data points to add to the current fold
-                    while(fold.size() < foldSize)
-                    {
-                        int randomIndex = (int) (Math.random()*records.size());
-                        fold.add(records.get(randomIndex));
-                        records.remove(randomIndex);
-                    }
+                for (int i = validSize; i < n; i++)
+                {
+                    grouped[validSize + start[classes[order[i]]]++] = order[i];
                 }
+                rest = grouped;
+            }
+            
+            // Deal the rest to the folds in turn
+            folds.folds = new int[k][];
+            int restSize = n - validSize;
+            for (int f = 0; f < k; f++)
+            {
+                folds.folds[f] = new int[restSize / k 
+                        + (f < restSize % k ? 1 : 0)];
+            }
+            for (int i = 0; i < restSize; i++)
+            {
+                folds.folds[i % k][i / k] = rest[validSize + i];
             }
-            partitions.add(fold);
+            assignments.add(folds);
         }
-        return partitions;
+        
+        return assignments;
     }
 }
@@ -0,0 +1,84 @@
+/**
+ * This class describes one assignment of a dataset to a validation set and k
+ * folds for cross validation, by the indices of the records in each. It is
+ * made by ETL.folds(), and repeated k-fold cross validation gives one
+ * assignment per repeat. The records themselves are not copied or changed
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class Folds
+{
+    int repeat;        // Index of the repeat
+    int[] validation;  // Indices of the records in the validation set
+    int[][] folds;     // Indices of the records in each fold
+
+    /**
+     * This method returns the number of folds
+     *
+     * @return k
+     */
+    public int k()
+    {
+        return folds.length;
+    }
+
+    /**
+     * This method returns the indices of the test set of a fold
+     *
+     * @param fold is the index of the fold
+     * @return the indices of the records in the fold
+     */
+    public int[] test(int fold)
+    {
+        return folds[fold];
+    }
+
+    /**
+     * This method returns the indices of the training set of a fold, i.e. the
+     * records in all other folds
+     *
+     * @param fold is the index of the fold
+     * @return the indices of the training records
+     */
+    public int[] train(int fold)
+    {
+        int size = 0;
+        for (int i = 0; i < folds.length; i++)
+        {
+            size += i == fold ? 0 : folds[i].length;
+        }
+        int[] train = new int[size];
+        int next = 0;
+        for (int i = 0; i < folds.length; i++)
+        {
+            if (i != fold)
+            {
+                System.arraycopy(folds[i], 0, train, next, folds[i].length);
+                next += folds[i].length;
+            }
+        }
+
+        return train;
+    }
+
+    /**
+     * This method returns the records at the given indices
+     *
+     * @param records is the data array
+     * @param indices is the indices of the records
+     * @return the records, in the order of the indices
+     */
+    public static ArrayList<String[]> rows(ArrayList<String[]> records,
+            int[] indices)
+    {
+        ArrayList<String[]> rows = new ArrayList<String[]>(indices.length);
+        for (int index : indices)
+        {
+            rows.add(records.get(index));
+        }
+
+        return rows;
+    }
+}
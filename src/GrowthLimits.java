@@ -0,0 +1,67 @@
+/**
+ * This class holds the limits on the growth of a tree. The limits are shared
+ * by the DecisionTreeClassifier class and the DecisionTreeRegressor class. A
+ * node is not split when it is too deep or has too few data points, a split
+ * is not considered when one of its branches would have too few data points,
+ * and no split is made once the tree would exceed the maximum number of leaves
+ * 
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+
+public class GrowthLimits 
+{
+    int maxLeaves = Integer.MAX_VALUE; // Maximum number of leaves
+    int maxDepth = Integer.MAX_VALUE;  // Maximum depth of a leaf
+    int minSamplesSplit = 2; // Minimum number of data points to split a node
+    int minSamplesLeaf = 1;  // Minimum number of data points in a leaf
+    
+    /**
+     * This constructor creates limits that let the tree grow fully
+     */
+    public GrowthLimits()
+    {
+    }
+    
+    /**
+     * This constructor creates limits with the given values
+     * 
+     * @param maxLeaves is the maximum number of leaves
+     * @param maxDepth is the maximum depth of a leaf (the root has depth 0)
+     * @param minSamplesSplit is the minimum number of data points to split
+     * @param minSamplesLeaf is the minimum number of data points in a leaf
+     */
+    public GrowthLimits(int maxLeaves, int maxDepth, int minSamplesSplit,
+            int minSamplesLeaf)
+    {
+        this.maxLeaves = maxLeaves;
+        this.maxDepth = maxDepth;
+        this.minSamplesSplit = minSamplesSplit;
+        this.minSamplesLeaf = minSamplesLeaf;
+    }
+    
+    /**
+     * This method checks whether a node may be split
+     * 
+     * @param n is the number of data points in the node
+     * @param depth is the depth of the node
+     * @return true if the node may be split
+     */
+    public boolean canSplit(int n, int depth)
+    {
+        return depth < maxDepth && n >= minSamplesSplit 
+                && n >= 2 * minSamplesLeaf;
+    }
+    
+    /**
+     * This method checks whether a branch of a split has enough data points
+     * 
+     * @param n is the number of data points in the branch
+     * @return true if the branch may become a leaf
+     */
+    public boolean isLargeEnough(int n)
+    {
+        return n >= minSamplesLeaf;
+    }
+}
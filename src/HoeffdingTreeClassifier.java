@@ -0,0 +1,610 @@
+/**
+ * This class implements an incremental version of the ID3 classifier (a
+ * Hoeffding tree). Data points are consumed one at a time or in mini-batches.
+ * Each leaf keeps the class counts of the data points that reached it, split
+ * by feature value, and a leaf is split once the Hoeffding bound shows that
+ * the feature with the highest gain ratio is better than the runner-up with
+ * high confidence. Gain ratio is computed with the DecisionTreeClassifier
+ * class, so the splitting criterion is the same as in batch training.
+ * Numeric features are summarized by a bounded number of bins, and the number
+ * of leaves that keep statistics is limited, so both memory and the time to
+ * learn one data point are bounded.
+ *
+ * Categorical features are taken from the schema of the dataset when it is
+ * known, e.g. the one inferred by the ETL class over the whole file.
+ * Otherwise they are inferred from the data points as they arrive: a
+ * feature is numeric until one of its values is not a number
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+
+public class HoeffdingTreeClassifier
+{
+    Node root; // Root node
+    boolean[] categorical; // Boolean array of whether feature is categorical
+    String fileName; // Name of the dataset
+    Schema schema; // Schema of the dataset, if known before learning
+    double[] xValue; // Numeric features of the data point being learned
+    HashMap<String, Integer> classIndex =
+            new HashMap<String, Integer>(); // Index of each class label
+    ArrayList<String> classes = new ArrayList<String>(); // Labels by index
+    IdentityHashMap<Node, LeafStatistics> leaves =
+            new IdentityHashMap<Node, LeafStatistics>(); // Learning leaves
+    DecisionTreeClassifier criterion =
+            new DecisionTreeClassifier(); // Computes gain ratio
+
+    double delta = 1e-7; // Probability that the chosen split is wrong
+    double tieThreshold = 0.05; // Split anyway when the bound is this small
+    int gracePeriod = 200; // Data points seen by a leaf between split checks
+    int maxBins = 32; // Bins kept per numeric feature per leaf
+    int maxValues = 64; // Categories kept per categorical feature per leaf
+    int maxLeaves = 1000; // Leaves that keep statistics
+
+    /**
+     * This class holds the sufficient statistics of a leaf: the class counts
+     * of the leaf and, for each feature, the class counts of each category or
+     * numeric bin
+     */
+    static class LeafStatistics
+    {
+        int n; // Number of data points seen by the leaf
+        int lastCheck; // Value of n at the last split check
+        int[] classCount; // Number of data points of each class
+        ArrayList<TreeMap<String, int[]>> categoryCounts; // Categorical
+        ArrayList<TreeMap<Double, int[]>> binCounts; // Numeric
+    }
+
+    /**
+     * This constructor creates an empty classifier for a dataset
+     *
+     * @param fileName is the name of the dataset
+     */
+    public HoeffdingTreeClassifier(String fileName)
+    {
+        this.fileName = fileName;
+    }
+
+    /**
+     * This constructor creates an empty classifier for a dataset whose
+     * schema is known
+     *
+     * @param fileName is the name of the dataset
+     * @param schema is the schema of the dataset, e.g. ETL.inferred
+     */
+    public HoeffdingTreeClassifier(String fileName, Schema schema)
+    {
+        this.fileName = fileName;
+        this.schema = schema;
+    }
+
+    /**
+     * This method learns a mini-batch of data points
+     *
+     * @param X is the attributes of the data points
+     * @param y is the targets of the data points
+     */
+    public void learn(ArrayList<String[]> X, ArrayList<String> y)
+    {
+        for (int i = 0; i < X.size(); i++)
+        {
+            learnOne(X.get(i), y.get(i));
+        }
+    }
+
+    /**
+     * This method learns a single data point. The data point is sorted to a
+     * leaf, the statistics of the leaf are updated, and every gracePeriod
+     * data points the leaf is checked for a split
+     *
+     * @param x is the attributes of the data point
+     * @param label is the target of the data point
+     */
+    public void learnOne(String[] x, String label)
+    {
+        if (root == null)
+        {
+            categorical = schema != null ? schema.categorical(x.length)
+                    : SchemaInferencer.infer(Collections.singletonList(x))
+                            .categorical(x.length);
+            xValue = new double[x.length];
+            root = new Node();
+            root.isLeaf = true;
+            leaves.put(root, newStatistics(new int[0]));
+        }
+        for (int i = 0; i < x.length; i++)
+        {// A feature is categorical from its first value that is not a number
+            if (!categorical[i])
+            {
+                try
+                {
+                    xValue[i] = NumberParser.parseDouble(x[i]);
+                }
+                catch (NumberFormatException e)
+                {
+                    makeCategorical(i);
+                }
+            }
+        }
+        if (!classIndex.containsKey(label))
+        {
+            classIndex.put(label, classes.size());
+            classes.add(label);
+        }
+        int c = classIndex.get(label);
+
+        Node leaf = sortToLeaf(x);
+        LeafStatistics stats = leaves.get(leaf);
+        if (stats == null)
+        {// Leaf no longer learns, only keep its prediction up to date
+            updatePrediction(leaf, label);
+            return;
+        }
+
+        stats.n++;
+        stats.classCount = grow(stats.classCount);
+        stats.classCount[c]++;
+        for (int i = 0; i < x.length; i++)
+        {
+            if (categorical[i])
+            {
+                TreeMap<String, int[]> counts = stats.categoryCounts.get(i);
+                int[] count = counts.get(x[i]);
+                if (count == null && counts.size() < maxValues)
+                {
+                    count = new int[classes.size()];
+                    counts.put(x[i], count);
+                }
+                if (count != null)
+                {// Categories beyond maxValues are not tracked
+                    count = grow(count);
+                    counts.put(x[i], count);
+                    count[c]++;
+                }
+            }
+            else
+            {
+                TreeMap<Double, int[]> bins = stats.binCounts.get(i);
+                double value = xValue[i];
+                int[] count = bins.get(value);
+                if (count == null)
+                {
+                    count = new int[classes.size()];
+                }
+                count = grow(count);
+                count[c]++;
+                bins.put(value, count);
+                if (bins.size() > maxBins)
+                {
+                    mergeClosestBins(bins);
+                }
+            }
+        }
+        updatePrediction(leaf, label);
+
+        if (stats.n - stats.lastCheck >= gracePeriod)
+        {
+            stats.lastCheck = stats.n;
+            attemptSplit(leaf, stats);
+        }
+    }
+
+    /**
+     * This method turns a numeric feature into a categorical one when one of
+     * its values is not a number. Its bins are dropped, and the learning
+     * leaves count its categories from now on. A split on it as a numeric
+     * feature cannot place a category, so it becomes a learning leaf again
+     * and keeps its last prediction
+     *
+     * @param index is the index of the feature
+     */
+    public void makeCategorical(int index)
+    {
+        categorical[index] = true;
+        for (LeafStatistics stats : leaves.values())
+        {
+            stats.binCounts.get(index).clear();
+        }
+
+        ArrayDeque<Node> nodes = new ArrayDeque<Node>();
+        nodes.push(root);
+        while (!nodes.isEmpty())
+        {
+            Node node = nodes.pop();
+            if (node.isLeaf)
+            {
+                continue;
+            }
+            if (node.categorical || node.column != index)
+            {
+                for (Node child : node.children)
+                {
+                    nodes.push(child);
+                }
+                continue;
+            }
+
+            // Drop the subtree and its learning leaves
+            ArrayDeque<Node> subtree = new ArrayDeque<Node>(node.children);
+            while (!subtree.isEmpty())
+            {
+                Node descendant = subtree.pop();
+                leaves.remove(descendant);
+                subtree.addAll(descendant.children);
+            }
+            node.children.clear();
+            node.isLeaf = true;
+            node.classCount = null;
+            if (leaves.size() < maxLeaves)
+            {
+                leaves.put(node, newStatistics(new int[0]));
+            }
+        }
+    }
+
+    /**
+     * This method walks a data point down the tree until reaching a leaf. A
+     * category that has no branch yet gets a new leaf, as long as the number
+     * of learning leaves allows it
+     *
+     * @param x is the attributes of the data point
+     * @return the leaf the data point belongs to
+     */
+    public Node sortToLeaf(String[] x)
+    {
+        Node node = root;
+        while (!node.isLeaf)
+        {
+            String colValue = x[node.column];
+            if (node.categorical)
+            {
+                int branch = node.categories.indexOf(colValue);
+                if (branch < 0 && leaves.size() < maxLeaves)
+                {
+                    Node child = new Node();
+                    child.isLeaf = true;
+                    child.name = node.children.get(0).name;
+                    leaves.put(child, newStatistics(new int[0]));
+                    node.categories.add(colValue);
+                    node.addChild(child);
+                    branch = node.children.size() - 1;
+                }
+                node = node.children.get(Math.max(branch, 0));
+            }
+            else if (NumberParser.parseDouble(colValue) < node.value)
+            {
+                node = node.children.get(0);
+            }
+            else
+            {
+                node = node.children.get(1);
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * This method checks whether a leaf should be split. The best and second
+     * best gain ratios over all features are compared with the Hoeffding
+     * bound. Since gain ratio lies between 0 and 1, the range of the
+     * criterion used in the bound is 1
+     *
+     * @param leaf is the leaf of interest
+     * @param stats is the statistics of the leaf
+     */
+    public void attemptSplit(Node leaf, LeafStatistics stats)
+    {
+        int numLabels = 0;
+        for (int count : stats.classCount)
+        {
+            if (count > 0)
+            {
+                numLabels++;
+            }
+        }
+        if (numLabels < 2)
+        {// Impurity = 0
+            return;
+        }
+
+        int index = -1;
+        double value = 0;
+        double best = 0;
+        double secondBest = 0;
+        for (int i = 0; i < categorical.length; i++)
+        {
+            double gainRatio;
+            double threshold = 0;
+            if (categorical[i])
+            {
+                TreeMap<String, int[]> counts = stats.categoryCounts.get(i);
+                if (counts.size() < 2)
+                {
+                    continue;
+                }
+                int[][] childCounts = new int[counts.size()][];
+                int j = 0;
+                for (int[] count : counts.values())
+                {
+                    childCounts[j++] = grow(count);
+                }
+                gainRatio = criterion.gainRatio(sum(childCounts), childCounts);
+            }
+            else
+            {
+                double[] split = bestThreshold(stats.binCounts.get(i));
+                gainRatio = split[0];
+                threshold = split[1];
+            }
+
+            if (gainRatio > best)
+            {
+                secondBest = best;
+                best = gainRatio;
+                index = i;
+                value = threshold;
+            }
+            else if (gainRatio > secondBest)
+            {
+                secondBest = gainRatio;
+            }
+        }
+
+        double bound = Math.sqrt(Math.log(1 / delta) / (2.0 * stats.n));
+        if (index == -1 || (best - secondBest <= bound && bound >= tieThreshold))
+        {
+            return;
+        }
+        split(leaf, stats, index, value);
+    }
+
+    /**
+     * This method finds the numeric threshold with the highest gain ratio.
+     * The candidates are the lower edges of the bins, and a data point goes to
+     * the left branch when its value is less than the threshold
+     *
+     * @param bins is the class counts of each bin of the feature
+     * @return an array of the best gain ratio and its threshold
+     */
+    public double[] bestThreshold(TreeMap<Double, int[]> bins)
+    {
+        double[] best = {0, 0};
+        if (bins.size() < 2)
+        {
+            return best;
+        }
+
+        int[][] allCounts = new int[bins.size()][];
+        int j = 0;
+        for (int[] count : bins.values())
+        {
+            allCounts[j++] = grow(count);
+        }
+        int[] parentCount = sum(allCounts);
+        int[] left = new int[classes.size()];
+        j = 0;
+        for (Map.Entry<Double, int[]> bin : bins.entrySet())
+        {
+            if (j > 0)
+            {
+                int[] right = new int[left.length];
+                for (int c = 0; c < left.length; c++)
+                {
+                    right[c] = parentCount[c] - left[c];
+                }
+                int[][] childCounts = {left.clone(), right};
+                double gainRatio = criterion.gainRatio(parentCount,
+                        childCounts);
+                if (gainRatio > best[0])
+                {
+                    best[0] = gainRatio;
+                    best[1] = bin.getKey();
+                }
+            }
+            for (int c = 0; c < left.length; c++)
+            {
+                left[c] += allCounts[j][c];
+            }
+            j++;
+        }
+
+        return best;
+    }
+
+    /**
+     * This method turns a leaf into a split node. Each new leaf starts with
+     * the class counts of its branch as its prediction and empty statistics
+     *
+     * @param leaf is the leaf to be split
+     * @param stats is the statistics of the leaf
+     * @param index is the feature to split on
+     * @param value is the numeric value to split on
+     */
+    public void split(Node leaf, LeafStatistics stats, int index, double value)
+    {
+        leaves.remove(leaf);
+        leaf.isLeaf = false;
+        leaf.column = index;
+        leaf.value = value;
+        leaf.categorical = categorical[index];
+        leaf.classCount = null;
+
+        ArrayList<int[]> branchCounts = new ArrayList<int[]>();
+        if (leaf.categorical)
+        {
+            leaf.categories = new ArrayList<String>();
+            for (Map.Entry<String, int[]> pair :
+                stats.categoryCounts.get(index).entrySet())
+            {
+                leaf.categories.add(pair.getKey());
+                branchCounts.add(grow(pair.getValue()));
+            }
+        }
+        else
+        {
+            int[] left = new int[classes.size()];
+            int[] right = new int[classes.size()];
+            for (Map.Entry<Double, int[]> bin :
+                stats.binCounts.get(index).entrySet())
+            {
+                int[] target = bin.getKey() < value ? left : right;
+                int[] count = grow(bin.getValue());
+                for (int c = 0; c < count.length; c++)
+                {
+                    target[c] += count[c];
+                }
+            }
+            branchCounts.add(left);
+            branchCounts.add(right);
+        }
+
+        for (int[] count : branchCounts)
+        {
+            Node child = new Node();
+            HashMap<String, Integer> classCount =
+                    new HashMap<String, Integer>();
+            for (int c = 0; c < count.length; c++)
+            {
+                if (count[c] > 0)
+                {
+                    classCount.put(classes.get(c), count[c]);
+                }
+            }
+            criterion.makeLeaf(child, classCount);
+            if (leaves.size() < maxLeaves)
+            {
+                leaves.put(child, newStatistics(new int[0]));
+            }
+            leaf.addChild(child);
+        }
+    }
+
+    /**
+     * This method updates the class counts of a leaf and sets the most common
+     * class as its predicted class
+     *
+     * @param leaf is the leaf of interest
+     * @param label is the target of the new data point
+     */
+    public void updatePrediction(Node leaf, String label)
+    {
+        if (leaf.classCount == null)
+        {
+            leaf.classCount = new HashMap<String, Integer>();
+        }
+        Integer count = leaf.classCount.get(label);
+        count = count == null ? 1 : count + 1;
+        leaf.classCount.put(label, count);
+        Integer max = leaf.classCount.get(leaf.name);
+        if (leaf.name == null || max == null || count > max)
+        {
+            leaf.name = label;
+        }
+    }
+
+    /**
+     * This method merges the two adjacent bins whose values are closest. The
+     * upper bin is merged into the lower one
+     *
+     * @param bins is the class counts of each bin of a numeric feature
+     */
+    public void mergeClosestBins(TreeMap<Double, int[]> bins)
+    {
+        Double lower = null;
+        Double previous = null;
+        double gap = Double.MAX_VALUE;
+        for (Double key : bins.keySet())
+        {
+            if (previous != null && key - previous < gap)
+            {
+                gap = key - previous;
+                lower = previous;
+            }
+            previous = key;
+        }
+        int[] upper = grow(bins.remove(bins.higherKey(lower)));
+        int[] merged = grow(bins.get(lower));
+        for (int c = 0; c < upper.length; c++)
+        {
+            merged[c] += upper[c];
+        }
+        bins.put(lower, merged);
+    }
+
+    /**
+     * This method creates empty statistics for a new leaf
+     *
+     * @param classCount is the initial class counts of the leaf
+     * @return the statistics of the leaf
+     */
+    public LeafStatistics newStatistics(int[] classCount)
+    {
+        LeafStatistics stats = new LeafStatistics();
+        stats.classCount = classCount;
+        stats.categoryCounts = new ArrayList<TreeMap<String, int[]>>();
+        stats.binCounts = new ArrayList<TreeMap<Double, int[]>>();
+        for (int i = 0; i < categorical.length; i++)
+        {
+            stats.categoryCounts.add(new TreeMap<String, int[]>());
+            stats.binCounts.add(new TreeMap<Double, int[]>());
+        }
+
+        return stats;
+    }
+
+    /**
+     * This method extends an array of class counts when new classes appear
+     *
+     * @param count is the class counts
+     * @return the class counts with one entry for each known class
+     */
+    public int[] grow(int[] count)
+    {
+        if (count.length == classes.size())
+        {
+            return count;
+        }
+
+        return Arrays.copyOf(count, classes.size());
+    }
+
+    /**
+     * This method adds up the class counts of several branches
+     *
+     * @param childCounts is the class counts of each branch
+     * @return the total class counts
+     */
+    public int[] sum(int[][] childCounts)
+    {
+        int[] total = new int[classes.size()];
+        for (int[] count : childCounts)
+        {
+            for (int c = 0; c < count.length; c++)
+            {
+                total[c] += count[c];
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * This method calls the predictOne() method at the root node of the
+     * current tree for each test data point in the test set
+     *
+     * @param X is the test set
+     * @return an array of predictions for all test data points
+     */
+    public ArrayList<String> predict(ArrayList<String[]> X)
+    {
+        ArrayList<String> yPredict = new ArrayList<String>();
+        for (String[] x : X)
+        {
+            yPredict.add(root.predictOne(x));
+        }
+
+        return yPredict;
+    }
+}
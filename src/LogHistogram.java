@@ -0,0 +1,167 @@
+/**
+ * This class implements a lock-free histogram of non-negative values, such as
+ * latencies in nanoseconds or batch sizes. Values below 8 have their own
+ * bucket, and every power of two above is split into 8 buckets, so a
+ * percentile is off by at most 1/16 of its value. Each bucket is a
+ * LongAdder, which spreads the increments of threads that collide over
+ * separate cells, so many threads can record at once without locking or
+ * contending for one counter. The cells are summed when the histogram is read
+ *
+ * @author Winston Lin
+ */
+import java.util.concurrent.atomic.*;
+
+public class LogHistogram
+{
+    static final int SUB_BUCKETS = 8; // Buckets per power of two
+    static final int NUM_BUCKETS = (64 - 2) * SUB_BUCKETS;
+
+    LongAdder[] counts = new LongAdder[NUM_BUCKETS]; // Values in each bucket
+    LongAdder count = new LongAdder(); // Number of values
+    LongAdder sum = new LongAdder();   // Sum of values
+    LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * This constructor creates an empty histogram
+     */
+    public LogHistogram()
+    {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * This method records a value. Negative values are recorded as 0
+     *
+     * @param value is the value to be recorded
+     */
+    public void record(long value)
+    {
+        value = Math.max(value, 0);
+        counts[bucket(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * This method finds the bucket of a value
+     *
+     * @param value is a non-negative value
+     * @return the index of the bucket
+     */
+    static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - 3)) & (SUB_BUCKETS - 1);
+
+        return (msb - 2) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * This method returns the smallest value of a bucket
+     *
+     * @param bucket is the index of the bucket
+     * @return the smallest value that falls in the bucket
+     */
+    static long lowerBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int msb = bucket / SUB_BUCKETS + 2;
+        long sub = bucket % SUB_BUCKETS;
+
+        return (SUB_BUCKETS + sub) << (msb - 3);
+    }
+
+    /**
+     * This method estimates a percentile as the middle of the bucket that
+     * holds it
+     *
+     * @param percentile is the percentile of interest, between 0 and 100
+     * @return the estimated value, 0 if nothing was recorded
+     */
+    public double percentile(double percentile)
+    {
+        long total = 0;
+        long[] snapshot = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            snapshot[i] = counts[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= rank)
+            {
+                long lower = lowerBound(i);
+                long upper = i + 1 < NUM_BUCKETS ? lowerBound(i + 1) : lower;
+                return Math.min((lower + upper - 1) / 2.0, max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * This method returns the number of values recorded
+     *
+     * @return the number of values
+     */
+    public long count()
+    {
+        return count.sum();
+    }
+
+    /**
+     * This method returns the mean of the values recorded
+     *
+     * @return the mean, 0 if nothing was recorded
+     */
+    public double mean()
+    {
+        long n = count.sum();
+
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * This method returns the largest value recorded
+     *
+     * @return the largest value, 0 if nothing was recorded
+     */
+    public long max()
+    {
+        return max.get();
+    }
+
+    /**
+     * This method clears the histogram
+     */
+    public void reset()
+    {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            counts[i].reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
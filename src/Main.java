@@ -23,12 +23,30 @@ public class Main
         System.out.println();
         
         // Preprocess and split the data into train, test, and validation set
-        ArrayList<String[]> records = new ArrayList<String[]>();
-        ArrayList<ArrayList<String[]>> partitions = 
-                new ArrayList<ArrayList<String[]>>();
         ETL etl = new ETL();
-        records = etl.readCSV(classificationFile);
-        partitions = etl.split(records, true);
+        StageTimer timer = new StageTimer(); // Time spent in each stage
+        String name = new File(classificationFile).getName();
+        long start = timer.start();
+        ArrayList<String[]> records = etl.readCSV(classificationFile);
+        timer.stop(name, "parse", StageTimer.WHOLE_DATASET, start,
+                records.size(), null);
+        start = timer.start();
+        Folds folds = etl.folds(records, true, 5, 1, new Random()).get(0);
+        timer.stop(name, "split", StageTimer.WHOLE_DATASET, start,
+                records.size(), null);
+        // Views of the folds share the records, nothing is copied
+        start = timer.start();
+        DatasetView valid = new DatasetView(records, folds.validation);
+        DatasetView[] train = new DatasetView[5];
+        DatasetView[] test = new DatasetView[5];
+        for (int k = 0; k < 5; k++)
+        {
+            train[k] = new DatasetView(records, folds.train(k),
+                    records.get(0).length - 1, etl.inferred);
+            test[k] = new DatasetView(records, folds.test(k));
+        }
+        timer.stop(name, "folds", StageTimer.WHOLE_DATASET, start,
+                records.size(), null);
         System.out.println("Dataset has been processed and splited");
         System.out.println();
         
@@ -43,60 +61,23 @@ public class Main
             double[] accuracies = new double[5];
             for (int k = 0; k < 5; k++)
             {
-                ArrayList<String[]> Xtrain = new ArrayList<String[]>();
-                ArrayList<String> ytrain = new ArrayList<String>();
-                ArrayList<String[]> Xtest = new ArrayList<String[]>();
-                ArrayList<String> ytest = new ArrayList<String>();
-                ArrayList<String[]> Xvalid = new ArrayList<String[]>();
-                ArrayList<String> yvalid = new ArrayList<String>();
-                
-                for (int i = 1; i < partitions.size(); i++)
-                {
-                    if (i == k + 1)
-                    {
-                        for (String[] test : partitions.get(i))
-                        {
-                            String[] X = new String[test.length - 1];
-                            for (int j = 0; j < X.length; j++)
-                            {
-                                X[j] = test[j];
-                            }
-                            Xtest.add(X);
-                            ytest.add(test[test.length - 1]);
-                        }
-                    }
-                    else
-                    {
-                        for (String[] train : partitions.get(i))
-                        {
-                            String[] X = new String[train.length - 1];
-                            for (int j = 0; j < X.length; j++)
-                            {
-                                X[j] = train[j];
-                            }
-                            Xtrain.add(X);
-                            ytrain.add(train[train.length - 1]);
-                        }
-                    }
-                }  
-                for (String[] valid : partitions.get(0))
-                {
-                    String[] X = new String[valid.length - 1];
-                    for (int j = 0; j < X.length; j++)
-                    {
-                        X[j] = valid[j];
-                    }
-                    Xvalid.add(X);
-                    yvalid.add(valid[valid.length - 1]);
-                }
+                ArrayList<String> ytest = test[k].y();
                 
                 DecisionTreeClassifier dtc = new DecisionTreeClassifier();
-                dtc.fit(Xtrain, ytrain, etl.fileName);
+                start = timer.start();
+                dtc.fit(train[k]);
+                timer.stop(name, "fit", k, start, train[k].size(), dtc.root);
                 if (p == 1)
                 {
-                    dtc.prune(Xvalid, yvalid, dtc.root);
+                    start = timer.start();
+                    dtc.prune(valid, dtc.root);
+                    timer.stop(name, "prune", k, start, valid.size(), 
+                            dtc.root);
                 }
-                ArrayList<String> prediction = dtc.predict(Xtest);
+                start = timer.start();
+                ArrayList<String> prediction = dtc.predict(test[k]);
+                timer.stop(name, "predict", k, start, test[k].size(), 
+                        dtc.root);
                 double accuracy = 0;
                 if (k == 0 && p == 0)
                 {
@@ -154,11 +135,29 @@ public class Main
         System.out.println();
         
         // Preprocess and split the data into train, test, and validation set
-        records = new ArrayList<String[]>();
-        partitions = new ArrayList<ArrayList<String[]>>();
         etl = new ETL();
+        name = new File(regressionFile).getName();
+        start = timer.start();
         records = etl.readCSV(regressionFile);
-        partitions = etl.split(records, false);
+        timer.stop(name, "parse", StageTimer.WHOLE_DATASET, start,
+                records.size(), null);
+        start = timer.start();
+        folds = etl.folds(records, false, 5, 1, new Random()).get(0);
+        timer.stop(name, "split", StageTimer.WHOLE_DATASET, start,
+                records.size(), null);
+        // Views of the folds share the records, nothing is copied
+        start = timer.start();
+        valid = new DatasetView(records, folds.validation);
+        train = new DatasetView[5];
+        test = new DatasetView[5];
+        for (int k = 0; k < 5; k++)
+        {
+            train[k] = new DatasetView(records, folds.train(k),
+                    records.get(0).length - 1, etl.inferred);
+            test[k] = new DatasetView(records, folds.test(k));
+        }
+        timer.stop(name, "folds", StageTimer.WHOLE_DATASET, start,
+                records.size(), null);
         System.out.println("Dataset has been processed and splited");
         System.out.println();
         
@@ -170,79 +169,40 @@ public class Main
         
         // Tune the early stopping threshold for regression using CART
         double[] thresholds = {0, 1, 5, 10, 50, 100, 500, 1000, 5000};
-        ArrayList<Double> averageMSEs = new ArrayList<Double>();
-        for (double threshold : thresholds)
-        {
-            double[] MSEs = new double[5];
-            for (int k = 0; k < 5; k++)
+        double[][] MSEs = new double[thresholds.length][5];
+        for (int k = 0; k < 5; k++)
+        {// Fit on train with every threshold, score them on validation in
+         // one pass
+            ArrayList<Node> roots = new ArrayList<Node>();
+            for (double threshold : thresholds)
             {
-                ArrayList<String[]> Xtrain = new ArrayList<String[]>();
-                ArrayList<String> ytrain = new ArrayList<String>();
-                ArrayList<String[]> Xtest = new ArrayList<String[]>();
-                ArrayList<String> ytest = new ArrayList<String>();
-                ArrayList<String[]> Xvalid = new ArrayList<String[]>();
-                ArrayList<String> yvalid = new ArrayList<String>();
-                
-                for (int i = 1; i < partitions.size(); i++)
-                {
-                    if (i == k + 1)
-                    {
-                        for (String[] test : partitions.get(i))
-                        {
-                            String[] X = new String[test.length - 1];
-                            for (int j = 0; j < X.length; j++)
-                            {
-                                X[j] = test[j];
-                            }
-                            Xtest.add(X);
-                            ytest.add(test[test.length - 1]);
-                        }
-                    }
-                    else
-                    {
-                        for (String[] train : partitions.get(i))
-                        {
-                            String[] X = new String[train.length - 1];
-                            for (int j = 0; j < X.length; j++)
-                            {
-                                X[j] = train[j];
-                            }
-                            Xtrain.add(X);
-                            ytrain.add(train[train.length - 1]);
-                        }
-                    }
-                }  
-                for (String[] valid : partitions.get(0))
-                {
-                    String[] X = new String[valid.length - 1];
-                    for (int j = 0; j < X.length; j++)
-                    {
-                        X[j] = valid[j];
-                    }
-                    Xvalid.add(X);
-                    yvalid.add(valid[valid.length - 1]);
-                }
                 DecisionTreeRegressor dtr = 
                         new DecisionTreeRegressor(threshold);
-                dtr.fit(Xtrain, ytrain, etl.fileName);
-                ArrayList<String> prediction = dtr.predict(Xvalid);
-                double MSE = 0;
-                for (int i = 0; i < yvalid.size(); i++)
-                {
-                    MSE += Math.pow((Double.parseDouble(yvalid.get(i)) 
-                            - Double.parseDouble(prediction.get(i))), 2)
-                            / yvalid.size();
-                }
-                MSEs[k] = MSE;
+                start = timer.start();
+                dtr.fit(train[k]);
+                timer.stop(name, "tune", k, start, train[k].size(), dtr.root);
+                roots.add(dtr.root);
+            }
+            start = timer.start();
+            double[] scores = new MultiTreeEvaluator(roots)
+                    .squaredError(valid, valid.size());
+            timer.stop(name, "tune", k, start, valid.size(), null);
+            for (int t = 0; t < thresholds.length; t++)
+            {
+                MSEs[t][k] = scores[t];
             }
+        }
+        ArrayList<Double> averageMSEs = new ArrayList<Double>();
+        for (int t = 0; t < thresholds.length; t++)
+        {
             double averageMSE = 0;
-            for (double MSE : MSEs)
+            for (double MSE : MSEs[t])
             {
                 averageMSE += MSE;
             }
             averageMSE /= 5;
             averageMSEs.add(averageMSE);
-            System.out.println("At threshold: " + threshold);
+            System.out.println("At threshold: " + thresholds[t]);
             System.out.println("Average MSE (validation): " + averageMSE);
             System.out.println("--------------------------------");
         }
@@ -269,46 +229,17 @@ public class Main
         double[] prunedMSEs = new double[5];
         for (int k = 0; k < 5; k++)
         {
-            ArrayList<String[]> Xtrain = new ArrayList<String[]>();
-            ArrayList<String> ytrain = new ArrayList<String>();
-            ArrayList<String[]> Xtest = new ArrayList<String[]>();
-            ArrayList<String> ytest = new ArrayList<String>();
-            
-            for (int i = 1; i < partitions.size(); i++)
-            {
-                if (i == k + 1)
-                {
-                    for (String[] test : partitions.get(i))
-                    {
-                        String[] X = new String[test.length - 1];
-                        for (int j = 0; j < X.length; j++)
-                        {
-                            X[j] = test[j];
-                        }
-                        Xtest.add(X);
-                        ytest.add(test[test.length - 1]);
-                    }
-                }
-                else
-                {
-                    for (String[] train : partitions.get(i))
-                    {
-                        String[] X = new String[train.length - 1];
-                        for (int j = 0; j < X.length; j++)
-                        {
-                            X[j] = train[j];
-                        }
-                        Xtrain.add(X);
-                        ytrain.add(train[train.length - 1]);
-                    }
-                }
-            }
+            ArrayList<String> ytest = test[k].y();
             
             // Fit on train without early stopping, predict on test
             DecisionTreeRegressor dtr = 
                     new DecisionTreeRegressor(0);
-            dtr.fit(Xtrain, ytrain, etl.fileName);
-            ArrayList<String> prediction = dtr.predict(Xtest);
+            start = timer.start();
+            dtr.fit(train[k]);
+            timer.stop(name, "fit", k, start, train[k].size(), dtr.root);
+            start = timer.start();
+            ArrayList<String> prediction = dtr.predict(test[k]);
+            timer.stop(name, "predict", k, start, test[k].size(), dtr.root);
             double MSE = 0;
             for (int i = 0; i < ytest.size(); i++)
             {
@@ -333,8 +264,12 @@ public class Main
             // Fit on train, use the best threshold, predict on test
             dtr = new DecisionTreeRegressor(
                     thresholds[bestThresholdIndex]);
-            dtr.fit(Xtrain, ytrain, etl.fileName);
-            prediction = dtr.predict(Xtest);
+            start = timer.start();
+            dtr.fit(train[k]);
+            timer.stop(name, "fit", k, start, train[k].size(), dtr.root);
+            start = timer.start();
+            prediction = dtr.predict(test[k]);
+            timer.stop(name, "predict", k, start, test[k].size(), dtr.root);
             MSE = 0;
             for (int i = 0; i < ytest.size(); i++)
             {
@@ -369,6 +304,11 @@ public class Main
                     + Math.round(averagePrunedMSE * 100.0) / 100.0);
         System.out.println();
         
+        // Write the time spent in each stage
+        timer.write("Timings");
+        System.out.println("Stage timings have been written to Timings.csv "
+                + "and Timings.json");
+        
         scan.close();
     }
 }
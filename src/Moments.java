@@ -0,0 +1,190 @@
+/**
+ * This class calculates the statistics CART compares splits with: the count,
+ * the mean, and the sum of squared deviations from the mean (M2) of target
+ * values. The MSE of a node is M2 / count. Unlike the sum of squares, M2 is
+ * added up from deviations, so it keeps its precision when the targets are
+ * large and close together. The statistics of disjoint sets of values are
+ * merged with the pairwise formula of Chan, Golub and LeVeque, so shards and
+ * categories are combined without visiting their values again.
+ *
+ * Statistics are kept in arrays of {count, mean, M2}, or at an offset of a
+ * longer array, e.g. the left and right branch of a split side by side
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class Moments
+{
+    /**
+     * This method calculates the statistics of the target values of a subset
+     * of rows in two passes, the mean first and then M2
+     *
+     * @param yValue is the target value of each data point
+     * @param rows is the rows of interest
+     * @return an array of the count, mean, and M2
+     */
+    public static double[] of(double[] yValue, int[] rows)
+    {
+        double sum = 0;
+        for (int row : rows)
+        {
+            sum += yValue[row];
+        }
+        double mean = rows.length == 0 ? 0 : sum / rows.length;
+        double m2 = 0;
+        for (int row : rows)
+        {
+            double d = yValue[row] - mean;
+            m2 += d * d;
+        }
+
+        return new double[] {rows.length, mean, m2};
+    }
+
+    /**
+     * This method calculates the statistics of several groups of rows in two
+     * passes, e.g. the branches of a split or the categories of a feature
+     *
+     * @param yValue is the target value of each data point
+     * @param rows is the rows of interest, or null for all data points
+     * @param group is the group of each row of interest, or -1 to leave it
+     *        out
+     * @param numGroups is the number of groups
+     * @return the count, mean, and M2 of each group
+     */
+    public static double[][] of(double[] yValue, int[] rows, int[] group,
+            int numGroups)
+    {
+        double[][] stats = new double[numGroups][3];
+        for (int k = 0; k < group.length; k++)
+        {// Count and sum of each group
+            if (group[k] >= 0)
+            {
+                stats[group[k]][0]++;
+                stats[group[k]][1] += yValue[rows == null ? k : rows[k]];
+            }
+        }
+        for (double[] groupStats : stats)
+        {
+            if (groupStats[0] > 0)
+            {
+                groupStats[1] /= groupStats[0];
+            }
+        }
+        for (int k = 0; k < group.length; k++)
+        {// Squared deviations from the mean of each group
+            if (group[k] >= 0)
+            {
+                double[] groupStats = stats[group[k]];
+                double d = yValue[rows == null ? k : rows[k]] - groupStats[1];
+                groupStats[2] += d * d;
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * This method adds one value to statistics (Welford's update)
+     *
+     * @param stats is the statistics to be updated
+     * @param y is the value to be added
+     */
+    public static void add(double[] stats, double y)
+    {
+        stats[0]++;
+        double d = y - stats[1];
+        stats[1] += d / stats[0];
+        stats[2] += d * (y - stats[1]);
+    }
+
+    /**
+     * This method merges the statistics of a disjoint set of values into
+     * other statistics
+     *
+     * @param into is the array of the statistics to be updated
+     * @param i is the offset of the statistics in it
+     * @param stats is the array of the statistics to be merged
+     * @param j is the offset of the statistics in it
+     */
+    public static void merge(double[] into, int i, double[] stats, int j)
+    {
+        double na = into[i];
+        double nb = stats[j];
+        if (nb == 0)
+        {
+            return;
+        }
+        if (na == 0)
+        {
+            System.arraycopy(stats, j, into, i, 3);
+            return;
+        }
+        double n = na + nb;
+        double delta = stats[j + 1] - into[i + 1];
+        into[i] = n;
+        into[i + 1] += delta * nb / n;
+        into[i + 2] += stats[j + 2] + delta * delta * na * nb / n;
+    }
+
+    /**
+     * This method merges the statistics of a disjoint set of values into
+     * other statistics
+     *
+     * @param into is the statistics to be updated
+     * @param stats is the statistics to be merged
+     */
+    public static void merge(double[] into, double[] stats)
+    {
+        merge(into, 0, stats, 0);
+    }
+
+    /**
+     * This method calculates the statistics of a set of values without a
+     * subset of them, e.g. the right branch of a split from the node and the
+     * left branch. Only deviations from the means are subtracted, so the
+     * result keeps its precision when the values are large
+     *
+     * @param all is the statistics of the set
+     * @param part is the statistics of the subset
+     * @return the statistics of the rest
+     */
+    public static double[] remove(double[] all, double[] part)
+    {
+        double[] rest = new double[3];
+        remove(all, part, rest);
+
+        return rest;
+    }
+
+    /**
+     * This method calculates the statistics of a set of values without a
+     * subset of them into an array, e.g. a buffer reused for every candidate
+     * split
+     *
+     * @param all is the statistics of the set
+     * @param part is the statistics of the subset
+     * @param rest receives the statistics of the rest
+     */
+    public static void remove(double[] all, double[] part, double[] rest)
+    {
+        double n = all[0] - part[0];
+        if (n <= 0)
+        {
+            Arrays.fill(rest, 0);
+            return;
+        }
+        if (part[0] == 0)
+        {
+            System.arraycopy(all, 0, rest, 0, 3);
+            return;
+        }
+        double mean = all[1] + (all[1] - part[1]) * part[0] / n;
+        double delta = part[1] - mean;
+        double m2 = all[2] - part[2] - delta * delta * n * part[0] / all[0];
+        rest[0] = n;
+        rest[1] = mean;
+        rest[2] = Math.max(m2, 0);
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * This class checks the count, mean, and M2 of the Moments class and of the
+ * split kernels against exact values, on targets with a large mean and a
+ * small spread, where the sum of squares loses all precision. Statistics
+ * are calculated directly, merged from random shards, added one value at a
+ * time, and removed from those of a larger set. It also checks that adding
+ * a large constant to the targets does not change the splits of the tree.
+ * The program exits with status 1 if a check fails
+ *
+ * Usage: java MomentsCheck [trials]
+ *
+ * @author Winston Lin
+ */
+import java.math.*;
+import java.util.*;
+
+public class MomentsCheck
+{
+    static final double MEAN_TOLERANCE = 1e-12; // Relative error of means
+    static final double M2_TOLERANCE = 1e-6;    // Relative error of M2
+
+    int failures; // Number of checks that failed
+    int checked;  // Number of checks run
+
+    public static void main(String[] args)
+    {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        MomentsCheck check = new MomentsCheck();
+        Random random = new Random(42);
+        for (double offset : new double[] {0, 1e6, 1e9})
+        {
+            for (int trial = 0; trial < trials; trial++)
+            {
+                check.statistics(random, offset);
+            }
+            check.tree(offset);
+        }
+
+        System.out.println(check.checked + " checks, " + check.failures
+                + " failure(s)");
+        if (check.failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method checks the statistics of random targets around an offset
+     *
+     * @param random is the source of the targets
+     * @param offset is the mean of the targets
+     */
+    void statistics(Random random, double offset)
+    {
+        int n = 2 + random.nextInt(500);
+        double[] y = new double[n];
+        double[] x = new double[n];
+        int[] rows = new int[n];
+        int[] shard = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            y[i] = offset + random.nextGaussian();
+            x[i] = random.nextInt(10);
+            rows[i] = i;
+            shard[i] = random.nextInt(4);
+        }
+        double[] exact = exact(y, rows);
+
+        double[] direct = Moments.of(y, rows);
+        double[] kernel = new double[3];
+        SplitKernels.INSTANCE.moments(y, n, kernel);
+        double[] merged = new double[3];
+        for (double[] shardStats : Moments.of(y, rows, shard, 4))
+        {
+            Moments.merge(merged, shardStats);
+        }
+        double[] added = new double[3];
+        for (double value : y)
+        {
+            Moments.add(added, value);
+        }
+        expect("direct", offset, direct, exact);
+        expect("kernel", offset, kernel, exact);
+        expect("merged", offset, merged, exact);
+        expect("added", offset, added, exact);
+
+        // Both branches of a split, and the right one from the node
+        double[] branches = new double[6];
+        SplitKernels.INSTANCE.partitionStats(x, y, n, 5, branches);
+        int[] right = new int[n];
+        int numRight = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (x[i] >= 5)
+            {
+                right[numRight++] = i;
+            }
+        }
+        double[] exactRight = exact(y, Arrays.copyOf(right, numRight));
+        expect("partition", offset, Arrays.copyOfRange(branches, 3, 6),
+                exactRight);
+        expect("removed", offset, Moments.remove(direct,
+                Arrays.copyOfRange(branches, 0, 3)), exactRight);
+    }
+
+    /**
+     * This method calculates the count, mean, and M2 of a subset of rows
+     * without rounding, as n M2 = n sum(y^2) - sum(y)^2, and rounds them to
+     * doubles at the end
+     *
+     * @param y is the target values
+     * @param rows is the rows of interest
+     * @return an array of the count, mean, and M2
+     */
+    double[] exact(double[] y, int[] rows)
+    {
+        if (rows.length == 0)
+        {
+            return new double[3];
+        }
+        MathContext context = MathContext.DECIMAL128;
+        BigDecimal n = new BigDecimal(rows.length);
+        BigDecimal sum = BigDecimal.ZERO;
+        BigDecimal sumSq = BigDecimal.ZERO;
+        for (int row : rows)
+        {
+            BigDecimal value = new BigDecimal(y[row]);
+            sum = sum.add(value);
+            sumSq = sumSq.add(value.multiply(value));
+        }
+        BigDecimal m2 = sumSq.multiply(n).subtract(sum.multiply(sum))
+                .divide(n, context);
+
+        return new double[] {rows.length, sum.divide(n, context).doubleValue(),
+                m2.doubleValue()};
+    }
+
+    /**
+     * This method compares statistics with the exact ones. The count must be
+     * the same, the mean within the tolerance of the offset, and M2 within
+     * the tolerance of the larger of its exact value and the count, as the
+     * targets have unit variance
+     *
+     * @param name is the name of the statistics to be printed
+     * @param offset is the mean of the targets
+     * @param actual is the statistics to be checked
+     * @param expected is the exact statistics
+     */
+    void expect(String name, double offset, double[] actual,
+            double[] expected)
+    {
+        checked++;
+        double meanError = Math.abs(actual[1] - expected[1]);
+        double m2Error = Math.abs(actual[2] - expected[2]);
+        if (actual[0] != expected[0]
+                || meanError > MEAN_TOLERANCE * Math.max(1, Math.abs(offset))
+                || m2Error > M2_TOLERANCE * Math.max(expected[2], actual[0]))
+        {
+            failures++;
+            System.out.println(name + " around " + offset + ": "
+                    + Arrays.toString(actual) + " instead of "
+                    + Arrays.toString(expected));
+        }
+    }
+
+    /**
+     * This method trains a regressor on targets that depend on two features,
+     * plus an offset, and compares its splits with those of the same targets
+     * without the offset
+     *
+     * @param offset is the constant added to the targets
+     */
+    void tree(double offset)
+    {
+        checked++;
+        String expected = splits(train(0));
+        String actual = splits(train(offset));
+        if (!actual.equals(expected))
+        {
+            failures++;
+            System.out.println("Tree of targets around " + offset
+                    + " differs from the one around 0");
+        }
+    }
+
+    /**
+     * This method trains a regressor on a fixed random dataset
+     *
+     * @param offset is the constant added to the targets
+     * @return the root node of the tree
+     */
+    Node train(double offset)
+    {
+        Random random = new Random(7);
+        ArrayList<String[]> X = new ArrayList<String[]>();
+        ArrayList<String> y = new ArrayList<String>();
+        for (int i = 0; i < 400; i++)
+        {
+            int f0 = random.nextInt(10);
+            int f1 = random.nextInt(8);
+            X.add(new String[] {"" + f0, "" + f1, "" + random.nextInt(12)});
+            y.add(Double.toString(offset + 0.001 * (f0 > 4 ? 3 : 0)
+                    + 0.0005 * (f1 % 3) + 0.0001 * random.nextGaussian()));
+        }
+        DecisionTreeRegressor regressor = new DecisionTreeRegressor(0);
+        regressor.fit(X, y, new boolean[3]);
+
+        return regressor.root;
+    }
+
+    /**
+     * This method lists the feature and value of every split of a tree in
+     * depth-first order
+     *
+     * @param root is the root node of the tree
+     * @return the splits, one per line
+     */
+    String splits(Node root)
+    {
+        StringBuilder splits = new StringBuilder();
+        ArrayDeque<Node> stack = new ArrayDeque<Node>();
+        stack.push(root);
+        while (!stack.isEmpty())
+        {
+            Node node = stack.pop();
+            if (node.isLeaf)
+            {
+                splits.append("leaf\n");
+                continue;
+            }
+            splits.append(node.column + " " + node.value + "\n");
+            for (int i = node.children.size() - 1; i >= 0; i--)
+            {
+                stack.push(node.children.get(i));
+            }
+        }
+
+        return splits.toString();
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * This class scores several trees on the same dataset in one pass, e.g. the
+ * trees of every early stopping threshold on the validation set, or the
+ * unpruned and pruned tree of a fold on its test set. Each row is sorted
+ * down every tree before moving on to the next row, so the row stays in
+ * cache, and each numeric feature of the row is parsed once and shared by
+ * all trees. The score of each tree is accumulated in a primitive array, in
+ * row order, so it is the same as scoring the predictions of each tree
+ * separately.
+ *
+ * Trees are traversed as in Node.predictOne(): temporary leaves (pruning)
+ * stop the traversal, and a category with no branch takes a random branch
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class MultiTreeEvaluator
+{
+    Node[] roots;     // Root of each tree
+    double[] parsed;  // Parsed value of each feature of the current row
+    int[] parsedRow;  // Stamp of the row each value in parsed belongs to
+    int stamp;        // Stamp of the current row, counted across datasets
+
+    /**
+     * This constructor creates an evaluator for a set of trees
+     *
+     * @param roots is the root of each tree
+     */
+    public MultiTreeEvaluator(List<Node> roots)
+    {
+        this.roots = roots.toArray(new Node[roots.size()]);
+    }
+
+    /**
+     * This method computes the accuracy of each classification tree
+     *
+     * @param data is the dataset, with class labels as targets
+     * @return the fraction of rows each tree predicts correctly
+     */
+    public double[] accuracy(DatasetView data)
+    {
+        int n = data.size();
+        ArrayList<String[]> X = data.X();
+        ArrayList<String> y = data.y();
+        int[] hits = new int[roots.length];
+        for (int i = 0; i < n; i++)
+        {
+            String[] x = X.get(i);
+            String label = y.get(i);
+            int row = ++stamp;
+            for (int t = 0; t < roots.length; t++)
+            {
+                Node leaf = leaf(roots[t], x, row);
+                String prediction = leaf.isTempLeaf ? leaf.name
+                        : leaf.leafName();
+                if (label.equals(prediction))
+                {
+                    hits[t]++;
+                }
+            }
+        }
+
+        double[] accuracies = new double[roots.length];
+        for (int t = 0; t < roots.length; t++)
+        {
+            accuracies[t] = (double) hits[t] / n;
+        }
+
+        return accuracies;
+    }
+
+    /**
+     * This method computes the squared error of each regression tree, as the
+     * sum over the rows of (target - prediction)^2 / divisor. With the number
+     * of rows as the divisor, this is the MSE
+     *
+     * @param data is the dataset, with numeric targets
+     * @param divisor is the number each squared error is divided by
+     * @return the sum of the divided squared errors of each tree
+     */
+    public double[] squaredError(DatasetView data, double divisor)
+    {
+        int n = data.size();
+        ArrayList<String[]> X = data.X();
+        ArrayList<String> y = data.y();
+        double[] errors = new double[roots.length];
+        for (int i = 0; i < n; i++)
+        {
+            String[] x = X.get(i);
+            double target = NumberParser.parseDouble(y.get(i));
+            int row = ++stamp;
+            for (int t = 0; t < roots.length; t++)
+            {
+                Node leaf = leaf(roots[t], x, row);
+                double prediction = leaf.name == null ? leaf.value
+                        : NumberParser.parseDouble(leaf.name);
+                errors[t] += Math.pow(target - prediction, 2) / divisor;
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * This method sorts a row down a tree
+     *
+     * @param node is the root of the tree
+     * @param x is the row
+     * @param row is the stamp of the row, which tells the cached values of
+     *        this row from those of earlier rows
+     * @return the leaf the row reaches
+     */
+    Node leaf(Node node, String[] x, int row)
+    {
+        while (!node.isLeaf && !node.isTempLeaf)
+        {
+            int branch;
+            if (node.categorical)
+            {
+                branch = node.categories.indexOf(x[node.column]);
+                if (branch < 0)
+                {// Handle case when the category has no corresponding branch
+                    branch = (int) (Math.random() * node.children.size());
+                }
+                else if (node.categoryBranch != null)
+                {
+                    branch = node.categoryBranch[branch];
+                }
+            }
+            else
+            {
+                branch = number(x, node.column, row) < node.value ? 0 : 1;
+            }
+            node = node.children.get(branch);
+        }
+
+        return node;
+    }
+
+    /**
+     * This method returns a numeric feature of a row, parsing it only the
+     * first time the row needs it
+     *
+     * @param x is the row
+     * @param column is the index of the feature
+     * @param row is the stamp of the row
+     * @return the value of the feature
+     */
+    double number(String[] x, int column, int row)
+    {
+        if (parsed == null || column >= parsed.length)
+        {
+            int size = Math.max(column + 1, x.length);
+            parsed = parsed == null ? new double[size]
+                    : Arrays.copyOf(parsed, size);
+            parsedRow = parsedRow == null ? new int[size]
+                    : Arrays.copyOf(parsedRow, size);
+        }
+        if (parsedRow[column] != row)
+        {
+            parsed[column] = NumberParser.parseDouble(x[column]);
+            parsedRow[column] = row;
+        }
+
+        return parsed[column];
+    }
+}
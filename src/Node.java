@@ -1,7 +1,8 @@
 /**
  * This class implements a tree node that is used by the DecisionTreeClassifier
- * class and the DecisionTreeRegressor class. The only method in this class is
- * called during prediction
+ * class and the DecisionTreeRegressor class. The methods in this class are
+ * called during prediction. Fields that only some nodes use are allocated
+ * lazily, so that leaves and numeric splits stay small
  * 
  * @author Winston Lin
  */
@@ -10,18 +11,71 @@ import java.util.*;
 
 public class Node 
 {
+    static final List<String> NO_CATEGORIES = Collections.emptyList();
+    static final List<Node> NO_CHILDREN = Collections.emptyList();
+    
     int column;   // Index of feature to split on
-    double value; // Value of a continuous feature to split on
+    double value; /* Value of a continuous feature to split on, or the mean
+                     value of a regression leaf */
     
-    ArrayList<String> categories = new ArrayList<String>(); // Discrete values
+    List<String> categories = NO_CATEGORIES; // Discrete values, if any
+    int[] categoryBranch; /* Branch of each category of a binary categorical
+                             split (CART), or null if each category has its
+                             own branch */
     boolean categorical = false; // Whether node splits on categorical feature
-    String name;  // Name of the most common class label or the mean value
-    ArrayList<Node> children = new ArrayList<Node>(); // All child nodes
+    String name;  /* Name of the most common class label. Null for regression
+                     leaves, which keep their mean value in "value" */
+    List<Node> children = NO_CHILDREN; // All child nodes, if any
     boolean isLeaf = false; // True if the node is a leaf
     boolean isTempLeaf = false; // Temporary leaf used during pruning
-    HashMap<String, Integer> classCount = 
-            new HashMap<String, Integer>(); /* Count each class in preparation
-                                               for prediction and pruning */
+    HashMap<String, Integer> classCount; /* Count each class in preparation
+                                            for prediction and pruning. Only
+                                            set for classification leaves */
+    
+    /**
+     * This method adds a child node. The list of children is only allocated
+     * when the first child is added, so leaves do not carry an empty list
+     * 
+     * @param child is the node to be added
+     */
+    public void addChild(Node child)
+    {
+        if (children == NO_CHILDREN)
+        {
+            children = new ArrayList<Node>(2);
+        }
+        children.add(child);
+    }
+    
+    /**
+     * This method removes all child nodes, e.g. when the node is pruned
+     */
+    public void clearChildren()
+    {
+        children = NO_CHILDREN;
+    }
+    
+    /**
+     * This method returns the predicted value of a leaf as a string
+     * 
+     * @return the class label, or the mean value of a regression leaf
+     */
+    public String leafName()
+    {
+        return name != null ? name : Double.toString(value);
+    }
+    
+    /**
+     * This method returns the child a category of a categorical split leads
+     * to
+     * 
+     * @param i is the index of the category in categories
+     * @return the child of the category
+     */
+    public Node categoryChild(int i)
+    {
+        return children.get(categoryBranch == null ? i : categoryBranch[i]);
+    }
     
     /**
      * This method makes prediction on a single data point. The subtree rooted
@@ -32,6 +86,19 @@ public class Node
      * @return the predicted value
      */
     public String predictOne(String[] x)
+    {
+        return predictOne(x, null);
+    }
+    
+    /**
+     * This method makes prediction on a single data point and counts the
+     * times a category with no branch is reached
+     * 
+     * @param x is a single data point
+     * @param metrics receives the fallback hits, or null
+     * @return the predicted value
+     */
+    public String predictOne(String[] x, TreeMetrics metrics)
     {
         if (isTempLeaf)
         {// Used in pruning. Temporary leaf has higher priority than real leaf
@@ -39,7 +106,7 @@ public class Node
         }
         else if (isLeaf)
         {
-            return name;
+            return leafName();
         }
         
         String colValue = x[column];
@@ -51,29 +118,99 @@ public class Node
                 if (colValue.equals(categories.get(i)))
                 {
                     hasBranch = true;
-                    return children.get(i).predictOne(x);   
+                    return categoryChild(i).predictOne(x, metrics);
                 }
             }
             
             // Handle case when the category has no corresponding branch
             if (!hasBranch)
             {
+                if (metrics != null)
+                {
+                    metrics.recordFallback();
+                }
                 int randomIndex = (int) (Math.random() * children.size());
-                return children.get(randomIndex).predictOne(x);
+                return children.get(randomIndex).predictOne(x, metrics);
             }
         }
         else
         {
-            if (Double.parseDouble(colValue) < value)
+            if (NumberParser.parseDouble(colValue) < value)
             {
-                return children.get(0).predictOne(x);
+                return children.get(0).predictOne(x, metrics);
             }
             else
             {
-                return children.get(1).predictOne(x);
+                return children.get(1).predictOne(x, metrics);
             }
         }
         
         return "This should not be reached";
     }
+    
+    /**
+     * This method makes prediction on a single row of a sparse matrix. All
+     * features of a sparse matrix are numeric
+     * 
+     * @param X is the sparse matrix
+     * @param row is the row of interest
+     * @return the predicted value
+     */
+    public String predictOne(SparseMatrix X, int row)
+    {
+        Node node = this;
+        while (!node.isTempLeaf && !node.isLeaf)
+        {
+            if (X.get(row, node.column) < node.value)
+            {
+                node = node.children.get(0);
+            }
+            else
+            {
+                node = node.children.get(1);
+            }
+        }
+        
+        return node.isTempLeaf ? node.name : node.leafName();
+    }
+    
+    /**
+     * This method predicts the value of a single data point with a regression
+     * tree without converting it to a string. Categories with no branch take
+     * a random branch, as in predictOne()
+     * 
+     * @param x is a single data point
+     * @return the predicted value
+     */
+    public double predictValue(String[] x)
+    {
+        Node node = this;
+        while (!node.isLeaf)
+        {
+            String colValue = x[node.column];
+            if (node.categorical)
+            {
+                int branch = node.categories.indexOf(colValue);
+                if (branch < 0)
+                {
+                    node = node.children.get(
+                            (int) (Math.random() * node.children.size()));
+                }
+                else
+                {
+                    node = node.categoryChild(branch);
+                }
+            }
+            else if (NumberParser.parseDouble(colValue) < node.value)
+            {
+                node = node.children.get(0);
+            }
+            else
+            {
+                node = node.children.get(1);
+            }
+        }
+        
+        return node.value;
+    }
 }
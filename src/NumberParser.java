@@ -0,0 +1,157 @@
+/**
+ * This class parses decimal numbers without allocating. A number made of an
+ * optional sign, at most 18 significant digits with an optional decimal
+ * point, and an optional exponent is parsed into a long mantissa and a power
+ * of ten. When the mantissa is below 2^53 and the power of ten is between
+ * -22 and 22, both are exact doubles and a single multiplication or division
+ * gives the correctly rounded result, so the value is the same as the one of
+ * Double.parseDouble() (Clinger's fast path). Every other string, e.g. with
+ * more digits, a large exponent, whitespace, "NaN", "Infinity", hexadecimal
+ * digits, or a type suffix, is passed to Double.parseDouble(), which also
+ * throws the NumberFormatException of an invalid number.
+ *
+ * Whole numbers are parsed the same way, as doubles without a fraction. The
+ * NumberParserCheck class compares this class with Double.parseDouble()
+ *
+ * @author Winston Lin
+ */
+public class NumberParser
+{
+    static final long MAX_EXACT = 1L << 53; // Largest exact mantissa
+    static final double[] POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7,
+            1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+            1e19, 1e20, 1e21, 1e22}; // Powers of ten that are exact doubles
+
+    /**
+     * This method parses a number
+     *
+     * @param s is the number as a string
+     * @return the same value as Double.parseDouble(s)
+     * @throws NumberFormatException if s is not a number
+     */
+    public static double parseDouble(String s)
+    {
+        return parseDouble(s, 0, s.length());
+    }
+
+    /**
+     * This method parses a number in a range of characters, e.g. a field of
+     * a line, without taking a substring on the fast path
+     *
+     * @param s is the characters
+     * @param start is the index of the first character of the number
+     * @param end is the index after the last character
+     * @return the same value as Double.parseDouble() of the range
+     * @throws NumberFormatException if the range is not a number
+     */
+    public static double parseDouble(CharSequence s, int start, int end)
+    {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+        {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;    // Significant digits in the mantissa
+        int exponent = 0;  // Power of ten of the last digit
+        boolean any = false; // Whether there is at least one digit
+        boolean point = false;
+        for (; i < end; i++)
+        {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                any = true;
+                if (digits == 0 && c == '0')
+                {// Leading zeros are not significant
+                    exponent -= point ? 1 : 0;
+                    continue;
+                }
+                if (++digits > 18)
+                {
+                    return slowPath(s, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                exponent -= point ? 1 : 0;
+            }
+            else if (c == '.' && !point)
+            {
+                point = true;
+            }
+            else
+            {
+                break;
+            }
+        }
+        if (!any)
+        {
+            return slowPath(s, start, end);
+        }
+
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E'))
+        {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+            {
+                negativeExponent = s.charAt(i) == '-';
+                i++;
+            }
+            int written = 0;
+            int expDigits = 0;
+            for (; i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++)
+            {
+                if (++expDigits > 4)
+                {
+                    return slowPath(s, start, end);
+                }
+                written = written * 10 + (s.charAt(i) - '0');
+            }
+            if (expDigits == 0)
+            {
+                return slowPath(s, start, end);
+            }
+            exponent += negativeExponent ? -written : written;
+        }
+        if (i != end)
+        {// Whitespace, a suffix, or not a number
+            return slowPath(s, start, end);
+        }
+
+        double value;
+        if (mantissa == 0)
+        {
+            value = 0;
+        }
+        else if (mantissa > MAX_EXACT || exponent < -22 || exponent > 22)
+        {
+            return slowPath(s, start, end);
+        }
+        else if (exponent < 0)
+        {
+            value = mantissa / POWERS[-exponent];
+        }
+        else
+        {
+            value = mantissa * POWERS[exponent];
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * This method parses a number that the fast path does not handle
+     *
+     * @param s is the characters
+     * @param start is the index of the first character of the number
+     * @param end is the index after the last character
+     * @return the value of Double.parseDouble()
+     */
+    static double slowPath(CharSequence s, int start, int end)
+    {
+        return Double.parseDouble(s.subSequence(start, end).toString());
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * This class checks that the NumberParser class gives exactly the same
+ * results as Double.parseDouble(): the same bits for every number (so -0.0
+ * and 0.0 are told apart) and a NumberFormatException for the same strings.
+ * It runs a fixed list of edge cases and then random numbers written in the
+ * forms found in data files: Double.toString() of random doubles, decimals
+ * with a random number of digits before and after the point, numbers with an
+ * exponent, and whole numbers. Any difference is printed, and the program
+ * exits with status 1 if there is one
+ *
+ * Usage: java NumberParserCheck [count] [seed]
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class NumberParserCheck
+{
+    static final String[] CASES = {"0", "-0", "+0", "0.0", "-0.0", "00",
+            "1", "-1", "+1", "1.", ".5", "-.5", "0.1", "0.2", "0.3", "1.5",
+            "3.14159", "2.718281828459045", "0.001", "100", "1e10", "1E10",
+            "1e-10", "1e+10", "1.5e3", "-2.5E-3", "9007199254740991",
+            "9007199254740992", "9007199254740993", "123456789012345678",
+            "1234567890123456789", "12345678901234567890", "1e22", "1e23",
+            "1e-22", "1e-23", "4.9e-324", "2.2250738585072014E-308",
+            "1.7976931348623157E308", "1e308", "1e309", "1e-400",
+            "0.000000000000000000000000000001", "100000000000000000000000",
+            "1.00000000000000000000", "0e99999", "NaN", "-NaN", "Infinity",
+            "-Infinity", "+Infinity", "0x1p3", "1.5f", "1.5d", "1.5D",
+            " 1.5", "1.5 ", "\t2", "", "-", "+", ".", "e5", "1e", "1e+",
+            "1.2.3", "1e5e5", "--1", "1,5", "abc", "1_000", "\u0663"};
+
+    int failures; // Number of strings parsed differently
+    int checked;  // Number of strings compared
+
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+
+        NumberParserCheck check = new NumberParserCheck();
+        for (String s : CASES)
+        {
+            check.compare(s);
+        }
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++)
+        {
+            check.compare(check.randomNumber(random));
+        }
+
+        System.out.println(check.checked + " strings compared, "
+                + check.failures + " difference(s)");
+        if (check.failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method returns a random number in one of the forms found in data
+     * files
+     *
+     * @param random is the random number generator
+     * @return the number as a string
+     */
+    String randomNumber(Random random)
+    {
+        switch (random.nextInt(5))
+        {
+            case 0: // Any double
+                return Double.toString(Double.longBitsToDouble(
+                        random.nextLong()));
+            case 1: // A double of a typical size
+                return Double.toString((random.nextDouble() - 0.5)
+                        * Math.pow(10, random.nextInt(20) - 10));
+            case 2: // A decimal with random digits
+                StringBuilder s = new StringBuilder();
+                if (random.nextBoolean())
+                {
+                    s.append('-');
+                }
+                appendDigits(s, random, random.nextInt(12));
+                s.append('.');
+                appendDigits(s, random, random.nextInt(22));
+                return s.toString();
+            case 3: // A number with an exponent
+                return (random.nextInt(2000000) - 1000000) / 1000.0
+                        + (random.nextBoolean() ? "e" : "E")
+                        + (random.nextInt(80) - 40);
+            default: // A whole number
+                return Long.toString(random.nextLong()
+                        >> random.nextInt(64));
+        }
+    }
+
+    /**
+     * This method appends random digits
+     *
+     * @param s is the string the digits are appended to
+     * @param random is the random number generator
+     * @param count is the number of digits
+     */
+    void appendDigits(StringBuilder s, Random random, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            s.append((char) ('0' + random.nextInt(10)));
+        }
+    }
+
+    /**
+     * This method parses a string with both parsers, and also as a field in
+     * the middle of a longer string, and counts any difference
+     *
+     * @param s is the string
+     */
+    void compare(String s)
+    {
+        checked++;
+        String expected = parse(s, false, 0, s.length());
+        String actual = parse(s, true, 0, s.length());
+        String line = "x," + s + ",y";
+        String field = parse(line, true, 2, 2 + s.length());
+        if (!expected.equals(actual) || !expected.equals(field))
+        {
+            failures++;
+            System.out.println("\"" + s + "\": Double.parseDouble() gives "
+                    + expected + ", NumberParser gives " + actual
+                    + " and " + field + " as a field");
+        }
+    }
+
+    /**
+     * This method parses a string and describes the result
+     *
+     * @param s is the string
+     * @param fast is true to use NumberParser, false for Double.parseDouble()
+     * @param start is the index of the first character of the number
+     * @param end is the index after the last character
+     * @return the bits of the value in hex, or "NumberFormatException"
+     */
+    static String parse(String s, boolean fast, int start, int end)
+    {
+        try
+        {
+            double value = fast ? NumberParser.parseDouble(s, start, end)
+                    : Double.parseDouble(s.substring(start, end));
+            return Long.toHexString(Double.doubleToRawLongBits(value));
+        }
+        catch (NumberFormatException e)
+        {
+            return "NumberFormatException";
+        }
+    }
+}
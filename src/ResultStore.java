@@ -0,0 +1,193 @@
+/**
+ * This class memoizes the results of experiments, so that a re-run of the
+ * experiments only computes the cells that are missing, e.g. a threshold
+ * added to the grid. A result is keyed by the dataset (the hash of the data
+ * file and its schema), the seed of the split, the fold, the algorithm, the
+ * early stopping threshold, whether the tree is pruned, and the set it is
+ * evaluated on. The key also holds the version of the split and of this
+ * store, so results of an older split or older trees are not reused.
+ *
+ * The results are kept in "result-store/results.tsv" in the working
+ * directory, one "key<TAB>value" line per result, least recently used first.
+ * When there are more than the maximum number of results, the least recently
+ * used ones are evicted. The directory can be changed with
+ * -DresultStore=<directory>, the maximum with -DresultStore.maxEntries=<n>,
+ * and the store is turned off with -DresultStore=off
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class ResultStore
+{
+    static final int VERSION = 4; /* Version of the trees and metrics. Increase
+                                     it when they change, so that results are
+                                     computed again */
+    static final String DIRECTORY = System.getProperty("resultStore",
+            "result-store");
+
+    int maxEntries;              // Maximum number of results kept
+    LinkedHashMap<String, Double> results; // Results in access order
+    Path path;                   // Path of the results file, null if off
+    boolean changed = false;     // Whether results were added or used
+
+    /**
+     * This constructor loads the results of earlier runs
+     *
+     * @throws IOException
+     */
+    public ResultStore() throws IOException
+    {
+        maxEntries = Integer.getInteger("resultStore.maxEntries", 100000);
+        results = new LinkedHashMap<String, Double>(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Double> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+        if (DIRECTORY.equals("off"))
+        {
+            return;
+        }
+
+        path = Paths.get(DIRECTORY, "results.tsv");
+        if (Files.isRegularFile(path))
+        {
+            BufferedReader in = Files.newBufferedReader(path,
+                    StandardCharsets.UTF_8);
+            try
+            {
+                String line;
+                while ((line = in.readLine()) != null)
+                {
+                    int tab = line.lastIndexOf('\t');
+                    if (tab > 0)
+                    {
+                        results.put(line.substring(0, tab),
+                                NumberParser.parseDouble(line, tab + 1,
+                                        line.length()));
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * This method returns the key of a result
+     *
+     * @param dataset is the hash of the data file and its schema
+     * @param seed is the seed of the split
+     * @param fold is the index of the test fold
+     * @param algorithm is "ID3" or "CART"
+     * @param threshold is the early stopping threshold
+     * @param pruned is true if the tree is pruned
+     * @param evaluation is the set the tree is evaluated on, e.g. "test"
+     * @return the key
+     */
+    public static String key(String dataset, long seed, int fold,
+            String algorithm, double threshold, boolean pruned,
+            String evaluation)
+    {
+        return "v" + VERSION + " split" + ETL.SPLIT_VERSION + " " + dataset
+                + " seed=" + seed + " fold=" + fold + " " + algorithm
+                + " threshold=" + threshold + " pruned=" + pruned + " "
+                + evaluation;
+    }
+
+    /**
+     * This method returns the hash of a data file and its schema, in hex
+     *
+     * @param filePath is the path of the data file
+     * @param etl is the ETL object that has read the file
+     * @return the hash
+     * @throws IOException
+     */
+    public static String hash(String filePath, ETL etl) throws IOException
+    {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : DatasetCache.key(filePath, etl.schema()))
+        {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * This method returns a result and marks it as recently used
+     *
+     * @param key is the key of the result
+     * @return the result, or null if it has not been computed
+     */
+    public Double get(String key)
+    {
+        Double result = results.get(key);
+        changed |= result != null;
+
+        return result;
+    }
+
+    /**
+     * This method adds a result
+     *
+     * @param key is the key of the result
+     * @param result is the result
+     */
+    public void put(String key, double result)
+    {
+        results.put(key, result);
+        changed = true;
+    }
+
+    /**
+     * This method writes the results, least recently used first. The file is
+     * written to a temporary file first and then moved in place
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException
+    {
+        if (path == null || !changed)
+        {
+            return;
+        }
+
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), "results", ".tmp");
+        try
+        {
+            BufferedWriter out = Files.newBufferedWriter(temp,
+                    StandardCharsets.UTF_8);
+            try
+            {
+                for (Map.Entry<String, Double> pair : results.entrySet())
+                {
+                    out.write(pair.getKey());
+                    out.write('\t');
+                    out.write(Double.toString(pair.getValue()));
+                    out.newLine();
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
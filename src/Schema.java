@@ -0,0 +1,103 @@
+/**
+ * This class describes the columns of a dataset as inferred by the
+ * SchemaInferencer class: the type of each column (integer, numeric, or
+ * categorical), its number of distinct values, whether it is constant, and
+ * the range of numeric columns. A column is categorical if any of its values
+ * is not a number
+ *
+ * @author Winston Lin
+ */
+public class Schema
+{
+    static final int INTEGER = 0;     // Every value is a whole number
+    static final int NUMERIC = 1;     // Every value is a number
+    static final int CATEGORICAL = 2; // Some value is not a number
+    static final String[] TYPE_NAMES = {"integer", "numeric", "categorical"};
+
+    int rows;          // Number of rows
+    int[] types;       // Type of each column
+    int[] cardinality; /* Number of distinct values of each column, -1 if
+                          not counted (more than
+                          SchemaInferencer.MAX_TRACKED, or read from a
+                          columnar file) */
+    double[] min;      // Smallest value of each numeric column
+    double[] max;      // Largest value of each numeric column
+
+    /**
+     * This method returns the number of columns
+     *
+     * @return the number of columns
+     */
+    public int numCols()
+    {
+        return types.length;
+    }
+
+    /**
+     * This method returns whether a column is categorical
+     *
+     * @param column is the index of the column
+     * @return true if some value of the column is not a number
+     */
+    public boolean isCategorical(int column)
+    {
+        return types[column] == CATEGORICAL;
+    }
+
+    /**
+     * This method returns whether a column has a single value, so that it
+     * cannot be split on
+     *
+     * @param column is the index of the column
+     * @return true if the column is constant
+     */
+    public boolean isConstant(int column)
+    {
+        return cardinality[column] == 1 || types[column] != CATEGORICAL
+                && rows > 0 && min[column] == max[column];
+    }
+
+    /**
+     * This method returns which of the first columns are categorical, in the
+     * form used by the trees
+     *
+     * @param numFeatures is the number of features, the first columns
+     * @return a boolean array of whether each feature is categorical
+     */
+    public boolean[] categorical(int numFeatures)
+    {
+        boolean[] categorical = new boolean[numFeatures];
+        for (int i = 0; i < numFeatures && i < types.length; i++)
+        {
+            categorical[i] = isCategorical(i);
+        }
+
+        return categorical;
+    }
+
+    public String toString()
+    {
+        StringBuilder report = new StringBuilder();
+        report.append(rows).append(" rows, ").append(types.length)
+                .append(" columns");
+        for (int i = 0; i < types.length; i++)
+        {
+            report.append('\n').append("Column ").append(i).append(": ")
+                    .append(TYPE_NAMES[types[i]]).append(", ")
+                    .append(cardinality[i] < 0 ? "uncounted"
+                            : Integer.toString(cardinality[i]))
+                    .append(" values");
+            if (types[i] != CATEGORICAL && cardinality[i] != 0)
+            {
+                report.append(", ").append(min[i]).append(" to ")
+                        .append(max[i]);
+            }
+            if (isConstant(i))
+            {
+                report.append(", constant");
+            }
+        }
+
+        return report.toString();
+    }
+}
@@ -0,0 +1,438 @@
+/**
+ * This class infers the schema of a dataset while it is read, one record at a
+ * time, so no second pass over the data is needed (see the Schema class). A
+ * dictionary of the distinct values of each column is kept, and a value is
+ * only parsed as a number the first time it is seen. Numeric columns with
+ * more than MAX_TRACKED distinct values drop their dictionary and parse each
+ * value instead.
+ *
+ * When encoding is turned on, the typed columns are built in the same pass:
+ * the parsed values of numeric columns, and the dictionary codes of all
+ * columns that keep their dictionary. If a column whose dictionary was
+ * dropped turns out to be categorical, its earlier values are lost, and
+ * needsSecondPass() tells the reader to read the data again with the column
+ * marked as categorical from the start.
+ *
+ * A record with a single empty field (a blank line) is skipped, and columns
+ * beyond those of the first record are ignored
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class SchemaInferencer
+{
+    static final int MAX_TRACKED = 1 << 16; // Distinct values per numeric column
+
+    boolean encode;      // Whether to build the typed columns
+    int rows;            // Number of records seen
+    int numCols = -1;    // Number of columns, set by the first record
+    boolean[] numeric;   // Whether every value so far is a number
+    boolean[] integer;   // Whether every value so far is a whole number
+    boolean[] lost;      // Turned categorical after dropping its dictionary
+    double[] min;        // Smallest value of each numeric column
+    double[] max;        // Largest value of each numeric column
+    boolean[] forced;    // Columns known to be categorical, if any
+
+    ArrayList<HashMap<String, Integer>> codeOf; // Code of each value, or null
+    ArrayList<ArrayList<String>> dictionaries;  // Value of each code, or null
+    double[][] codeValues; // Parsed number of each code of numeric columns
+
+    double[][] numbers;  // Values of numeric columns, when encoding
+    int[][] codes;       // Codes of columns with a dictionary, when encoding
+    int capacity;        // Length of the typed columns
+
+    /**
+     * This constructor creates an inferencer
+     *
+     * @param encode is true to build the typed columns
+     */
+    public SchemaInferencer(boolean encode)
+    {
+        this(encode, null);
+    }
+
+    /**
+     * This constructor creates an inferencer for a second pass, with the
+     * columns found to be categorical in the first pass
+     *
+     * @param encode is true to build the typed columns
+     * @param forced is whether each column is known to be categorical
+     */
+    public SchemaInferencer(boolean encode, boolean[] forced)
+    {
+        this.encode = encode;
+        this.forced = forced;
+    }
+
+    /**
+     * This method infers the schema of records that are already in memory
+     *
+     * @param records is the records
+     * @return the schema
+     */
+    public static Schema infer(List<String[]> records)
+    {
+        SchemaInferencer inferencer = new SchemaInferencer(false);
+        for (String[] record : records)
+        {
+            inferencer.observe(record);
+        }
+
+        return inferencer.schema();
+    }
+
+    /**
+     * This method adds a record to the schema, and to the typed columns when
+     * encoding
+     *
+     * @param record is the fields of the record
+     */
+    public void observe(String[] record)
+    {
+        if (record.length == 1 && record[0].isEmpty())
+        {// Blank line
+            return;
+        }
+        if (numCols < 0)
+        {
+            init(record.length);
+        }
+        if (encode && rows == capacity)
+        {
+            grow();
+        }
+
+        for (int c = 0; c < numCols && c < record.length; c++)
+        {
+            String value = record[c];
+            HashMap<String, Integer> index = codeOf.get(c);
+            if (index == null)
+            {// Numeric column with many values
+                double number = parse(c, value);
+                lost[c] |= !numeric[c];
+                if (encode && numeric[c])
+                {
+                    numbers[c][rows] = number;
+                }
+                continue;
+            }
+
+            Integer code = index.get(value);
+            if (code == null)
+            {// First time the value is seen
+                code = index.size();
+                index.put(value, code);
+                dictionaries.get(c).add(value);
+                double number = parse(c, value);
+                if (numeric[c])
+                {
+                    if (code == codeValues[c].length)
+                    {
+                        codeValues[c] = Arrays.copyOf(codeValues[c],
+                                code * 2);
+                    }
+                    codeValues[c][code] = number;
+                }
+                if (numeric[c] && index.size() > MAX_TRACKED)
+                {// Too many values to keep a dictionary
+                    codeOf.set(c, null);
+                    dictionaries.set(c, null);
+                    codeValues[c] = null;
+                    if (encode)
+                    {
+                        numbers[c][rows] = number;
+                        codes[c] = null;
+                    }
+                    continue;
+                }
+            }
+            if (encode)
+            {
+                codes[c][rows] = code;
+                if (numeric[c])
+                {
+                    numbers[c][rows] = codeValues[c][code];
+                }
+            }
+        }
+        rows++;
+    }
+
+    /**
+     * This method adds the records seen by another inferencer, as if they had
+     * been observed after the records seen by this one. It is used to infer
+     * the schema of a file parsed in chunks, and only works for inferencers
+     * that do not encode
+     *
+     * @param other is the inferencer of the next chunk
+     */
+    public void merge(SchemaInferencer other)
+    {
+        if (encode || other.encode)
+        {
+            throw new IllegalStateException("Cannot merge typed columns");
+        }
+        if (other.numCols < 0)
+        {
+            return;
+        }
+        if (numCols < 0)
+        {
+            init(other.numCols);
+        }
+
+        for (int c = 0; c < numCols && c < other.numCols; c++)
+        {
+            numeric[c] &= other.numeric[c];
+            integer[c] &= other.integer[c];
+            lost[c] |= other.lost[c];
+            min[c] = Math.min(min[c], other.min[c]);
+            max[c] = Math.max(max[c], other.max[c]);
+
+            HashMap<String, Integer> index = codeOf.get(c);
+            ArrayList<String> values = other.dictionaries.get(c);
+            if (index != null && values != null)
+            {// Add the values not seen yet, in the order of the other chunk
+                for (int k = 0; k < values.size(); k++)
+                {
+                    if (index.containsKey(values.get(k)))
+                    {
+                        continue;
+                    }
+                    int code = index.size();
+                    index.put(values.get(k), code);
+                    dictionaries.get(c).add(values.get(k));
+                    if (numeric[c])
+                    {
+                        if (code == codeValues[c].length)
+                        {
+                            codeValues[c] = Arrays.copyOf(codeValues[c],
+                                    code * 2);
+                        }
+                        codeValues[c][code] = other.codeValues[c][k];
+                    }
+                }
+            }
+            if (!numeric[c])
+            {
+                codeValues[c] = null;
+            }
+            lost[c] |= index == null && !numeric[c];
+            if (index != null && (values == null
+                    || numeric[c] && index.size() > MAX_TRACKED))
+            {// A chunk had too many values to keep a dictionary
+                lost[c] |= !numeric[c];
+                codeOf.set(c, null);
+                dictionaries.set(c, null);
+                codeValues[c] = null;
+            }
+        }
+        rows += other.rows;
+    }
+
+    /**
+     * This method allocates the state of each column
+     *
+     * @param numCols is the number of columns
+     */
+    void init(int numCols)
+    {
+        this.numCols = numCols;
+        numeric = new boolean[numCols];
+        integer = new boolean[numCols];
+        lost = new boolean[numCols];
+        min = new double[numCols];
+        max = new double[numCols];
+        codeOf = new ArrayList<HashMap<String, Integer>>();
+        dictionaries = new ArrayList<ArrayList<String>>();
+        codeValues = new double[numCols][];
+        for (int c = 0; c < numCols; c++)
+        {
+            numeric[c] = forced == null || !forced[c];
+            integer[c] = numeric[c];
+            min[c] = Double.POSITIVE_INFINITY;
+            max[c] = Double.NEGATIVE_INFINITY;
+            codeOf.add(new HashMap<String, Integer>());
+            dictionaries.add(new ArrayList<String>());
+            codeValues[c] = new double[16];
+        }
+        if (encode)
+        {
+            capacity = 1024;
+            numbers = new double[numCols][capacity];
+            codes = new int[numCols][capacity];
+        }
+    }
+
+    /**
+     * This method doubles the capacity of the typed columns
+     */
+    void grow()
+    {
+        capacity *= 2;
+        for (int c = 0; c < numCols; c++)
+        {
+            if (numbers[c] != null)
+            {
+                numbers[c] = Arrays.copyOf(numbers[c], capacity);
+            }
+            if (codes[c] != null)
+            {
+                codes[c] = Arrays.copyOf(codes[c], capacity);
+            }
+        }
+    }
+
+    /**
+     * This method parses a value of a column that may be numeric, and marks
+     * the column as categorical if the value is not a number
+     *
+     * @param c is the index of the column
+     * @param value is the value
+     * @return the number, or NaN if the column is categorical
+     */
+    double parse(int c, String value)
+    {
+        if (!numeric[c])
+        {
+            return Double.NaN;
+        }
+
+        double number;
+        try
+        {
+            number = NumberParser.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            numeric[c] = false;
+            integer[c] = false;
+            codeValues[c] = null;
+            if (encode)
+            {
+                numbers[c] = null;
+            }
+            return Double.NaN;
+        }
+
+        min[c] = Math.min(min[c], number);
+        max[c] = Math.max(max[c], number);
+        integer[c] &= isInteger(value);
+
+        return number;
+    }
+
+    /**
+     * This method checks whether a number is written as a whole number, an
+     * optional sign followed by digits
+     *
+     * @param value is the number as a string
+     * @return true if it is a whole number
+     */
+    static boolean isInteger(String value)
+    {
+        int start = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+        if (start == value.length())
+        {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++)
+        {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9')
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * This method returns whether the data must be read again because a
+     * column turned categorical after its dictionary was dropped. The second
+     * pass should use the categorical columns of this schema as the forced
+     * columns
+     *
+     * @return true if a second pass is needed to encode the columns
+     */
+    public boolean needsSecondPass()
+    {
+        if (!encode || numCols < 0)
+        {
+            return false;
+        }
+        for (boolean columnLost : lost)
+        {
+            if (columnLost)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * This method returns the schema of the records seen so far
+     *
+     * @return the schema
+     */
+    public Schema schema()
+    {
+        int columns = Math.max(numCols, 0);
+        Schema schema = new Schema();
+        schema.rows = rows;
+        schema.types = new int[columns];
+        schema.cardinality = new int[columns];
+        schema.min = new double[columns];
+        schema.max = new double[columns];
+        for (int c = 0; c < columns; c++)
+        {
+            schema.types[c] = !numeric[c] ? Schema.CATEGORICAL
+                    : integer[c] ? Schema.INTEGER : Schema.NUMERIC;
+            schema.cardinality[c] = codeOf.get(c) == null ? -1
+                    : codeOf.get(c).size();
+            schema.min[c] = min[c];
+            schema.max[c] = max[c];
+        }
+
+        return schema;
+    }
+
+    /**
+     * This method returns the values of a numeric column, when encoding
+     *
+     * @param c is the index of the column
+     * @return one value per record, or null if the column is categorical
+     */
+    public double[] numbers(int c)
+    {
+        return numbers[c] == null ? null : Arrays.copyOf(numbers[c], rows);
+    }
+
+    /**
+     * This method returns the codes of a column that has a dictionary, when
+     * encoding
+     *
+     * @param c is the index of the column
+     * @return one code per record, or null if the dictionary was dropped
+     */
+    public int[] codes(int c)
+    {
+        return codes[c] == null ? null : Arrays.copyOf(codes[c], rows);
+    }
+
+    /**
+     * This method returns the dictionary of a column
+     *
+     * @param c is the index of the column
+     * @return the value of each code, or null if the dictionary was dropped
+     */
+    public String[] dictionary(int c)
+    {
+        ArrayList<String> dictionary = dictionaries.get(c);
+        return dictionary == null ? null
+                : dictionary.toArray(new String[dictionary.size()]);
+    }
+}
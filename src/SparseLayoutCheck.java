@@ -0,0 +1,147 @@
+/**
+ * This class checks that a tree trained on a sparse matrix is the same as
+ * the one trained on the dense rows of the same data, for ID3 and CART. The
+ * datasets have mostly zeros, columns with few and with more than 15 unique
+ * values, and negative values, and the dense values are written as by
+ * Double.toString(). Each dataset is trained without limits and with a small
+ * number of leaves, so that the order in which leaves are split matters too.
+ * The program exits with status 1 if a pair of trees differs
+ *
+ * Usage: java SparseLayoutCheck [trials]
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class SparseLayoutCheck
+{
+    static final int NUM_FEATURES = 6; // Features of each dataset
+
+    int failures; // Number of checks that failed
+    int checked;  // Number of checks run
+
+    public static void main(String[] args)
+    {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        SparseLayoutCheck check = new SparseLayoutCheck();
+        Random random = new Random(42);
+        for (int trial = 0; trial < trials; trial++)
+        {
+            ArrayList<String[]> X = new ArrayList<String[]>();
+            ArrayList<String> labels = new ArrayList<String>();
+            ArrayList<String> targets = new ArrayList<String>();
+            check.generate(random, X, labels, targets);
+            for (GrowthLimits limits : new GrowthLimits[] {new GrowthLimits(),
+                    new GrowthLimits(8, Integer.MAX_VALUE, 2, 5)})
+            {
+                check.classifier(trial, X, labels, limits);
+                check.regressor(trial, X, targets, limits);
+            }
+        }
+
+        System.out.println(check.checked + " pairs of trees compared, "
+                + check.failures + " failure(s)");
+        if (check.failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method generates a random sparse dataset. Even features have a
+     * few integer values, odd features have many values with two decimals,
+     * and about 70% of all values are 0. The class and the target depend on
+     * the first three features
+     *
+     * @param random is the source of the dataset
+     * @param X receives the attributes
+     * @param labels receives the class of each data point
+     * @param targets receives the target value of each data point
+     */
+    void generate(Random random, ArrayList<String[]> X,
+            ArrayList<String> labels, ArrayList<String> targets)
+    {
+        int rows = 200 + random.nextInt(1000);
+        for (int i = 0; i < rows; i++)
+        {
+            double[] x = new double[NUM_FEATURES];
+            String[] row = new String[NUM_FEATURES];
+            for (int j = 0; j < NUM_FEATURES; j++)
+            {
+                if (random.nextDouble() < 0.3)
+                {
+                    x[j] = j % 2 == 0 ? 1 + random.nextInt(5)
+                            : Math.round(random.nextGaussian() * 100) / 100.0;
+                }
+                row[j] = Double.toString(x[j]);
+            }
+            X.add(row);
+            double score = x[0] + 2 * x[1] - x[2] + random.nextGaussian();
+            labels.add(score < -0.5 ? "low" : score < 1.5 ? "mid" : "high");
+            targets.add(Double.toString(Math.round(score * 10) / 10.0));
+        }
+    }
+
+    /**
+     * This method trains ID3 on both layouts of a dataset and compares the
+     * trees
+     *
+     * @param trial is the number of the dataset to be printed
+     * @param X is the attributes
+     * @param y is the class of each data point
+     * @param limits is the limits on the size of the trees
+     */
+    void classifier(int trial, ArrayList<String[]> X, ArrayList<String> y,
+            GrowthLimits limits)
+    {
+        DecisionTreeClassifier dense = new DecisionTreeClassifier();
+        dense.limits = limits;
+        dense.fit(X, y, new boolean[NUM_FEATURES]);
+        DecisionTreeClassifier sparse = new DecisionTreeClassifier();
+        sparse.limits = limits;
+        sparse.fit(SparseMatrix.fromDense(X), y);
+        compare("ID3", trial, limits, dense.root, sparse.root);
+    }
+
+    /**
+     * This method trains CART on both layouts of a dataset and compares the
+     * trees
+     *
+     * @param trial is the number of the dataset to be printed
+     * @param X is the attributes
+     * @param y is the target value of each data point
+     * @param limits is the limits on the size of the trees
+     */
+    void regressor(int trial, ArrayList<String[]> X, ArrayList<String> y,
+            GrowthLimits limits)
+    {
+        DecisionTreeRegressor dense = new DecisionTreeRegressor(0);
+        dense.limits = limits;
+        dense.fit(X, y, new boolean[NUM_FEATURES]);
+        DecisionTreeRegressor sparse = new DecisionTreeRegressor(0);
+        sparse.limits = limits;
+        sparse.fit(SparseMatrix.fromDense(X), y);
+        compare("CART", trial, limits, dense.root, sparse.root);
+    }
+
+    /**
+     * This method compares the trees of both layouts and prints a difference
+     *
+     * @param name is the name of the algorithm
+     * @param trial is the number of the dataset
+     * @param limits is the limits on the size of the trees
+     * @param dense is the root of the tree trained on the dense rows
+     * @param sparse is the root of the tree trained on the sparse matrix
+     */
+    void compare(String name, int trial, GrowthLimits limits, Node dense,
+            Node sparse)
+    {
+        checked++;
+        if (!DistributedTrainer.sameTree(dense, sparse))
+        {
+            failures++;
+            System.out.println(name + " on dataset " + trial + " with at most "
+                    + limits.maxLeaves + " leaves: trees differ");
+        }
+    }
+}
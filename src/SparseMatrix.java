@@ -0,0 +1,391 @@
+/**
+ * This class implements a sparse matrix of numeric features, such as wide
+ * one-hot encoded data. Only the nonzero values are stored, both row by row
+ * (CSR) for prediction and column by column (CSC). The matrix can be fed to
+ * the DecisionTreeClassifier class and the DecisionTreeRegressor class, which
+ * then search splits over the nonzero values only
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+
+public class SparseMatrix
+{
+    int numRows; // Number of rows
+    int numCols; // Number of columns
+
+    int[] rowPtr;      // Start of each row in colIndex and values (CSR)
+    int[] colIndex;    // Column of each nonzero value, sorted within a row
+    double[] values;   // Nonzero values in row order
+
+    int[] colPtr;      // Start of each column in rowIndex and colValues (CSC)
+    int[] rowIndex;    // Row of each nonzero value, sorted within a column
+    double[] colValues; // Nonzero values in column order
+
+    /**
+     * This class holds the nonzero values of a subset of rows, grouped by
+     * column. Only columns with at least one nonzero value are listed
+     */
+    static class ColumnSlice
+    {
+        int[] columns; // Columns with nonzero values
+        int[] start;   // Start of each column in rows and values
+        int[] rows;    // Row of each nonzero value
+        double[] values; // Nonzero values grouped by column
+    }
+
+    /**
+     * This constructor creates a matrix from its CSR representation. Column
+     * indexes must be sorted within each row, and zeros must not be stored.
+     * The CSC representation is built from the CSR representation
+     *
+     * @param numCols is the number of columns
+     * @param rowPtr is the start of each row, with one extra entry at the end
+     * @param colIndex is the column of each nonzero value
+     * @param values is the nonzero values
+     */
+    public SparseMatrix(int numCols, int[] rowPtr, int[] colIndex,
+            double[] values)
+    {
+        this.numRows = rowPtr.length - 1;
+        this.numCols = numCols;
+        this.rowPtr = rowPtr;
+        this.colIndex = colIndex;
+        this.values = values;
+
+        // Count the nonzero values of each column, then place them
+        colPtr = new int[numCols + 1];
+        for (int k = 0; k < colIndex.length; k++)
+        {
+            colPtr[colIndex[k] + 1]++;
+        }
+        for (int j = 0; j < numCols; j++)
+        {
+            colPtr[j + 1] += colPtr[j];
+        }
+        rowIndex = new int[colIndex.length];
+        colValues = new double[colIndex.length];
+        int[] next = Arrays.copyOf(colPtr, numCols);
+        for (int i = 0; i < numRows; i++)
+        {
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++)
+            {
+                int position = next[colIndex[k]]++;
+                rowIndex[position] = i;
+                colValues[position] = values[k];
+            }
+        }
+    }
+
+    /**
+     * This method converts dense rows of numeric strings to a sparse matrix
+     *
+     * @param X is the dense rows
+     * @return the sparse matrix
+     */
+    public static SparseMatrix fromDense(ArrayList<String[]> X)
+    {
+        int numCols = X.isEmpty() ? 0 : X.get(0).length;
+        int[] rowPtr = new int[X.size() + 1];
+        int nnz = 0;
+        int[] colIndex = new int[16];
+        double[] values = new double[16];
+        for (int i = 0; i < X.size(); i++)
+        {
+            String[] x = X.get(i);
+            for (int j = 0; j < numCols; j++)
+            {
+                double value = NumberParser.parseDouble(x[j]);
+                if (value != 0)
+                {
+                    if (nnz == colIndex.length)
+                    {
+                        colIndex = Arrays.copyOf(colIndex, nnz * 2);
+                        values = Arrays.copyOf(values, nnz * 2);
+                    }
+                    colIndex[nnz] = j;
+                    values[nnz] = value;
+                    nnz++;
+                }
+            }
+            rowPtr[i + 1] = nnz;
+        }
+
+        return new SparseMatrix(numCols, rowPtr,
+                Arrays.copyOf(colIndex, nnz), Arrays.copyOf(values, nnz));
+    }
+
+    /**
+     * This method returns the value at a row and column. The row is searched
+     * with binary search over its nonzero values
+     *
+     * @param row is the row of interest
+     * @param col is the column of interest
+     * @return the value, 0 if it is not stored
+     */
+    public double get(int row, int col)
+    {
+        int k = Arrays.binarySearch(colIndex, rowPtr[row], rowPtr[row + 1],
+                col);
+
+        return k >= 0 ? values[k] : 0;
+    }
+
+    /**
+     * This method returns the number of nonzero values
+     *
+     * @return the number of nonzero values
+     */
+    public int nnz()
+    {
+        return values.length;
+    }
+
+    /**
+     * This method collects the nonzero values of a subset of rows column by
+     * column, in time proportional to the number of those values. For all
+     * rows, the CSC representation is copied as is. The returned arrays may
+     * be reordered by the caller
+     *
+     * @param rows is the subset of rows
+     * @param position is an array of -1 with one entry per column, used as
+     *        scratch space and restored before returning
+     * @return the nonzero values grouped by column
+     */
+    public ColumnSlice slice(int[] rows, int[] position)
+    {
+        ColumnSlice slice = new ColumnSlice();
+        if (rows.length == numRows)
+        {// All rows, use the CSC representation as is
+            int numColumns = 0;
+            for (int j = 0; j < numCols; j++)
+            {
+                if (colPtr[j + 1] > colPtr[j])
+                {
+                    numColumns++;
+                }
+            }
+            slice.columns = new int[numColumns];
+            slice.start = new int[numColumns + 1];
+            numColumns = 0;
+            for (int j = 0; j < numCols; j++)
+            {
+                if (colPtr[j + 1] > colPtr[j])
+                {
+                    slice.columns[numColumns] = j;
+                    slice.start[++numColumns] = colPtr[j + 1];
+                }
+            }
+            slice.rows = rowIndex.clone();
+            slice.values = colValues.clone();
+            return slice;
+        }
+
+        // Count the nonzero values of each column that appears in the rows
+        int numColumns = 0;
+        int nnz = 0;
+        int[] columns = new int[16];
+        int[] counts = new int[16];
+        for (int row : rows)
+        {
+            for (int k = rowPtr[row]; k < rowPtr[row + 1]; k++)
+            {
+                int j = colIndex[k];
+                if (position[j] == -1)
+                {
+                    if (numColumns == columns.length)
+                    {
+                        columns = Arrays.copyOf(columns, numColumns * 2);
+                        counts = Arrays.copyOf(counts, numColumns * 2);
+                    }
+                    position[j] = numColumns;
+                    columns[numColumns] = j;
+                    counts[numColumns] = 0;
+                    numColumns++;
+                }
+                counts[position[j]]++;
+                nnz++;
+            }
+        }
+
+        // List the columns in ascending order, like the CSC representation
+        slice.columns = Arrays.copyOf(columns, numColumns);
+        Arrays.sort(slice.columns);
+        int[] sortedCounts = new int[numColumns];
+        for (int c = 0; c < numColumns; c++)
+        {
+            sortedCounts[c] = counts[position[slice.columns[c]]];
+        }
+        for (int c = 0; c < numColumns; c++)
+        {
+            position[slice.columns[c]] = c;
+        }
+        counts = sortedCounts;
+
+        // Place the values of each column after those of previous columns
+        slice.start = new int[numColumns + 1];
+        for (int c = 0; c < numColumns; c++)
+        {
+            slice.start[c + 1] = slice.start[c] + counts[c];
+            counts[c] = slice.start[c];
+        }
+        slice.rows = new int[nnz];
+        slice.values = new double[nnz];
+        for (int row : rows)
+        {
+            for (int k = rowPtr[row]; k < rowPtr[row + 1]; k++)
+            {
+                int c = position[colIndex[k]];
+                slice.rows[counts[c]] = row;
+                slice.values[counts[c]] = values[k];
+                counts[c]++;
+            }
+        }
+        for (int j : slice.columns)
+        {
+            position[j] = -1;
+        }
+
+        return slice;
+    }
+
+    /**
+     * This method sorts the values of a column of a slice and lists its
+     * unique values, with 0 if a row has no value in the column, in the
+     * order they are first seen in the rows. Each value is written as by
+     * Double.toString(), so this is the list that diffValues() of the tree
+     * classes finds in the dense rows of the same data, and candidateValues()
+     * chooses the same candidates from it. The rows must be in ascending
+     * order, as they are in every node of a tree
+     *
+     * @param slice is the slice of interest, whose column is sorted in place
+     * @param c is the column of interest in the slice
+     * @param rows is the rows of the slice
+     * @param order is scratch space with one more entry than the column has
+     *        values
+     * @return the unique values in the order they are first seen
+     */
+    public static ArrayList<String> uniqueValues(ColumnSlice slice, int c,
+            int[] rows, long[] order)
+    {
+        int from = slice.start[c];
+        int to = slice.start[c + 1];
+
+        // The rows of a column are in ascending order until it is sorted, so
+        // the first zero is in the first row missing from them
+        int firstZero = -1;
+        if (to - from < rows.length)
+        {
+            int k = 0;
+            while (k < to - from && slice.rows[from + k] == rows[k])
+            {
+                k++;
+            }
+            firstZero = rows[k];
+        }
+        sortByValue(slice.values, slice.rows, from, to);
+
+        // The first row of each unique value and, in the low bits, its first
+        // position in the sorted column plus 1, or 0 for the zeros
+        int numValues = 0;
+        if (firstZero >= 0)
+        {
+            order[numValues++] = (long) firstZero << 32;
+        }
+        for (int k = from; k < to; k++)
+        {
+            long key = (long) slice.rows[k] << 32 | (k - from + 1);
+            if (k == from || slice.values[k] != slice.values[k - 1])
+            {
+                order[numValues++] = key;
+            }
+            else if (slice.rows[k] < (int) (order[numValues - 1] >>> 32))
+            {
+                order[numValues - 1] = key;
+            }
+        }
+        Arrays.sort(order, 0, numValues);
+
+        ArrayList<String> uniqueValues = new ArrayList<String>(numValues);
+        for (int u = 0; u < numValues; u++)
+        {
+            int k = (int) order[u] - 1;
+            uniqueValues.add(Double.toString(k < 0 ? 0 : slice.values[from
+                    + k]));
+        }
+
+        return uniqueValues;
+    }
+
+    /**
+     * This method sorts a range of values in ascending order, moving the
+     * paired rows along with them
+     *
+     * @param values is the values to be sorted
+     * @param rows is the rows paired with the values
+     * @param from is the start of the range, inclusive
+     * @param to is the end of the range, exclusive
+     */
+    public static void sortByValue(double[] values, int[] rows, int from,
+            int to)
+    {
+        while (to - from > 16)
+        {
+            double pivot = values[(from + to) >>> 1];
+            int i = from;
+            int j = to - 1;
+            while (i <= j)
+            {
+                while (values[i] < pivot)
+                {
+                    i++;
+                }
+                while (values[j] > pivot)
+                {
+                    j--;
+                }
+                if (i <= j)
+                {
+                    swap(values, rows, i++, j--);
+                }
+            }
+            // Recurse into the smaller part to bound the stack depth
+            if (j - from < to - i)
+            {
+                sortByValue(values, rows, from, j + 1);
+                from = i;
+            }
+            else
+            {
+                sortByValue(values, rows, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++)
+        {// Insertion sort for short ranges
+            for (int j = i; j > from && values[j - 1] > values[j]; j--)
+            {
+                swap(values, rows, j - 1, j);
+            }
+        }
+    }
+
+    /**
+     * This method swaps two entries of a pair of arrays
+     *
+     * @param values is the first array
+     * @param rows is the second array
+     * @param i is the first entry
+     * @param j is the second entry
+     */
+    static void swap(double[] values, int[] rows, int i, int j)
+    {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+}
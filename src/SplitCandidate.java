@@ -0,0 +1,49 @@
+/**
+ * This class implements an entry of the frontier used to grow a tree 
+ * best-first. It holds a leaf that can be split, the split chosen for it, and
+ * the impurity reduction of the split, which orders the frontier
+ * 
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+public class SplitCandidate implements Comparable<SplitCandidate>
+{
+    static final AtomicLong created = new AtomicLong(); // Entries so far
+    
+    Node node;     // Leaf that can be split
+    int depth;     // Depth of the leaf
+    ArrayList<String> y; // Targets of the data points in the leaf
+    ArrayList<Object> params; // Feature, value, and partitions of the split
+    double priority; // Impurity reduction of the split
+    long order = created.getAndIncrement(); // Breaks ties by creation order
+    
+    public SplitCandidate(Node node, int depth, ArrayList<String> y, 
+            ArrayList<Object> params, double priority)
+    {
+        this.node = node;
+        this.depth = depth;
+        this.y = y;
+        this.params = params;
+        this.priority = priority;
+    }
+    
+    /**
+     * This method orders the entries so that the split with the largest
+     * impurity reduction comes first
+     * 
+     * @param other is the entry to compare with
+     * @return a negative number if this entry comes first
+     */
+    public int compareTo(SplitCandidate other)
+    {
+        if (priority != other.priority)
+        {
+            return Double.compare(other.priority, priority);
+        }
+        
+        return Long.compare(order, other.order);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * This class chooses the CART split of a node among candidate splits. The
+ * weighted MSEs of the candidates may differ in the last bits depending on
+ * how their statistics were added up, e.g. merged from several workers, so
+ * MSEs within a tolerance of TIE_TOLERANCE times the MSE of the node are a
+ * tie. Comparing each candidate with the best one so far would not be
+ * transitive: a chain of candidates each within the tolerance of the next
+ * could end anywhere, depending on the order they are seen in. Instead, the
+ * candidates are collected first, and the tie is among all candidates within
+ * the tolerance of the smallest MSE. It goes to the feature with the smallest
+ * index, then to the earliest candidate of that feature. The smallest MSE
+ * does not depend on the order, so neither does the chosen split.
+ *
+ * A candidate must lower the MSE of the node by more than the tolerance
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class SplitChoice
+{
+    double parentMse; // MSE of the node
+    double tie;       // Largest difference of MSEs that is a tie
+    double min = Double.MAX_VALUE; // Smallest MSE of the candidates
+
+    int size;                         // Number of candidates kept
+    int[] features = new int[16];     // Feature of each candidate
+    int[] positions = new int[16];    // Position among those of the feature
+    double[] values = new double[16]; // Value of each candidate, if any
+    double[] mses = new double[16];   // Weighted MSE of each candidate
+
+    /**
+     * This constructor creates an empty choice for a node
+     *
+     * @param parentMse is the MSE of the node
+     */
+    public SplitChoice(double parentMse)
+    {
+        this.parentMse = parentMse;
+        tie = DecisionTreeRegressor.TIE_TOLERANCE * parentMse;
+    }
+
+    /**
+     * This method checks whether a split with an MSE, or with an MSE of at
+     * least a lower bound, can still be chosen: it must lower the MSE of the
+     * node, and be within the tolerance of the smallest MSE so far
+     *
+     * @param mse is the weighted MSE of a split, or a lower bound of it
+     * @return true if the split can still be chosen
+     */
+    public boolean canWin(double mse)
+    {
+        return mse < parentMse - tie && mse <= min + tie;
+    }
+
+    /**
+     * This method adds a candidate split. A candidate that can no longer be
+     * chosen is not kept
+     *
+     * @param feature is the feature of the split
+     * @param position is the position of the candidate among those of the
+     *        feature, in the order they are listed
+     * @param value is the value of the split, e.g. its threshold
+     * @param mse is the weighted MSE of the split
+     */
+    public void add(int feature, int position, double value, double mse)
+    {
+        if (!canWin(mse))
+        {
+            return;
+        }
+        if (size == features.length)
+        {
+            features = Arrays.copyOf(features, size * 2);
+            positions = Arrays.copyOf(positions, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            mses = Arrays.copyOf(mses, size * 2);
+        }
+        features[size] = feature;
+        positions[size] = position;
+        values[size] = value;
+        mses[size] = mse;
+        size++;
+        min = Math.min(min, mse);
+    }
+
+    /**
+     * This method chooses the split among the candidates within the
+     * tolerance of the smallest MSE: the one with the smallest feature, then
+     * the smallest position
+     *
+     * @return the candidate chosen, or -1 if there is none
+     */
+    public int choose()
+    {
+        int best = -1;
+        for (int k = 0; k < size; k++)
+        {
+            if (mses[k] <= min + tie && (best < 0
+                    || features[k] < features[best]
+                    || features[k] == features[best]
+                    && positions[k] < positions[best]))
+            {
+                best = k;
+            }
+        }
+
+        return best;
+    }
+}
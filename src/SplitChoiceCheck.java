@@ -0,0 +1,127 @@
+/**
+ * This class checks that the CART split of a node does not depend on the
+ * order the features are scanned in, when the MSEs of the candidates are
+ * within the tie tolerance of each other. First, a chain of three candidates
+ * each within the tolerance of the next, but not of the one after, is added
+ * to the SplitChoice class in every order. Then the split search of the
+ * regressor is run on nodes whose three features each send a different row
+ * to the right branch, so that their MSEs are a little apart, with the
+ * features scanned in every order. The rows differ by a range of small
+ * amounts, so that some nodes have such a chain. The program exits with
+ * status 1 if the split differs between two orders
+ *
+ * Usage: java SplitChoiceCheck
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class SplitChoiceCheck
+{
+    // Every order of three features
+    static final int[][] ORDERS = {{0, 1, 2}, {0, 2, 1}, {1, 0, 2},
+            {1, 2, 0}, {2, 0, 1}, {2, 1, 0}};
+
+    int failures; // Number of checks that failed
+    int checked;  // Number of checks run
+
+    public static void main(String[] args)
+    {
+        SplitChoiceCheck check = new SplitChoiceCheck();
+        check.chain();
+        for (double delta = 1e-16; delta < 1e-4; delta *= 1.5)
+        {
+            check.node(delta);
+        }
+
+        System.out.println(check.checked + " checks, " + check.failures
+                + " failure(s)");
+        if (check.failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method adds three candidates with the MSEs m + 1.2 t, m + 0.6 t,
+     * and m, for a tolerance t, to a choice in every order. Feature 1 is the
+     * smallest feature within the tolerance of the smallest MSE, so it must
+     * always be chosen
+     */
+    void chain()
+    {
+        double parentMse = 1;
+        double tie = DecisionTreeRegressor.TIE_TOLERANCE * parentMse;
+        double[] mses = {0.5 + 1.2 * tie, 0.5 + 0.6 * tie, 0.5};
+        for (int[] order : ORDERS)
+        {
+            checked++;
+            SplitChoice choice = new SplitChoice(parentMse);
+            for (int feature : order)
+            {
+                choice.add(feature, 0, feature, mses[feature]);
+            }
+            int best = choice.choose();
+            if (best < 0 || choice.features[best] != 1)
+            {
+                failures++;
+                System.out.println("Chain in order " + Arrays.toString(order)
+                        + ": feature " + (best < 0 ? -1
+                        : choice.features[best]) + " instead of 1");
+            }
+        }
+    }
+
+    /**
+     * This method runs the split search on a node in every order of its
+     * features. Half of the rows have target 0 and feature values 0, half
+     * have target 1 and feature values 1. Three more rows have the targets
+     * 0.5, 0.5 + delta, and 0.5 + 2 delta, and feature k is 1 only for the
+     * k-th of them, so that the MSEs of the features differ by about delta
+     * over the number of rows
+     *
+     * @param delta is the difference between the targets of the extra rows
+     */
+    void node(double delta)
+    {
+        ArrayList<String[]> X = new ArrayList<String[]>();
+        ArrayList<String> y = new ArrayList<String>();
+        for (int i = 0; i < 100; i++)
+        {
+            String x = i % 2 == 0 ? "0.0" : "1.0";
+            X.add(new String[] {x, x, x});
+            y.add(i % 2 == 0 ? "0.0" : "1.0");
+        }
+        for (int k = 0; k < 3; k++)
+        {
+            String[] x = {"0.0", "0.0", "0.0"};
+            x[k] = "1.0";
+            X.add(x);
+            y.add(Double.toString(0.5 + k * delta));
+        }
+
+        String expected = null;
+        for (int[] order : ORDERS)
+        {
+            checked++;
+            DecisionTreeRegressor regressor = new DecisionTreeRegressor(0);
+            regressor.categorical = new boolean[3];
+            regressor.featureOrder = new FeatureOrder(3);
+            regressor.featureOrder.order = order.clone();
+            ArrayList<Object> params = regressor.chooseSplitIndex(X, y);
+            String split = params.isEmpty() ? "none"
+                    : params.get(0) + " < " + params.get(1);
+            if (expected == null)
+            {
+                expected = split;
+            }
+            else if (!split.equals(expected))
+            {
+                failures++;
+                System.out.println("Targets " + delta + " apart, order "
+                        + Arrays.toString(order) + ": split on " + split
+                        + " instead of " + expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * This class implements the inner loops of split evaluation on primitive
+ * columns: the count, mean, and M2 of the targets (see the Moments class),
+ * and the partition of a numeric feature against a threshold with the class
+ * counts (ID3) or the count, mean, and M2 (CART) of each branch, and the
+ * size of the left branch of several thresholds at once. Means and M2 take
+ * two passes, the sums first and then the squared deviations from the mean
+ * of each branch. These are the scalar versions. If
+ * the optional VectorSplitKernels class (src-vector) is on the class path
+ * and the jdk.incubator.vector module is available, it is used instead.
+ * Setting the system property "splitKernels" to "scalar" forces the scalar
+ * versions
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+
+public class SplitKernels
+{
+    static final SplitKernels INSTANCE = load(); // Kernels in use
+
+    /**
+     * This method loads the vectorized kernels when they are available and
+     * falls back to the scalar kernels otherwise
+     *
+     * @return the kernels to be used
+     */
+    static SplitKernels load()
+    {
+        if (!System.getProperty("splitKernels", "vector").equals("scalar"))
+        {
+            try
+            {
+                return (SplitKernels) Class.forName("VectorSplitKernels")
+                        .getDeclaredConstructor().newInstance();
+            }
+            catch (Exception | LinkageError e)
+            {// Not compiled, or the incubator module is not added
+            }
+        }
+
+        return new SplitKernels();
+    }
+
+    /**
+     * This method returns the name of the kernels in use
+     *
+     * @return "scalar" or "vector"
+     */
+    public String name()
+    {
+        return "scalar";
+    }
+
+    /**
+     * This method calculates the count, mean, and M2 of the first n target
+     * values
+     *
+     * @param y is the target values
+     * @param n is the number of target values to use
+     * @param out receives the count, mean, and M2
+     */
+    public void moments(double[] y, int n, double[] out)
+    {
+        double sum = 0;
+        for (int i = 0; i < n; i++)
+        {
+            sum += y[i];
+        }
+        double mean = n == 0 ? 0 : sum / n;
+        double m2 = 0;
+        for (int i = 0; i < n; i++)
+        {
+            double d = y[i] - mean;
+            m2 += d * d;
+        }
+        out[0] = n;
+        out[1] = mean;
+        out[2] = m2;
+    }
+
+    /**
+     * This method splits the first n data points on a numeric feature and
+     * calculates the count, mean, and M2 of the targets of both branches. The
+     * left branch holds the values less than the threshold
+     *
+     * @param x is the feature values
+     * @param y is the target values
+     * @param n is the number of data points to use
+     * @param threshold is the value to split on
+     * @param out receives the statistics of the left branch followed by those
+     *        of the right branch
+     */
+    public void partitionStats(double[] x, double[] y, int n,
+            double threshold, double[] out)
+    {
+        double leftCount = 0;
+        double leftSum = 0;
+        double rightSum = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (x[i] < threshold)
+            {
+                leftCount++;
+                leftSum += y[i];
+            }
+            else
+            {
+                rightSum += y[i];
+            }
+        }
+        double rightCount = n - leftCount;
+        double leftMean = leftCount == 0 ? 0 : leftSum / leftCount;
+        double rightMean = rightCount == 0 ? 0 : rightSum / rightCount;
+        double leftM2 = 0;
+        double rightM2 = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (x[i] < threshold)
+            {
+                double d = y[i] - leftMean;
+                leftM2 += d * d;
+            }
+            else
+            {
+                double d = y[i] - rightMean;
+                rightM2 += d * d;
+            }
+        }
+        out[0] = leftCount;
+        out[1] = leftMean;
+        out[2] = leftM2;
+        out[3] = rightCount;
+        out[4] = rightMean;
+        out[5] = rightM2;
+    }
+
+    /**
+     * This method splits the first n data points on a numeric feature and
+     * counts the data points of each class in both branches. The left branch
+     * holds the values less than the threshold
+     *
+     * @param x is the feature values
+     * @param yIndex is the class index of each data point
+     * @param n is the number of data points to use
+     * @param threshold is the value to split on
+     * @param left receives the class counts of the left branch
+     * @param right receives the class counts of the right branch
+     */
+    public void partitionCounts(double[] x, int[] yIndex, int n,
+            double threshold, int[] left, int[] right)
+    {
+        Arrays.fill(left, 0);
+        Arrays.fill(right, 0);
+        for (int i = 0; i < n; i++)
+        {
+            if (x[i] < threshold)
+            {
+                left[yIndex[i]]++;
+            }
+            else
+            {
+                right[yIndex[i]]++;
+            }
+        }
+    }
+
+    /**
+     * This method counts the data points less than each of several
+     * thresholds in one pass, e.g. the size of the left branch of every
+     * candidate split of a numeric feature
+     *
+     * @param x is the feature values
+     * @param n is the number of data points to use
+     * @param thresholds is the thresholds, sorted in ascending order, without
+     *        NaN
+     * @param below receives the number of values less than each threshold
+     */
+    public void countBelow(double[] x, int n, double[] thresholds,
+            int[] below)
+    {
+        int m = thresholds.length;
+        Arrays.fill(below, 0, m, 0);
+        for (int i = 0; i < n; i++)
+        {// Find the first threshold above the value
+            int low = 0;
+            int high = m;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (x[i] < thresholds[mid])
+                {
+                    high = mid;
+                }
+                else
+                {
+                    low = mid + 1;
+                }
+            }
+            if (low < m)
+            {
+                below[low]++;
+            }
+        }
+        for (int j = 1; j < m; j++)
+        {// The value is also less than every later threshold
+            below[j] += below[j - 1];
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * This class times the stages of the cross validation pipeline for each
+ * dataset and fold: parsing the file, splitting it into partitions, building
+ * the folds, fitting, pruning, tuning the early stopping threshold, and
+ * predicting. Repeated calls of a stage within one fold, e.g. one fit per
+ * threshold, are added up. For each stage the report holds the number of
+ * calls, the time, the rows processed, the mean tree size, and the throughput
+ * in rows per second. The report is written as CSV and JSON, e.g.
+ *   timer.write("Timings") writes "Timings.csv" and "Timings.json"
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+
+public class StageTimer
+{
+    static final int WHOLE_DATASET = -1; // Fold of stages run once per dataset
+
+    // Key "dataset,stage,fold" -> {calls, nanoseconds, rows, tree nodes}
+    LinkedHashMap<String, long[]> stages = new LinkedHashMap<String, long[]>();
+    ArrayList<String> datasets = new ArrayList<String>();
+    ArrayList<String> names = new ArrayList<String>();
+    ArrayList<Integer> folds = new ArrayList<Integer>();
+
+    /**
+     * This method starts timing a stage
+     *
+     * @return the start time to be passed to stop()
+     */
+    public long start()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * This method stops timing a stage and adds it to the report
+     *
+     * @param dataset is the name of the dataset
+     * @param stage is the name of the stage, e.g. "fit"
+     * @param fold is the index of the fold, or WHOLE_DATASET
+     * @param start is the time returned by start()
+     * @param rows is the number of rows processed
+     * @param root is the root node of the tree built or used, or null
+     */
+    public void stop(String dataset, String stage, int fold, long start,
+            int rows, Node root)
+    {
+        long nanos = System.nanoTime() - start;
+        String key = dataset + "," + stage + "," + fold;
+        long[] totals = stages.get(key);
+        if (totals == null)
+        {
+            totals = new long[4];
+            stages.put(key, totals);
+            datasets.add(dataset);
+            names.add(stage);
+            folds.add(fold);
+        }
+        totals[0]++;
+        totals[1] += nanos;
+        totals[2] += rows;
+        if (root != null)
+        {
+            totals[3] += TreeEvents.shape(root)[0];
+        }
+    }
+
+    /**
+     * This method writes the report as CSV and JSON
+     *
+     * @param path is the path of the report without extension
+     * @throws IOException
+     */
+    public void write(String path) throws IOException
+    {
+        PrintWriter csv = new PrintWriter(
+                new BufferedWriter(new FileWriter(path + ".csv")));
+        csv.println("dataset,stage,fold,calls,millis,rows,treeNodes,"
+                + "rowsPerSecond");
+        PrintWriter json = new PrintWriter(
+                new BufferedWriter(new FileWriter(path + ".json")));
+        json.println("[");
+
+        int i = 0;
+        for (long[] totals : stages.values())
+        {
+            String fold = folds.get(i) == WHOLE_DATASET ? ""
+                    : Integer.toString(folds.get(i));
+            double millis = totals[1] / 1e6;
+            double treeNodes = (double) totals[3] / totals[0];
+            double rowsPerSecond = totals[1] > 0
+                    ? totals[2] * 1e9 / totals[1] : 0;
+            csv.printf(Locale.ROOT, "%s,%s,%s,%d,%.3f,%d,%.1f,%.0f%n",
+                    datasets.get(i), names.get(i), fold, totals[0], millis,
+                    totals[2], treeNodes, rowsPerSecond);
+            json.printf(Locale.ROOT, "  {\"dataset\": \"%s\", \"stage\": "
+                    + "\"%s\", \"fold\": %s, \"calls\": %d, \"millis\": %.3f, "
+                    + "\"rows\": %d, \"treeNodes\": %.1f, \"rowsPerSecond\": "
+                    + "%.0f}%s%n", datasets.get(i), names.get(i),
+                    fold.isEmpty() ? "null" : fold, totals[0], millis,
+                    totals[2], treeNodes, rowsPerSecond,
+                    i < stages.size() - 1 ? "," : "");
+            i++;
+        }
+
+        json.println("]");
+        csv.close();
+        json.close();
+    }
+}
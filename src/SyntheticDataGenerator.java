@@ -0,0 +1,372 @@
+/**
+ * This class generates synthetic datasets to measure how training scales with
+ * rows, features, and cores. Both classification and regression tables can be
+ * generated, with any number of rows and any mix of numeric and categorical
+ * features. Rows are generated one at a time from a seeded random number
+ * generator, so the same settings always give the same table and tables of
+ * any size can be streamed to a CSV file and/or a columnar binary file (see
+ * the ColumnarWriter class)
+ *
+ * Classification: class labels follow a Zipf distribution, so that imbalance
+ * = 0 gives balanced classes and larger values give skewed classes like those
+ * of "Abalone". Numeric features are drawn around a mean that depends on the
+ * class, and categorical features take a category tied to the class. With
+ * probability noise, a feature or label is replaced by a random one
+ *
+ * Regression: features are standard normal or uniform categories, and the
+ * target is a linear function of the numeric features plus an effect of each
+ * category, plus Gaussian noise with standard deviation noise
+ *
+ * Columns are written in the order numeric features, categorical features,
+ * target, without a header. Categories are written as "v" followed by their
+ * index, and class labels as their index
+ *
+ * Usage: java SyntheticDataGenerator [option=value ...]
+ *   task=classification or regression
+ *   rows=1000 numeric=6 categorical=2 cardinality=8 classes=4
+ *   imbalance=1.0 noise=0.1 seed=42
+ *   csv=synthetic.csv columnar=synthetic.dtcf (either can be omitted)
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+
+public class SyntheticDataGenerator
+{
+    boolean classification = true; // True for classification
+    long rows = 1000;              // Number of rows
+    int numeric = 6;               // Number of numeric features
+    int categorical = 2;           // Number of categorical features
+    int cardinality = 8;           // Number of categories per feature
+    int classes = 4;               // Number of classes (classification)
+    double imbalance = 1.0;        // Zipf exponent of the class distribution
+    double noise = 0.1;            // Noise level
+    long seed = 42;                // Seed of the random number generator
+
+    Random random;
+    double[] classCdf;      // Cumulative probability of each class
+    double[][] means;       // Mean of each numeric feature for each class
+    int[][] preferred;      // Category of each feature tied to each class
+    double[] weights;       // Weight of each numeric feature (regression)
+    double[][] effects;     // Effect of each category (regression)
+
+    public static void main(String[] args) throws IOException
+    {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        String csvPath = null;
+        String columnarPath = null;
+        for (String arg : args)
+        {
+            int equals = arg.indexOf('=');
+            if (equals < 0)
+            {
+                throw new IllegalArgumentException("Expected option=value: "
+                        + arg);
+            }
+            String name = arg.substring(0, equals);
+            String value = arg.substring(equals + 1);
+            if (name.equals("task"))
+            {
+                generator.classification = value.equals("classification");
+            }
+            else if (name.equals("rows"))
+            {
+                generator.rows = Long.parseLong(value);
+            }
+            else if (name.equals("numeric"))
+            {
+                generator.numeric = Integer.parseInt(value);
+            }
+            else if (name.equals("categorical"))
+            {
+                generator.categorical = Integer.parseInt(value);
+            }
+            else if (name.equals("cardinality"))
+            {
+                generator.cardinality = Integer.parseInt(value);
+            }
+            else if (name.equals("classes"))
+            {
+                generator.classes = Integer.parseInt(value);
+            }
+            else if (name.equals("imbalance"))
+            {
+                generator.imbalance = Double.parseDouble(value);
+            }
+            else if (name.equals("noise"))
+            {
+                generator.noise = Double.parseDouble(value);
+            }
+            else if (name.equals("seed"))
+            {
+                generator.seed = Long.parseLong(value);
+            }
+            else if (name.equals("csv"))
+            {
+                csvPath = value;
+            }
+            else if (name.equals("columnar"))
+            {
+                columnarPath = value;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+        if (csvPath == null && columnarPath == null)
+        {
+            csvPath = "synthetic.csv";
+        }
+
+        long start = System.currentTimeMillis();
+        generator.generate(csvPath, columnarPath);
+        System.out.println("Generated " + generator.rows + " rows in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * This method draws the parameters of the table from the seed. It is
+     * called by generate() and records(), and must be called again after a
+     * setting is changed
+     */
+    public void init()
+    {
+        random = new Random(seed);
+
+        // Zipf distribution of the classes
+        classCdf = new double[classes];
+        double total = 0;
+        for (int c = 0; c < classes; c++)
+        {
+            total += 1 / Math.pow(c + 1, imbalance);
+            classCdf[c] = total;
+        }
+        for (int c = 0; c < classes; c++)
+        {
+            classCdf[c] /= total;
+        }
+
+        means = new double[classes][numeric];
+        preferred = new int[classes][categorical];
+        for (int c = 0; c < classes; c++)
+        {
+            for (int j = 0; j < numeric; j++)
+            {
+                means[c][j] = random.nextGaussian() * 2;
+            }
+            for (int j = 0; j < categorical; j++)
+            {
+                preferred[c][j] = random.nextInt(cardinality);
+            }
+        }
+
+        weights = new double[numeric];
+        for (int j = 0; j < numeric; j++)
+        {
+            weights[j] = random.nextGaussian() * 10;
+        }
+        effects = new double[categorical][cardinality];
+        for (int j = 0; j < categorical; j++)
+        {
+            for (int k = 0; k < cardinality; k++)
+            {
+                effects[j][k] = random.nextGaussian() * 10;
+            }
+        }
+    }
+
+    /**
+     * This method generates the next row. Numeric values are rounded to 4
+     * decimal places so that the CSV file and the columnar file hold the
+     * same values
+     *
+     * @param row receives the numeric features, then the category index of
+     *        each categorical feature, then the target (the class index for
+     *        classification)
+     */
+    public void nextRow(double[] row)
+    {
+        int target = 0;
+        if (classification)
+        {
+            target = Arrays.binarySearch(classCdf, random.nextDouble());
+            target = Math.min(target < 0 ? -target - 1 : target, classes - 1);
+        }
+
+        double y = 0;
+        for (int j = 0; j < numeric; j++)
+        {
+            double x = random.nextGaussian();
+            if (classification)
+            {
+                x += random.nextDouble() < noise ? 0 : means[target][j];
+            }
+            else
+            {
+                y += weights[j] * x;
+            }
+            row[j] = round(x);
+        }
+        for (int j = 0; j < categorical; j++)
+        {
+            int category = random.nextInt(cardinality);
+            if (classification && random.nextDouble() >= noise)
+            {
+                category = preferred[target][j];
+            }
+            else if (!classification)
+            {
+                y += effects[j][category];
+            }
+            row[numeric + j] = category;
+        }
+
+        if (classification)
+        {
+            if (random.nextDouble() < noise)
+            {// Label noise
+                target = random.nextInt(classes);
+            }
+            row[numeric + categorical] = target;
+        }
+        else
+        {
+            row[numeric + categorical] = round(y + random.nextGaussian()
+                    * noise);
+        }
+    }
+
+    /**
+     * This method rounds a value to 4 decimal places
+     *
+     * @param value is the value to be rounded
+     * @return the rounded value
+     */
+    static double round(double value)
+    {
+        return Math.round(value * 1e4) / 1e4;
+    }
+
+    /**
+     * This method formats a generated row as a record of strings, the same
+     * form the ETL class returns
+     *
+     * @param row is the generated row
+     * @param record receives the values as strings
+     */
+    public void format(double[] row, String[] record)
+    {
+        for (int j = 0; j < row.length; j++)
+        {
+            if (j >= numeric && j < numeric + categorical)
+            {
+                record[j] = "v" + (int) row[j];
+            }
+            else if (j == numeric + categorical && classification)
+            {
+                record[j] = Integer.toString((int) row[j]);
+            }
+            else
+            {
+                record[j] = Double.toString(row[j]);
+            }
+        }
+    }
+
+    /**
+     * This method generates the whole table in memory. It is meant for
+     * tables small enough to fit in memory; use generate() otherwise
+     *
+     * @return the records of the table
+     */
+    public ArrayList<String[]> records()
+    {
+        init();
+        int numCols = numeric + categorical + 1;
+        double[] row = new double[numCols];
+        ArrayList<String[]> records = new ArrayList<String[]>();
+        for (long i = 0; i < rows; i++)
+        {
+            nextRow(row);
+            String[] record = new String[numCols];
+            format(row, record);
+            records.add(record);
+        }
+
+        return records;
+    }
+
+    /**
+     * This method streams the table to a CSV file and/or a columnar file
+     *
+     * @param csvPath is the path of the CSV file, or null
+     * @param columnarPath is the path of the columnar file, or null
+     * @throws IOException
+     */
+    public void generate(String csvPath, String columnarPath)
+            throws IOException
+    {
+        init();
+        int numCols = numeric + categorical + 1;
+
+        BufferedWriter csv = csvPath == null ? null : new BufferedWriter(
+                new FileWriter(csvPath), 1 << 16);
+        ColumnarWriter columnar = null;
+        if (columnarPath != null)
+        {
+            String[] names = new String[numCols];
+            String[][] dictionaries = new String[numCols][];
+            for (int j = 0; j < numCols; j++)
+            {
+                names[j] = j < numeric ? "x" + j : j < numCols - 1 ?
+                        "c" + (j - numeric) : "y";
+            }
+            for (int j = numeric; j < numeric + categorical; j++)
+            {
+                dictionaries[j] = new String[cardinality];
+                for (int k = 0; k < cardinality; k++)
+                {
+                    dictionaries[j][k] = "v" + k;
+                }
+            }
+            if (classification)
+            {
+                dictionaries[numCols - 1] = new String[classes];
+                for (int c = 0; c < classes; c++)
+                {
+                    dictionaries[numCols - 1][c] = Integer.toString(c);
+                }
+            }
+            columnar = new ColumnarWriter(columnarPath, names, dictionaries,
+                    65536);
+        }
+
+        double[] row = new double[numCols];
+        String[] record = new String[numCols];
+        for (long i = 0; i < rows; i++)
+        {
+            nextRow(row);
+            if (csv != null)
+            {
+                format(row, record);
+                csv.write(String.join(",", record));
+                csv.newLine();
+            }
+            if (columnar != null)
+            {
+                columnar.add(row);
+            }
+        }
+
+        if (csv != null)
+        {
+            csv.close();
+        }
+        if (columnar != null)
+        {
+            columnar.close();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/**
+ * This class is a smoke test of the running time of the decision trees on
+ * the 7 datasets of the project. It times the fit() method of the
+ * DecisionTreeClassifier class (ID3) and of the DecisionTreeRegressor class
+ * (CART), the predict() method of both, and the prune() method of the
+ * classifier with a plain timing loop, for every combination of row count
+ * and thread count. Every thread works on its own tree, and the average time
+ * of one operation is reported. A few untimed warmup iterations come first.
+ *
+ * The loop does not guard against dead code elimination, on-stack
+ * replacement, or a noisy machine the way a benchmark harness such as JMH
+ * does, so the times are a rough check that nothing got much slower, not
+ * measurements to compare small changes with. The times are written as a
+ * JSON report
+ *
+ * Usage: java TimingSmoke [option=value ...]
+ *   dir=.              folder with the data files
+ *   datasets=a,b,...   data files, all 7 by default
+ *   operations=a,b,... fit,predict,prune by default
+ *   rows=500,all       row counts, "all" for the full dataset
+ *   threads=1          thread counts
+ *   warmup=3           warmup iterations
+ *   iterations=5       timed iterations
+ *   time=1000          minimum time of an iteration in milliseconds
+ *   output=timing.json
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class TimingSmoke
+{
+    // 7 datasets used in this project, the first 3 for classification
+    static final String[] DATASETS = {"abalone.data", "car.data",
+            "segmentation.data", "machine.data", "forestfires.data",
+            "winequality-white.csv", "winequality-red.csv"};
+
+    HashMap<String, String> options = new HashMap<String, String>();
+
+    /**
+     * This class holds the data of one timing. The training data, the
+     * validation data used for pruning, and the test data used for prediction
+     * are fixed, so every run sees the same data
+     */
+    static class Fixture
+    {
+        String fileName; // Name of the dataset
+        boolean classification;
+        boolean[] categorical; // Whether each feature is categorical
+        ArrayList<String[]> Xtrain = new ArrayList<String[]>();
+        ArrayList<String> ytrain = new ArrayList<String>();
+        ArrayList<String[]> Xvalid = new ArrayList<String[]>();
+        ArrayList<String> yvalid = new ArrayList<String>();
+        ArrayList<String[]> Xtest = new ArrayList<String[]>();
+        ArrayList<String> ytest = new ArrayList<String>();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        TimingSmoke smoke = new TimingSmoke();
+        for (String arg : args)
+        {
+            int equals = arg.indexOf('=');
+            if (equals < 0)
+            {
+                throw new IllegalArgumentException("Expected option=value: "
+                        + arg);
+            }
+            smoke.options.put(arg.substring(0, equals),
+                    arg.substring(equals + 1));
+        }
+        smoke.run();
+    }
+
+    /**
+     * This method returns the value of an option
+     *
+     * @param name is the name of the option
+     * @param defaultValue is the value used when the option is not given
+     * @return the value of the option
+     */
+    String option(String name, String defaultValue)
+    {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * This method times all operations and writes the JSON report
+     *
+     * @throws Exception
+     */
+    public void run() throws Exception
+    {
+        String dir = option("dir", ".");
+        String[] datasets = option("datasets",
+                String.join(",", DATASETS)).split(",");
+        String[] operations = option("operations", "fit,predict,prune")
+                .split(",");
+        String[] rowCounts = option("rows", "500,all").split(",");
+        String[] threadCounts = option("threads", "1").split(",");
+        int warmup = Integer.parseInt(option("warmup", "3"));
+        int iterations = Integer.parseInt(option("iterations", "5"));
+        long time = Long.parseLong(option("time", "1000"));
+
+        ArrayList<String> results = new ArrayList<String>();
+        for (String dataset : datasets)
+        {
+            File file = new File(dir, dataset);
+            if (!file.exists())
+            {
+                System.err.println("Skipping " + dataset + ": not found in "
+                        + dir);
+                continue;
+            }
+            boolean classification = Arrays.asList(DATASETS)
+                    .indexOf(dataset) < 3;
+            ETL etl = new ETL();
+            ArrayList<String[]> records = etl.readCSV(file.getPath());
+
+            for (String rowCount : rowCounts)
+            {
+                int rows = rowCount.equals("all") ? records.size() :
+                    Math.min(Integer.parseInt(rowCount), records.size());
+                Fixture fixture = fixture(records, rows, etl.fileName,
+                        classification);
+                for (String name : operations)
+                {
+                    if (name.equals("prune") && !classification)
+                    {// CART is pre-pruned by early stopping
+                        continue;
+                    }
+                    for (String threadCount : threadCounts)
+                    {
+                        int threads = Integer.parseInt(threadCount);
+                        String operation = (classification ?
+                                "DecisionTreeClassifier." :
+                                "DecisionTreeRegressor.") + name;
+                        System.out.println("# " + operation + " "
+                                + dataset + " rows=" + rows + " threads="
+                                + threads);
+                        double[] times = measure(fixture, name, threads,
+                                warmup, iterations, time);
+                        results.add(json(operation, dataset, rows,
+                                threads, warmup, iterations, times));
+                    }
+                }
+            }
+        }
+
+        PrintWriter fout = new PrintWriter(new BufferedWriter(
+                new FileWriter(option("output", "timing.json"))));
+        fout.println("[");
+        fout.println(String.join(",\n", results));
+        fout.println("]");
+        fout.close();
+    }
+
+    /**
+     * This method builds the data of a timing from the first rows of a
+     * dataset. Every 5th row is used for validation, every 5th row after
+     * that for testing, and the remaining rows for training
+     *
+     * @param records is the records of the dataset
+     * @param rows is the number of rows to use
+     * @param fileName is the name of the dataset
+     * @param classification is whether the dataset is used with ID3
+     * @return the data of the timing
+     */
+    Fixture fixture(ArrayList<String[]> records, int rows, String fileName,
+            boolean classification)
+    {
+        Fixture fixture = new Fixture();
+        fixture.fileName = fileName;
+        fixture.classification = classification;
+        for (int i = 0; i < rows; i++)
+        {
+            String[] record = records.get(i);
+            String[] X = Arrays.copyOf(record, record.length - 1);
+            String y = record[record.length - 1];
+            if (i % 5 == 0)
+            {
+                fixture.Xvalid.add(X);
+                fixture.yvalid.add(y);
+            }
+            else if (i % 5 == 1)
+            {
+                fixture.Xtest.add(X);
+                fixture.ytest.add(y);
+            }
+            else
+            {
+                fixture.Xtrain.add(X);
+                fixture.ytrain.add(y);
+            }
+        }
+        fixture.categorical = SchemaInferencer.infer(fixture.Xtrain)
+                .categorical(fixture.Xtrain.get(0).length);
+
+        return fixture;
+    }
+
+    /**
+     * This method runs the warmup and timed iterations of an operation. In
+     * each iteration, every thread repeats the operation until the iteration
+     * time has passed. The time of an iteration is the average time of one
+     * operation over all threads
+     *
+     * @param fixture is the data of the timing
+     * @param name is "fit", "predict", or "prune"
+     * @param threads is the number of threads
+     * @param warmup is the number of warmup iterations
+     * @param iterations is the number of timed iterations
+     * @param time is the minimum time of an iteration in milliseconds
+     * @return the time of each timed iteration in milliseconds per
+     *         operation
+     * @throws Exception
+     */
+    double[] measure(final Fixture fixture, final String name, int threads,
+            int warmup, int iterations, final long time) throws Exception
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        double[] times = new double[iterations];
+        try
+        {
+            for (int iteration = -warmup; iteration < iterations; iteration++)
+            {
+                ArrayList<Future<long[]>> futures =
+                        new ArrayList<Future<long[]>>();
+                final CyclicBarrier start = new CyclicBarrier(threads);
+                for (int t = 0; t < threads; t++)
+                {
+                    futures.add(pool.submit(new Callable<long[]>()
+                    {
+                        public long[] call() throws Exception
+                        {
+                            start.await();
+                            return iterate(fixture, name, time);
+                        }
+                    }));
+                }
+                long operations = 0;
+                long nanos = 0;
+                for (Future<long[]> future : futures)
+                {
+                    long[] result = future.get();
+                    operations += result[0];
+                    nanos += result[1];
+                }
+                double msPerOp = nanos / 1e6 / operations;
+                String label = iteration < 0 ? "Warmup " +
+                        (iteration + warmup + 1) : "Iteration " +
+                        (iteration + 1);
+                System.out.printf("%s: %.3f ms/op%n", label, msPerOp);
+                if (iteration >= 0)
+                {
+                    times[iteration] = msPerOp;
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        return times;
+    }
+
+    /**
+     * This method repeats an operation on one thread until the iteration time
+     * has passed. Only the operation itself is timed; fitting the tree to be
+     * pruned or used for prediction is not
+     *
+     * @param fixture is the data of the timing
+     * @param name is "fit", "predict", or "prune"
+     * @param time is the minimum time of the iteration in milliseconds
+     * @return the number of operations and the time they took in nanoseconds
+     */
+    long[] iterate(Fixture fixture, String name, long time)
+    {
+        long operations = 0;
+        long nanos = 0;
+        long sink = 0; // Keeps the results alive
+        long deadline = System.nanoTime() + time * 1000000;
+        DecisionTreeClassifier dtc = null;
+        DecisionTreeRegressor dtr = null;
+        while (operations == 0 || System.nanoTime() < deadline)
+        {
+            if (!name.equals("fit") && (operations == 0 ||
+                    name.equals("prune")))
+            {// The tree to be used, fitted outside of the timed section
+                if (fixture.classification)
+                {
+                    dtc = new DecisionTreeClassifier();
+                    dtc.fit(fixture.Xtrain, fixture.ytrain,
+                            fixture.categorical);
+                }
+                else
+                {
+                    dtr = new DecisionTreeRegressor(0);
+                    dtr.fit(fixture.Xtrain, fixture.ytrain,
+                            fixture.categorical);
+                }
+            }
+
+            long begin = System.nanoTime();
+            if (name.equals("fit") && fixture.classification)
+            {
+                dtc = new DecisionTreeClassifier();
+                dtc.fit(fixture.Xtrain, fixture.ytrain, fixture.categorical);
+                sink += dtc.root.children.size();
+            }
+            else if (name.equals("fit"))
+            {
+                dtr = new DecisionTreeRegressor(0);
+                dtr.fit(fixture.Xtrain, fixture.ytrain, fixture.categorical);
+                sink += dtr.root.children.size();
+            }
+            else if (name.equals("predict") && fixture.classification)
+            {
+                sink += dtc.predict(fixture.Xtest).size();
+            }
+            else if (name.equals("predict"))
+            {
+                sink += dtr.predict(fixture.Xtest).size();
+            }
+            else if (name.equals("prune"))
+            {
+                dtc.prune(fixture.Xvalid, fixture.yvalid, dtc.root);
+                sink += dtc.root.children.size();
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown operation: "
+                        + name);
+            }
+            nanos += System.nanoTime() - begin;
+            operations++;
+        }
+        if (sink == Long.MIN_VALUE)
+        {
+            System.out.println(sink);
+        }
+
+        return new long[] {operations, nanos};
+    }
+
+    /**
+     * This method formats the times of an operation as a JSON object, with
+     * their mean, minimum, and maximum
+     *
+     * @param operation is the name of the operation
+     * @param dataset is the data file
+     * @param rows is the number of rows used
+     * @param threads is the number of threads
+     * @param warmup is the number of warmup iterations
+     * @param iterations is the number of timed iterations
+     * @param times is the time of each timed iteration
+     * @return the JSON object
+     */
+    String json(String operation, String dataset, int rows, int threads,
+            int warmup, int iterations, double[] times)
+    {
+        double mean = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        StringBuilder rawData = new StringBuilder();
+        for (double time : times)
+        {
+            mean += time;
+            min = Math.min(min, time);
+            max = Math.max(max, time);
+            rawData.append(rawData.length() == 0 ? "" : ", ").append(time);
+        }
+        mean /= times.length;
+
+        return "  {\n"
+                + "    \"operation\": \"" + operation + "\",\n"
+                + "    \"dataset\": \"" + dataset + "\",\n"
+                + "    \"rows\": " + rows + ",\n"
+                + "    \"threads\": " + threads + ",\n"
+                + "    \"kernels\": \"" + SplitKernels.INSTANCE.name()
+                + "\",\n"
+                + "    \"warmupIterations\": " + warmup + ",\n"
+                + "    \"iterations\": " + iterations + ",\n"
+                + "    \"unit\": \"ms/op\",\n"
+                + "    \"mean\": " + mean + ",\n"
+                + "    \"min\": " + min + ",\n"
+                + "    \"max\": " + max + ",\n"
+                + "    \"times\": [" + rawData + "]\n"
+                + "  }";
+    }
+}
@@ -0,0 +1,546 @@
+/**
+ * This class implements a worker process used in distributed training. Each
+ * worker owns one contiguous shard of the rows of a dataset. For each node of
+ * the tree being built, the worker computes split statistics (class counts for
+ * ID3, count/sum/sum of squares for CART) on its own rows and sends them to
+ * the coordinator implemented by the DistributedTrainer class. The coordinator
+ * picks the split and tells the worker how to partition its rows
+ *
+ * @author Winston Lin
+ */
+import java.io.*;
+import java.math.*;
+import java.net.*;
+import java.util.*;
+
+public class TrainingWorker
+{
+    ArrayList<String[]> X; // Attributes of the rows in the shard
+    ArrayList<String> y;   // Targets of the rows in the shard
+
+    boolean classification; // True for ID3, false for CART
+    boolean[] categorical;  // Boolean array of whether feature is categorical
+    int[] yIndex;           // Class index of each row (classification)
+    double[] yValue;        // Target value of each row (regression)
+    int numClasses;         // Number of classes (classification)
+    HashMap<Integer, int[]> nodeRows =
+            new HashMap<Integer, int[]>(); // Rows in each open node
+
+    /**
+     * This method starts a worker. The arguments are the host and port of the
+     * coordinator, the path of the data file, the index of the shard owned by
+     * the worker, and the total number of shards
+     *
+     * @param args is the command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException
+    {
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        String filePath = args[2];
+        int shard = Integer.parseInt(args[3]);
+        int shards = Integer.parseInt(args[4]);
+
+        // Read the shard and separate the attributes from the targets
+        ETL etl = new ETL();
+        ArrayList<String[]> records = etl.readCSV(filePath, shard, shards);
+        TrainingWorker worker = new TrainingWorker();
+        worker.X = new ArrayList<String[]>();
+        worker.y = new ArrayList<String>();
+        for (String[] record : records)
+        {
+            String[] x = new String[record.length - 1];
+            for (int j = 0; j < x.length; j++)
+            {
+                x[j] = record[j];
+            }
+            worker.X.add(x);
+            worker.y.add(record[record.length - 1]);
+        }
+
+        Socket socket = new Socket(host, port);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+
+        // Introduce the worker to the coordinator
+        int numFeatures = records.isEmpty() ? 0 : records.get(0).length - 1;
+        out.writeInt(shard);
+        out.writeInt(numFeatures);
+        out.writeUTF(etl.fileName);
+        for (int j = 0; j < numFeatures; j++)
+        {// Whether each feature of the shard is categorical, none if empty
+            out.writeBoolean(etl.inferred.isCategorical(j));
+        }
+        out.flush();
+
+        worker.serve(in, out);
+        socket.close();
+    }
+
+    /**
+     * This method answers the requests of the coordinator until it is told to
+     * shut down
+     *
+     * @param in is the stream of requests from the coordinator
+     * @param out is the stream of replies to the coordinator
+     * @throws IOException
+     */
+    public void serve(DataInputStream in, DataOutputStream out)
+            throws IOException
+    {
+        while (true)
+        {
+            int message = in.readInt();
+            if (message == DistributedTrainer.INIT)
+            {
+                init(in, out);
+            }
+            else if (message == DistributedTrainer.CLASSES)
+            {
+                indexClasses(in);
+            }
+            else if (message == DistributedTrainer.DESCRIBE)
+            {
+                describe(in.readInt(), out);
+            }
+            else if (message == DistributedTrainer.EVALUATE)
+            {
+                evaluate(in, out);
+            }
+            else if (message == DistributedTrainer.SPLIT)
+            {
+                split(in);
+            }
+            else if (message == DistributedTrainer.LEAF)
+            {
+                leaf(in.readInt(), out);
+            }
+            else if (message == DistributedTrainer.SHUTDOWN)
+            {
+                return;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * This method prepares the worker for building a new tree. All rows of
+     * the shard are placed in the root node. For classification, the unique
+     * class labels of the shard are sent to the coordinator
+     *
+     * @param in is the stream of requests from the coordinator
+     * @param out is the stream of replies to the coordinator
+     * @throws IOException
+     */
+    public void init(DataInputStream in, DataOutputStream out)
+            throws IOException
+    {
+        classification = in.readBoolean();
+        categorical = new boolean[in.readInt()];
+        for (int i = 0; i < categorical.length; i++)
+        {
+            categorical[i] = in.readBoolean();
+        }
+
+        int[] rows = new int[X.size()];
+        for (int i = 0; i < rows.length; i++)
+        {
+            rows[i] = i;
+        }
+        nodeRows.clear();
+        nodeRows.put(0, rows);
+
+        if (classification)
+        {
+            LinkedHashSet<String> labels = new LinkedHashSet<String>(y);
+            writeStrings(out, labels);
+        }
+        else
+        {
+            yValue = new double[y.size()];
+            for (int i = 0; i < yValue.length; i++)
+            {
+                yValue[i] = NumberParser.parseDouble(y.get(i));
+            }
+            out.writeInt(0);
+        }
+    }
+
+    /**
+     * This method receives the class index chosen by the coordinator and
+     * converts the class label of each row to its index
+     *
+     * @param in is the stream of requests from the coordinator
+     * @throws IOException
+     */
+    public void indexClasses(DataInputStream in) throws IOException
+    {
+        HashMap<String, Integer> classIndex = new HashMap<String, Integer>();
+        ArrayList<String> classes = readStrings(in);
+        for (int i = 0; i < classes.size(); i++)
+        {
+            classIndex.put(classes.get(i), i);
+        }
+        numClasses = classes.size();
+
+        yIndex = new int[y.size()];
+        for (int i = 0; i < yIndex.length; i++)
+        {
+            yIndex[i] = classIndex.get(y.get(i));
+        }
+    }
+
+    /**
+     * This method sends the statistics of the targets of a node together with
+     * a summary of the values of each feature. Every category of a
+     * categorical feature is sent. A numeric feature only needs its
+     * candidate values, so at most MAX_CANDIDATES + 1 unique values are sent
+     * in order of first appearance, which is enough for the coordinator to
+     * tell that the k-tile method is used. If there are more, the smallest
+     * value as sorted by candidateValues() is sent after them, since the
+     * k-tiles of the node are taken from the sorted values
+     *
+     * @param nodeId is the node of interest
+     * @param out is the stream of replies to the coordinator
+     * @throws IOException
+     */
+    public void describe(int nodeId, DataOutputStream out) throws IOException
+    {
+        int[] rows = nodeRows.get(nodeId);
+        out.writeInt(rows.length);
+
+        if (classification)
+        {
+            for (int count : classCount(rows, null, 0, null, 0))
+            {
+                out.writeInt(count);
+            }
+        }
+        else
+        {
+            double[] stats = Moments.of(yValue, rows);
+            LinkedHashSet<String> targets = new LinkedHashSet<String>();
+            for (int row : rows)
+            {
+                targets.add(y.get(row));
+                if (targets.size() == 2)
+                {// Two unique targets are enough to tell impurity > 0
+                    break;
+                }
+            }
+            out.writeDouble(stats[1]);
+            out.writeDouble(stats[2]);
+            writeStrings(out, targets);
+        }
+
+        int maxValues = (classification ? DecisionTreeClassifier.MAX_CANDIDATES
+                : DecisionTreeRegressor.MAX_CANDIDATES) + 1;
+        for (int i = 0; i < categorical.length; i++)
+        {
+            LinkedHashSet<String> uniqueValues = new LinkedHashSet<String>();
+            String smallest = null;
+            boolean truncated = false;
+            for (int row : rows)
+            {
+                String value = X.get(row)[i];
+                if (smallest == null || value.compareTo(smallest) < 0)
+                {
+                    smallest = value;
+                }
+                if (categorical[i] || uniqueValues.size() < maxValues)
+                {
+                    uniqueValues.add(value);
+                }
+                else if (!uniqueValues.contains(value))
+                {
+                    truncated = true;
+                }
+            }
+            if (truncated)
+            {// The k-tile method is used, which needs the smallest value
+                uniqueValues.add(smallest);
+            }
+            writeStrings(out, uniqueValues);
+        }
+    }
+
+    /**
+     * This method evaluates the candidate values sent by the coordinator. For
+     * each candidate, the statistics of each branch of the split are sent.
+     * For categorical features, the statistics of each category are sent,
+     * and the coordinator combines them into branches
+     *
+     * @param in is the stream of requests from the coordinator
+     * @param out is the stream of replies to the coordinator
+     * @throws IOException
+     */
+    public void evaluate(DataInputStream in, DataOutputStream out)
+            throws IOException
+    {
+        int[] rows = nodeRows.get(in.readInt());
+        for (int i = 0; i < categorical.length; i++)
+        {
+            ArrayList<String> candidates = readStrings(in);
+            if (!classification && categorical[i])
+            {
+                writeCategoryStats(out, rows, i, candidates);
+                continue;
+            }
+            for (String candidate : candidates)
+            {
+                if (classification && categorical[i])
+                {// Each category has its own branch
+                    writeInts(out, classCount(rows, candidate, i, null, 0));
+                }
+                else if (classification)
+                {
+                    double value = NumberParser.parseDouble(candidate);
+                    writeInts(out, classCount(rows, null, i, "<", value));
+                    writeInts(out, classCount(rows, null, i, ">=", value));
+                }
+                else
+                {
+                    int[] branch = new int[rows.length];
+                    double value = NumberParser.parseDouble(candidate);
+                    for (int k = 0; k < rows.length; k++)
+                    {
+                        branch[k] = branch(X.get(rows[k])[i], i, null, value);
+                    }
+                    writeStats(out, Moments.of(yValue, rows, branch, 2));
+                }
+            }
+        }
+    }
+
+    /**
+     * This method sends the count, mean, and M2 of the targets of each
+     * category of a feature (CART)
+     *
+     * @param out is the stream of replies to the coordinator
+     * @param rows is the rows of the node of interest
+     * @param index is the index of the feature
+     * @param categories is the categories of the feature in the node
+     * @throws IOException
+     */
+    public void writeCategoryStats(DataOutputStream out, int[] rows,
+            int index, ArrayList<String> categories) throws IOException
+    {
+        HashMap<String, Integer> code = new HashMap<String, Integer>();
+        for (int k = 0; k < categories.size(); k++)
+        {
+            code.put(categories.get(k), k);
+        }
+        int[] group = new int[rows.length];
+        for (int k = 0; k < rows.length; k++)
+        {
+            Integer c = code.get(X.get(rows[k])[index]);
+            group[k] = c != null ? c : -1;
+        }
+        writeStats(out, Moments.of(yValue, rows, group, categories.size()));
+    }
+
+    /**
+     * This method sends the count, mean, and M2 of several groups of rows
+     *
+     * @param out is the stream of replies to the coordinator
+     * @param stats is the statistics of each group
+     * @throws IOException
+     */
+    public void writeStats(DataOutputStream out, double[][] stats)
+            throws IOException
+    {
+        for (double[] groupStats : stats)
+        {
+            for (double stat : groupStats)
+            {
+                out.writeDouble(stat);
+            }
+        }
+    }
+
+    /**
+     * This method drops the rows of a node that became a leaf. For
+     * regression, the exact sum of their targets is sent, so the mean of the
+     * leaf does not depend on how the rows are divided among the workers
+     *
+     * @param nodeId is the node of interest
+     * @param out is the stream of replies to the coordinator
+     * @throws IOException
+     */
+    public void leaf(int nodeId, DataOutputStream out) throws IOException
+    {
+        int[] rows = nodeRows.remove(nodeId);
+        if (!classification)
+        {
+            BigDecimal sum = BigDecimal.ZERO;
+            for (int row : rows)
+            {
+                sum = sum.add(new BigDecimal(yValue[row]));
+            }
+            out.writeUTF(sum.toString());
+        }
+    }
+
+    /**
+     * This method partitions the rows of a node among its child nodes
+     * according to the split chosen by the coordinator
+     *
+     * @param in is the stream of requests from the coordinator
+     * @throws IOException
+     */
+    public void split(DataInputStream in) throws IOException
+    {
+        int[] rows = nodeRows.remove(in.readInt());
+        int index = in.readInt();
+        double value = in.readDouble();
+        ArrayList<String> categories = readStrings(in);
+        HashSet<String> upper = new HashSet<String>(categories);
+        int firstChild = in.readInt();
+        int numChildren = in.readInt();
+
+        ArrayList<ArrayList<Integer>> children =
+                new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < numChildren; i++)
+        {
+            children.add(new ArrayList<Integer>());
+        }
+        for (int row : rows)
+        {
+            String feature = X.get(row)[index];
+            if (classification && categorical[index])
+            {
+                int branch = categories.indexOf(feature);
+                if (branch >= 0)
+                {
+                    children.get(branch).add(row);
+                }
+            }
+            else
+            {
+                children.get(branch(feature, index, upper, value)).add(row);
+            }
+        }
+
+        for (int i = 0; i < numChildren; i++)
+        {
+            int[] childRows = new int[children.get(i).size()];
+            for (int j = 0; j < childRows.length; j++)
+            {
+                childRows[j] = children.get(i).get(j);
+            }
+            nodeRows.put(firstChild + i, childRows);
+        }
+    }
+
+    /**
+     * This method finds the branch of a binary split a feature value falls in.
+     * For numeric features, branch 0 holds values less than the split value.
+     * For categorical features (CART), branch 1 holds the upper categories
+     *
+     * @param feature is the feature value of a row
+     * @param index is the index of the feature
+     * @param upper is the categories of branch 1, for categorical features
+     * @param value is the numeric value to split on
+     * @return the branch of the row, 0 or 1
+     */
+    public int branch(String feature, int index, Set<String> upper,
+            double value)
+    {
+        if (categorical[index])
+        {
+            return upper.contains(feature) ? 1 : 0;
+        }
+
+        return NumberParser.parseDouble(feature) < value ? 0 : 1;
+    }
+
+    /**
+     * This method counts the rows of each class that satisfy a condition on a
+     * feature. With no category and no operator, all rows are counted
+     *
+     * @param rows is the rows of the node of interest
+     * @param category is the required category, or null
+     * @param index is the index of the feature
+     * @param operator is "<" or ">=" to compare with value, or null
+     * @param value is the numeric value to compare with
+     * @return the number of rows of each class
+     */
+    public int[] classCount(int[] rows, String category, int index,
+            String operator, double value)
+    {
+        int[] classCount = new int[numClasses];
+        for (int row : rows)
+        {
+            String feature = X.get(row)[index];
+            if (category != null && !feature.equals(category))
+            {
+                continue;
+            }
+            if (operator != null &&
+                    (NumberParser.parseDouble(feature) < value) !=
+                    operator.equals("<"))
+            {
+                continue;
+            }
+            classCount[yIndex[row]]++;
+        }
+
+        return classCount;
+    }
+
+    /**
+     * This method writes a collection of strings preceded by its size
+     *
+     * @param out is the output stream
+     * @param strings is the collection to be written
+     * @throws IOException
+     */
+    public static void writeStrings(DataOutputStream out,
+            Collection<String> strings) throws IOException
+    {
+        out.writeInt(strings.size());
+        for (String string : strings)
+        {
+            out.writeUTF(string);
+        }
+    }
+
+    /**
+     * This method reads a list of strings written by writeStrings()
+     *
+     * @param in is the input stream
+     * @return the list of strings
+     * @throws IOException
+     */
+    public static ArrayList<String> readStrings(DataInputStream in)
+            throws IOException
+    {
+        int size = in.readInt();
+        ArrayList<String> strings = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++)
+        {
+            strings.add(in.readUTF());
+        }
+
+        return strings;
+    }
+
+    /**
+     * This method writes an array of integers
+     *
+     * @param out is the output stream
+     * @param values is the array to be written
+     * @throws IOException
+     */
+    public static void writeInts(DataOutputStream out, int[] values)
+            throws IOException
+    {
+        for (int value : values)
+        {
+            out.writeInt(value);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ * This class holds the Java Flight Recorder events emitted while building,
+ * pruning, and using the trees. The events show in a recording which nodes
+ * and features take the training time, e.g. in JDK Mission Control under
+ * "Decision Tree". Start a recording with
+ *   java -XX:StartFlightRecording=filename=trees.jfr,settings=profile Main
+ * When no recording is running the events are disabled and cost close to
+ * nothing: the fields are only filled, and the allocation counter only read,
+ * when the event is enabled
+ *
+ * @author Winston Lin
+ */
+import java.lang.management.*;
+import java.util.*;
+import jdk.jfr.*;
+
+public class TreeEvents
+{
+    /**
+     * This event covers the search for the split of one node
+     */
+    @Name("decisiontree.SplitSearch")
+    @Label("Split Search")
+    @Category("Decision Tree")
+    @Description("Search for the best split of a node")
+    static class SplitSearch extends Event
+    {
+        @Label("Algorithm")
+        String algorithm;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Features Scanned")
+        @Description("Features with more than one value at the node")
+        int featuresScanned;
+
+        @Label("Candidates Evaluated")
+        @Description("Split values (CART, numeric ID3) or features "
+                + "(categorical ID3) evaluated")
+        int candidatesEvaluated;
+
+        @Label("Chosen Feature")
+        @Description("Feature of the chosen split, -1 if none was found")
+        int chosenFeature;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+
+        transient long allocatedStart;
+
+        /**
+         * This method starts timing the search
+         */
+        void start()
+        {
+            if (isEnabled())
+            {
+                allocatedStart = allocatedBytes();
+            }
+            begin();
+        }
+
+        /**
+         * This method records the search if the event is enabled
+         *
+         * @param algorithm is "ID3" or "CART"
+         * @param depth is the depth of the node
+         * @param rows is the number of data points in the node
+         * @param featuresScanned is the number of features scanned
+         * @param candidatesEvaluated is the number of candidates evaluated
+         * @param chosenFeature is the feature of the split, -1 if none
+         */
+        void end(String algorithm, int depth, int rows, int featuresScanned,
+                int candidatesEvaluated, int chosenFeature)
+        {
+            if (shouldCommit())
+            {
+                this.algorithm = algorithm;
+                this.depth = depth;
+                this.rows = rows;
+                this.featuresScanned = featuresScanned;
+                this.candidatesEvaluated = candidatesEvaluated;
+                this.chosenFeature = chosenFeature;
+                allocated = allocatedBytes() - allocatedStart;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * This event covers the growth of a whole tree
+     */
+    @Name("decisiontree.BuildTree")
+    @Label("Build Tree")
+    @Category("Decision Tree")
+    static class BuildTree extends Event
+    {
+        @Label("Algorithm")
+        String algorithm;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Features")
+        int features;
+
+        @Label("Nodes")
+        int nodes;
+
+        @Label("Leaves")
+        int leaves;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+
+        transient long allocatedStart;
+
+        /**
+         * This method starts timing the growth
+         */
+        void start()
+        {
+            if (isEnabled())
+            {
+                allocatedStart = allocatedBytes();
+            }
+            begin();
+        }
+
+        /**
+         * This method records the growth if the event is enabled
+         *
+         * @param algorithm is "ID3" or "CART"
+         * @param rows is the number of data points in the training set
+         * @param features is the number of features
+         * @param root is the root node of the tree
+         */
+        void end(String algorithm, int rows, int features, Node root)
+        {
+            if (shouldCommit())
+            {
+                int[] shape = shape(root);
+                this.algorithm = algorithm;
+                this.rows = rows;
+                this.features = features;
+                nodes = shape[0];
+                leaves = shape[1];
+                depth = shape[2];
+                allocated = allocatedBytes() - allocatedStart;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * This event covers a reduced error pruning of a tree
+     */
+    @Name("decisiontree.Prune")
+    @Label("Prune")
+    @Category("Decision Tree")
+    static class Prune extends Event
+    {
+        @Label("Validation Rows")
+        int rows;
+
+        @Label("Nodes Before")
+        int nodesBefore;
+
+        @Label("Nodes After")
+        int nodesAfter;
+
+        /**
+         * This method starts timing the pruning
+         *
+         * @param root is the root node of the tree
+         * @param rows is the number of data points in the validation set
+         */
+        void start(Node root, int rows)
+        {
+            if (isEnabled())
+            {
+                this.rows = rows;
+                nodesBefore = shape(root)[0];
+            }
+            begin();
+        }
+
+        /**
+         * This method records the pruning if the event is enabled
+         *
+         * @param root is the root node of the pruned tree
+         */
+        void end(Node root)
+        {
+            if (shouldCommit())
+            {
+                nodesAfter = shape(root)[0];
+                commit();
+            }
+        }
+    }
+
+    /**
+     * This event covers the prediction of a batch of data points
+     */
+    @Name("decisiontree.Predict")
+    @Label("Predict")
+    @Category("Decision Tree")
+    static class Predict extends Event
+    {
+        @Label("Algorithm")
+        String algorithm;
+
+        @Label("Rows")
+        int rows;
+
+        /**
+         * This method records the prediction if the event is enabled
+         *
+         * @param algorithm is "ID3" or "CART"
+         * @param rows is the number of data points predicted
+         */
+        void end(String algorithm, int rows)
+        {
+            if (shouldCommit())
+            {
+                this.algorithm = algorithm;
+                this.rows = rows;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * This method returns the number of bytes allocated so far by the
+     * current thread, or 0 if the JVM cannot tell
+     *
+     * @return the number of bytes allocated
+     */
+    static long allocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+
+    /**
+     * This method measures the shape of a tree. The tree is walked with an
+     * explicit stack, so deep trees do not overflow the call stack
+     *
+     * @param root is the root node of the tree
+     * @return the number of nodes, the number of leaves, and the depth
+     */
+    static int[] shape(Node root)
+    {
+        int[] shape = new int[3];
+        ArrayDeque<Node> stack = new ArrayDeque<Node>();
+        ArrayDeque<Integer> depths = new ArrayDeque<Integer>();
+        stack.push(root);
+        depths.push(0);
+        while (!stack.isEmpty())
+        {
+            Node node = stack.pop();
+            int depth = depths.pop();
+            shape[0]++;
+            shape[1] += node.isLeaf ? 1 : 0;
+            shape[2] = Math.max(shape[2], depth);
+            for (Node child : node.children)
+            {
+                stack.push(child);
+                depths.push(depth + 1);
+            }
+        }
+
+        return shape;
+    }
+}
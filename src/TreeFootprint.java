@@ -0,0 +1,206 @@
+/**
+ * This class reports the size of a tree: the number of nodes and leaves, the
+ * number of nodes at each depth, and an estimate of the heap retained by the
+ * tree. The estimate assumes a 64-bit JVM with compressed references (heaps
+ * below 32 GB), 12-byte object headers, 8-byte alignment, and strings stored
+ * with one byte per character. Objects shared between nodes, such as class
+ * labels, are only counted once
+ *
+ * @author Winston Lin
+ */
+import java.util.*;
+
+public class TreeFootprint
+{
+    int nodes;              // Number of nodes
+    int leaves;             // Number of leaves
+    int[] depthHistogram;   // Number of nodes at each depth
+    long bytes;             // Estimated retained heap in bytes
+
+    IdentityHashMap<Object, Boolean> seen =
+            new IdentityHashMap<Object, Boolean>(); // Objects counted
+
+    /**
+     * This method measures a tree
+     *
+     * @param root is the root node of the tree
+     * @return the footprint of the tree
+     */
+    public static TreeFootprint measure(Node root)
+    {
+        TreeFootprint footprint = new TreeFootprint();
+        ArrayList<Integer> depths = new ArrayList<Integer>();
+        if (root != null)
+        {
+            footprint.visit(root, 0, depths);
+        }
+        footprint.depthHistogram = new int[depths.size()];
+        for (int d = 0; d < depths.size(); d++)
+        {
+            footprint.depthHistogram[d] = depths.get(d);
+        }
+        footprint.seen = null;
+
+        return footprint;
+    }
+
+    /**
+     * This method adds a node and its subtree to the footprint. The tree is
+     * walked with an explicit stack, so deep trees do not overflow the call
+     * stack
+     *
+     * @param root is the root node of the subtree
+     * @param rootDepth is the depth of the root node
+     * @param depths receives the number of nodes at each depth
+     */
+    void visit(Node root, int rootDepth, ArrayList<Integer> depths)
+    {
+        ArrayDeque<Node> stack = new ArrayDeque<Node>();
+        ArrayDeque<Integer> stackDepths = new ArrayDeque<Integer>();
+        stack.push(root);
+        stackDepths.push(rootDepth);
+        while (!stack.isEmpty())
+        {
+            Node node = stack.pop();
+            int depth = stackDepths.pop();
+            if (depth == depths.size())
+            {
+                depths.add(0);
+            }
+            depths.set(depth, depths.get(depth) + 1);
+            nodes++;
+            if (node.isLeaf)
+            {
+                leaves++;
+            }
+
+            // int column, double value, 5 references, 3 booleans
+            bytes += align(12 + 4 + 8 + 5 * 4 + 3);
+            bytes += list(node.categories) + list(node.children);
+            if (node.categoryBranch != null)
+            {
+                bytes += align(16 + 4 * node.categoryBranch.length);
+            }
+            bytes += string(node.name) + map(node.classCount);
+            for (String category : node.categories)
+            {
+                bytes += string(category);
+            }
+
+            for (Node child : node.children)
+            {
+                stack.push(child);
+                stackDepths.push(depth + 1);
+            }
+        }
+    }
+
+    /**
+     * This method estimates the size of a list, without its elements
+     *
+     * @param list is the list of interest
+     * @return the size in bytes, 0 if it is empty or was counted already
+     */
+    long list(List<?> list)
+    {
+        if (list.isEmpty() || seen.put(list, true) != null)
+        {
+            return 0;
+        }
+
+        // ArrayList with its array, assumed to be full
+        return align(12 + 4 + 4 + 4) + align(16 + 4 * list.size());
+    }
+
+    /**
+     * This method estimates the size of a map of class counts, with its keys
+     * and values
+     *
+     * @param map is the map of interest
+     * @return the size in bytes, 0 if it is null or was counted already
+     */
+    long map(HashMap<String, Integer> map)
+    {
+        if (map == null || seen.put(map, true) != null)
+        {
+            return 0;
+        }
+
+        int table = 0;
+        if (!map.isEmpty())
+        {
+            table = 16;
+            while (map.size() > table * 3 / 4)
+            {
+                table *= 2;
+            }
+        }
+        long size = align(48) + (table > 0 ? align(16 + 4 * table) : 0);
+        for (Map.Entry<String, Integer> pair : map.entrySet())
+        {
+            size += align(32) + string(pair.getKey());
+            int count = pair.getValue();
+            if ((count < -128 || count > 127)
+                    && seen.put(pair.getValue(), true) == null)
+            {// Integers outside the cache are separate objects
+                size += align(16);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * This method estimates the size of a string
+     *
+     * @param string is the string of interest
+     * @return the size in bytes, 0 if it is null or was counted already
+     */
+    long string(String string)
+    {
+        if (string == null || seen.put(string, true) != null)
+        {
+            return 0;
+        }
+
+        return align(24) + align(16 + string.length());
+    }
+
+    /**
+     * This method rounds a size up to a multiple of 8 bytes
+     *
+     * @param size is the size in bytes
+     * @return the aligned size
+     */
+    static long align(long size)
+    {
+        return (size + 7) / 8 * 8;
+    }
+
+    /**
+     * This method returns the depth of the tree
+     *
+     * @return the depth, 0 for a single leaf
+     */
+    public int depth()
+    {
+        return Math.max(depthHistogram.length - 1, 0);
+    }
+
+    public String toString()
+    {
+        StringBuilder report = new StringBuilder();
+        report.append("Nodes: ").append(nodes).append(" (").append(leaves)
+                .append(" leaves), depth ").append(depth()).append('\n');
+        report.append("Nodes per depth:");
+        for (int d = 0; d < depthHistogram.length; d++)
+        {
+            report.append(' ').append(d).append(':')
+                    .append(depthHistogram[d]);
+        }
+        report.append('\n');
+        report.append("Retained bytes (estimate): ").append(bytes);
+
+        return report.toString();
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * This class collects the metrics of one model: the number and latency of
+ * predictions, the batch sizes passed to predict(), the predictions that hit
+ * a category without a branch, and the number, latency, and tree depth of
+ * fits. Counters are LongAdders and the buckets of histograms are too (see
+ * the LogHistogram class), so scorers on many threads do not contend for a
+ * shared counter. predict() counts its predictions once per batch, and only
+ * times one prediction in SAMPLE_INTERVAL, so that a row does not pay for
+ * two clock reads and a histogram update. The metrics can be exposed over
+ * JMX with register(), e.g.
+ *   dtc.metrics.register("DecisionTreeClassifier", "abalone")
+ * which creates the MBean DecisionTrees:type=DecisionTreeClassifier,
+ * name=abalone
+ *
+ * @author Winston Lin
+ */
+import java.lang.management.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+public class TreeMetrics implements TreeMetricsMBean
+{
+    static final int SAMPLE_INTERVAL = 16; // Predictions per latency sample
+
+    LongAdder predictions = new LongAdder();  // Number of predictions
+    LongAdder batches = new LongAdder();      // Number of predict() calls
+    LongAdder fallbackHits = new LongAdder(); // Unseen categories
+    LongAdder fits = new LongAdder();         // Number of fit() calls
+    LogHistogram predictLatency = new LogHistogram(); // Nanoseconds, sampled
+    LogHistogram batchSizes = new LogHistogram();     // Data points
+    LogHistogram fitLatency = new LogHistogram();     // Nanoseconds
+    volatile int treeDepth; // Depth of the last tree fitted
+
+    long sampleTime = System.nanoTime(); // Time of the last rate sample
+    long sampleCount;                    // Predictions at that time
+    double rate;                         // Predictions per second
+    ObjectName objectName;               // Name of the MBean, if registered
+
+    /**
+     * This method records the latency of one sampled prediction. The
+     * prediction itself is counted by recordBatch()
+     *
+     * @param nanos is the latency in nanoseconds
+     */
+    public void recordPrediction(long nanos)
+    {
+        predictLatency.record(nanos);
+    }
+
+    /**
+     * This method records one call to predict() and counts its predictions
+     *
+     * @param size is the number of data points in the batch
+     */
+    public void recordBatch(int size)
+    {
+        predictions.add(size);
+        batches.increment();
+        batchSizes.record(size);
+    }
+
+    /**
+     * This method records a prediction that reached a category with no
+     * branch, so that a random branch was taken
+     */
+    public void recordFallback()
+    {
+        fallbackHits.increment();
+    }
+
+    /**
+     * This method records one call to fit()
+     *
+     * @param nanos is the time taken in nanoseconds
+     * @param root is the root node of the tree fitted
+     */
+    public void recordFit(long nanos, Node root)
+    {
+        fits.increment();
+        fitLatency.record(nanos);
+        treeDepth = TreeEvents.shape(root)[2];
+    }
+
+    /**
+     * This method registers the metrics as an MBean with the platform MBean
+     * server. A previous registration of the same metrics is replaced
+     *
+     * @param type is the type of model, e.g. "DecisionTreeClassifier"
+     * @param name is the name of the model
+     * @return the name of the MBean
+     * @throws JMException
+     */
+    public synchronized ObjectName register(String type, String name)
+            throws JMException
+    {
+        unregister();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("DecisionTrees:type="
+                + ObjectName.quote(type) + ",name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        this.objectName = objectName;
+
+        return objectName;
+    }
+
+    /**
+     * This method removes the MBean, if the metrics are registered
+     *
+     * @throws JMException
+     */
+    public synchronized void unregister() throws JMException
+    {
+        if (objectName != null)
+        {
+            ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    public long getPredictions()
+    {
+        return predictions.sum();
+    }
+
+    /**
+     * This method returns the rate of predictions. The rate is sampled at
+     * most once per second, over the time since the previous sample
+     *
+     * @return the number of predictions per second
+     */
+    public synchronized double getPredictionsPerSecond()
+    {
+        long now = System.nanoTime();
+        if (now - sampleTime >= 1000000000L)
+        {
+            long count = predictions.sum();
+            rate = (count - sampleCount) * 1e9 / (now - sampleTime);
+            sampleCount = count;
+            sampleTime = now;
+        }
+
+        return rate;
+    }
+
+    public double getPredictLatencyP50Micros()
+    {
+        return predictLatency.percentile(50) / 1e3;
+    }
+
+    public double getPredictLatencyP99Micros()
+    {
+        return predictLatency.percentile(99) / 1e3;
+    }
+
+    public double getPredictLatencyP999Micros()
+    {
+        return predictLatency.percentile(99.9) / 1e3;
+    }
+
+    public long getBatches()
+    {
+        return batches.sum();
+    }
+
+    public double getMeanBatchSize()
+    {
+        return batchSizes.mean();
+    }
+
+    public double getBatchSizeP99()
+    {
+        return batchSizes.percentile(99);
+    }
+
+    public long getFallbackHits()
+    {
+        return fallbackHits.sum();
+    }
+
+    public long getFits()
+    {
+        return fits.sum();
+    }
+
+    public double getFitLatencyP50Millis()
+    {
+        return fitLatency.percentile(50) / 1e6;
+    }
+
+    public double getFitLatencyMaxMillis()
+    {
+        return fitLatency.max() / 1e6;
+    }
+
+    public int getTreeDepth()
+    {
+        return treeDepth;
+    }
+
+    /**
+     * This method clears all metrics except the depth of the last tree
+     */
+    public synchronized void reset()
+    {
+        predictions.reset();
+        batches.reset();
+        fallbackHits.reset();
+        fits.reset();
+        predictLatency.reset();
+        batchSizes.reset();
+        fitLatency.reset();
+        sampleTime = System.nanoTime();
+        sampleCount = 0;
+        rate = 0;
+    }
+}
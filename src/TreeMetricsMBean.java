@@ -0,0 +1,36 @@
+/**
+ * This interface lists the attributes and operations of the TreeMetrics class
+ * exposed over JMX
+ *
+ * @author Winston Lin
+ */
+public interface TreeMetricsMBean
+{
+    long getPredictions();
+
+    double getPredictionsPerSecond();
+
+    double getPredictLatencyP50Micros();
+
+    double getPredictLatencyP99Micros();
+
+    double getPredictLatencyP999Micros();
+
+    long getBatches();
+
+    double getMeanBatchSize();
+
+    double getBatchSizeP99();
+
+    long getFallbackHits();
+
+    long getFits();
+
+    double getFitLatencyP50Millis();
+
+    double getFitLatencyMaxMillis();
+
+    int getTreeDepth();
+
+    void reset();
+}
@@ -9,7 +9,12 @@
  * along with its performance is recorded and compared with that of the regular 
  * regressor (without early stopping). Note that a 5-fold cross validation is 
  * performed for each task, so it is the average performance that is recorded.
- * All results are written to the output file called "Results.txt"
+ * All results are written to the output file called "Results.txt", and the
+ * time spent in each stage of each fold is written next to it to 
+ * "Timings.csv" and "Timings.json" (see the StageTimer class). The splits are
+ * seeded (the seed is the optional argument, 1 by default) and the result of
+ * each fold is stored (see the ResultStore class), so a re-run only computes
+ * the results that are missing, e.g. for a threshold added to the grid
  * 
  * @author Winston Lin
  */
@@ -20,6 +25,10 @@ public class WriteToFile
 {
     public static void main(String[] args) throws IOException 
     {
+        // Seed of the splits, so that results can be stored and reused
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        ResultStore store = new ResultStore();
+        
         // 7 datasets used in this project
         String[] datasets = {"abalone.data", "car.data", 
                 "segmentation.data", "machine.data", "forestfires.data", 
@@ -27,6 +36,7 @@ public class WriteToFile
         // Write to the output file
         PrintWriter fout = new PrintWriter(
                 new BufferedWriter(new FileWriter("Results.txt", true)));
+        StageTimer timer = new StageTimer(); // Time spent in each stage
         fout.println("Perform classification and regression tasks. For "
                 + "classfication, test datasets with Decision Tree "
                 + "Algorithm ID3. Performance is measured by classification "
@@ -41,96 +51,101 @@ public class WriteToFile
         for (int d = 0; d < datasets.length; d++)
         {
             // Write to the output file
-            fout.println(datasets[d].substring(datasets[d].lastIndexOf('/')+1,
-                    datasets[d].lastIndexOf('.')));
+            String name = datasets[d].substring(
+                    datasets[d].lastIndexOf('/') + 1,
+                    datasets[d].lastIndexOf('.'));
+            fout.println(name);
             fout.println("----------------------");
             
             if (d < 3) // Classification
             {
                 // Process and split data into train, test, and validation set
-                ArrayList<String[]> records = new ArrayList<String[]>();
-                ArrayList<ArrayList<String[]>> partitions = 
-                        new ArrayList<ArrayList<String[]>>();
                 ETL etl = new ETL();
-                records = etl.readCSV(datasets[d]);
-                partitions = etl.split(records, true);   
+                long start = timer.start();
+                ArrayList<String[]> records = etl.readCSV(datasets[d]);
+                timer.stop(name, "parse", StageTimer.WHOLE_DATASET, start,
+                        records.size(), null);
+                String hash = ResultStore.hash(datasets[d], etl);
+                start = timer.start();
+                Folds folds = etl.folds(records, true, 5, 1, 
+                        new Random(seed)).get(0);
+                timer.stop(name, "split", StageTimer.WHOLE_DATASET, start,
+                        records.size(), null);
                 
-                // Perform 5-fold cross validation for classification using ID3
-                for (int p = 0; p < 2; p++)
+                // Views of the folds share the records, nothing is copied
+                start = timer.start();
+                DatasetView valid = new DatasetView(records, folds.validation);
+                DatasetView[] train = new DatasetView[5];
+                DatasetView[] test = new DatasetView[5];
+                for (int k = 0; k < 5; k++)
+                {
+                    train[k] = new DatasetView(records, folds.train(k),
+                            records.get(0).length - 1, etl.inferred);
+                    test[k] = new DatasetView(records, folds.test(k));
+                }
+                timer.stop(name, "folds", StageTimer.WHOLE_DATASET, start,
+                        records.size(), null);
+                
+                // Perform 5-fold cross validation for classification using ID3.
+                // The unpruned and pruned trees of a fold are scored on its
+                // test set in one pass
+                double[][] accuracies = new double[2][5];
+                for (int k = 0; k < 5; k++)
                 {
-                    double[] accuracies = new double[5];
-                    for (int k = 0; k < 5; k++)
+                    String[] keys = new String[2];
+                    ArrayList<Node> roots = new ArrayList<Node>();
+                    ArrayList<Integer> fitted = new ArrayList<Integer>();
+                    for (int p = 0; p < 2; p++)
                     {
-                        ArrayList<String[]> Xtrain = new ArrayList<String[]>();
-                        ArrayList<String> ytrain = new ArrayList<String>();
-                        ArrayList<String[]> Xtest = new ArrayList<String[]>();
-                        ArrayList<String> ytest = new ArrayList<String>();
-                        ArrayList<String[]> Xvalid = new ArrayList<String[]>();
-                        ArrayList<String> yvalid = new ArrayList<String>();
-                        
-                        for (int i = 1; i < partitions.size(); i++)
-                        {
-                            if (i == k + 1)
-                            {
-                                for (String[] test : partitions.get(i))
-                                {
-                                    String[] X = new String[test.length - 1];
-                                    for (int j = 0; j < X.length; j++)
-                                    {
-                                        X[j] = test[j];
-                                    }
-                                    Xtest.add(X);
-                                    ytest.add(test[test.length - 1]);
-                                }
-                            }
-                            else
-                            {
-                                for (String[] train : partitions.get(i))
-                                {
-                                    String[] X = new String[train.length - 1];
-                                    for (int j = 0; j < X.length; j++)
-                                    {
-                                        X[j] = train[j];
-                                    }
-                                    Xtrain.add(X);
-                                    ytrain.add(train[train.length - 1]);
-                                }
-                            }
-                        }  
-                        for (String[] valid : partitions.get(0))
-                        {
-                            String[] X = new String[valid.length - 1];
-                            for (int j = 0; j < X.length; j++)
-                            {
-                                X[j] = valid[j];
-                            }
-                            Xvalid.add(X);
-                            yvalid.add(valid[valid.length - 1]);
+                        keys[p] = ResultStore.key(hash, seed, k, "ID3", 0, 
+                                p == 1, "test");
+                        Double stored = store.get(keys[p]);
+                        if (stored != null)
+                        {// Computed by an earlier run
+                            accuracies[p][k] = stored;
+                            continue;
                         }
                         
-                        // Fit on train, prune on validation, predict on test
+                        // Fit on train, prune on validation
                         DecisionTreeClassifier dtc = 
                                 new DecisionTreeClassifier();
-                        dtc.fit(Xtrain, ytrain, etl.fileName);
+                        start = timer.start();
+                        dtc.fit(train[k]);
+                        timer.stop(name, "fit", k, start, train[k].size(), 
+                                dtc.root);
                         if (p == 1)
                         {
-                            dtc.prune(Xvalid, yvalid, dtc.root);
+                            start = timer.start();
+                            dtc.prune(valid, dtc.root);
+                            timer.stop(name, "prune", k, start, 
+                                    valid.size(), dtc.root);
                         }
-                        ArrayList<String> prediction = dtc.predict(Xtest);
-                        double accuracy = 0;
-                        for (int i = 0; i < ytest.size(); i++)
-                        {  
-                            if (ytest.get(i).equals(prediction.get(i)))
-                            {
-                                accuracy++;
-                            }
-                        }
-                        accuracy /= ytest.size();
-                        accuracies[k] = accuracy;
+                        roots.add(dtc.root);
+                        fitted.add(p);
+                    }
+                    if (roots.isEmpty())
+                    {
+                        continue;
                     }
                     
+                    // Predict on test
+                    start = timer.start();
+                    double[] scores = 
+                            new MultiTreeEvaluator(roots).accuracy(test[k]);
+                    timer.stop(name, "predict", k, start, test[k].size(), 
+                            null);
+                    for (int t = 0; t < roots.size(); t++)
+                    {
+                        int p = fitted.get(t);
+                        accuracies[p][k] = scores[t];
+                        store.put(keys[p], scores[t]);
+                    }
+                }
+                
+                for (int p = 0; p < 2; p++)
+                {
                     double averageAccuracy = 0;
-                    for (double accuracy : accuracies)
+                    for (double accuracy : accuracies[p])
                     {
                         averageAccuracy += accuracy;
                     }
@@ -160,86 +175,86 @@ public class WriteToFile
             else // Regression
             {
                 // Process and split data into train, test, and validation set
-                ArrayList<String[]> records = new ArrayList<String[]>();
-                ArrayList<ArrayList<String[]>> partitions = 
-                        new ArrayList<ArrayList<String[]>>();
                 ETL etl = new ETL();
-                records = etl.readCSV(datasets[d]);
-                partitions = etl.split(records, false);  
+                long start = timer.start();
+                ArrayList<String[]> records = etl.readCSV(datasets[d]);
+                timer.stop(name, "parse", StageTimer.WHOLE_DATASET, start,
+                        records.size(), null);
+                String hash = ResultStore.hash(datasets[d], etl);
+                start = timer.start();
+                Folds folds = etl.folds(records, false, 5, 1, 
+                        new Random(seed)).get(0);
+                timer.stop(name, "split", StageTimer.WHOLE_DATASET, start,
+                        records.size(), null);
+                
+                // Views of the folds share the records, nothing is copied
+                start = timer.start();
+                DatasetView valid = new DatasetView(records, folds.validation);
+                DatasetView[] train = new DatasetView[5];
+                DatasetView[] test = new DatasetView[5];
+                for (int k = 0; k < 5; k++)
+                {
+                    train[k] = new DatasetView(records, folds.train(k),
+                            records.get(0).length - 1, etl.inferred);
+                    test[k] = new DatasetView(records, folds.test(k));
+                }
+                timer.stop(name, "folds", StageTimer.WHOLE_DATASET, start,
+                        records.size(), null);
                 
                 // Tune the early stopping threshold for regression using CART
                 double[] thresholds = {0, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 
                                        1, 5, 10, 50, 100, 500, 1000, 5000, 
                                        10000, 50000};
-                ArrayList<Double> averageMSEs = new ArrayList<Double>();
-                for (double threshold : thresholds)
+                double[][] MSEs = new double[thresholds.length][5];
+                for (int k = 0; k < 5; k++)
                 {
-                    double[] MSEs = new double[5];
-                    for (int k = 0; k < 5; k++)
+                    String[] keys = new String[thresholds.length];
+                    ArrayList<Node> roots = new ArrayList<Node>();
+                    ArrayList<Integer> fitted = new ArrayList<Integer>();
+                    for (int t = 0; t < thresholds.length; t++)
                     {
-                        ArrayList<String[]> Xtrain = new ArrayList<String[]>();
-                        ArrayList<String> ytrain = new ArrayList<String>();
-                        ArrayList<String[]> Xtest = new ArrayList<String[]>();
-                        ArrayList<String> ytest = new ArrayList<String>();
-                        ArrayList<String[]> Xvalid = new ArrayList<String[]>();
-                        ArrayList<String> yvalid = new ArrayList<String>();
-                        
-                        for (int i = 1; i < partitions.size(); i++)
-                        {
-                            if (i == k + 1)
-                            {
-                                for (String[] test : partitions.get(i))
-                                {
-                                    String[] X = new String[test.length - 1];
-                                    for (int j = 0; j < X.length; j++)
-                                    {
-                                        X[j] = test[j];
-                                    }
-                                    Xtest.add(X);
-                                    ytest.add(test[test.length - 1]);
-                                }
-                            }
-                            else
-                            {
-                                for (String[] train : partitions.get(i))
-                                {
-                                    String[] X = new String[train.length - 1];
-                                    for (int j = 0; j < X.length; j++)
-                                    {
-                                        X[j] = train[j];
-                                    }
-                                    Xtrain.add(X);
-                                    ytrain.add(train[train.length - 1]);
-                                }
-                            }
-                        }  
-                        for (String[] valid : partitions.get(0))
-                        {
-                            String[] X = new String[valid.length - 1];
-                            for (int j = 0; j < X.length; j++)
-                            {
-                                X[j] = valid[j];
-                            }
-                            Xvalid.add(X);
-                            yvalid.add(valid[valid.length - 1]);
+                        keys[t] = ResultStore.key(hash, seed, k, "CART", 
+                                thresholds[t], false, "validation");
+                        Double stored = store.get(keys[t]);
+                        if (stored != null)
+                        {// Computed by an earlier run
+                            MSEs[t][k] = stored;
+                            continue;
                         }
                         
-                        // Fit on train, tune the threshold on validation
+                        // Fit on train
                         DecisionTreeRegressor dtr = 
-                                new DecisionTreeRegressor(threshold);
-                        dtr.fit(Xtrain, ytrain, etl.fileName);
-                        ArrayList<String> prediction = dtr.predict(Xvalid);
-                        double MSE = 0;
-                        for (int i = 0; i < yvalid.size(); i++)
-                        {
-                            MSE += Math.pow((Double.parseDouble(yvalid.get(i)) 
-                                   - Double.parseDouble(prediction.get(i))), 2)
-                                   / ytest.size();
-                        }
-                        MSEs[k] = MSE;
+                                new DecisionTreeRegressor(thresholds[t]);
+                        start = timer.start();
+                        dtr.fit(train[k]);
+                        timer.stop(name, "tune", k, start, train[k].size(), 
+                                dtr.root);
+                        roots.add(dtr.root);
+                        fitted.add(t);
+                    }
+                    if (roots.isEmpty())
+                    {
+                        continue;
+                    }
+                    
+                    // Score the trees of every threshold on validation in one
+                    // pass
+                    start = timer.start();
+                    double[] scores = new MultiTreeEvaluator(roots)
+                            .squaredError(valid, test[k].size());
+                    timer.stop(name, "tune", k, start, valid.size(), null);
+                    for (int i = 0; i < roots.size(); i++)
+                    {
+                        int t = fitted.get(i);
+                        MSEs[t][k] = scores[i];
+                        store.put(keys[t], scores[i]);
                     }
+                }
+                ArrayList<Double> averageMSEs = new ArrayList<Double>();
+                for (int t = 0; t < thresholds.length; t++)
+                {
                     double averageMSE = 0;
-                    for (double MSE : MSEs)
+                    for (double MSE : MSEs[t])
                     {
                         averageMSE += MSE;
                     }
@@ -261,70 +276,56 @@ public class WriteToFile
                 // Use the best threshold to make predictions on the test set
                 double[] unprunedMSEs = new double[5];
                 double[] prunedMSEs = new double[5];
+                double[] testThresholds = {0, thresholds[bestThresholdIndex]};
                 for (int k = 0; k < 5; k++)
                 {
-                    ArrayList<String[]> Xtrain = new ArrayList<String[]>();
-                    ArrayList<String> ytrain = new ArrayList<String>();
-                    ArrayList<String[]> Xtest = new ArrayList<String[]>();
-                    ArrayList<String> ytest = new ArrayList<String>();
-                    
-                    for (int i = 1; i < partitions.size(); i++)
+                    String[] keys = new String[2];
+                    Double[] stored = new Double[2];
+                    for (int t = 0; t < 2; t++)
                     {
-                        if (i == k + 1)
-                        {
-                            for (String[] test : partitions.get(i))
-                            {
-                                String[] X = new String[test.length - 1];
-                                for (int j = 0; j < X.length; j++)
-                                {
-                                    X[j] = test[j];
-                                }
-                                Xtest.add(X);
-                                ytest.add(test[test.length - 1]);
-                            }
-                        }
-                        else
-                        {
-                            for (String[] train : partitions.get(i))
-                            {
-                                String[] X = new String[train.length - 1];
-                                for (int j = 0; j < X.length; j++)
-                                {
-                                    X[j] = train[j];
-                                }
-                                Xtrain.add(X);
-                                ytrain.add(train[train.length - 1]);
-                            }
-                        }
+                        keys[t] = ResultStore.key(hash, seed, k, "CART", 
+                                testThresholds[t], false, "test");
+                        stored[t] = store.get(keys[t]);
+                    }
+                    if (stored[0] != null && stored[1] != null)
+                    {// Computed by an earlier run
+                        unprunedMSEs[k] = stored[0];
+                        prunedMSEs[k] = stored[1];
+                        continue;
                     }
                     
-                    // Fit on train without early stopping, predict on test
-                    DecisionTreeRegressor dtr = 
-                            new DecisionTreeRegressor(0);
-                    dtr.fit(Xtrain, ytrain, etl.fileName);
-                    ArrayList<String> prediction = dtr.predict(Xtest);
-                    double MSE = 0;
-                    for (int i = 0; i < ytest.size(); i++)
+                    // Fit on train without early stopping and with the best
+                    // threshold, predict on test in one pass
+                    ArrayList<Node> roots = new ArrayList<Node>();
+                    ArrayList<Integer> fitted = new ArrayList<Integer>();
+                    for (int t = 0; t < 2; t++)
                     {
-                        MSE += Math.pow((Double.parseDouble(ytest.get(i)) 
-                                - Double.parseDouble(prediction.get(i))), 2)
-                                / ytest.size();
+                        if (stored[t] != null)
+                        {
+                            continue;
+                        }
+                        DecisionTreeRegressor dtr = 
+                                new DecisionTreeRegressor(testThresholds[t]);
+                        start = timer.start();
+                        dtr.fit(train[k]);
+                        timer.stop(name, "fit", k, start, train[k].size(), 
+                                dtr.root);
+                        roots.add(dtr.root);
+                        fitted.add(t);
                     }
-                    unprunedMSEs[k] = MSE;
-                    
-                    // Fit on train, use the best threshold, predict on test
-                    dtr = new DecisionTreeRegressor(
-                            thresholds[bestThresholdIndex]);
-                    dtr.fit(Xtrain, ytrain, etl.fileName);
-                    prediction = dtr.predict(Xtest);
-                    MSE = 0;
-                    for (int i = 0; i < ytest.size(); i++)
+                    start = timer.start();
+                    double[] scores = new MultiTreeEvaluator(roots)
+                            .squaredError(test[k], test[k].size());
+                    timer.stop(name, "predict", k, start, test[k].size(), 
+                            null);
+                    for (int i = 0; i < roots.size(); i++)
                     {
-                        MSE += Math.pow((Double.parseDouble(ytest.get(i)) 
-                                - Double.parseDouble(prediction.get(i))), 2) 
-                                / ytest.size();
+                        int t = fitted.get(i);
+                        store.put(keys[t], scores[i]);
+                        stored[t] = scores[i];
                     }
-                    prunedMSEs[k] = MSE;
+                    unprunedMSEs[k] = stored[0];
+                    prunedMSEs[k] = stored[1];
                 }
                 
                 // Without early stopping
@@ -350,7 +351,11 @@ public class WriteToFile
                             + Math.round(averagePrunedMSE * 100.0) / 100.0);
                 fout.println();
             }
+            store.save(); // Keep the results if a later dataset fails
         }
         fout.close();
+        
+        // Write the time spent in each stage next to the results
+        timer.write("Timings");
     }
 }